@@ -0,0 +1,57 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ *
+ */
+
+package com.fr3ts0n.ecu.gui.androbd;
+
+import android.app.Application;
+import android.content.Context;
+
+import com.fr3ts0n.ecu.prot.obd.ElmProt;
+
+/**
+ * AndrOBD application
+ * - owns the OBD protocol session, which is used by all activities and
+ *   communication services of the app
+ */
+public class AndrObdApplication extends Application
+{
+	/** OBD protocol session of the app */
+	private final ElmProt elm = new ElmProt();
+
+	/**
+	 * get OBD protocol session of the app
+	 *
+	 * @return OBD protocol session
+	 */
+	public ElmProt getElm()
+	{
+		return elm;
+	}
+
+	/**
+	 * get OBD protocol session of the app
+	 *
+	 * @param context any context of the app
+	 * @return OBD protocol session
+	 */
+	static ElmProt getElm(Context context)
+	{
+		return ((AndrObdApplication) context.getApplicationContext()).getElm();
+	}
+}
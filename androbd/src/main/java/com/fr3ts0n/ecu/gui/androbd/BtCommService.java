@@ -26,6 +26,7 @@ import android.content.Context;
 import android.os.Handler;
 import android.os.ParcelUuid;
 
+import com.fr3ts0n.ecu.prot.obd.ElmProt;
 import com.fr3ts0n.prot.StreamHandler;
 
 import java.io.IOException;
@@ -56,10 +57,11 @@ public class BtCommService extends CommService
 	 *
 	 * @param context The UI Activity Context
 	 * @param handler A Handler to send messages back to the UI Activity
+	 * @param elm OBD protocol session to be served
 	 */
-	BtCommService(Context context, Handler handler)
+	BtCommService(Context context, Handler handler, ElmProt elm)
 	{
-		super(context, handler);
+		super(context, handler, elm);
 
 		// Always cancel discovery because it will slow down a connection
 		// Member fields
@@ -34,7 +34,6 @@ import android.widget.EditText;
 import android.widget.ListAdapter;
 
 import com.fr3ts0n.ecu.EcuDataPv;
-import com.fr3ts0n.ecu.prot.obd.ObdProt;
 
 import org.achartengine.ChartFactory;
 import org.achartengine.GraphicalView;
@@ -186,7 +185,7 @@ public class ChartActivity extends Activity
 		// make chart visible
 		setContentView(chartView);
 		// limit selected PIDs to selection
-		MainActivity.setFixedPids(pidNumbers);
+		MainActivity.setFixedPids(AndrObdApplication.getElm(this), pidNumbers);
 		// if auto hiding selected ...
 		if(MainActivity.prefs.getBoolean(MainActivity.PREF_AUTOHIDE,false))
 		{
@@ -274,7 +273,7 @@ public class ChartActivity extends Activity
 			// forget about it
 			toolBarHider = null;
 		}
-		ObdProt.resetFixedPid();
+		AndrObdApplication.getElm(this).resetFixedPid();
 		// allow sleeping again
 		wakeLock.release();
 		super.onDestroy();
@@ -60,43 +60,27 @@ public abstract class CommService
 
 	static final Logger log = Logger.getLogger(TAG);
 
-	public static final ElmProt elm = new ElmProt();
+	/** OBD protocol session served by this communication service */
+	final ElmProt elm;
 
 	Context mContext;
 	private Handler mHandler = null;
 	STATE mState;
 
-	/**
-	 * Constructor. Prepares a new Communication session.
-	 */
-	CommService()
-	{
-		super();
-		// mAdapter = MainActivity.mBluetoothAdapter;
-		mState = STATE.NONE;
-	}
-
 	/**
 	 * Constructor. Prepares a new Communication session.
 	 *
-	 * @param handler A Handler to send messages back to the UI Activity
-	 */
-	private CommService(Handler handler)
-	{
-		this();
-		mHandler = handler;
-	}
-
-	/**
-	 * Constructor. Prepares a new Bluetooth Communication session.
-	 *
 	 * @param context The UI Activity Context
 	 * @param handler A Handler to send messages back to the UI Activity
+	 * @param elm OBD protocol session to be served
 	 */
-	CommService(Context context, Handler handler)
+	CommService(Context context, Handler handler, ElmProt elm)
 	{
-		this(handler);
+		super();
+		mState = STATE.NONE;
 		mContext = context;
+		mHandler = handler;
+		this.elm = elm;
 	}
 
 	/**
@@ -36,7 +36,6 @@ import android.widget.ListAdapter;
 import com.fr3ts0n.ecu.EcuDataItem;
 import com.fr3ts0n.ecu.EcuDataItems;
 import com.fr3ts0n.ecu.EcuDataPv;
-import com.fr3ts0n.ecu.prot.obd.ObdProt;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
 import com.github.anastr.speedviewlib.Gauge;
@@ -224,7 +223,7 @@ public class DashBoardActivity extends Activity
 	protected void onDestroy()
 	{
 		// reset PID limiting
-		ObdProt.resetFixedPid();
+		AndrObdApplication.getElm(this).resetFixedPid();
 		adapter.clear();
 		// allow sleeping again
 		wakeLock.release();
@@ -241,7 +240,7 @@ public class DashBoardActivity extends Activity
 		// set scaling of dashboard items
 		updateDashboardScaling();
 		// limit selected PIDs to selection
-		MainActivity.setFixedPids(pidNumbers);
+		MainActivity.setFixedPids(AndrObdApplication.getElm(this), pidNumbers);
 	}
 
 	@Override
@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright 2016 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ *
+ */
+
+package com.fr3ts0n.ecu.gui.androbd;
+
+import android.content.Context;
+import android.os.Handler;
+
+import com.fr3ts0n.ecu.prot.obd.ElmEmulator;
+import com.fr3ts0n.ecu.prot.obd.ElmProt;
+import com.fr3ts0n.prot.StreamHandler;
+
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Demo communication service
+ * - talks to an ELM327 emulator on the loopback address, so the demo mode
+ *   runs the same protocol handling as a real adapter connection
+ * - connection state is not reported, demo mode is controlled by the UI
+ */
+public class DemoCommService
+	extends CommService
+	implements Runnable
+{
+	/** emulated vehicle */
+	private final ElmEmulator emulator = new ElmEmulator(createConfig());
+	/** communication stream handler */
+	private final StreamHandler ser = new StreamHandler();
+	private Socket mSocket;
+	/** demo session was stopped */
+	private volatile boolean stopped = false;
+
+	/**
+	 * Constructor. Prepares a new demo session.
+	 *
+	 * @param context The UI Activity Context
+	 * @param handler A Handler to send messages back to the UI Activity
+	 * @param elm OBD protocol session to be served
+	 */
+	public DemoCommService(Context context, Handler handler, ElmProt elm)
+	{
+		super(context, handler, elm);
+		ser.setMessageHandler(elm);
+	}
+
+	/**
+	 * create configuration of emulated demo vehicle
+	 * - engine ECU with stored trouble codes
+	 * - transmission ECU
+	 *
+	 * @return emulator configuration
+	 */
+	private static ElmEmulator.Config createConfig()
+	{
+		ElmEmulator.Config config = new ElmEmulator.Config();
+		config.ecus.firstElement().setDtcs("P0100", "P0171", "P0300", "U0100");
+		config.ecus.add(new ElmEmulator.Ecu(0x7E9).setPids(0x01, 0x05, 0x0D, 0x0F, 0x1C, 0x49));
+		return config;
+	}
+
+	@Override
+	public void start()
+	{
+		log.fine("start");
+		// set up protocol handlers
+		elm.addTelegramWriter(ser);
+		// create communication thread (network access is not allowed on UI thread)
+		new Thread(this, "DemoCommService").start();
+	}
+
+	@Override
+	public void stop()
+	{
+		log.fine("stop");
+		stopped = true;
+		elm.removeTelegramWriter(ser);
+		// close connection and emulator
+		try
+		{
+			if (mSocket != null)
+			{
+				mSocket.close();
+			}
+		} catch (Exception e)
+		{
+			log.severe(e.getMessage());
+		}
+		emulator.stop();
+	}
+
+	@Override
+	public void write(byte[] out)
+	{
+		// forward message to stream handler
+		ser.writeTelegram(new String(out).toCharArray());
+	}
+
+	@Override
+	public void run()
+	{
+		try
+		{
+			InetAddress loopback = InetAddress.getLoopbackAddress();
+			mSocket = new Socket(loopback, emulator.start(loopback, 0));
+			mSocket.setTcpNoDelay(true);
+			if (stopped)
+			{
+				// stopped while connecting
+				stop();
+				return;
+			}
+			ser.setStreams(mSocket.getInputStream(), mSocket.getOutputStream());
+			// initialize adapter and detect ECUs of emulated vehicle
+			elm.reset();
+			// run communication loop until demo is stopped
+			ser.run();
+		} catch (Exception e)
+		{
+			log.severe(e.getMessage());
+		}
+		elm.removeTelegramWriter(ser);
+	}
+
+	@Override
+	public void connect(Object device, boolean secure)
+	{
+		start();
+	}
+}
@@ -27,7 +27,6 @@ import android.os.Looper;
 import android.widget.Toast;
 
 import com.fr3ts0n.ecu.prot.obd.ElmProt;
-import com.fr3ts0n.ecu.prot.obd.ObdProt;
 import com.fr3ts0n.pvs.PvList;
 
 import java.io.File;
@@ -72,7 +71,7 @@ class FileHelper
 	FileHelper(Context context)
 	{
 		this.context = context;
-		this.elm = CommService.elm;
+		this.elm = AndrObdApplication.getElm(context);
 	}
 
 	/**
@@ -164,9 +163,9 @@ class FileHelper
 			FileOutputStream fStr = new FileOutputStream(outFile);
 			ObjectOutputStream oStr = new ObjectOutputStream(fStr);
 			oStr.writeInt(elm.getService());
-			oStr.writeObject(ObdProt.PidPvs);
-			oStr.writeObject(ObdProt.VidPvs);
-			oStr.writeObject(ObdProt.tCodes);
+			oStr.writeObject(elm.PidPvs);
+			oStr.writeObject(elm.VidPvs);
+			oStr.writeObject(elm.tCodes);
 			oStr.writeObject(MainActivity.mPluginPvs);
 
 			oStr.close();
@@ -245,9 +244,9 @@ class FileHelper
 			/* if data was saved in mode 0, keep current mode */
 			if(currService != 0) elm.setService(currService, false);
 			/* read in the data */
-			ObdProt.PidPvs = (PvList) oIn.readObject();
-			ObdProt.VidPvs = (PvList) oIn.readObject();
-			ObdProt.tCodes = (PvList) oIn.readObject();
+			elm.PidPvs = (PvList) oIn.readObject();
+			elm.VidPvs = (PvList) oIn.readObject();
+			elm.tCodes = (PvList) oIn.readObject();
 			MainActivity.mPluginPvs = (PvList) oIn.readObject();
 
 			oIn.close();
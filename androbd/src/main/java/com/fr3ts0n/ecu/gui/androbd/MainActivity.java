@@ -140,6 +140,8 @@ public class MainActivity extends PluginManager
     private static final String NIGHT_MODE = "night_mode";
     private static final String ELM_ADAPTIVE_TIMING = "adaptive_timing_mode";
     private static final String ELM_RESET_ON_NRC = "elm_reset_on_nrc";
+    private static final String ELM_MULTI_PID = "elm_multi_pid";
+    private static final String ELM_MULTI_ECU = "elm_multi_ecu";
     private static final String PREF_USE_LAST = "USE_LAST_SETTINGS";
     private static final String PREF_OVERLAY = "toolbar_overlay";
     private static final String PREF_DATA_DISABLE_MAX = "data_disable_max";
@@ -171,6 +173,8 @@ public class MainActivity extends PluginManager
     private static final String LOG_MASTER = "log_master";
     private static final String KEEP_SCREEN_ON = "keep_screen_on";
     private static final String ELM_CUSTOM_INIT_CMDS = "elm_custom_init_cmds";
+    private static final String ELM_LEARNED_TIMEOUTS = "elm_learned_timeouts";
+    private static final String ELM_VEHICLE_PROFILES = "elm_vehicle_profiles";
     /**
      * Logging
      */
@@ -200,6 +204,10 @@ public class MainActivity extends PluginManager
      * dialog builder
      */
     private static AlertDialog.Builder dlgBuilder;
+    /**
+     * OBD protocol session of the app
+     */
+    private ElmProt elm;
     /**
      * Local Bluetooth adapter
      */
@@ -249,7 +257,7 @@ public class MainActivity extends PluginManager
         @Override
         public void onItemSelected(AdapterView<?> parent, View view, int position, long id)
         {
-            CommService.elm.setFreezeFrame_Id(position);
+            elm.setFreezeFrame_Id(position);
         }
 
         @Override
@@ -363,12 +371,12 @@ public class MainActivity extends PluginManager
                         // set listeners for data structure changes
                         setDataListeners();
                         // set adapters data source to loaded list instances
-                        mPidAdapter.setPvList(ObdProt.PidPvs);
-                        mVidAdapter.setPvList(ObdProt.VidPvs);
-                        mTidAdapter.setPvList(ObdProt.VidPvs);
-                        mDfcAdapter.setPvList(ObdProt.tCodes);
+                        mPidAdapter.setPvList(elm.PidPvs);
+                        mVidAdapter.setPvList(elm.VidPvs);
+                        mTidAdapter.setPvList(elm.VidPvs);
+                        mDfcAdapter.setPvList(elm.tCodes);
                         // set OBD data mode to the one selected by input file
-                        setObdService(CommService.elm.getService(), getString(R.string.saved_data));
+                        setObdService(elm.getService(), getString(R.string.saved_data));
                         // Check if last data selection shall be restored
                         if (obdService == ObdProt.OBD_SVC_DATA)
                         {
@@ -399,7 +407,7 @@ public class MainActivity extends PluginManager
                                 currDataAdapter.setPvList(currDataAdapter.pvs);
                                 try
                                 {
-                                    if (event.getSource() == ObdProt.PidPvs)
+                                    if (event.getSource() == elm.PidPvs)
                                     {
                                         // append plugin measurements to data list
                                         currDataAdapter.addAll(mPluginPvs.values());
@@ -526,9 +534,10 @@ public class MainActivity extends PluginManager
     /**
      * Set fixed PIDs for protocol to specified list of PIDs
      *
+     * @param elm OBD protocol session
      * @param pidNumbers List of PIDs
      */
-    public static void setFixedPids(Set<Integer> pidNumbers)
+    public static void setFixedPids(ElmProt elm, Set<Integer> pidNumbers)
     {
         int[] pids = new int[pidNumbers.size()];
         int i = 0;
@@ -538,7 +547,7 @@ public class MainActivity extends PluginManager
         }
         Arrays.sort(pids);
         // set protocol fixed PIDs
-        ObdProt.setFixedPid(pids);
+        elm.setFixedPid(pids);
     }
 
     @Override
@@ -546,6 +555,7 @@ public class MainActivity extends PluginManager
     {
         // instantiate superclass
         super.onCreate(savedInstanceState);
+        elm = AndrObdApplication.getElm(this);
 
         requestWindowFeature(Window.FEATURE_PROGRESS);
 
@@ -589,10 +599,10 @@ public class MainActivity extends PluginManager
         }
 
         // Set up all data adapters
-        mPidAdapter = new ObdItemAdapter(this, R.layout.obd_item, ObdProt.PidPvs);
-        mVidAdapter = new VidItemAdapter(this, R.layout.obd_item, ObdProt.VidPvs);
-        mTidAdapter = new TidItemAdapter(this, R.layout.obd_item, ObdProt.VidPvs);
-        mDfcAdapter = new DfcItemAdapter(this, R.layout.obd_item, ObdProt.tCodes);
+        mPidAdapter = new ObdItemAdapter(this, R.layout.obd_item, elm.PidPvs);
+        mVidAdapter = new VidItemAdapter(this, R.layout.obd_item, elm.VidPvs);
+        mTidAdapter = new TidItemAdapter(this, R.layout.obd_item, elm.VidPvs);
+        mDfcAdapter = new DfcItemAdapter(this, R.layout.obd_item, elm.tCodes);
         mPluginDataAdapter = new PluginDataAdapter(this, R.layout.obd_item, mPluginPvs);
         currDataAdapter = mPidAdapter;
 
@@ -617,7 +627,7 @@ public class MainActivity extends PluginManager
         // set listeners for data structure changes
         setDataListeners();
         // automate elm status display
-        CommService.elm.addPropertyChangeListener(this);
+        elm.addPropertyChangeListener(this);
 
         // set up action bar
         ActionBar actionBar = getActionBar();
@@ -757,7 +767,7 @@ public class MainActivity extends PluginManager
         try
         {
             // Reduce ELM power consumption by setting it to sleep
-            CommService.elm.goToSleep();
+            elm.goToSleep();
             // wait until message is out ...
             Thread.sleep(100, 0);
         } catch (InterruptedException e)
@@ -766,10 +776,17 @@ public class MainActivity extends PluginManager
             log.log(Level.FINER, e.getLocalizedMessage());
         }
 
+        // persist learned ELM timeouts for next session
+        prefs.edit().putString(ELM_LEARNED_TIMEOUTS,
+                               elm.mAdaptiveTiming.getLearnedTimeouts()).apply();
+        // persist vehicle profiles for fast reconnects
+        prefs.edit().putString(ELM_VEHICLE_PROFILES,
+                               elm.getVehicleProfiles().toString()).apply();
+
         /* don't listen to ELM data changes any more */
         removeDataListeners();
         // don't listen to ELM property changes any more
-        CommService.elm.removePropertyChangeListener(this);
+        elm.removePropertyChangeListener(this);
 
         // stop demo service if it was started
         setMode(MODE.OFFLINE);
@@ -832,7 +849,7 @@ public class MainActivity extends PluginManager
             setObdService(obdService, null);
         } else
         {
-            if (CommService.elm.getService() != ObdProt.OBD_SVC_NONE)
+            if (elm.getService() != ObdProt.OBD_SVC_NONE)
             {
                 if (dataViewMode != DATA_VIEW_MODE.LIST)
                 {
@@ -1073,7 +1090,7 @@ public class MainActivity extends PluginManager
                 // DeviceListActivity returns with a device to connect
                 if (resultCode == Activity.RESULT_OK)
                 {
-                    mCommService = new UsbCommService(this, mHandler);
+                    mCommService = new UsbCommService(this, mHandler, elm);
                     mCommService.connect(UsbDeviceListActivity.selectedPort, true);
                 } else
                 {
@@ -1161,16 +1178,43 @@ public class MainActivity extends PluginManager
         // enable/disable ELM adaptive timing
         if (key == null || ELM_ADAPTIVE_TIMING.equals(key))
         {
-            CommService.elm.mAdaptiveTiming.setMode(
+            elm.mAdaptiveTiming.setMode(
                     ElmProt.AdaptTimingMode.valueOf(
                             prefs.getString(ELM_ADAPTIVE_TIMING,
                                     ElmProt.AdaptTimingMode.OFF.toString())));
         }
 
+        // ELM timeouts learned in previous sessions
+        if (key == null)
+        {
+            elm.mAdaptiveTiming.setLearnedTimeouts(
+                    prefs.getString(ELM_LEARNED_TIMEOUTS, null));
+        }
+
+        // vehicle profiles of previous sessions
+        if (key == null)
+        {
+            elm.getVehicleProfiles().clear();
+            elm.getVehicleProfiles().load(
+                    prefs.getString(ELM_VEHICLE_PROFILES, null));
+        }
+
         // set protocol flag to initiate immediate reset on NRC reception
         if (key == null || ELM_RESET_ON_NRC.equals(key))
         {
-            CommService.elm.setResetOnNrc(prefs.getBoolean(ELM_RESET_ON_NRC, false));
+            elm.setResetOnNrc(prefs.getBoolean(ELM_RESET_ON_NRC, false));
+        }
+
+        // enable/disable multi PID requests on CAN protocols
+        if (key == null || ELM_MULTI_PID.equals(key))
+        {
+            elm.setMultiPidEnabled(prefs.getBoolean(ELM_MULTI_PID, true));
+        }
+
+        // enable/disable polling of all detected ECUs
+        if (key == null || ELM_MULTI_ECU.equals(key))
+        {
+            elm.setMultiEcuEnabled(prefs.getBoolean(ELM_MULTI_ECU, false));
         }
 
         // set custom ELM init commands
@@ -1179,16 +1223,16 @@ public class MainActivity extends PluginManager
             String value = prefs.getString(ELM_CUSTOM_INIT_CMDS, null);
             if (value != null && value.length() > 0)
             {
-                CommService.elm.setCustomInitCommands(value.split("\n"));
+                elm.setCustomInitCommands(value.split("\n"));
             }
         }
 
         // ELM timeout
         if (key == null || SettingsActivity.ELM_MIN_TIMEOUT.equals(key))
         {
-            CommService.elm.mAdaptiveTiming.setElmTimeoutMin(
+            elm.mAdaptiveTiming.setElmTimeoutMin(
                     getPrefsInt(SettingsActivity.ELM_MIN_TIMEOUT,
-                            CommService.elm.mAdaptiveTiming.getElmTimeoutMin()));
+                            elm.mAdaptiveTiming.getElmTimeoutMin()));
         }
 
         // ... measurement system
@@ -1200,7 +1244,7 @@ public class MainActivity extends PluginManager
         // ... preferred protocol
         if (key == null || SettingsActivity.KEY_PROT_SELECT.equals(key))
         {
-            ElmProt.setPreferredProtocol(getPrefsInt(SettingsActivity.KEY_PROT_SELECT, 0));
+            elm.setPreferredProtocol(getPrefsInt(SettingsActivity.KEY_PROT_SELECT, 0));
         }
 
         // log levels
@@ -1218,7 +1262,7 @@ public class MainActivity extends PluginManager
         // set disabled ELM commands
         if (key == null || SettingsActivity.ELM_CMD_DISABLE.equals(key))
         {
-            ElmProt.disableCommands(prefs.getStringSet(SettingsActivity.ELM_CMD_DISABLE, null));
+            elm.disableCommands(prefs.getStringSet(SettingsActivity.ELM_CMD_DISABLE, null));
         }
 
         // AutoHide ToolBar
@@ -1254,6 +1298,32 @@ public class MainActivity extends PluginManager
         }
     }
 
+    /**
+     * Get data items to be customized
+     * (the item definition and the corresponding item of the current session)
+     * @param mnemonic Mnemonic of data item
+     * @return list of data items
+     */
+    private List<EcuDataItem> getCustomizedItems(String mnemonic)
+    {
+        List<EcuDataItem> result = new ArrayList<>();
+        EcuDataItem itm = EcuDataItems.byMnemonic.get(mnemonic);
+        result.add(itm);
+        List<EcuDataItem> sessionItems =
+            elm.getPidDataItems(ObdProt.OBD_SVC_DATA, itm.pid);
+        if (sessionItems != null)
+        {
+            for (EcuDataItem sessionItm : sessionItems)
+            {
+                if (mnemonic.equals(sessionItm.getPv().get(EcuDataPv.FID_MNEMONIC)))
+                {
+                    result.add(sessionItm);
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Update PID PV display color from preference
      * @param key Preference key
@@ -1264,12 +1334,14 @@ public class MainActivity extends PluginManager
         if(pos >= 0)
         {
             String mnemonic = key.substring(0, pos);
-            EcuDataItem itm = EcuDataItems.byMnemonic.get(mnemonic);
             // Default BLACK is to detect key removal
             Integer color = prefs.getInt(key, Color.BLACK);
             if(Color.BLACK != color)
             {
-                itm.pv.put(EcuDataPv.FID_COLOR, color);
+                for (EcuDataItem itm : getCustomizedItems(mnemonic))
+                {
+                    itm.getPv().put(EcuDataPv.FID_COLOR, color);
+                }
                 log.info(String.format("PID pref %s=#%08x", key, color));
             }
         }
@@ -1297,11 +1369,13 @@ public class MainActivity extends PluginManager
                 Number value = prefs.getFloat(key, Float.MAX_VALUE);
                 if (Float.MAX_VALUE != value.floatValue())
                 {
-                    // Find corresponding data item
+                    // Find corresponding data items
                     String mnemonic = key.substring(0, pos);
-                    EcuDataItem itm = EcuDataItems.byMnemonic.get(mnemonic);
-                    // update display range limit in data item
-                    itm.pv.put(field, value);
+                    for (EcuDataItem itm : getCustomizedItems(mnemonic))
+                    {
+                        // update display range limit in data item
+                        itm.getPv().put(field, value);
+                    }
 
                     log.info(String.format("PID pref %s=%f", key, value));
                 }
@@ -1323,11 +1397,13 @@ public class MainActivity extends PluginManager
                 long value = prefs.getLong(key, 0);
                 if (0 != value)
                 {
-                    // Find corresponding data item
+                    // Find corresponding data items
                     String mnemonic = key.substring(0, pos);
-                    EcuDataItem itm = EcuDataItems.byMnemonic.get(mnemonic);
-                    // update display range limit in data item
-                    itm.updatePeriod_ms = value;
+                    for (EcuDataItem itm : getCustomizedItems(mnemonic))
+                    {
+                        // update display range limit in data item
+                        itm.updatePeriod_ms = value;
+                    }
 
                     log.info(String.format("PID pref %s=%d", key, value));
                 }
@@ -1343,7 +1419,7 @@ public class MainActivity extends PluginManager
         Intent intent;
         EcuDataPv pv;
 
-        switch (CommService.elm.getService())
+        switch (elm.getService())
         {
             /* if we are in OBD data mode:
              * ->Long click on an item starts the single item dashboard activity
@@ -1526,7 +1602,7 @@ public class MainActivity extends PluginManager
                     && ecuAdresses.contains(preferredAddress))
             {
                 // set address
-                CommService.elm.setEcuAddress(preferredAddress);
+                elm.setEcuAddress(preferredAddress);
             } else
             {
                 // NO match with preference -> allow selection
@@ -1550,7 +1626,7 @@ public class MainActivity extends PluginManager
                                 int address =
                                         Integer.parseInt(entries[which].toString().substring(2), 16);
                                 // set address
-                                CommService.elm.setEcuAddress(address);
+                                elm.setEcuAddress(address);
                                 // set this as preference (preference change will trigger ELM command)
                                 prefs.edit().putInt(PRESELECT.LAST_ECU_ADDRESS.toString(), address)
                                         .apply();
@@ -1760,15 +1836,15 @@ public class MainActivity extends PluginManager
     private void setDataListeners()
     {
         // add pv change listeners to trigger model updates
-        ObdProt.PidPvs.addPvChangeListener(this,
+        elm.PidPvs.addPvChangeListener(this,
                 PvChangeEvent.PV_ADDED
                         | PvChangeEvent.PV_CLEARED
         );
-        ObdProt.VidPvs.addPvChangeListener(this,
+        elm.VidPvs.addPvChangeListener(this,
                 PvChangeEvent.PV_ADDED
                         | PvChangeEvent.PV_CLEARED
         );
-        ObdProt.tCodes.addPvChangeListener(this,
+        elm.tCodes.addPvChangeListener(this,
                 PvChangeEvent.PV_ADDED
                         | PvChangeEvent.PV_CLEARED
         );
@@ -1784,9 +1860,9 @@ public class MainActivity extends PluginManager
     private void removeDataListeners()
     {
         // remove pv change listeners
-        ObdProt.PidPvs.removePvChangeListener(this);
-        ObdProt.VidPvs.removePvChangeListener(this);
-        ObdProt.tCodes.removePvChangeListener(this);
+        elm.PidPvs.removePvChangeListener(this);
+        elm.VidPvs.removePvChangeListener(this);
+        elm.tCodes.removePvChangeListener(this);
         mPluginPvs.removePvChangeListener(this);
     }
 
@@ -2018,19 +2094,23 @@ public class MainActivity extends PluginManager
     }
 
     /**
-     * Stop demo mode Thread
+     * Stop demo mode session
      */
     private void stopDemoService()
     {
         if (getMode() == MODE.DEMO)
         {
-            ElmProt.runDemo = false;
+            if (mCommService != null)
+            {
+                mCommService.stop();
+                mCommService = null;
+            }
             Toast.makeText(this, getString(R.string.demo_stopped), Toast.LENGTH_SHORT).show();
         }
     }
 
     /**
-     * Start demo mode Thread
+     * Start demo mode session
      */
     private void startDemoService()
     {
@@ -2044,9 +2124,13 @@ public class MainActivity extends PluginManager
             setMenuItemVisible(R.id.disconnect, !allowConnect);
 
             setMenuItemEnable(R.id.obd_services, true);
-            /* The Thread object for processing the demo mode loop */
-            Thread demoThread = new Thread(CommService.elm);
-            demoThread.start();
+            /* demo session talks to an emulated ELM327 adapter */
+            if (mCommService != null)
+            {
+                mCommService.stop();
+            }
+            mCommService = new DemoCommService(this, mHandler, elm);
+            mCommService.start();
         }
     }
 
@@ -2113,7 +2197,7 @@ public class MainActivity extends PluginManager
         // Get the BluetoothDevice object
         BluetoothDevice device = mBluetoothAdapter.getRemoteDevice(address);
         // Attempt to connect to the device
-        mCommService = new BtCommService(this, mHandler);
+        mCommService = new BtCommService(this, mHandler, elm);
         mCommService.connect(device, secure);
     }
 
@@ -2126,7 +2210,7 @@ public class MainActivity extends PluginManager
     private void connectNetworkDevice(String address, int port)
     {
         // Attempt to connect to the device
-        mCommService = new NetworkCommService(this, mHandler);
+        mCommService = new NetworkCommService(this, mHandler, elm);
         ((NetworkCommService) mCommService).connect(address, port);
     }
 
@@ -2165,7 +2249,7 @@ public class MainActivity extends PluginManager
             }
         }
         // set protocol service
-        CommService.elm.setService(newObdService, (getMode() != MODE.FILE && getMode() != MODE.OFFLINE));
+        elm.setService(newObdService, (getMode() != MODE.FILE && getMode() != MODE.OFFLINE));
         // show / hide freeze frame selector */
         Spinner ff_selector = findViewById(R.id.ff_selector);
         ff_selector.setOnItemSelectedListener(ff_selected);
@@ -2232,22 +2316,22 @@ public class MainActivity extends PluginManager
             currDataAdapter.filterPositions(selectedPositions);
 
             if (currDataAdapter == mPidAdapter)
-                setFixedPids(selPids);
+                setFixedPids(elm, selPids);
         } else
         {
             if (currDataAdapter == mPidAdapter)
-                ObdProt.resetFixedPid();
+                elm.resetFixedPid();
 
             /* Return to original PV list */
             if (currDataAdapter == mPidAdapter)
             {
-                currDataAdapter.setPvList(ObdProt.PidPvs);
+                currDataAdapter.setPvList(elm.PidPvs);
                 // append plugin measurements to data list
                 currDataAdapter.addAll(mPluginPvs.values());
             } else if (currDataAdapter == mVidAdapter)
-                currDataAdapter.setPvList(ObdProt.VidPvs);
+                currDataAdapter.setPvList(elm.VidPvs);
             else if (currDataAdapter == mDfcAdapter)
-                currDataAdapter.setPvList(ObdProt.tCodes);
+                currDataAdapter.setPvList(elm.tCodes);
             else if (currDataAdapter == mPluginDataAdapter)
                 currDataAdapter.setPvList(mPluginPvs);
 
@@ -2336,7 +2420,7 @@ public class MainActivity extends PluginManager
         // display connection status
         setStatus(getString(R.string.title_connected_to, mConnectedDeviceName));
         // send RESET to Elm adapter
-        CommService.elm.reset();
+        elm.reset();
     }
 
     /**
@@ -2409,9 +2493,9 @@ public class MainActivity extends PluginManager
                             public void onClick(DialogInterface dialog, int which)
                             {
                                 // set service CLEAR_CODES to clear the codes
-                                CommService.elm.setService(ObdProt.OBD_SVC_CLEAR_CODES);
+                                elm.setService(ObdProt.OBD_SVC_CLEAR_CODES);
                                 // set service READ_CODES to re-read the codes
-                                CommService.elm.setService(ObdProt.OBD_SVC_READ_CODES);
+                                elm.setService(ObdProt.OBD_SVC_READ_CODES);
                             }
                         })
                 .setNegativeButton(android.R.string.no, null)
@@ -2449,7 +2533,7 @@ public class MainActivity extends PluginManager
     {
         // start desired test TID
         char emptyBuffer[] = {};
-        CommService.elm.writeTelegram(emptyBuffer, service, tid);
+        elm.writeTelegram(emptyBuffer, service, tid);
 
         // Show test progress message
         dlgBuilder
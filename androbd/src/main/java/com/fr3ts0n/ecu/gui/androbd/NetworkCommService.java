@@ -22,6 +22,7 @@ package com.fr3ts0n.ecu.gui.androbd;
 import android.content.Context;
 import android.os.Handler;
 
+import com.fr3ts0n.ecu.prot.obd.ElmProt;
 import com.fr3ts0n.prot.StreamHandler;
 
 import java.net.InetSocketAddress;
@@ -40,21 +41,16 @@ public class NetworkCommService
 	private final StreamHandler ser = new StreamHandler();
 	private Thread serThread;
 
-	/** default constructor */
-	public NetworkCommService()
-	{
-		super();
-	}
-
 	/**
 	 * Constructor. Prepares a new Network Communication session.
 	 *
 	 * @param context The UI Activity Context
 	 * @param handler A Handler to send messages back to the UI Activity
+	 * @param elm OBD protocol session to be served
 	 */
-	public NetworkCommService(Context context, Handler handler)
+	public NetworkCommService(Context context, Handler handler, ElmProt elm)
 	{
-		super(context, handler);
+		super(context, handler, elm);
 		ser.setMessageHandler(elm);
 	}
 
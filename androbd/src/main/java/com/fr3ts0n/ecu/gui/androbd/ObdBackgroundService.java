@@ -38,7 +38,6 @@ import android.preference.PreferenceManager;
 import androidx.core.app.NotificationCompat;
 
 import com.fr3ts0n.ecu.EcuDataPv;
-import com.fr3ts0n.ecu.prot.obd.ObdProt;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
 
@@ -95,7 +94,7 @@ public class ObdBackgroundService extends Service implements PvChangeListener {
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
-        ObdProt.PidPvs.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
+        AndrObdApplication.getElm(this).PidPvs.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
         log.info("ObdBackgroundService created");
     }
     
@@ -127,7 +126,7 @@ public class ObdBackgroundService extends Service implements PvChangeListener {
         autoReconnect = false;
         reconnectHandler.removeCallbacksAndMessages(null);
         stopCommService();
-        ObdProt.PidPvs.removePvChangeListener(this);
+        AndrObdApplication.getElm(this).PidPvs.removePvChangeListener(this);
         currentState = ServiceState.STOPPED;
         notifyStateListeners();
         log.info("ObdBackgroundService destroyed");
@@ -217,13 +216,13 @@ public class ObdBackgroundService extends Service implements PvChangeListener {
         
         switch (CommService.medium) {
             case BLUETOOTH:
-                commService = new BtCommService(this, serviceHandler);
+                commService = new BtCommService(this, serviceHandler, AndrObdApplication.getElm(this));
                 break;
             case USB:
-                commService = new UsbCommService(this, serviceHandler);
+                commService = new UsbCommService(this, serviceHandler, AndrObdApplication.getElm(this));
                 break;
             case NETWORK:
-                commService = new NetworkCommService(this, serviceHandler);
+                commService = new NetworkCommService(this, serviceHandler, AndrObdApplication.getElm(this));
                 break;
         }
         
@@ -97,16 +97,16 @@ public class PidCustomization
     {
         super.onResume();
         TextView tv = findViewById(R.id.data_item);
-        tv.setText((String)item.pv.get(EcuDataPv.FID_DESCRIPT));
+        tv.setText((String)item.getPv().get(EcuDataPv.FID_DESCRIPT));
 
         // Color selection
-        Integer color = ColorAdapter.getItemColor(item.pv);
+        Integer color = ColorAdapter.getItemColor(item.getPv());
         int pos = colorAdapter.getPosition(color);
         spColor.setSelection(pos);
 
         // Display range
         TextView tvUnits = findViewById(R.id.range_units);
-        tvUnits.setText((String)item.pv.get(EcuDataPv.FID_UNITS));
+        tvUnits.setText((String)item.getPv().get(EcuDataPv.FID_UNITS));
 
         long minValue = item.rawMin();
         long maxValue = item.rawMax();
@@ -119,11 +119,11 @@ public class PidCustomization
         sbMax.setMax((int) maxValue);
 
         // Indicate current display range
-        dispMin = (Number) item.pv.get(EcuDataPv.FID_MIN);
+        dispMin = (Number) item.getPv().get(EcuDataPv.FID_MIN);
         if(dispMin == null) dispMin = item.physMin();
         sbMin.setProgress((int) item.rawVal(dispMin));
 
-        dispMax = (Number) item.pv.get(EcuDataPv.FID_MAX);
+        dispMax = (Number) item.getPv().get(EcuDataPv.FID_MAX);
         if(dispMax == null) dispMax = item.physMax();
         sbMax.setProgress((int) item.rawVal(dispMax));
 
@@ -160,7 +160,7 @@ public class PidCustomization
         {
             SharedPreferences.Editor ed = MainActivity.prefs.edit();
 
-            String mnemonic = (String)item.pv.get(EcuDataPv.FID_MNEMONIC);
+            String mnemonic = (String)item.getPv().get(EcuDataPv.FID_MNEMONIC);
             // Save Color selection
             String prefName = mnemonic.concat("/").concat(EcuDataPv.FID_COLOR);
             ed.putInt(prefName, dispColor);
@@ -204,20 +204,20 @@ public class PidCustomization
         {
             SharedPreferences.Editor ed = MainActivity.prefs.edit();
 
-            String mnemonic = (String)item.pv.get(EcuDataPv.FID_MNEMONIC);
+            String mnemonic = (String)item.getPv().get(EcuDataPv.FID_MNEMONIC);
             // Reset Color selection
             String prefName = mnemonic.concat("/").concat(EcuDataPv.FID_COLOR);
             ed.remove(prefName);
-            item.pv.remove(EcuDataPv.FID_COLOR);
+            item.getPv().remove(EcuDataPv.FID_COLOR);
 
             // Reset range selection
             prefName = mnemonic.concat("/").concat(EcuDataPv.FID_MIN);
             ed.remove(prefName);
-            item.pv.remove(EcuDataPv.FID_MIN);
+            item.getPv().remove(EcuDataPv.FID_MIN);
 
             prefName = mnemonic.concat("/").concat(EcuDataPv.FID_MAX);
             ed.remove(prefName);
-            item.pv.remove(EcuDataPv.FID_MAX);
+            item.getPv().remove(EcuDataPv.FID_MAX);
 
             ed.apply();
 
@@ -235,7 +235,7 @@ public class PidCustomization
         {
             try
             {
-                String format = (String) item.pv.get(EcuDataPv.FID_FORMAT);
+                String format = (String) item.getPv().get(EcuDataPv.FID_FORMAT);
                 if(seekBar == sbMin)
                 {
                     dispMin = item.physVal(progress);
@@ -82,7 +82,8 @@ public class SettingsActivity
 	 */
 	private static final String[] usbKeys =
 	{
-			"comm_baudrate"
+			"comm_baudrate",
+			"comm_baudrate_upgrade"
 	};
 
 	// Preference key for data items
@@ -217,7 +218,7 @@ public class SettingsActivity
 			{
 				titles[i] = cmd.toString();
 				keys[i] = cmd.toString();
-				if(!cmd.isEnabled()) selections.add(cmd.toString());
+				if(!AndrObdApplication.getElm(getActivity()).isEnabled(cmd)) selections.add(cmd.toString());
 				i++;
 			}
 			// set enries and keys
@@ -30,7 +30,10 @@ import android.hardware.usb.UsbManager;
 import android.os.Handler;
 import android.preference.PreferenceManager;
 
+import com.fr3ts0n.ecu.prot.obd.ElmBaudRate;
+import com.fr3ts0n.ecu.prot.obd.ElmProt;
 import com.fr3ts0n.prot.ProtUtils;
+import com.fr3ts0n.prot.SerialLine;
 import com.fr3ts0n.prot.TelegramWriter;
 import com.hoho.android.usbserial.driver.UsbSerialPort;
 import com.hoho.android.usbserial.util.SerialInputOutputManager;
@@ -51,7 +54,18 @@ public class UsbCommService extends CommService
 	public static final String INTENT_ACTION_GRANT_USB = ".GRANT_USB";
 
 	public static final String PREF_KEY_BAUDRATE = "comm_baudrate";
+	public static final String PREF_KEY_BAUDRATE_UPGRADE = "comm_baudrate_upgrade";
+	public static final String PREF_KEY_STABLE_BAUDRATES = "comm_stable_baudrates";
 	public static final int DEFAULT_BAUDRATE = 38400;
+	/** max. baud rate for baud rate upgrade */
+	public static final int MAX_UPGRADE_BAUDRATE = 500000;
+	/** USB transmit timeout [ms] */
+	private static final int WRITE_TIMEOUT = 1000;
+
+	/** adapter runs with upgraded baud rate */
+	private volatile boolean baudRateUpgraded = false;
+	/** thread negotiating baud rate and starting communication */
+	private volatile UsbConnectThread mUsbConnectThread;
 
 	private final SerialInputOutputManager.Listener mListener =
 		new SerialInputOutputManager.Listener()
@@ -104,9 +118,9 @@ public class UsbCommService extends CommService
 			}
 		};
 
-	public UsbCommService(Context context, Handler handler)
+	public UsbCommService(Context context, Handler handler, ElmProt elm)
 	{
-		super(context, handler);
+		super(context, handler, elm);
 		elm.addTelegramWriter(this);
 	}
 
@@ -158,6 +172,58 @@ public class UsbCommService extends CommService
 		return getPrefsInt(PREF_KEY_BAUDRATE, DEFAULT_BAUDRATE);
 	}
 
+	/**
+	 * Upgrade baud rate of adapter, if enabled in preferences
+	 * - the highest stable baud rate of each adapter is remembered in preferences
+	 *
+	 * @param baudRate current baud rate of serial port
+	 * @return baud rate the adapter is running with
+	 */
+	private int upgradeBaudRate(final int baudRate) throws IOException
+	{
+		SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+		if (!prefs.getBoolean(PREF_KEY_BAUDRATE_UPGRADE, false))
+		{
+			return baudRate;
+		}
+
+		ElmBaudRate upgrade = new ElmBaudRate();
+		upgrade.setStableRates(prefs.getString(PREF_KEY_STABLE_BAUDRATES, ""));
+		UsbDevice device = sPort.getDriver().getDevice();
+		String adapter = String.format("usb:%04X:%04X", device.getVendorId(), device.getProductId());
+		int result = upgrade.upgrade(new SerialLine()
+		{
+			int currentRate = baudRate;
+
+			@Override
+			public int getBaudRate()
+			{
+				return currentRate;
+			}
+
+			@Override
+			public void setBaudRate(int baudRate) throws IOException
+			{
+				sPort.setParameters(baudRate, 8, UsbSerialPort.STOPBITS_1, UsbSerialPort.PARITY_NONE);
+				currentRate = baudRate;
+			}
+
+			@Override
+			public int read(byte[] buffer, int timeout) throws IOException
+			{
+				return sPort.read(buffer, timeout);
+			}
+
+			@Override
+			public void write(byte[] data) throws IOException
+			{
+				sPort.write(data, WRITE_TIMEOUT);
+			}
+		}, adapter, MAX_UPGRADE_BAUDRATE);
+		prefs.edit().putString(PREF_KEY_STABLE_BAUDRATES, upgrade.getStableRates()).apply();
+		return result;
+	}
+
 	@Override
 	public void start()
 	{
@@ -197,33 +263,117 @@ public class UsbCommService extends CommService
 				// Open serial port
 				sPort.open(connection);
 				// set serial parameters
-				sPort.setParameters(getBaudRate(), 8, UsbSerialPort.STOPBITS_1, UsbSerialPort.PARITY_NONE);
+				int baudRate = getBaudRate();
+				sPort.setParameters(baudRate, 8, UsbSerialPort.STOPBITS_1, UsbSerialPort.PARITY_NONE);
 				sPort.setDTR(true);
 				sPort.setRTS(true);
 
-				// start communication thread
-				log.info("Starting io manager ..");
-				// Initialize SerialIoManager AFTER opening sPort
-				// workaround for AndrOBD#285 / https://github.com/mik3y/usb-serial-for-android/issues/611
-				mSerialIoManager = new SerialInputOutputManager(sPort, mListener);
-				mSerialIoManager.start();
+				// baud rate negotiation may take several seconds -> not on caller's (UI) thread
+				mUsbConnectThread = new UsbConnectThread(baudRate);
+				mUsbConnectThread.start();
+			}
+			catch (IOException e)
+			{
+				setupFailed(e);
+			}
+		}
+	}
 
-				// we are connected -> signal connectionEstablished
-				connectionEstablished(sPort.toString());
+	/**
+	 * Handle failed setup of USB device
+	 *
+	 * @param e exception which caused the failure
+	 */
+	private void setupFailed(IOException e)
+	{
+		log.log(Level.SEVERE, "Error setting up device: " + e.getMessage(), e);
+		try
+		{
+			sPort.close();
+		}
+		catch (IOException e2)
+		{
+			// Ignore.
+		}
+		connectionFailed();
+		sPort = null;
+	}
+
+	/**
+	 * Thread to upgrade the adapter baud rate and start communication afterwards
+	 * - results are reported to the UI via the handler
+	 */
+	private class UsbConnectThread extends Thread
+	{
+		private final int baudRate;
+		private volatile boolean cancelled = false;
+
+		UsbConnectThread(int baudRate)
+		{
+			super("UsbConnectThread");
+			this.baudRate = baudRate;
+		}
+
+		/**
+		 * cancel connection, communication will not be started
+		 */
+		void cancel()
+		{
+			cancelled = true;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				// upgrade baud rate before protocol takes over
+				baudRateUpgraded = (upgradeBaudRate(baudRate) != baudRate);
+				boolean started = false;
+				synchronized (UsbCommService.this)
+				{
+					if (!cancelled)
+					{
+						// ATZ would restore default baud rate
+						elm.setKeepBaudRate(baudRateUpgraded);
+
+						// start communication thread
+						log.info("Starting io manager ..");
+						// Initialize SerialIoManager AFTER opening sPort
+						// workaround for AndrOBD#285 / https://github.com/mik3y/usb-serial-for-android/issues/611
+						mSerialIoManager = new SerialInputOutputManager(sPort, mListener);
+						mSerialIoManager.start();
+						started = true;
+					}
+				}
+				if (!started)
+				{
+					// stopped during negotiation -> restore default baud rate
+					if (baudRateUpgraded)
+					{
+						sPort.write("ATZ\r".getBytes(), WRITE_TIMEOUT);
+						baudRateUpgraded = false;
+					}
+				}
+				else if (!cancelled)
+				{
+					// we are connected -> signal connectionEstablished
+					connectionEstablished(sPort.toString());
+				}
 			}
 			catch (IOException e)
 			{
-				log.log(Level.SEVERE, "Error setting up device: " + e.getMessage(), e);
-				try
+				if (!cancelled)
 				{
-					sPort.close();
+					setupFailed(e);
 				}
-				catch (IOException e2)
+			}
+			finally
+			{
+				if (mUsbConnectThread == this)
 				{
-					// Ignore.
+					mUsbConnectThread = null;
 				}
-				connectionFailed();
-				sPort = null;
 			}
 		}
 	}
@@ -234,8 +384,24 @@ public class UsbCommService extends CommService
 		// remove this as valid telegram writer for elm protocol
 		elm.removeTelegramWriter(this);
 
+		// cancel pending baud rate negotiation
+		synchronized (this)
+		{
+			if (mUsbConnectThread != null)
+			{
+				mUsbConnectThread.cancel();
+				mUsbConnectThread = null;
+			}
+		}
+
 		if (mSerialIoManager != null)
 		{
+			// restore default baud rate for next connection
+			if (baudRateUpgraded)
+			{
+				write("ATZ\r".getBytes());
+				baudRateUpgraded = false;
+			}
 			log.info( "Stopping io manager ..");
 			mSerialIoManager.stop();
 			mSerialIoManager = null;
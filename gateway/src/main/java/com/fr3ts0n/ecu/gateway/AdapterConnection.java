@@ -0,0 +1,471 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.gateway;
+
+import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.ecu.prot.obd.ElmProt;
+import com.fr3ts0n.ecu.prot.obd.ObdProt;
+import com.fr3ts0n.prot.TelegramWriter;
+import com.fr3ts0n.pvs.PvChangeEvent;
+import com.fr3ts0n.pvs.PvChangeListener;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Connection to a network ELM adapter within the OBD gateway
+ * <p>
+ * Each connection runs its own ELM protocol, so vehicles are polled
+ * independently. All socket I/O is done non-blocking by the
+ * gateway I/O thread, outgoing telegrams may be written by any thread.
+ */
+public class AdapterConnection
+	implements TelegramWriter, PropertyChangeListener, PvChangeListener
+{
+	/** Connection states */
+	public enum State
+	{
+		DISCONNECTED,   ///< not connected, waiting for reconnect
+		CONNECTING,     ///< TCP connection is being established
+		CONNECTED,      ///< TCP connection established
+	}
+
+	/** Logging object */
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.ecu.gateway");
+
+	/** name of connection */
+	private final String name;
+	/** network address of adapter */
+	private final InetSocketAddress address;
+	/** gateway which serves this connection */
+	private final ObdGateway gateway;
+	/** ELM protocol of this connection */
+	private final ElmProt elm;
+	/** OBD service to be polled after ECU detection */
+	private final int service;
+
+	/** socket channel, null if not connected */
+	private SocketChannel channel = null;
+	/** selection key of socket channel */
+	private SelectionKey key = null;
+	/** current connection state */
+	private volatile State state = State.DISCONNECTED;
+	/** time [ms] of next connection attempt */
+	private long reconnectTime = 0;
+	/** OBD service needs to be selected after ECU detection */
+	private boolean serviceDue = false;
+
+	/** telegrams waiting for transmission */
+	private final ConcurrentLinkedQueue<ByteBuffer> txQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+	/** current receive message */
+	private char[] message = new char[256];
+	/** length of current receive message */
+	private int messageLen = 0;
+
+	/** number of established connections */
+	private long numConnects = 0;
+	/** number of connection errors */
+	private long numErrors = 0;
+	/** number of received bytes */
+	private long numRxBytes = 0;
+	/** number of transmitted bytes */
+	private long numTxBytes = 0;
+	/** number of received telegrams */
+	private long numRxTelegrams = 0;
+	/** number of transmitted telegrams */
+	private long numTxTelegrams = 0;
+	/** number of updated data values */
+	private long numValues = 0;
+	/** time [ms] of last reception or connection attempt */
+	private long lastRxTime = 0;
+
+	/**
+	 * Create adapter connection
+	 *
+	 * @param name      name of connection (e.g. vehicle name)
+	 * @param address   network address of adapter
+	 * @param gateway   gateway which serves this connection
+	 * @param idleTimer shared timer for delayed PID requests
+	 * @param service   OBD service to be polled
+	 */
+	AdapterConnection(String name, InetSocketAddress address, ObdGateway gateway,
+	                  Timer idleTimer, int service)
+	{
+		this.name = name;
+		this.address = address;
+		this.gateway = gateway;
+		this.service = service;
+		elm = new ElmProt(idleTimer);
+		elm.addTelegramWriter(this);
+		elm.addPropertyChangeListener(this);
+		elm.PidPvs.addPvChangeListener(this, PvChangeEvent.PV_ADDED);
+	}
+
+	/**
+	 * @return name of connection
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return network address of adapter
+	 */
+	public InetSocketAddress getAddress()
+	{
+		return address;
+	}
+
+	/**
+	 * @return ELM protocol of this connection
+	 */
+	public ElmProt getProtocol()
+	{
+		return elm;
+	}
+
+	/**
+	 * @return current connection state
+	 */
+	public State getState()
+	{
+		return state;
+	}
+
+	/**
+	 * Get health and throughput counters of this connection
+	 *
+	 * @return current health snapshot
+	 */
+	public ConnectionHealth getHealth()
+	{
+		// protocol is not accessed while holding the lock of this connection
+		ElmProt.STAT elmStatus = elm.getStatus();
+		synchronized (this)
+		{
+			return new ConnectionHealth(name, state, elmStatus,
+			                            numConnects, numErrors,
+			                            numRxBytes, numTxBytes,
+			                            numRxTelegrams, numTxTelegrams,
+			                            numValues, lastRxTime);
+		}
+	}
+
+	/**
+	 * start connecting to adapter
+	 *
+	 * @param selector selector of gateway I/O thread
+	 */
+	void connect(Selector selector) throws IOException
+	{
+		log.info(name + ": Connecting to " + address);
+		state = State.CONNECTING;
+		synchronized (this)
+		{
+			lastRxTime = System.currentTimeMillis();
+		}
+		channel = SocketChannel.open();
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+		if (channel.connect(address))
+		{
+			finishConnect();
+		}
+	}
+
+	/**
+	 * finish establishing of connection and start ELM protocol
+	 */
+	void finishConnect() throws IOException
+	{
+		channel.finishConnect();
+		state = State.CONNECTED;
+		synchronized (this)
+		{
+			numConnects++;
+			lastRxTime = System.currentTimeMillis();
+		}
+		log.info(name + ": Connected to " + address);
+		key.interestOps(SelectionKey.OP_READ);
+		messageLen = 0;
+		txQueue.clear();
+		serviceDue = false;
+		elm.reset();
+		flush();
+	}
+
+	/**
+	 * read available data from adapter and handle received telegrams
+	 *
+	 * @param buffer receive buffer (shared within I/O thread)
+	 */
+	void read(ByteBuffer buffer) throws IOException
+	{
+		buffer.clear();
+		int len = channel.read(buffer);
+		if (len < 0)
+		{
+			throw new EOFException("End of stream");
+		}
+		synchronized (this)
+		{
+			numRxBytes += len;
+			lastRxTime = System.currentTimeMillis();
+		}
+		for (int i = 0; i < len; i++)
+		{
+			processRxChar(buffer.get(i) & 0xFF);
+		}
+		// select service outside of telegram handling
+		if (serviceDue)
+		{
+			serviceDue = false;
+			elm.setService(service);
+		}
+	}
+
+	/**
+	 * write pending telegrams to adapter,
+	 * remaining data is written when the channel gets writable
+	 */
+	void flush() throws IOException
+	{
+		if (state != State.CONNECTED)
+		{
+			return;
+		}
+		ByteBuffer data;
+		while ((data = txQueue.peek()) != null)
+		{
+			int len = channel.write(data);
+			synchronized (this)
+			{
+				numTxBytes += len;
+			}
+			if (data.hasRemaining())
+			{
+				break;
+			}
+			txQueue.poll();
+		}
+		key.interestOps(data != null
+		                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+		                : SelectionKey.OP_READ);
+	}
+
+	/**
+	 * close connection after error and schedule reconnect
+	 *
+	 * @param error          cause of closing, null if closed on request
+	 * @param reconnectDelay delay [ms] until reconnect
+	 */
+	void close(Exception error, long reconnectDelay)
+	{
+		if (error != null)
+		{
+			log.log(Level.WARNING, name + ": Connection failed: " + error.getMessage());
+			synchronized (this)
+			{
+				numErrors++;
+			}
+		}
+		if (key != null)
+		{
+			key.cancel();
+		}
+		if (channel != null)
+		{
+			try
+			{
+				channel.close();
+			}
+			catch (IOException e)
+			{
+				log.warning(e.getMessage());
+			}
+		}
+		channel = null;
+		key = null;
+		txQueue.clear();
+		state = State.DISCONNECTED;
+		reconnectTime = System.currentTimeMillis() + reconnectDelay;
+	}
+
+	/**
+	 * @return time [ms] of next connection attempt
+	 */
+	long getReconnectTime()
+	{
+		return reconnectTime;
+	}
+
+	/**
+	 * process incoming character
+	 * (message assembly as in StreamHandler)
+	 *
+	 * @param chr the received char
+	 */
+	@SuppressWarnings("fallthrough")
+	private void processRxChar(int chr)
+	{
+		switch (chr)
+		{
+			// ignore special characters
+			case 0:
+			case 32:
+				break;
+
+			// trigger message handling for new request
+			case '>':
+				appendRxChar(chr);
+				// trigger message handling
+			case 10:
+			case 13:
+				if (messageLen > 0)
+				{
+					synchronized (this)
+					{
+						numRxTelegrams++;
+					}
+					try
+					{
+						elm.handleTelegram(message, 0, messageLen);
+					}
+					catch (Exception ex)
+					{
+						log.log(Level.WARNING, name + ": handleTelegram", ex);
+					}
+				}
+				messageLen = 0;
+				break;
+
+			default:
+				appendRxChar(chr);
+		}
+	}
+
+	/**
+	 * append character to current receive message
+	 *
+	 * @param chr the received char
+	 */
+	private void appendRxChar(int chr)
+	{
+		if (messageLen == message.length)
+		{
+			message = Arrays.copyOf(message, 2 * message.length);
+		}
+		message[messageLen++] = (char) chr;
+	}
+
+	@Override
+	public int writeTelegram(char[] buffer)
+	{
+		return writeTelegram(buffer, 0, null);
+	}
+
+	@Override
+	public int writeTelegram(char[] buffer, int type, Object id)
+	{
+		// telegrams are discarded while disconnected, protocol is reset on connect
+		if (state != State.CONNECTED)
+		{
+			return 0;
+		}
+		ByteBuffer data = ByteBuffer.allocate(buffer.length + 1);
+		for (char chr : buffer)
+		{
+			data.put((byte) chr);
+		}
+		data.put((byte) '\r');
+		data.flip();
+		txQueue.offer(data);
+		synchronized (this)
+		{
+			numTxTelegrams++;
+		}
+		gateway.requestFlush(this);
+		return buffer.length;
+	}
+
+	/**
+	 * handle ELM protocol status changes
+	 */
+	@Override
+	public void propertyChange(PropertyChangeEvent evt)
+	{
+		if (ElmProt.PROP_STATUS.equals(evt.getPropertyName())
+		    && evt.getNewValue() == ElmProt.STAT.ECU_DETECTED
+		    && service != ObdProt.OBD_SVC_NONE)
+		{
+			serviceDue = true;
+		}
+	}
+
+	/**
+	 * forward updated data values to data sink
+	 * - listen to value changes of each data item added to the PID list
+	 */
+	@Override
+	public void pvChanged(PvChangeEvent event)
+	{
+		if (event.getSource() == elm.PidPvs)
+		{
+			if (event.getValue() instanceof Object[])
+			{
+				for (Object pv : (Object[]) event.getValue())
+				{
+					if (pv instanceof EcuDataPv)
+					{
+						((EcuDataPv) pv).addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
+					}
+				}
+			}
+		}
+		else if (EcuDataPv.FIELDS[EcuDataPv.FID_VALUE].equals(event.getKey()))
+		{
+			synchronized (this)
+			{
+				numValues++;
+			}
+			gateway.valueUpdated(this, (EcuDataPv) event.getSource(), event.getTime());
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + "@" + address;
+	}
+}
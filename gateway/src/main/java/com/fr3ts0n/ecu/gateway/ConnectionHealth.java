@@ -0,0 +1,175 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.gateway;
+
+import com.fr3ts0n.ecu.prot.obd.ElmProt;
+
+/**
+ * Snapshot of health and throughput counters of an adapter connection
+ * - throughput rates are calculated against a previous snapshot
+ */
+public class ConnectionHealth
+{
+	/** time [ms] of snapshot */
+	private final long time = System.currentTimeMillis();
+	/** name of connection */
+	private final String name;
+	/** connection state */
+	private final AdapterConnection.State state;
+	/** ELM protocol status */
+	private final ElmProt.STAT elmStatus;
+	/** number of established connections */
+	private final long numConnects;
+	/** number of connection errors */
+	private final long numErrors;
+	/** number of received bytes */
+	private final long numRxBytes;
+	/** number of transmitted bytes */
+	private final long numTxBytes;
+	/** number of received telegrams */
+	private final long numRxTelegrams;
+	/** number of transmitted telegrams */
+	private final long numTxTelegrams;
+	/** number of updated data values */
+	private final long numValues;
+	/** time [ms] of last reception or connection attempt */
+	private final long lastRxTime;
+
+	ConnectionHealth(String name, AdapterConnection.State state, ElmProt.STAT elmStatus,
+	                 long numConnects, long numErrors,
+	                 long numRxBytes, long numTxBytes,
+	                 long numRxTelegrams, long numTxTelegrams,
+	                 long numValues, long lastRxTime)
+	{
+		this.name = name;
+		this.state = state;
+		this.elmStatus = elmStatus;
+		this.numConnects = numConnects;
+		this.numErrors = numErrors;
+		this.numRxBytes = numRxBytes;
+		this.numTxBytes = numTxBytes;
+		this.numRxTelegrams = numRxTelegrams;
+		this.numTxTelegrams = numTxTelegrams;
+		this.numValues = numValues;
+		this.lastRxTime = lastRxTime;
+	}
+
+	public long getTime()
+	{
+		return time;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public AdapterConnection.State getState()
+	{
+		return state;
+	}
+
+	public ElmProt.STAT getElmStatus()
+	{
+		return elmStatus;
+	}
+
+	public long getNumConnects()
+	{
+		return numConnects;
+	}
+
+	public long getNumErrors()
+	{
+		return numErrors;
+	}
+
+	public long getNumRxBytes()
+	{
+		return numRxBytes;
+	}
+
+	public long getNumTxBytes()
+	{
+		return numTxBytes;
+	}
+
+	public long getNumRxTelegrams()
+	{
+		return numRxTelegrams;
+	}
+
+	public long getNumTxTelegrams()
+	{
+		return numTxTelegrams;
+	}
+
+	public long getNumValues()
+	{
+		return numValues;
+	}
+
+	public long getLastRxTime()
+	{
+		return lastRxTime;
+	}
+
+	/**
+	 * Get time since last reception or connection attempt
+	 *
+	 * @return time [ms] since last reception, -1 if never connected
+	 */
+	public long getRxIdleTime()
+	{
+		return (lastRxTime > 0) ? time - lastRxTime : -1;
+	}
+
+	/**
+	 * Format health report with throughput rates since previous snapshot
+	 *
+	 * @param previous previous snapshot of same connection, null for totals only
+	 * @return health report line
+	 */
+	public String toString(ConnectionHealth previous)
+	{
+		double seconds = (previous != null) ? (time - previous.time) / 1000.0 : 0;
+		return String.format("%s %s/%s connects:%d errors:%d rx:%d tx:%d values:%d"
+		                     + " rx/s:%.1f tx/s:%.1f values/s:%.1f rxIdle:%dms",
+		                     name, state, elmStatus, numConnects, numErrors,
+		                     numRxTelegrams, numTxTelegrams, numValues,
+		                     rate(numRxTelegrams, previous != null ? previous.numRxTelegrams : 0, seconds),
+		                     rate(numTxTelegrams, previous != null ? previous.numTxTelegrams : 0, seconds),
+		                     rate(numValues, previous != null ? previous.numValues : 0, seconds),
+		                     getRxIdleTime());
+	}
+
+	@Override
+	public String toString()
+	{
+		return toString(null);
+	}
+
+	/**
+	 * rate of counter increments per second
+	 */
+	private static double rate(long count, long prevCount, double seconds)
+	{
+		return (seconds > 0) ? (count - prevCount) / seconds : 0;
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.gateway;
+
+import com.fr3ts0n.ecu.EcuDataPv;
+
+/**
+ * Receiver of decoded vehicle data values
+ * <p>
+ * Values are reported from the gateway I/O thread, so implementations
+ * shall return quickly and hand over any blocking work (files, network)
+ * to their own threads.
+ */
+public interface DataSink
+{
+	/**
+	 * decoded value of a data item has changed
+	 *
+	 * @param connection adapter connection which received the value
+	 * @param pv         process var of the data item (mnemonic, value, units ...)
+	 * @param time       time of update [ms]
+	 */
+	void valueUpdated(AdapterConnection connection, EcuDataPv pv, long time);
+}
@@ -0,0 +1,444 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.gateway;
+
+import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.ecu.prot.obd.ElmEmulator;
+import com.fr3ts0n.ecu.prot.obd.ObdProt;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Timer;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Headless OBD gateway for many network ELM adapters
+ * <p>
+ * Each adapter connection runs its own ELM protocol and polls its vehicle
+ * independently. All connections are served by a single non-blocking
+ * I/O thread, delayed PID requests of all protocols share one timer thread,
+ * so the number of threads does not grow with the number of adapters.
+ * <p>
+ * Decoded values are forwarded to a {@link DataSink}, health and
+ * throughput of each connection is reported periodically.
+ * Lost connections are re-established after a reconnect delay.
+ */
+public class ObdGateway implements Runnable
+{
+	/** default delay [ms] until reconnect of a lost connection */
+	public static final long DEFAULT_RECONNECT_DELAY = 5000;
+	/** default time [ms] without reception until connection is considered dead */
+	public static final long DEFAULT_RX_TIMEOUT = 30000;
+	/** default interval [ms] of health reports */
+	public static final long DEFAULT_REPORT_INTERVAL = 10000;
+
+	/** Logging object */
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.ecu.gateway");
+
+	/** sink for decoded values */
+	private final DataSink sink;
+	/** all adapter connections */
+	private final Vector<AdapterConnection> connections = new Vector<AdapterConnection>();
+	/** connections with telegrams waiting for transmission */
+	private final ConcurrentLinkedQueue<AdapterConnection> pendingFlushes =
+		new ConcurrentLinkedQueue<AdapterConnection>();
+	/** previous health snapshot of each connection (for throughput rates) */
+	private final HashMap<AdapterConnection, ConnectionHealth> lastHealth =
+		new HashMap<AdapterConnection, ConnectionHealth>();
+	/** receive buffer of I/O thread */
+	private final ByteBuffer rxBuffer = ByteBuffer.allocateDirect(4096);
+	/** shared timer for delayed PID requests of all protocols */
+	private final Timer idleTimer = new Timer("ObdGatewayIdle", true);
+
+	/** selector of I/O thread */
+	private Selector selector = null;
+	/** I/O thread */
+	private Thread ioThread = null;
+	/** I/O thread shall keep running */
+	private volatile boolean running = false;
+
+	/** OBD service to be polled */
+	private int service = ObdProt.OBD_SVC_DATA;
+	/** delay [ms] until reconnect of a lost connection */
+	private long reconnectDelay = DEFAULT_RECONNECT_DELAY;
+	/** time [ms] without reception until connection is considered dead */
+	private long rxTimeout = DEFAULT_RX_TIMEOUT;
+	/** interval [ms] of health reports, 0 = no reports */
+	private long reportInterval = DEFAULT_REPORT_INTERVAL;
+	/** time [ms] of next health report */
+	private long nextReportTime = 0;
+
+	/**
+	 * Create gateway
+	 *
+	 * @param sink sink for decoded values
+	 */
+	public ObdGateway(DataSink sink)
+	{
+		this.sink = sink;
+	}
+
+	/**
+	 * Set OBD service to be polled on connections which are added afterwards
+	 *
+	 * @param service OBD service (OBD_SVC_NONE = connect only)
+	 */
+	public void setService(int service)
+	{
+		this.service = service;
+	}
+
+	/**
+	 * @param reconnectDelay delay [ms] until reconnect of a lost connection
+	 */
+	public void setReconnectDelay(long reconnectDelay)
+	{
+		this.reconnectDelay = reconnectDelay;
+	}
+
+	/**
+	 * @param rxTimeout time [ms] without reception until connection is considered dead
+	 */
+	public void setRxTimeout(long rxTimeout)
+	{
+		this.rxTimeout = rxTimeout;
+	}
+
+	/**
+	 * @param reportInterval interval [ms] of health reports, 0 = no reports
+	 */
+	public void setReportInterval(long reportInterval)
+	{
+		this.reportInterval = reportInterval;
+	}
+
+	/**
+	 * Add adapter connection, the connection is established by the I/O thread
+	 *
+	 * @param name    name of connection (e.g. vehicle name)
+	 * @param address network address of adapter
+	 * @return new adapter connection
+	 */
+	public AdapterConnection addAdapter(String name, InetSocketAddress address)
+	{
+		AdapterConnection connection =
+			new AdapterConnection(name, address, this, idleTimer, service);
+		connections.add(connection);
+		// connection is established with next check of connections
+		wakeup();
+		return connection;
+	}
+
+	/**
+	 * @return all adapter connections
+	 */
+	public Vector<AdapterConnection> getConnections()
+	{
+		return new Vector<AdapterConnection>(connections);
+	}
+
+	/**
+	 * Get health snapshots of all connections
+	 *
+	 * @return health snapshot of each connection
+	 */
+	public Vector<ConnectionHealth> getHealth()
+	{
+		Vector<ConnectionHealth> result = new Vector<ConnectionHealth>();
+		for (AdapterConnection connection : getConnections())
+		{
+			result.add(connection.getHealth());
+		}
+		return result;
+	}
+
+	/**
+	 * start I/O thread
+	 *
+	 * @throws IOException if selector can't be opened
+	 */
+	public synchronized void start() throws IOException
+	{
+		selector = Selector.open();
+		running = true;
+		nextReportTime = System.currentTimeMillis() + reportInterval;
+		ioThread = new Thread(this, "ObdGateway");
+		ioThread.setDaemon(true);
+		ioThread.start();
+		log.info("OBD gateway started");
+	}
+
+	/**
+	 * stop I/O thread and close all connections
+	 */
+	public void stop()
+	{
+		Thread thread;
+		synchronized (this)
+		{
+			running = false;
+			thread = ioThread;
+			ioThread = null;
+		}
+		if (thread != null)
+		{
+			selector.wakeup();
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		idleTimer.cancel();
+	}
+
+	/**
+	 * I/O loop serving all connections
+	 */
+	@Override
+	public void run()
+	{
+		while (running)
+		{
+			try
+			{
+				flushPending();
+				selector.select(checkConnections());
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext())
+				{
+					SelectionKey key = it.next();
+					it.remove();
+					handleKey(key);
+				}
+				flushPending();
+			}
+			catch (Exception ex)
+			{
+				log.log(Level.SEVERE, "I/O loop", ex);
+			}
+		}
+		// shut down all connections
+		for (AdapterConnection conn : getConnections())
+		{
+			conn.close(null, 0);
+		}
+		try
+		{
+			selector.close();
+		}
+		catch (IOException e)
+		{
+			log.warning(e.getMessage());
+		}
+		log.info("OBD gateway stopped");
+	}
+
+	/**
+	 * request transmission of pending telegrams of a connection
+	 *
+	 * @param connection connection with pending telegrams
+	 */
+	void requestFlush(AdapterConnection connection)
+	{
+		pendingFlushes.add(connection);
+		// I/O thread flushes after handling of the current event
+		if (Thread.currentThread() != ioThread)
+		{
+			wakeup();
+		}
+	}
+
+	/**
+	 * forward updated value to data sink
+	 */
+	void valueUpdated(AdapterConnection connection, EcuDataPv pv, long time)
+	{
+		try
+		{
+			sink.valueUpdated(connection, pv, time);
+		}
+		catch (Exception ex)
+		{
+			log.log(Level.WARNING, "Data sink", ex);
+		}
+	}
+
+	/**
+	 * wake up I/O thread, if it is waiting for events
+	 */
+	private void wakeup()
+	{
+		Selector sel = selector;
+		if (sel != null)
+		{
+			sel.wakeup();
+		}
+	}
+
+	/**
+	 * start connecting an adapter
+	 */
+	private void connect(AdapterConnection connection)
+	{
+		try
+		{
+			connection.connect(selector);
+		}
+		catch (IOException ex)
+		{
+			connection.close(ex, reconnectDelay);
+		}
+	}
+
+	/**
+	 * handle I/O event of a connection
+	 */
+	private void handleKey(SelectionKey key)
+	{
+		AdapterConnection connection = (AdapterConnection) key.attachment();
+		try
+		{
+			if (key.isValid() && key.isConnectable())
+			{
+				connection.finishConnect();
+			}
+			if (key.isValid() && key.isReadable())
+			{
+				connection.read(rxBuffer);
+			}
+			if (key.isValid() && key.isWritable())
+			{
+				connection.flush();
+			}
+		}
+		catch (IOException ex)
+		{
+			connection.close(ex, reconnectDelay);
+		}
+	}
+
+	/**
+	 * write pending telegrams of all connections
+	 */
+	private void flushPending()
+	{
+		AdapterConnection connection;
+		while ((connection = pendingFlushes.poll()) != null)
+		{
+			try
+			{
+				connection.flush();
+			}
+			catch (IOException ex)
+			{
+				connection.close(ex, reconnectDelay);
+			}
+		}
+	}
+
+	/**
+	 * (re)connect new/lost connections, close dead connections and report health
+	 *
+	 * @return time [ms] until next check is due
+	 */
+	private long checkConnections()
+	{
+		long now = System.currentTimeMillis();
+		long nextCheck = now + 1000;
+		for (AdapterConnection connection : getConnections())
+		{
+			switch (connection.getState())
+			{
+				case DISCONNECTED:
+					if (connection.getReconnectTime() <= now)
+					{
+						connect(connection);
+					}
+					else
+					{
+						nextCheck = Math.min(nextCheck, connection.getReconnectTime());
+					}
+					break;
+
+				case CONNECTING:
+				case CONNECTED:
+					if (connection.getHealth().getRxIdleTime() > rxTimeout)
+					{
+						connection.close(new IOException("RX timeout"), reconnectDelay);
+					}
+					break;
+			}
+		}
+		if (reportInterval > 0 && nextReportTime <= now)
+		{
+			reportHealth();
+			nextReportTime = now + reportInterval;
+		}
+		return Math.max(1, nextCheck - now);
+	}
+
+	/**
+	 * log health report of all connections
+	 */
+	private void reportHealth()
+	{
+		for (AdapterConnection connection : getConnections())
+		{
+			ConnectionHealth health = connection.getHealth();
+			log.info(health.toString(lastHealth.get(connection)));
+			lastHealth.put(connection, health);
+		}
+	}
+
+	/**
+	 * run gateway, decoded values are printed to stdout
+	 *
+	 * @param args adapter addresses [name=]host[:port]
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		ObdGateway gateway = new ObdGateway(new PrintDataSink(System.out));
+		gateway.start();
+		for (String arg : args)
+		{
+			String[] nameAddress = arg.split("=", 2);
+			String address = nameAddress[nameAddress.length - 1];
+			String[] hostPort = address.split(":", 2);
+			int port = (hostPort.length > 1) ? Integer.parseInt(hostPort[1]) : ElmEmulator.DEFAULT_PORT;
+			gateway.addAdapter(nameAddress[0], new InetSocketAddress(hostPort[0], port));
+		}
+		// run until process is terminated
+		while (true)
+		{
+			Thread.sleep(10000);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.gateway;
+
+import com.fr3ts0n.ecu.EcuDataPv;
+
+import java.io.PrintStream;
+
+/**
+ * Data sink which prints values as CSV lines
+ * (time;connection;mnemonic;value;units)
+ */
+public class PrintDataSink implements DataSink
+{
+	/** stream to print to */
+	private final PrintStream out;
+
+	/**
+	 * Create data sink
+	 *
+	 * @param out stream to print values to
+	 */
+	public PrintDataSink(PrintStream out)
+	{
+		this.out = out;
+	}
+
+	@Override
+	public void valueUpdated(AdapterConnection connection, EcuDataPv pv, long time)
+	{
+		out.println(String.format("%d;%s;%s;%s;%s",
+		                          time,
+		                          connection.getName(),
+		                          pv.get(EcuDataPv.FID_MNEMONIC),
+		                          pv.get(EcuDataPv.FID_VALUE),
+		                          pv.get(EcuDataPv.FID_UNITS)));
+	}
+}
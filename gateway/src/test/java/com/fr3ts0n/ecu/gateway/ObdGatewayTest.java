@@ -0,0 +1,164 @@
+package com.fr3ts0n.ecu.gateway;
+
+import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.ecu.prot.obd.ElmEmulator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObdGatewayTest
+{
+	/** received mnemonics by connection name */
+	final Map<String, Set<Object>> received = new ConcurrentHashMap<String, Set<Object>>();
+	final Vector<ElmEmulator> emulators = new Vector<ElmEmulator>();
+	ObdGateway gateway;
+
+	@BeforeEach
+	void setUp() throws IOException
+	{
+		gateway = new ObdGateway(new DataSink()
+		{
+			@Override
+			public void valueUpdated(AdapterConnection connection, EcuDataPv pv, long time)
+			{
+				Set<Object> mnemonics = received.get(connection.getName());
+				if (mnemonics == null)
+				{
+					mnemonics = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+					received.put(connection.getName(), mnemonics);
+				}
+				mnemonics.add(pv.get(EcuDataPv.FID_MNEMONIC));
+			}
+		});
+		gateway.setReconnectDelay(100);
+		gateway.setReportInterval(0);
+		gateway.start();
+	}
+
+	@AfterEach
+	void tearDown()
+	{
+		gateway.stop();
+		for (ElmEmulator emulator : emulators)
+		{
+			emulator.stop();
+		}
+	}
+
+	/**
+	 * start emulated vehicle
+	 * @return TCP port of emulated adapter
+	 */
+	int startVehicle(int port, int... pids) throws IOException
+	{
+		ElmEmulator.Config config = new ElmEmulator.Config();
+		config.ecus.clear();
+		config.ecus.add(new ElmEmulator.Ecu(0x7E8).setPids(pids));
+		config.latencyMin = 0;
+		config.latencyMax = 5;
+		ElmEmulator emulator = new ElmEmulator(config);
+		emulators.add(emulator);
+		return emulator.start(port);
+	}
+
+	/**
+	 * wait until condition is met
+	 */
+	static boolean waitFor(long timeout, Condition condition) throws InterruptedException
+	{
+		long end = System.currentTimeMillis() + timeout;
+		while (!condition.isMet() && System.currentTimeMillis() < end)
+		{
+			Thread.sleep(20);
+		}
+		return condition.isMet();
+	}
+
+	interface Condition
+	{
+		boolean isMet();
+	}
+
+	@Test
+	void independentVehicles() throws Exception
+	{
+		final int numVehicles = 8;
+		for (int i = 0; i < numVehicles; i++)
+		{
+			// odd vehicles report speed, even vehicles engine speed
+			int port = startVehicle(0, (i % 2 == 0) ? 0x0C : 0x0D);
+			gateway.addAdapter("car" + i, new InetSocketAddress("localhost", port));
+		}
+		assertTrue(waitFor(10000, new Condition()
+		{
+			@Override
+			public boolean isMet()
+			{
+				return received.size() == numVehicles;
+			}
+		}));
+		for (int i = 0; i < numVehicles; i++)
+		{
+			assertEquals(Collections.singleton((i % 2 == 0) ? "engine_speed" : "vehicle_speed"),
+			             received.get("car" + i));
+		}
+		for (ConnectionHealth health : gateway.getHealth())
+		{
+			assertEquals(AdapterConnection.State.CONNECTED, health.getState());
+			assertEquals(1, health.getNumConnects());
+			assertEquals(0, health.getNumErrors());
+			assertTrue(health.getNumValues() > 0);
+			assertTrue(health.getNumRxTelegrams() > 0);
+		}
+	}
+
+	@Test
+	void reconnect() throws Exception
+	{
+		int port = startVehicle(0, 0x0D);
+		final AdapterConnection connection =
+			gateway.addAdapter("car", new InetSocketAddress("localhost", port));
+		assertTrue(waitFor(10000, new Condition()
+		{
+			@Override
+			public boolean isMet()
+			{
+				return connection.getHealth().getNumValues() > 0;
+			}
+		}));
+		// connection loss
+		emulators.get(0).stop();
+		assertTrue(waitFor(5000, new Condition()
+		{
+			@Override
+			public boolean isMet()
+			{
+				return connection.getHealth().getNumErrors() > 0;
+			}
+		}));
+		// adapter is back again
+		final long numValues = connection.getHealth().getNumValues();
+		startVehicle(port, 0x0D);
+		assertTrue(waitFor(10000, new Condition()
+		{
+			@Override
+			public boolean isMet()
+			{
+				return connection.getHealth().getNumValues() > numValues;
+			}
+		}));
+		assertEquals(2, connection.getHealth().getNumConnects());
+	}
+}
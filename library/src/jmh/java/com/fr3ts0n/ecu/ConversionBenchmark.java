@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of value conversions
+ * - linear conversion of raw values
+ * - lookup of trouble code descriptions
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConversionBenchmark
+{
+	private LinearConversion rpmConversion;
+	private EcuCodeList codeList;
+	private final int[] codes = {0x0100, 0x0300, 0x0420, 0xC100};
+	private int cycle = 0;
+
+	@Setup
+	public void setup()
+	{
+		// engine RPM conversion: x / 4
+		rpmConversion = new LinearConversion(1, 4, 0, 0, "/min");
+		codeList = new ObdCodeList();
+	}
+
+	@Benchmark
+	public Number linearMemToPhys()
+	{
+		return rpmConversion.memToPhys(0x1AF8 + (cycle++ & 0xFF));
+	}
+
+	@Benchmark
+	public EcuCodeItem codeListGet()
+	{
+		return codeList.get(codes[cycle++ & 3]);
+	}
+}
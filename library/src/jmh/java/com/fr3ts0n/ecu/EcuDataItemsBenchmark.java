@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.ecu.prot.obd.ObdProt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of data item updates for typical OBD PIDs
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EcuDataItemsBenchmark
+{
+	/** PID to be updated: load, coolant temp, RPM, speed, MAF, monitor status */
+	@Param({"04", "05", "0C", "0D", "10", "01"})
+	public String pid;
+
+	private EcuDataItems items;
+	private int pidCode;
+	private final char[][] data = new char[2][];
+	private final char[][] hexData = new char[2][];
+	private int cycle = 0;
+
+	@Setup
+	public void setup()
+	{
+		Logger.getLogger("").setLevel(Level.OFF);
+		items = ObdProt.dataItems;
+		pidCode = Integer.parseInt(pid, 16);
+		// alternating values to trigger PV change events
+		data[0] = new char[]{0x1A, 0xF8, 0x12, 0x34};
+		data[1] = new char[]{0x1B, 0x02, 0x21, 0x43};
+		hexData[0] = "1AF81234".toCharArray();
+		hexData[1] = "1B022143".toCharArray();
+	}
+
+	@Benchmark
+	public long updateDataItems()
+	{
+		return items.updateDataItems(ObdProt.OBD_SVC_DATA, pidCode, data[cycle++ & 1]);
+	}
+
+	@Benchmark
+	public long updateDataItemsHex()
+	{
+		return items.updateDataItems(ObdProt.OBD_SVC_DATA, pidCode, hexData[cycle++ & 1], 0, 8);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of ELM response handling
+ * - single line response
+ * - CAN multi line response (with length info)
+ * - ISO multi frame response (terminated by prompt)
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ElmProtBenchmark
+{
+	/** response scenario */
+	@Param({"SINGLE_LINE", "CAN_MULTI_LINE", "ISO_MULTI_FRAME"})
+	public String scenario;
+
+	private ElmProt prot;
+	private char[][] lines;
+
+	@Setup
+	public void setup()
+	{
+		// keep logging out of measurement
+		Logger.getLogger("").setLevel(Level.OFF);
+
+		prot = new ElmProt();
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		// PIDs 01-20 supported
+		prot.handleTelegram("4100FFFFFFFE".toCharArray());
+
+		String[] rsp;
+		switch (scenario)
+		{
+			case "CAN_MULTI_LINE":
+				// VIN (service 09, PID 02)
+				prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+				rsp = new String[]{"014",
+				                   "0:490201574630",
+				                   "1:58585847434458",
+				                   "2:31323334353637"};
+				break;
+
+			case "ISO_MULTI_FRAME":
+				// VIN (service 09, PID 02) with message counters
+				prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+				rsp = new String[]{"49020100000057",
+				                   "49020246305858",
+				                   "49020358474344",
+				                   "49020458313233",
+				                   "49020534353637",
+				                   ">"};
+				break;
+
+			case "SINGLE_LINE":
+			default:
+				// engine RPM
+				rsp = new String[]{"410C1AF8"};
+		}
+		lines = new char[rsp.length][];
+		for (int i = 0; i < rsp.length; i++)
+		{
+			lines[i] = rsp[i].toCharArray();
+		}
+	}
+
+	@Benchmark
+	public void handleTelegram(Blackhole bh)
+	{
+		for (char[] line : lines)
+		{
+			bh.consume(prot.handleTelegram(line, 0, line.length));
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.pvs;
+
+import com.fr3ts0n.ecu.EcuDataPv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of process var value updates with change listeners
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessVarBenchmark
+{
+	/** number of registered change listeners */
+	@Param({"0", "1", "8"})
+	public int listeners;
+
+	private EcuDataPv pv;
+	private final Float[] values = {1.0f, 2.0f};
+	private int cycle = 0;
+
+	@Setup
+	public void setup(final Blackhole bh)
+	{
+		pv = new EcuDataPv();
+		for (int i = 0; i < listeners; i++)
+		{
+			pv.addPvChangeListener(new PvChangeListener()
+			{
+				@Override
+				public void pvChanged(PvChangeEvent event)
+				{
+					bh.consume(event.getValue());
+				}
+			});
+		}
+	}
+
+	@Benchmark
+	public Object put()
+	{
+		// alternating values to trigger change events
+		return pv.put(EcuDataPv.FIELDS[EcuDataPv.FID_VALUE], values[cycle++ & 1]);
+	}
+}
@@ -0,0 +1,401 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Compact index of fault code descriptions of a single locale
+ * <p>
+ * The index is compiled from a code list resource bundle file
+ * (codes_[locale].properties) at build time (see {@link #main(String[])})
+ * and contains the numeric codes in sorted order with offsets into
+ * a shared UTF-8 string pool:
+ * <pre>
+ * Layout (big endian):
+ *   header:      magic, version, #codes (int)
+ *   codes:       sorted numeric codes (int)
+ *   offsets:     #codes + 1 offsets of descriptions within pool (int)
+ *   string pool: UTF-8 bytes of all descriptions
+ * </pre>
+ * Like resource bundles, indexes of a locale only contain the codes of
+ * this locale and are chained to the indexes of their parent locales.
+ *
+ * @author erwin
+ */
+public final class EcuCodeIndex
+{
+	/** index identification "DTCI" */
+	static final int MAGIC = 0x44544349;
+	/** index format version */
+	static final int VERSION = 1;
+	/** file extension of indexes */
+	static final String INDEX_EXTENSION = "idx";
+	/** key format of OBD P/C/B/U codes */
+	static final String FORMAT_PCODE = "PCODE";
+
+	// the data logger
+	private static final Logger log = Logger.getLogger("data.cnv");
+
+	/** sorted numeric codes */
+	private final int[] codes;
+	/** offsets of descriptions within string pool */
+	private final int[] offsets;
+	/** string pool */
+	private final byte[] pool;
+	/** index of parent locale */
+	private EcuCodeIndex parent;
+
+	/**
+	 * Create index from binary data
+	 *
+	 * @param buffer binary index data
+	 * @throws IllegalArgumentException if data is not a valid index
+	 */
+	EcuCodeIndex(byte[] buffer)
+	{
+		try
+		{
+			ByteBuffer data = ByteBuffer.wrap(buffer);
+			if (data.getInt() != MAGIC || data.getInt() != VERSION)
+			{
+				throw new IllegalArgumentException("Invalid index format");
+			}
+			codes = new int[data.getInt()];
+			offsets = new int[codes.length + 1];
+			data.asIntBuffer().get(codes);
+			data.position(data.position() + 4 * codes.length);
+			data.asIntBuffer().get(offsets);
+			data.position(data.position() + 4 * offsets.length);
+			pool = new byte[data.remaining()];
+			data.get(pool);
+			if (offsets[codes.length] != pool.length)
+			{
+				throw new IllegalArgumentException("Invalid index size");
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			throw new IllegalArgumentException("Invalid index: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * load index chain for resource bundle and locale
+	 * - the chain follows the candidate locales of resource bundles
+	 *
+	 * @param bundleName name of code list resource bundle
+	 * @param locale     locale to load index for
+	 * @return most specific index of locale, or null if no index is available
+	 */
+	static EcuCodeIndex forLocale(String bundleName, Locale locale)
+	{
+		ClassLoader loader = EcuCodeIndex.class.getClassLoader();
+		return forLocale(bundleName, locale,
+		                 loader != null ? loader : ClassLoader.getSystemClassLoader());
+	}
+
+	/**
+	 * load index chain for resource bundle and locale
+	 *
+	 * @param bundleName name of code list resource bundle
+	 * @param locale     locale to load index for
+	 * @param loader     class loader to load index resources with
+	 * @return most specific index of locale, or null if no index is available
+	 */
+	static EcuCodeIndex forLocale(String bundleName, Locale locale, ClassLoader loader)
+	{
+		ResourceBundle.Control control =
+			ResourceBundle.Control.getControl(ResourceBundle.Control.FORMAT_DEFAULT);
+		List<Locale> candidates = control.getCandidateLocales(bundleName, locale);
+		// load from base locale up to most specific locale
+		EcuCodeIndex result = null;
+		for (int i = candidates.size() - 1; i >= 0; i--)
+		{
+			String resource = control.toResourceName(control.toBundleName(bundleName,
+			                                                              candidates.get(i)),
+			                                         INDEX_EXTENSION);
+			EcuCodeIndex index = fromResource(loader, resource);
+			if (index != null)
+			{
+				index.parent = result;
+				result = index;
+			}
+			else if (result == null)
+			{
+				// no base index -> no indexes at all
+				break;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * load index from resource
+	 *
+	 * @param loader   class loader to load resource with
+	 * @param resource absolute resource name
+	 * @return index, or null if resource is not available or invalid
+	 */
+	private static EcuCodeIndex fromResource(ClassLoader loader, String resource)
+	{
+		EcuCodeIndex result = null;
+		InputStream inStr = loader.getResourceAsStream(resource);
+		if (inStr != null)
+		{
+			try
+			{
+				try
+				{
+					result = new EcuCodeIndex(readAll(inStr));
+				}
+				finally
+				{
+					inStr.close();
+				}
+			}
+			catch (IOException | IllegalArgumentException ex)
+			{
+				log.warning(resource + ": " + ex.getMessage());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * read all data from input stream
+	 */
+	private static byte[] readAll(InputStream inStr) throws IOException
+	{
+		ByteArrayOutputStream result = new ByteArrayOutputStream(Math.max(inStr.available(), 1024));
+		byte[] buffer = new byte[8192];
+		int len;
+		while ((len = inStr.read(buffer)) > 0)
+		{
+			result.write(buffer, 0, len);
+		}
+		return result.toByteArray();
+	}
+
+	/**
+	 * get description of numeric code
+	 * (from this index or its parent indexes)
+	 *
+	 * @param code numeric code
+	 * @return description, or null if code is unknown
+	 */
+	public String get(int code)
+	{
+		for (EcuCodeIndex index = this; index != null; index = index.parent)
+		{
+			int pos = Arrays.binarySearch(index.codes, code);
+			if (pos >= 0)
+			{
+				return index.description(pos);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return all descriptions of this index and its parent indexes
+	 * (descriptions of parents are overridden by more specific locales)
+	 */
+	public Map<Integer, String> getAll()
+	{
+		Map<Integer, String> result = parent != null
+		                              ? parent.getAll()
+		                              : new TreeMap<Integer, String>();
+		for (int i = 0; i < codes.length; i++)
+		{
+			result.put(codes[i], description(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @return number of codes within this index (w/o parent indexes)
+	 */
+	int size()
+	{
+		return codes.length;
+	}
+
+	/**
+	 * decode description at index position
+	 */
+	private String description(int pos)
+	{
+		try
+		{
+			return new String(pool, offsets[pos], offsets[pos + 1] - offsets[pos], "UTF-8");
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * convert code key of resource bundle into numeric code
+	 *
+	 * @param key    code key
+	 * @param format key format (FORMAT_PCODE or radix of numeric codes)
+	 * @return numeric code
+	 * @throws IllegalArgumentException if key is not a valid code of format
+	 */
+	static int parseCode(String key, String format)
+	{
+		int result;
+		String code;
+		try
+		{
+			if (FORMAT_PCODE.equals(format))
+			{
+				result = ObdCodeItem.getNumericCode(key);
+				code = ObdCodeItem.getPCode(result);
+			}
+			else
+			{
+				int radix = Integer.parseInt(format);
+				result = Integer.parseInt(key, radix);
+				code = Long.toString(result, radix);
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			throw new IllegalArgumentException("Invalid code: " + key);
+		}
+		// key has to be identical to code representation of code list
+		if (!code.equals(key))
+		{
+			throw new IllegalArgumentException("Invalid code: " + key);
+		}
+		return result;
+	}
+
+	/**
+	 * compile index from properties file
+	 *
+	 * @param inStr  properties stream (UTF-8)
+	 * @param format key format (FORMAT_PCODE or radix of numeric codes)
+	 * @return binary index data
+	 * @throws IOException on read errors
+	 */
+	static byte[] compile(InputStream inStr, String format) throws IOException
+	{
+		Properties properties = new Properties();
+		properties.load(new InputStreamReader(inStr, "UTF-8"));
+		TreeMap<Integer, String> descriptions = new TreeMap<>();
+		for (String key : properties.stringPropertyNames())
+		{
+			try
+			{
+				descriptions.put(parseCode(key, format), properties.getProperty(key));
+			}
+			catch (IllegalArgumentException ex)
+			{
+				log.warning(ex.getMessage());
+			}
+		}
+
+		ByteArrayOutputStream pool = new ByteArrayOutputStream();
+		List<Integer> offsets = new ArrayList<>();
+		for (String description : descriptions.values())
+		{
+			offsets.add(pool.size());
+			pool.write(description.getBytes("UTF-8"));
+		}
+		offsets.add(pool.size());
+
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(result);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(descriptions.size());
+		for (Integer code : descriptions.keySet())
+		{
+			out.writeInt(code);
+		}
+		for (Integer offset : offsets)
+		{
+			out.writeInt(offset);
+		}
+		pool.writeTo(out);
+		out.flush();
+		return result.toByteArray();
+	}
+
+	/**
+	 * Compile indexes from code list properties files (build step)
+	 * - index files are named as the properties files with extension .idx
+	 *
+	 * @param args key format (PCODE or radix), output directory, properties files
+	 * @throws IOException on read/write errors
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: EcuCodeIndex <PCODE|radix> <output dir> <codes.properties> ...");
+			System.exit(1);
+		}
+		File outDir = new File(args[1]);
+		if (!outDir.isDirectory() && !outDir.mkdirs())
+		{
+			throw new IOException("Unable to create " + outDir);
+		}
+		for (int i = 2; i < args.length; i++)
+		{
+			File srcFile = new File(args[i]);
+			String name = srcFile.getName();
+			int pos = name.lastIndexOf('.');
+			File idxFile = new File(outDir,
+			                        (pos > 0 ? name.substring(0, pos) : name) + "." + INDEX_EXTENSION);
+			byte[] index;
+			try (InputStream inStr = new FileInputStream(srcFile))
+			{
+				index = compile(inStr, args[0]);
+			}
+			try (OutputStream out = new FileOutputStream(idxFile))
+			{
+				out.write(index);
+			}
+		}
+	}
+}
@@ -21,13 +21,22 @@ package com.fr3ts0n.ecu;
 import com.fr3ts0n.common.UTF8Bundle;
 import com.fr3ts0n.ecu.prot.obd.Messages;
 
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.logging.Logger;
 
 /**
  * Vehicle fault code list
+ * <p>
+ * Code descriptions are loaded on first use, either from precompiled
+ * code indexes ({@link EcuCodeIndex}) of the current locale or - if no
+ * index is available - from the resource bundle.
+ * Code items are cached in a bounded cache, so repeated lookups of
+ * the same codes (e.g. for display) do not create new items.
  *
  * @author erwin
  */
@@ -35,8 +44,22 @@ public class EcuCodeList
 	implements Conversion
 {
 	private static final long serialVersionUID = 219865459629423028L;
-	private final transient ResourceBundle codes;
+	/** size of code item cache (power of 2) */
+	private static final int CACHE_SIZE = 256;
+	// the data logger
+	private static final Logger log = Logger.getLogger("data.cnv");
+
+	private final String bundleName;
+	private transient ResourceBundle codes;
+	private transient EcuCodeIndex index;
+	private transient boolean loaded;
 	private transient int radix = 10;
+	/** cached code items and their numeric codes */
+	private transient EcuCodeItem[] cache;
+	private transient int[] cacheCodes;
+	private transient String[] cacheTexts;
+	/** all known code descriptions */
+	private transient Set<String> values;
 
 	/**
 	 * construct a new code list
@@ -48,12 +71,13 @@ public class EcuCodeList
 
 	/**
 	 * Construct a new code list and initialize it with ressources files
+	 * (code descriptions are loaded on first use)
 	 *
 	 * @param resourceBundleName name of used resource bundle
 	 */
 	public EcuCodeList(String resourceBundleName)
 	{
-		codes = UTF8Bundle.getBundle(resourceBundleName);
+		bundleName = resourceBundleName;
 	}
 
 	/**
@@ -73,35 +97,133 @@ public class EcuCodeList
 		return(Long.toString(value.longValue(),radix));
 	}
 
-	public EcuCodeItem get(Number value)
+	/**
+	 * load code descriptions of current locale
+	 * - precompiled code index is preferred over resource bundle
+	 *
+	 * @return true if code descriptions are available
+	 */
+	private boolean load()
+	{
+		if (!loaded)
+		{
+			loaded = true;
+			cache = new EcuCodeItem[CACHE_SIZE];
+			cacheCodes = new int[CACHE_SIZE];
+			cacheTexts = new String[CACHE_SIZE];
+			index = EcuCodeIndex.forLocale(bundleName, Locale.getDefault());
+			if (index == null)
+			{
+				try
+				{
+					codes = UTF8Bundle.getBundle(bundleName);
+				}
+				catch (MissingResourceException e)
+				{
+					log.warning(e.getMessage());
+				}
+			}
+		}
+		return (index != null || codes != null);
+	}
+
+	/**
+	 * get code item of numeric code
+	 * <p>
+	 * Returned items are shared with other users of the code list
+	 * and must not be modified.
+	 *
+	 * @param value numeric code
+	 * @return code item, or null if no code descriptions are available
+	 */
+	public synchronized EcuCodeItem get(Number value)
+	{
+		if (!load())
+		{
+			return null;
+		}
+		int code = value.intValue();
+		if (value.longValue() != code)
+		{
+			// code exceeds cacheable range
+			return createItem(value);
+		}
+		int slot = getSlot(code);
+		EcuCodeItem result = cache[slot];
+		if (result == null || cacheCodes[slot] != code)
+		{
+			result = createItem(value);
+			cache[slot] = result;
+			cacheCodes[slot] = code;
+			cacheTexts[slot] = null;
+		}
+		return result;
+	}
+
+	/**
+	 * @return cache slot of numeric code
+	 */
+	private static int getSlot(int code)
 	{
-		EcuCodeItem result = null;
-		if (codes != null)
+		return (code ^ (code >>> 8)) & (CACHE_SIZE - 1);
+	}
+
+	/**
+	 * create code item of numeric code
+	 *
+	 * @param value numeric code
+	 * @return code item
+	 */
+	private EcuCodeItem createItem(Number value)
+	{
+		String key = getCode(value);
+		String description = null;
+		if (index != null)
+		{
+			description = index.get(value.intValue());
+		}
+		else
 		{
-			String key = getCode(value);
 			try
 			{
-				result = new EcuCodeItem(key, codes.getString(key));
-			} catch (MissingResourceException e)
+				description = codes.getString(key);
+			}
+			catch (MissingResourceException e)
 			{
-				result = new EcuCodeItem(key,
-				                         Messages.getString(
-					                         "customer.specific.trouble.code.see.manual"));
+				// handled below
 			}
 		}
-		return result;
+		if (description == null)
+		{
+			description = Messages.getString("customer.specific.trouble.code.see.manual");
+		}
+		return new EcuCodeItem(key, description);
 	}
 
 	/**
 	 * return all known values
 	 * @return all known ressource values
 	 */
-	public Set<String> values()
+	public synchronized Set<String> values()
 	{
-		Set<String> values = new HashSet<String>();
-		for( String key : codes.keySet())
+		if (values == null)
 		{
-			values.add(codes.getString(key));
+			Set<String> result = new HashSet<String>();
+			if (load())
+			{
+				if (index != null)
+				{
+					result.addAll(index.getAll().values());
+				}
+				else
+				{
+					for (String key : codes.keySet())
+					{
+						result.add(codes.getString(key));
+					}
+				}
+			}
+			values = Collections.unmodifiableSet(result);
 		}
 		return values;
 	}
@@ -132,8 +254,20 @@ public class EcuCodeList
 	}
 
 	@Override
-	public String physToPhysFmtString(Number value, String format)
+	public synchronized String physToPhysFmtString(Number value, String format)
 	{
-		return (get(value).toString());
+		EcuCodeItem item = get(value);
+		int code = value.intValue();
+		int slot = getSlot(code);
+		// text of cached (unmodified) item is cached as well
+		if (item == null || cache[slot] != item)
+		{
+			return String.valueOf(item);
+		}
+		if (cacheTexts[slot] == null)
+		{
+			cacheTexts[slot] = item.toString();
+		}
+		return cacheTexts[slot];
 	}
 }
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.HashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -36,27 +37,27 @@ public class EcuConversions extends HashMap<String, Conversion[]>
 	private static final long serialVersionUID = 273813879102783740L;
 
 	/** conversion type IDs from CSV file */
-	private static final String CNV_TYPE_LINEAR      = "LINEAR";
+	static final String CNV_TYPE_LINEAR      = "LINEAR";
 	private static final String CNV_TYPE_HASH        = "HASH";
 	private static final String CNV_TYPE_BITMAP      = "BITMAP";
 	private static final String CNV_TYPE_CODELIST    = "CODELIST";
 	private static final String CNV_TYPE_PCODELIST   = "PCODELIST";
-	private static final String CNV_TYPE_VAG         = "VAG";
+	static final String CNV_TYPE_VAG         = "VAG";
 	private static final String CNV_TYPE_INT         = "INTEGER";
 	private static final String CNV_TYPE_ASCII       = "ASCII";
 
 	/** CSV field positions */
-	private static final int FLD_NAME = 0;
-	private static final int FLD_TYPE = 1;
-	private static final int FLD_VARIANT = 2;
-	private static final int FLD_SYSTEM = 3;
-	private static final int FLD_FACTOR = 4;
-	private static final int FLD_DIVIDER = 5;
-	private static final int FLD_OFFSET = 6;
-	private static final int FLD_PHOFFSET = 7;
-	private static final int FLD_UNITS = 8;
+	static final int FLD_NAME = 0;
+	static final int FLD_TYPE = 1;
+	static final int FLD_VARIANT = 2;
+	static final int FLD_SYSTEM = 3;
+	static final int FLD_FACTOR = 4;
+	static final int FLD_DIVIDER = 5;
+	static final int FLD_OFFSET = 6;
+	static final int FLD_PHOFFSET = 7;
+	static final int FLD_UNITS = 8;
 	static final int FLD_DESCRIPTION = 9;
-	private static final int FLD_PARAMETERS = 10;
+	static final int FLD_PARAMETERS = 10;
 
 	// the data logger
 	private static final Logger log = Logger.getLogger("data.cnv");
@@ -89,12 +90,24 @@ public class EcuConversions extends HashMap<String, Conversion[]>
 		loadFromResource(resource);
 	}
 
+	/**
+	 * Create conversion list from precompiled data image
+	 *
+	 * @param image data image to be loaded
+	 */
+	EcuConversions(EcuDataImage image)
+	{
+		// add static conversions
+		put("DEFAULT", new Conversion[]{dfltCnv, dfltCnv});
+		// add conversions from image
+		image.loadConversions(this);
+	}
+
 	public void loadFromStream(InputStream inStr)
 	{
 		BufferedReader rdr;
 		String currLine;
 		String[] params;
-		Conversion[] currCnvSet;
 		Conversion newCnv;
 		int line = 0;
 
@@ -114,49 +127,18 @@ public class EcuConversions extends HashMap<String, Conversion[]>
 				currLine = currLine.replaceAll("\"", "");
 				// split CSV line into parameters
 				params = currLine.split("\t");
+				String parameters = (params.length > FLD_PARAMETERS)
+				                    ? params[FLD_PARAMETERS]
+				                    : null;
 				if (params[FLD_TYPE].equals(CNV_TYPE_LINEAR))
 				{
-					if(params.length > FLD_PARAMETERS)
-					{
-						// create linear conversion (w/ dynamic parameters)
-						newCnv = new LinearConversion(Integer.parseInt(params[FLD_FACTOR]),
-													  Integer.parseInt(params[FLD_DIVIDER]),
-													  Integer.parseInt(params[FLD_OFFSET]),
-													  Integer.parseInt(params[FLD_PHOFFSET]),
-													  params[FLD_UNITS],
-													  params[FLD_PARAMETERS]);
-					}
-					else
-					{
-						// create linear conversion (w/o dynamic parameter)
-						newCnv = new LinearConversion(Integer.parseInt(params[FLD_FACTOR]),
-													  Integer.parseInt(params[FLD_DIVIDER]),
-													  Integer.parseInt(params[FLD_OFFSET]),
-													  Integer.parseInt(params[FLD_PHOFFSET]),
-													  params[FLD_UNITS]);
-					}
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_HASH))
-				{
-					// create HashConversion based on CSV data
-					newCnv = new HashConversion( String.valueOf(params[FLD_PARAMETERS]).split(";") );
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_BITMAP))
-				{
-					// create BitmapConversion based on CSV parameters
-					newCnv = new BitmapConversion( String.valueOf(params[FLD_PARAMETERS]).split(";") );
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_CODELIST))
-				{
-					// create ECU code list based on ResourceBundle
-					codeList = new EcuCodeList( String.valueOf(params[FLD_PARAMETERS]));
-					newCnv = codeList;
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_PCODELIST))
-				{
-					// create OBD code list based on ResourceBundle
-					codeList = new ObdCodeList( String.valueOf(params[FLD_PARAMETERS]));
-					newCnv = codeList;
+					// create linear conversion
+					newCnv = createLinearConversion(Integer.parseInt(params[FLD_FACTOR]),
+					                                Integer.parseInt(params[FLD_DIVIDER]),
+					                                Integer.parseInt(params[FLD_OFFSET]),
+					                                Integer.parseInt(params[FLD_PHOFFSET]),
+					                                params[FLD_UNITS],
+					                                parameters);
 				}
 				else if (params[FLD_TYPE].equals(CNV_TYPE_VAG))
 				{
@@ -166,52 +148,135 @@ public class EcuConversions extends HashMap<String, Conversion[]>
 						Double.parseDouble(params[FLD_OFFSET]),
 						params[FLD_UNITS]);
 				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_ASCII))
-				{
-					newCnv = null;
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_INT))
-				{
-					newCnv = dfltCnv;
-				}
 				else
 				{
-					newCnv = dfltCnv;
+					newCnv = createConversion(params[FLD_TYPE], parameters);
 				}
+				addConversion(params[FLD_NAME], params[FLD_SYSTEM], newCnv);
+			}
+			rdr.close();
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
 
-				// insert fault code element
-				currCnvSet = get(params[FLD_NAME]);
-				// if this conversion does not exist yet ...
-				if (currCnvSet == null)
-				{
-					// create new set for metric and imperial
-					currCnvSet = new Conversion[EcuDataItem.SYSTEM_TYPES];
-					// and initialize both systems with this data
-					for (int i = 0; i < EcuDataItem.SYSTEM_TYPES; i++)
-					{
-						currCnvSet[i] = newCnv;
-						log.finer("+" + params[FLD_NAME] + "/" + params[FLD_SYSTEM] + " - " + String.valueOf(newCnv));
-					}
-				} else
+	/**
+	 * create linear conversion
+	 *
+	 * @param factor     conversion factor
+	 * @param divider    conversion divider
+	 * @param offset     raw value offset
+	 * @param phOffset   physical value offset
+	 * @param units      physical units
+	 * @param parameters mnemonic of dynamic factor item, or null if none
+	 * @return linear conversion
+	 */
+	static Conversion createLinearConversion(int factor,
+	                                         int divider,
+	                                         int offset,
+	                                         int phOffset,
+	                                         String units,
+	                                         String parameters)
+	{
+		return (parameters != null)
+		       // linear conversion (w/ dynamic parameters)
+		       ? new LinearConversion(factor, divider, offset, phOffset, units, parameters)
+		       // linear conversion (w/o dynamic parameter)
+		       : new LinearConversion(factor, divider, offset, phOffset, units);
+	}
+
+	/**
+	 * create non-linear conversion of given type
+	 *
+	 * @param type       conversion type ID
+	 * @param parameters conversion parameters
+	 * @return conversion, null for ASCII data
+	 */
+	static Conversion createConversion(String type, String parameters)
+	{
+		Conversion newCnv;
+		if (type.equals(CNV_TYPE_HASH))
+		{
+			// create HashConversion based on CSV data
+			newCnv = new HashConversion( String.valueOf(parameters).split(";") );
+		}
+		else if (type.equals(CNV_TYPE_BITMAP))
+		{
+			// create BitmapConversion based on CSV parameters
+			newCnv = new BitmapConversion( String.valueOf(parameters).split(";") );
+		}
+		else if (type.equals(CNV_TYPE_CODELIST))
+		{
+			// create ECU code list based on ResourceBundle
+			codeList = new EcuCodeList( String.valueOf(parameters));
+			newCnv = codeList;
+		}
+		else if (type.equals(CNV_TYPE_PCODELIST))
+		{
+			// create OBD code list based on ResourceBundle
+			codeList = new ObdCodeList( String.valueOf(parameters));
+			newCnv = codeList;
+		}
+		else if (type.equals(CNV_TYPE_ASCII))
+		{
+			newCnv = null;
+		}
+		else if (type.equals(CNV_TYPE_INT))
+		{
+			newCnv = dfltCnv;
+		}
+		else
+		{
+			newCnv = dfltCnv;
+		}
+		return newCnv;
+	}
+
+	/**
+	 * add conversion for a conversion system
+	 * - a new conversion is initially used for all systems
+	 * - a known conversion is only updated for the matching system
+	 *
+	 * @param name   conversion name
+	 * @param system conversion system name
+	 * @param newCnv conversion
+	 */
+	void addConversion(String name, String system, Conversion newCnv)
+	{
+		// insert fault code element
+		Conversion[] currCnvSet = get(name);
+		// if this conversion does not exist yet ...
+		if (currCnvSet == null)
+		{
+			// create new set for metric and imperial
+			currCnvSet = new Conversion[EcuDataItem.SYSTEM_TYPES];
+			// and initialize both systems with this data
+			for (int i = 0; i < EcuDataItem.SYSTEM_TYPES; i++)
+			{
+				currCnvSet[i] = newCnv;
+			}
+			if (log.isLoggable(Level.FINER))
+			{
+				log.finer("+" + name + "/" + system + " - " + newCnv);
+			}
+		} else
+		{
+			// if it is known already, then only update the matching system
+			for (int i = 0; i < EcuDataItem.SYSTEM_TYPES; i++)
+			{
+				if (EcuDataItem.cnvSystems[i].equals(system))
 				{
-					// if it is known already, then only update the matching system
-					for (int i = 0; i < EcuDataItem.SYSTEM_TYPES; i++)
+					currCnvSet[i] = newCnv;
+					if (log.isLoggable(Level.FINER))
 					{
-						if (EcuDataItem.cnvSystems[i].equals(params[FLD_SYSTEM]))
-						{
-							currCnvSet[i] = newCnv;
-							log.finer("+" + params[FLD_NAME] + "/" + params[FLD_SYSTEM] + " - " + newCnv.toString());
-						}
+						log.finer("+" + name + "/" + system + " - " + newCnv);
 					}
 				}
-				// (re-)enter the updated conversion set into map
-				put(params[FLD_NAME], currCnvSet);
 			}
-			rdr.close();
-		} catch (IOException e)
-		{
-			e.printStackTrace();
 		}
+		// (re-)enter the updated conversion set into map
+		put(name, currCnvSet);
 	}
 
 	/**
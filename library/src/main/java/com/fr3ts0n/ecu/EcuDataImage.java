@@ -0,0 +1,516 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.ecu.prot.obd.Messages;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Precompiled binary image of PID and conversion definitions
+ * <p>
+ * The image is compiled from the CSV files of data items and conversions
+ * at build time (see {@link #main(String[])}) and loaded with a single read
+ * at runtime, so no CSV parsing is required on startup.
+ * <pre>
+ * Layout (big endian):
+ *   header:      magic, version, #strings, #conversions, #items (int)
+ *   string pool: #bytes (short), UTF-8 bytes - for each string
+ *   conversions: fixed width records of CNV_RECORD_SIZE bytes
+ *   data items:  fixed width records of ITEM_RECORD_SIZE bytes
+ * </pre>
+ * Strings are referenced by their index within the string pool,
+ * NO_STRING represents a missing (null) string.
+ * The CSV files stay supported for user specific overrides.
+ *
+ * @author erwin
+ */
+public final class EcuDataImage
+{
+	/** image identification "OBDI" */
+	static final int MAGIC = 0x4F424449;
+	/** image format version */
+	static final int VERSION = 1;
+	/** file extension of images */
+	static final String IMAGE_EXTENSION = ".bin";
+	/** string index of missing string */
+	static final int NO_STRING = 0xFFFF;
+
+	/** conversion record: name, type, system, units, parameters, factor, divider, offset, phOffset */
+	static final int CNV_RECORD_SIZE = 5 * 2 + 4 * 4;
+	/** item record: services, pid, ofs, len, bitOfs, bitLen, mask, formula, format,
+	 * min, max, update, mnemonic, label */
+	static final int ITEM_RECORD_SIZE = 4 + 3 * 2 + 2 + 8 + 2 * 2 + 2 * 4 + 4 + 2 * 2;
+
+	// the data logger
+	private static final Logger log = Logger.getLogger("data.items");
+
+	/** image data */
+	private final ByteBuffer data;
+	/** string pool */
+	private final String[] strings;
+	/** position of conversion records */
+	private final int cnvPos;
+	/** number of conversion records */
+	private final int numConversions;
+	/** position of data item records */
+	private final int itemPos;
+	/** number of data item records */
+	private final int numItems;
+
+	/**
+	 * Create image from binary data
+	 *
+	 * @param buffer binary image data
+	 * @throws IllegalArgumentException if data is not a valid image
+	 */
+	EcuDataImage(byte[] buffer)
+	{
+		try
+		{
+			data = ByteBuffer.wrap(buffer);
+			if (data.getInt() != MAGIC || data.getInt() != VERSION)
+			{
+				throw new IllegalArgumentException("Invalid image format");
+			}
+			strings = new String[data.getInt()];
+			numConversions = data.getInt();
+			numItems = data.getInt();
+			// read string pool
+			for (int i = 0; i < strings.length; i++)
+			{
+				int length = data.getShort() & 0xFFFF;
+				strings[i] = new String(buffer, data.position(), length, "UTF-8");
+				data.position(data.position() + length);
+			}
+			cnvPos = data.position();
+			itemPos = cnvPos + numConversions * CNV_RECORD_SIZE;
+			if (itemPos + numItems * ITEM_RECORD_SIZE != buffer.length)
+			{
+				throw new IllegalArgumentException("Invalid image size");
+			}
+		}
+		catch (RuntimeException | UnsupportedEncodingException ex)
+		{
+			throw new IllegalArgumentException("Invalid image: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * get name of image for given PID CSV resource
+	 *
+	 * @param pidResource PID resource (csv)
+	 * @return image resource name
+	 */
+	static String getImageName(String pidResource)
+	{
+		int pos = pidResource.lastIndexOf('.');
+		return (pos > 0 ? pidResource.substring(0, pos) : pidResource) + IMAGE_EXTENSION;
+	}
+
+	/**
+	 * load image from resource
+	 *
+	 * @param cls      class to resolve resource name
+	 * @param resource image resource name
+	 * @return image, or null if resource is not available or invalid
+	 */
+	static EcuDataImage fromResource(Class<?> cls, String resource)
+	{
+		EcuDataImage result = null;
+		URL url = cls.getResource(resource);
+		if (url != null)
+		{
+			try
+			{
+				InputStream inStr = url.openStream();
+				try
+				{
+					result = new EcuDataImage(readAll(inStr));
+				}
+				finally
+				{
+					inStr.close();
+				}
+			}
+			catch (IOException | IllegalArgumentException ex)
+			{
+				log.warning(resource + ": " + ex.getMessage());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * read all data from input stream
+	 */
+	private static byte[] readAll(InputStream inStr) throws IOException
+	{
+		ByteArrayOutputStream result = new ByteArrayOutputStream(Math.max(inStr.available(), 1024));
+		byte[] buffer = new byte[8192];
+		int len;
+		while ((len = inStr.read(buffer)) > 0)
+		{
+			result.write(buffer, 0, len);
+		}
+		return result.toByteArray();
+	}
+
+	/**
+	 * get string from pool
+	 */
+	private String string(int pos)
+	{
+		int idx = data.getShort(pos) & 0xFFFF;
+		return (idx == NO_STRING) ? null : strings[idx];
+	}
+
+	/**
+	 * load all conversions of image into conversion list
+	 *
+	 * @param conversions conversion list to be filled
+	 */
+	void loadConversions(EcuConversions conversions)
+	{
+		for (int i = 0; i < numConversions; i++)
+		{
+			int pos = cnvPos + i * CNV_RECORD_SIZE;
+			String type = string(pos + 2);
+			String units = string(pos + 6);
+			String parameters = string(pos + 8);
+			Conversion newCnv = EcuConversions.CNV_TYPE_LINEAR.equals(type)
+			                    ? EcuConversions.createLinearConversion(data.getInt(pos + 10),
+			                                                            data.getInt(pos + 14),
+			                                                            data.getInt(pos + 18),
+			                                                            data.getInt(pos + 22),
+			                                                            units,
+			                                                            parameters)
+			                    : EcuConversions.createConversion(type, parameters);
+			conversions.addConversion(string(pos), string(pos + 4), newCnv);
+		}
+	}
+
+	/**
+	 * load all data items of image into data item list
+	 * (conversions have to be loaded before)
+	 *
+	 * @param items data item list to be filled
+	 */
+	void loadItems(EcuDataItems items)
+	{
+		for (int i = 0; i < numItems; i++)
+		{
+			int pos = itemPos + i * ITEM_RECORD_SIZE;
+			String formula = string(pos + 20);
+			Conversion[] currCnvSet = EcuDataItems.cnv.get(formula);
+			if (currCnvSet == null)
+			{
+				log.warning("Conversion not found: " + formula); //$NON-NLS-1$
+			}
+			float minVal = data.getFloat(pos + 24);
+			float maxVal = data.getFloat(pos + 28);
+			String mnemonic = string(pos + 36);
+			EcuDataItem newItm =
+				new EcuDataItem(data.getShort(pos + 4) & 0xFFFF,
+				                data.getShort(pos + 6) & 0xFFFF,
+				                data.getShort(pos + 8) & 0xFFFF,
+				                data.get(pos + 10) & 0xFF,
+				                data.get(pos + 11) & 0xFF,
+				                data.getLong(pos + 12),
+				                currCnvSet,
+				                string(pos + 22),
+				                Float.isNaN(minVal) ? null : Float.valueOf(minVal),
+				                Float.isNaN(maxVal) ? null : Float.valueOf(maxVal),
+				                data.getInt(pos + 32),
+				                Messages.getString(mnemonic, string(pos + 38)),
+				                mnemonic);
+			// enter data item for all services of service mask
+			int svcMask = data.getInt(pos);
+			int[] services = new int[Integer.bitCount(svcMask)];
+			for (int svc = 0, n = 0; n < services.length; svc++)
+			{
+				if ((svcMask & (1 << svc)) != 0)
+				{
+					services[n++] = svc;
+				}
+			}
+			items.addDataItem(services, newItm, mnemonic);
+		}
+	}
+
+	/**
+	 * Compiler of binary images from CSV files
+	 */
+	static final class Compiler
+	{
+		/** string pool */
+		private final List<String> strings = new ArrayList<>();
+		/** string pool index */
+		private final HashMap<String, Integer> stringIds = new HashMap<>();
+		/** conversion records */
+		private final ByteArrayOutputStream conversions = new ByteArrayOutputStream();
+		private final DataOutputStream cnvOut = new DataOutputStream(conversions);
+		private int numConversions = 0;
+		/** data item records */
+		private final ByteArrayOutputStream items = new ByteArrayOutputStream();
+		private final DataOutputStream itemOut = new DataOutputStream(items);
+		private int numItems = 0;
+
+		/**
+		 * get pool index of string
+		 */
+		private int stringId(String value)
+		{
+			if (value == null)
+			{
+				return NO_STRING;
+			}
+			Integer result = stringIds.get(value);
+			if (result == null)
+			{
+				result = strings.size();
+				if (result >= NO_STRING)
+				{
+					throw new IllegalArgumentException("String pool overflow");
+				}
+				strings.add(value);
+				stringIds.put(value, result);
+			}
+			return result;
+		}
+
+		/**
+		 * read CSV lines of file, skipping the header line
+		 * (quotes removed, split into fields)
+		 *
+		 * @param skipComments skip lines starting with '#'
+		 */
+		private static List<String[]> readCsv(InputStream inStr, boolean skipComments)
+			throws IOException
+		{
+			List<String[]> result = new ArrayList<>();
+			BufferedReader rdr = new BufferedReader(new InputStreamReader(inStr, "UTF-8"));
+			String currLine;
+			int line = 0;
+			while ((currLine = rdr.readLine()) != null)
+			{
+				if (++line == 1 || (skipComments && currLine.startsWith("#")))
+				{
+					continue;
+				}
+				result.add(currLine.replaceAll("\"", "").split("\t"));
+			}
+			return result;
+		}
+
+		/**
+		 * parse optional integer field (0 if empty)
+		 */
+		private static int optionalInt(String[] params, int field)
+		{
+			return (params.length > field && params[field].length() > 0)
+			       ? Integer.parseInt(params[field])
+			       : 0;
+		}
+
+		/**
+		 * add conversions from CSV file
+		 *
+		 * @param inStr conversion CSV stream
+		 */
+		void addConversions(InputStream inStr) throws IOException
+		{
+			for (String[] params : readCsv(inStr, false))
+			{
+				String type = params[EcuConversions.FLD_TYPE];
+				if (type.equals(EcuConversions.CNV_TYPE_VAG))
+				{
+					throw new IllegalArgumentException("Unsupported conversion type: " + type);
+				}
+				boolean linear = type.equals(EcuConversions.CNV_TYPE_LINEAR);
+				cnvOut.writeShort(stringId(params[EcuConversions.FLD_NAME]));
+				cnvOut.writeShort(stringId(type));
+				cnvOut.writeShort(stringId(params[EcuConversions.FLD_SYSTEM]));
+				cnvOut.writeShort(stringId(linear ? params[EcuConversions.FLD_UNITS] : null));
+				cnvOut.writeShort(stringId(params.length > EcuConversions.FLD_PARAMETERS
+				                           ? params[EcuConversions.FLD_PARAMETERS]
+				                           : null));
+				cnvOut.writeInt(optionalInt(params, EcuConversions.FLD_FACTOR));
+				cnvOut.writeInt(optionalInt(params, EcuConversions.FLD_DIVIDER));
+				cnvOut.writeInt(optionalInt(params, EcuConversions.FLD_OFFSET));
+				cnvOut.writeInt(optionalInt(params, EcuConversions.FLD_PHOFFSET));
+				numConversions++;
+			}
+		}
+
+		/**
+		 * add data items from CSV file
+		 *
+		 * @param inStr data item CSV stream
+		 */
+		void addItems(InputStream inStr) throws IOException
+		{
+			for (String[] params : readCsv(inStr, true))
+			{
+				int svcMask = 0;
+				for (String service : params[EcuDataItems.FLD.SVC.ordinal()].split(","))
+				{
+					int svcId = Integer.decode(service);
+					if (svcId < 0 || svcId >= Integer.SIZE)
+					{
+						throw new IllegalArgumentException("Unsupported service: " + service);
+					}
+					svcMask |= 1 << svcId;
+				}
+				float minVal = Float.NaN;
+				float maxVal = Float.NaN;
+				long updateVal = 0;
+				try { minVal = Float.parseFloat(params[EcuDataItems.FLD.MIN.ordinal()]); }
+				catch (NumberFormatException ex) { /* ignore */ }
+				try { maxVal = Float.parseFloat(params[EcuDataItems.FLD.MAX.ordinal()]); }
+				catch (NumberFormatException ex) { /* ignore */ }
+				try { updateVal = Long.parseLong(params[EcuDataItems.FLD.UPDATE_MIN.ordinal()]); }
+				catch (NumberFormatException ex) { updateVal = 0; }
+
+				itemOut.writeInt(svcMask);
+				itemOut.writeShort(unsigned16(Integer.decode(params[EcuDataItems.FLD.PID.ordinal()])));
+				itemOut.writeShort(unsigned16(Integer.parseInt(params[EcuDataItems.FLD.OFS.ordinal()])));
+				itemOut.writeShort(unsigned16(Integer.parseInt(params[EcuDataItems.FLD.LEN.ordinal()])));
+				itemOut.writeByte(unsigned8(Integer.parseInt(params[EcuDataItems.FLD.BIT_OFS.ordinal()])));
+				itemOut.writeByte(unsigned8(Integer.parseInt(params[EcuDataItems.FLD.BIT_LEN.ordinal()])));
+				itemOut.writeLong(Long.decode(params[EcuDataItems.FLD.BIT_MASK.ordinal()]));
+				itemOut.writeShort(stringId(params[EcuDataItems.FLD.FORMULA.ordinal()]));
+				itemOut.writeShort(stringId(params[EcuDataItems.FLD.FORMAT.ordinal()]));
+				itemOut.writeFloat(minVal);
+				itemOut.writeFloat(maxVal);
+				itemOut.writeInt((int) Math.min(updateVal, Integer.MAX_VALUE));
+				itemOut.writeShort(stringId(params[EcuDataItems.FLD.MNEMONIC.ordinal()]));
+				itemOut.writeShort(stringId(params[EcuDataItems.FLD.LABEL.ordinal()]));
+				numItems++;
+			}
+		}
+
+		private static int unsigned16(int value)
+		{
+			if ((value & ~0xFFFF) != 0)
+			{
+				throw new IllegalArgumentException("Value out of range: " + value);
+			}
+			return value;
+		}
+
+		private static int unsigned8(int value)
+		{
+			if ((value & ~0xFF) != 0)
+			{
+				throw new IllegalArgumentException("Value out of range: " + value);
+			}
+			return value;
+		}
+
+		/**
+		 * write compiled image
+		 *
+		 * @param outStr stream to write image to
+		 */
+		void write(OutputStream outStr) throws IOException
+		{
+			DataOutputStream out = new DataOutputStream(outStr);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(strings.size());
+			out.writeInt(numConversions);
+			out.writeInt(numItems);
+			for (String value : strings)
+			{
+				byte[] bytes = value.getBytes("UTF-8");
+				out.writeShort(unsigned16(bytes.length));
+				out.write(bytes);
+			}
+			conversions.writeTo(out);
+			items.writeTo(out);
+			out.flush();
+		}
+	}
+
+	/**
+	 * compile image from CSV streams
+	 *
+	 * @param pidCsv        data item CSV stream
+	 * @param conversionCsv conversion CSV stream
+	 * @return binary image data
+	 * @throws IOException on read errors
+	 */
+	static byte[] compile(InputStream pidCsv, InputStream conversionCsv) throws IOException
+	{
+		Compiler compiler = new Compiler();
+		compiler.addConversions(conversionCsv);
+		compiler.addItems(pidCsv);
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		compiler.write(result);
+		return result.toByteArray();
+	}
+
+	/**
+	 * Compile binary image from CSV files (build step)
+	 *
+	 * @param args pid CSV file, conversion CSV file, image file
+	 * @throws IOException on read/write errors
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: EcuDataImage <pids.csv> <conversions.csv> <image>");
+			System.exit(1);
+		}
+		byte[] image;
+		try (InputStream pidCsv = new FileInputStream(args[0]);
+		     InputStream cnvCsv = new FileInputStream(args[1]))
+		{
+			image = compile(pidCsv, cnvCsv);
+		}
+		File imageFile = new File(args[2]);
+		File dir = imageFile.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+		{
+			throw new IOException("Unable to create " + dir);
+		}
+		try (OutputStream out = new FileOutputStream(imageFile))
+		{
+			out.write(image);
+		}
+	}
+}
@@ -21,6 +21,7 @@ package com.fr3ts0n.ecu;
 import com.fr3ts0n.prot.ProtUtils;
 import com.fr3ts0n.prot.ProtoHeader;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -56,7 +57,9 @@ public class EcuDataItem
 	private String fmt;                 ///< Format for text output
 	public String label;        ///< text label
 	private String mnemonic;     ///< unique textual mnemonic
-	public EcuDataPv pv;        ///< the process variable for displaying
+	private volatile EcuDataPv pv;      ///< the process variable for displaying (created on first use)
+	private Number minLimit;            ///< specified MIN value for process variable
+	private Number maxLimit;            ///< specified MAX value for process variable
 	private int currErrorCount = 0;     ///< current number of consecutive conversion errors
 	public long updatePeriod_ms = 0; ///< Minimum update period in ms
 
@@ -119,22 +122,66 @@ public class EcuDataItem
 		updatePeriod_ms = minUpdatePeriod;
 		label = labelText;
 		mnemonic = _mnemonic;
-		pv = new EcuDataPv();
-
-		// initialize new PID with current data
-		pv.put(EcuDataPv.FID_PID, Integer.valueOf(pid));
-		pv.put(EcuDataPv.FID_OFS, Integer.valueOf(ofs));
-		pv.put(EcuDataPv.FID_BIT_OFS, Integer.valueOf(bitOffset));
-		pv.put(EcuDataPv.FID_DESCRIPT, label);
-		pv.put(EcuDataPv.FID_MNEMONIC, mnemonic);
-		pv.put(EcuDataPv.FID_UNITS,
-		       (cnv != null && cnv[cnvSystem] != null)
-		       ? cnv[cnvSystem].getUnits()
-		       : "");
-		pv.put(EcuDataPv.FID_VALUE, Float.valueOf(0));
-		pv.put(EcuDataPv.FID_FORMAT, fmt);
-		pv.put(EcuDataPv.FID_CNVID, cnv);
-		updateLimits(minValue, maxValue);
+		minLimit = minValue;
+		maxLimit = maxValue;
+	}
+
+	/**
+	 * get the process variable of this data item
+	 * - the process variable is created on first use, so only items which
+	 *   are actually used carry a process variable
+	 *
+	 * @return the process variable
+	 */
+	public EcuDataPv getPv()
+	{
+		EcuDataPv result = pv;
+		if (result == null)
+		{
+			synchronized (this)
+			{
+				if (pv == null)
+				{
+					pv = createPv();
+				}
+				result = pv;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * set the process variable of this data item
+	 *
+	 * @param newPv the process variable
+	 */
+	public void setPv(EcuDataPv newPv)
+	{
+		pv = newPv;
+	}
+
+	/**
+	 * create new process variable, initialized with current data
+	 *
+	 * @return the process variable
+	 */
+	private EcuDataPv createPv()
+	{
+		EcuDataPv result = new EcuDataPv();
+		result.put(EcuDataPv.FID_PID, Integer.valueOf(pid));
+		result.put(EcuDataPv.FID_OFS, Integer.valueOf(ofs));
+		result.put(EcuDataPv.FID_BIT_OFS, Integer.valueOf(bitOffset));
+		result.put(EcuDataPv.FID_DESCRIPT, label);
+		result.put(EcuDataPv.FID_MNEMONIC, mnemonic);
+		result.put(EcuDataPv.FID_UNITS,
+		           (cnv != null && cnv[cnvSystem] != null)
+		           ? cnv[cnvSystem].getUnits()
+		           : "");
+		result.put(EcuDataPv.FID_VALUE, Float.valueOf(0));
+		result.put(EcuDataPv.FID_FORMAT, fmt);
+		result.put(EcuDataPv.FID_CNVID, cnv);
+		putLimits(result, minLimit, maxLimit);
+		return result;
 	}
 
 	/**
@@ -150,7 +197,26 @@ public class EcuDataItem
 	 * @param minValue	Specific MIN value or NULL if not specified
 	 * @param maxValue	Specific MAX value or NULL if not specified
 	 */
-	protected void updateLimits(Number minValue, Number maxValue)
+	protected synchronized void updateLimits(Number minValue, Number maxValue)
+	{
+		if (pv == null)
+		{
+			// limits are set when process variable gets created
+			minLimit = minValue;
+			maxLimit = maxValue;
+			return;
+		}
+		putLimits(pv, minValue, maxValue);
+	}
+
+	/**
+	 * Set MIN/MAX limit values of process variable
+	 *
+	 * @param target	process variable to be updated
+	 * @param minValue	Specific MIN value or NULL if not specified
+	 * @param maxValue	Specific MAX value or NULL if not specified
+	 */
+	private void putLimits(EcuDataPv target, Number minValue, Number maxValue)
 	{
 		// set specified values
 		Number minVal = minValue;
@@ -163,8 +229,8 @@ public class EcuDataItem
 			if(maxVal == null) maxVal = physMax();
 		}
 		// Update limits ...
-		pv.put(EcuDataPv.FID_MIN, minVal);
-		pv.put(EcuDataPv.FID_MAX, maxVal);
+		target.put(EcuDataPv.FID_MIN, minVal);
+		target.put(EcuDataPv.FID_MAX, maxVal);
 	}
 
 	/**
@@ -235,6 +301,32 @@ public class EcuDataItem
 		return physVal(rawMax());
 	}
 
+	/**
+	 * Return number of data bytes expected from vehicle
+	 *
+	 * @return number of data bytes, 0 if variable length
+	 */
+	public int getNumBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * @return bit offset of measurement within extracted value
+	 */
+	int getBitOffset()
+	{
+		return bitOffset;
+	}
+
+	/**
+	 * @return mask of relevant bits (bit length mask and specific bit mask)
+	 */
+	long getRawMask()
+	{
+		return ((1L << numBits) - 1) & bitMask;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -293,24 +385,79 @@ public class EcuDataItem
 	 * @param buffer communication buffer content
 	 * @return Next expected update period
 	 */
-	@SuppressWarnings("DefaultLocale")
 	public long updatePvFomBuffer(char[] buffer)
+	{
+		return updatePv(physFromBuffer(buffer));
+	}
+
+	/**
+	 * Update process var from value which was decoded by a compiled decoder
+	 *
+	 * @param result physical value
+	 * @return Next expected update period
+	 * @see PidDecoder
+	 */
+	long updatePvFromValue(float result)
+	{
+		// decrement error counter
+		currErrorCount = Math.max(0, currErrorCount -1);
+		// numeric fast path, boxed value is only created on demand
+		EcuDataPv currPv = getPv();
+		currPv.setValue(result);
+		currPv.updateUnits();
+		if (log.isLoggable(Level.FINE))
+		{
+			logValue();
+		}
+		return updatePeriod_ms;
+	}
+
+	/**
+	 * Update process var from raw value which was extracted by a compiled decoder
+	 *
+	 * @param value raw value (shifted and masked)
+	 * @return Next expected update period
+	 * @see PidDecoder
+	 */
+	long updatePvFromRaw(long value)
+	{
+		Object result;
+		try
+		{
+			result = physVal(value);
+			// decrement error counter
+			currErrorCount = Math.max(0, currErrorCount -1);
+		} catch(Exception ex)
+		{
+			result = "n/a";
+			log.warning(String.format("%s: %s - [%d]", toString(), ex.getMessage(), value));
+			// increment error counter
+			currErrorCount = Math.min(MAX_ERROR_COUNT, currErrorCount +1);
+		}
+		return updatePv(result);
+	}
+
+	/**
+	 * Update process var with physical value
+	 *
+	 * @param result physical value
+	 * @return Next expected update period
+	 */
+	private long updatePv(Object result)
 	{
 		// process data item
 		try
 		{
-			// get physical value
-			Object result = physFromBuffer(buffer);
 			// if consecutive conversion error counter not exceeded
 			if(currErrorCount < MAX_ERROR_COUNT)
 			{
-				pv.put(EcuDataPv.FID_VALUE, result);
-				pv.put(EcuDataPv.FID_UNITS, pv.getUnits());
-				log.fine(String.format("%02X %-30s %16s %s",
-										pid,
-										label,
-										pv.get(EcuDataPv.FID_VALUE),
-										pv.get(EcuDataPv.FID_UNITS)));
+				EcuDataPv currPv = getPv();
+				currPv.setValue(result);
+				currPv.updateUnits();
+				if (log.isLoggable(Level.FINE))
+				{
+					logValue();
+				}
 			}
 			else
 			{
@@ -329,6 +476,19 @@ public class EcuDataItem
 		return updatePeriod_ms;
 	}
 
+	/**
+	 * log current value of process var
+	 */
+	@SuppressWarnings("DefaultLocale")
+	private void logValue()
+	{
+		log.fine(String.format("%02X %-30s %16s %s",
+		                       pid,
+		                       label,
+		                       getPv().get(EcuDataPv.FID_VALUE),
+		                       getPv().get(EcuDataPv.FID_UNITS)));
+	}
+
 	@Override
 	public Object clone()
 	{
@@ -336,7 +496,12 @@ public class EcuDataItem
 		try
 		{
 			result = (EcuDataItem) super.clone();
-			result.pv = (EcuDataPv) pv.clone();
+			// a clone w/o process variable creates its own on first use
+			EcuDataPv currPv = pv;
+			if (currPv != null)
+			{
+				result.pv = (EcuDataPv) currPv.clone();
+			}
 		} catch (CloneNotSupportedException ex)
 		{
 			ex.printStackTrace();
@@ -25,7 +25,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -40,6 +42,12 @@ import java.util.logging.Logger;
  *         |- ... -- ...
  * Service ...
  * </pre>
+ * Data items of services and PIDs 0-255 are additionally held in an
+ * immutable dense array index [service][pid], which is built after loading,
+ * so lookups on the response path are plain array loads.
+ * The definitions are shared by all protocol sessions and are read-only
+ * after loading (changes are only possible by loading further definitions,
+ * e.g. extension files).
  *
  * @author erwin
  */
@@ -79,6 +87,12 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	private static final Logger log = Logger.getLogger("data.items");
 	// map of MNEMONIC data item
 	public static final HashMap<String, EcuDataItem> byMnemonic = new HashMap<>();
+	// dense index of data items [service][pid] (replaced on changes)
+	private volatile EcuDataItem[][][] index = new EcuDataItem[256][][];
+	// compiled decoders, indexed by service and PID
+	private transient PidDecoder[][] decoders;
+	// definitions are being loaded (changes are allowed)
+	private transient volatile boolean loading = true;
 
 	/**
 	 * Create data items from default CSV pidResource files
@@ -91,6 +105,16 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 		     "com.fr3ts0n.ecu.prot.obd.res.messages");
 	}
 
+	/**
+	 * Create empty data items, which are loaded afterwards
+	 *
+	 * @param resourceBundleName resource bundle of item labels
+	 */
+	EcuDataItems(String resourceBundleName)
+	{
+		Messages.init(resourceBundleName);
+	}
+
 	/**
 	 * Create data items from CSV pidResource file
 	 *
@@ -100,8 +124,30 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	public EcuDataItems(String pidResource, String conversionResource, String resourceBundleName)
 	{
 		Messages.init(resourceBundleName);
-		cnv = new EcuConversions(conversionResource);
-		loadFromResource(pidResource);
+		// precompiled image of PID resource is preferred over CSV files
+		EcuDataImage image = EcuDataImage.fromResource(getClass(),
+		                                               EcuDataImage.getImageName(pidResource));
+		if (image != null)
+		{
+			loadFromImage(image);
+		}
+		else
+		{
+			cnv = new EcuConversions(conversionResource);
+			loadFromResource(pidResource);
+		}
+	}
+
+	/**
+	 * read conversions and data items from precompiled image
+	 *
+	 * @param image the data image
+	 */
+	void loadFromImage(EcuDataImage image)
+	{
+		cnv = new EcuConversions(image);
+		image.loadItems(this);
+		itemsLoaded();
 	}
 
 	/**
@@ -134,6 +180,7 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 		Conversion[] currCnvSet;
 		EcuDataItem newItm;
 		int line = 0;
+		loading = true;
 		try
 		{
 			rdr = new BufferedReader(new InputStreamReader(inStr));
@@ -169,7 +216,7 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 
 				String label = Messages.getString(params[FLD.MNEMONIC.ordinal()],
 				                                  params[FLD.LABEL.ordinal()]);
-				// create linear conversion
+				// create data item
 				newItm = new EcuDataItem(Integer.decode(params[FLD.PID.ordinal()]),
 										 Integer.parseInt(params[FLD.OFS.ordinal()]),
 										 Integer.parseInt(params[FLD.LEN.ordinal()]),
@@ -184,22 +231,143 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 										 label,
 					                     params[FLD.MNEMONIC.ordinal()]);
 
-				// Add item to mnemonic map
-				byMnemonic.put(params[FLD.MNEMONIC.ordinal()], newItm);
-
 				// enter data item for all specified services
 				String[] services = params[FLD.SVC.ordinal()].split(","); //$NON-NLS-1$
-				for (String service : services)
+				int[] svcIds = new int[services.length];
+				for (int i = 0; i < services.length; i++)
 				{
-					int svcId = Integer.decode(service);
-					appendItemToService(svcId, newItm);
+					svcIds[i] = Integer.decode(services[i]);
 				}
+				addDataItem(svcIds, newItm, params[FLD.MNEMONIC.ordinal()]);
 			}
 			rdr.close();
 		} catch (IOException e)
 		{
 			e.printStackTrace();
 		}
+		itemsLoaded();
+	}
+
+	/**
+	 * add loaded data item to mnemonic map and all specified services
+	 * (w/o index update)
+	 *
+	 * @param services services to add item to
+	 * @param newItem  EcuDataItem to be added
+	 * @param mnemonic mnemonic of data item
+	 */
+	void addDataItem(int[] services, EcuDataItem newItem, String mnemonic)
+	{
+		// Add item to mnemonic map
+		byMnemonic.put(mnemonic, newItem);
+		for (int service : services)
+		{
+			addItem(service, newItem);
+		}
+	}
+
+	/**
+	 * index all loaded items
+	 * - decoders are compiled on first use
+	 */
+	synchronized void itemsLoaded()
+	{
+		buildIndex();
+		decoders = null;
+		loading = false;
+	}
+
+	/**
+	 * ensure definitions are changed only while they are loaded
+	 *
+	 * @throws UnsupportedOperationException if definitions are loaded already
+	 */
+	private void checkLoading()
+	{
+		if (!loading)
+		{
+			throw new UnsupportedOperationException("Data item definitions are read-only");
+		}
+	}
+
+	@Override
+	public HashMap<Integer, Vector<EcuDataItem>> put(Integer key, HashMap<Integer, Vector<EcuDataItem>> value)
+	{
+		checkLoading();
+		return super.put(key, value);
+	}
+
+	@Override
+	public void putAll(Map<? extends Integer, ? extends HashMap<Integer, Vector<EcuDataItem>>> map)
+	{
+		checkLoading();
+		super.putAll(map);
+	}
+
+	@Override
+	public HashMap<Integer, Vector<EcuDataItem>> remove(Object key)
+	{
+		checkLoading();
+		return super.remove(key);
+	}
+
+	@Override
+	public void clear()
+	{
+		checkLoading();
+		super.clear();
+	}
+
+	/**
+	 * get compiled decoder for all data items of service and PID
+	 * - decoders are (re)compiled on first use and after changes of
+	 *   data items or conversion system
+	 *
+	 * @param service service of data items
+	 * @param pid     pid of data items
+	 * @return decoder - or null if no data items exist
+	 */
+	public PidDecoder getDecoder(int service, int pid)
+	{
+		if (((service | pid) & ~0xFF) != 0)
+		{
+			return null;
+		}
+		PidDecoder[][] svcDecoders = decoders;
+		PidDecoder[] pidDecoders = (svcDecoders != null) ? svcDecoders[service] : null;
+		PidDecoder result = (pidDecoders != null) ? pidDecoders[pid] : null;
+		if (result == null || !result.isValid())
+		{
+			result = compileDecoder(service, pid);
+		}
+		return result;
+	}
+
+	/**
+	 * compile decoder for all data items of service and PID
+	 *
+	 * @param service service of data items
+	 * @param pid     pid of data items
+	 * @return decoder - or null if no data items exist
+	 */
+	private synchronized PidDecoder compileDecoder(int service, int pid)
+	{
+		EcuDataItem[] currItms = getPidItems(service, pid);
+		if (currItms == null)
+		{
+			return null;
+		}
+		if (decoders == null)
+		{
+			decoders = new PidDecoder[256][];
+		}
+		if (decoders[service] == null)
+		{
+			decoders[service] = new PidDecoder[256];
+		}
+		PidDecoder result = new PidDecoder(currItms);
+		decoders[service][pid] = result;
+		return result;
 	}
 
 	/**
@@ -220,6 +388,77 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 		return (currVec);
 	}
 
+	/**
+	 * get all data items for selected service and PID from dense index
+	 * (the returned array must not be modified)
+	 *
+	 * @param service service to search data items for
+	 * @param pid     pid to search data items for
+	 * @return data items - or null if no data items exist
+	 */
+	public EcuDataItem[] getPidItems(int service, int pid)
+	{
+		if (((service | pid) & ~0xFF) != 0)
+		{
+			// outside of dense index
+			Vector<EcuDataItem> currVec = getPidDataItems(service, pid);
+			return (currVec != null) ? currVec.toArray(new EcuDataItem[0]) : null;
+		}
+		EcuDataItem[][] svcItems = index[service];
+		return (svcItems != null) ? svcItems[pid] : null;
+	}
+
+	/**
+	 * build dense index of all data items
+	 */
+	private synchronized void buildIndex()
+	{
+		EcuDataItem[][][] newIndex = new EcuDataItem[256][][];
+		for (Integer service : keySet())
+		{
+			for (Integer pid : get(service).keySet())
+			{
+				if (((service | pid) & ~0xFF) == 0)
+				{
+					if (newIndex[service] == null)
+					{
+						newIndex[service] = new EcuDataItem[256][];
+					}
+					newIndex[service][pid] = getPidDataItems(service, pid).toArray(new EcuDataItem[0]);
+				}
+			}
+		}
+		index = newIndex;
+	}
+
+	/**
+	 * get length of PID data within a response message
+	 * - the length is derived from the highest data byte which is used
+	 *   by any of the data items of this PID
+	 *
+	 * @param service service of PID
+	 * @param pid     pid to get data length for
+	 * @return number of data bytes - or 0 if unknown or variable length
+	 */
+	public int getPidDataLength(int service, int pid)
+	{
+		int result = 0;
+		EcuDataItem[] currItms = getPidItems(service, pid);
+		if (currItms != null)
+		{
+			for (EcuDataItem currItm : currItms)
+			{
+				// variable length item -> length is unknown
+				if (currItm.getNumBytes() == 0)
+				{
+					return 0;
+				}
+				result = Math.max(result, currItm.ofs + currItm.getNumBytes());
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * get all data items for selected service
 	 *
@@ -262,12 +501,12 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	}
 
 	/**
-	 * append new data item to specified service
+	 * add new data item to specified service (w/o index update)
 	 *
 	 * @param service service to add item to
 	 * @param newItem EcuDataItem to be added
 	 */
-	public void appendItemToService(int service, EcuDataItem newItem)
+	private void addItem(int service, EcuDataItem newItem)
 	{
 		// check if service existes already
 		HashMap<Integer, Vector<EcuDataItem>> currSvc = get(service);
@@ -293,7 +532,27 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 		// update map of services
 		put(service, currSvc);
 		// debug message of new enty
-		log.finer("+" + service + "/" + String.format("0x%02X", newItem.pid) + " - " + currVec); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		if (log.isLoggable(Level.FINER))
+		{
+			log.finer("+" + service + "/" + String.format("0x%02X", newItem.pid) + " - " + currVec); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+	}
+
+	/**
+	 * Update all EcuDataItems with new data from ASCII hex payload
+	 * (compiled decoder w/o conversion into binary data)
+	 *
+	 * @param service service of current data
+	 * @param pid     pid of current data
+	 * @param hex     buffer containing ASCII hex data
+	 * @param pos     start of PID data within buffer
+	 * @param length  number of hex digits of PID data
+	 * @return Next expected update interval
+	 */
+	public long updateDataItems(int service, int pid, char[] hex, int pos, int length)
+	{
+		PidDecoder decoder = getDecoder(service, pid);
+		return (decoder != null) ? decoder.update(decoder.items, hex, pos, length) : 0;
 	}
 
 	/**
@@ -308,7 +567,7 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	{
 		long nextUpdate = 0;
 
-		Vector<EcuDataItem> currItms = getPidDataItems(service, pid);
+		EcuDataItem[] currItms = getPidItems(service, pid);
 		if(currItms != null)
 		{
 			for (EcuDataItem currItm : currItms)
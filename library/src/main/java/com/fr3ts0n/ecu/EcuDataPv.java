@@ -19,9 +19,20 @@
 package com.fr3ts0n.ecu;
 
 import com.fr3ts0n.pvs.IndexedProcessVar;
+import com.fr3ts0n.pvs.PvChangeEvent;
+import com.fr3ts0n.pvs.PvChangeListener;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Process variable which contains a single OBD data item
+ * <p>
+ * The current numeric value is kept in a primitive slot together with
+ * a sequence number and sample time. If no change listeners are registered,
+ * numeric updates only set the primitive slot and the map entry
+ * {@link #FID_VALUE} is materialised when it is read.
  *
  * @author erwin
  */
@@ -45,6 +56,7 @@ public class EcuDataPv extends IndexedProcessVar
 	public static final String FID_MNEMONIC = "MNEMONIC";
 	public static final String FID_COLOR = "COLOR";
 	public static final String FID_UPDT_PERIOD = "PERIOD";
+	public static final String FID_ECU = "ECU";
 
 	public static final String[] FIELDS =
 		{
@@ -57,6 +69,17 @@ public class EcuDataPv extends IndexedProcessVar
 
 	private transient Object renderingComponent;
 
+	/** current numeric value, NaN until first numeric sample */
+	private double value = Double.NaN;
+	/** number of value samples */
+	private long sequence;
+	/** time of last value sample [ms] */
+	private long sampleTime;
+	/** map entry FID_VALUE is not yet updated with current value */
+	private boolean valuePending;
+	/** conversion system the units entry was set for, -1 = unknown */
+	private int unitsSystem = -1;
+
 	/**
 	 * Creates a new instance of EcuDataPv
 	 */
@@ -101,6 +124,179 @@ public class EcuDataPv extends IndexedProcessVar
 		return result;
 	}
 
+	/**
+	 * Set new numeric value sample
+	 * - map entry FID_VALUE is only updated (and notified) immediately,
+	 *   if there are any change listeners
+	 *
+	 * @param newValue new physical value
+	 */
+	public synchronized void setValue(float newValue)
+	{
+		if (isEventsAllowed())
+		{
+			put(FIELDS[FID_VALUE], Float.valueOf(newValue));
+		}
+		else
+		{
+			value = newValue;
+			valuePending = true;
+		}
+		sampleTime = System.currentTimeMillis();
+		sequence++;
+	}
+
+	/**
+	 * Set new value sample of any type (numeric or text)
+	 *
+	 * @param newValue new physical value
+	 */
+	public synchronized void setValue(Object newValue)
+	{
+		put(FIELDS[FID_VALUE], newValue);
+		sampleTime = System.currentTimeMillis();
+		sequence++;
+	}
+
+	/**
+	 * @return current numeric value, NaN if there is no (numeric) value yet
+	 */
+	public synchronized double getDoubleValue()
+	{
+		return value;
+	}
+
+	/**
+	 * @return number of value samples set for this PV
+	 */
+	public synchronized long getSequence()
+	{
+		return sequence;
+	}
+
+	/**
+	 * @return time of last value sample [ms], 0 if no sample was set
+	 */
+	public synchronized long getSampleTime()
+	{
+		return sampleTime;
+	}
+
+	/**
+	 * update units entry if the conversion system has changed since last update
+	 */
+	public synchronized void updateUnits()
+	{
+		if (unitsSystem != EcuDataItem.cnvSystem)
+		{
+			unitsSystem = EcuDataItem.cnvSystem;
+			put(FIELDS[FID_UNITS], getUnits());
+		}
+	}
+
+	/**
+	 * update map entry FID_VALUE with pending numeric value
+	 */
+	private void materialiseValue()
+	{
+		if (valuePending)
+		{
+			valuePending = false;
+			super.put(FIELDS[FID_VALUE], Float.valueOf((float) value), PvChangeEvent.PV_NOACTION);
+		}
+	}
+
+	/**
+	 * keep primitive value in sync with any map update of FID_VALUE
+	 */
+	@Override
+	public synchronized Object put(Object key, Object newValue, int action)
+	{
+		if (FIELDS[FID_VALUE].equals(key))
+		{
+			syncValue(newValue);
+		}
+		return super.put(key, newValue, action);
+	}
+
+	/**
+	 * keep primitive value in sync with bulk map updates
+	 * (HashMap.putAll does not use put)
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public synchronized void putAll(Map map, int action, boolean allowChildEvents)
+	{
+		super.putAll(map, action, allowChildEvents);
+		if (map.containsKey(FIELDS[FID_VALUE]))
+		{
+			syncValue(super.get(FIELDS[FID_VALUE]));
+		}
+	}
+
+	/**
+	 * set primitive value from new map entry FID_VALUE
+	 *
+	 * @param newValue new value of map entry FID_VALUE
+	 */
+	private void syncValue(Object newValue)
+	{
+		valuePending = false;
+		value = (newValue instanceof Number)
+		        ? ((Number) newValue).doubleValue()
+		        : Double.NaN;
+	}
+
+	@Override
+	public synchronized Object get(Object key)
+	{
+		if (valuePending && FIELDS[FID_VALUE].equals(key))
+		{
+			materialiseValue();
+		}
+		return super.get(key);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public synchronized Set entrySet()
+	{
+		materialiseValue();
+		return super.entrySet();
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public synchronized Collection values()
+	{
+		materialiseValue();
+		return super.values();
+	}
+
+	@Override
+	public synchronized Object clone()
+	{
+		materialiseValue();
+		return super.clone();
+	}
+
+	@Override
+	public synchronized void addPvChangeListener(PvChangeListener l, int eventMask)
+	{
+		// listeners shall see the current value in map
+		materialiseValue();
+		super.addPvChangeListener(l, eventMask);
+	}
+
+	/**
+	 * materialise pending value before serialisation
+	 */
+	private synchronized Object writeReplace()
+	{
+		materialiseValue();
+		return this;
+	}
+
 	public Object getRenderingComponent()
 	{
 		return renderingComponent;
@@ -113,6 +309,10 @@ public class EcuDataPv extends IndexedProcessVar
 
 	public String toString()
 	{
-		return (String.format("%02X.%d.%d", get(FID_PID), get(FID_OFS), get(FID_BIT_OFS)));
+		// PVs of a specific ECU are prefixed with the ECU address
+		Object ecu = get(FID_ECU);
+		return (ecu != null
+		        ? String.format("%X:%02X.%d.%d", ecu, get(FID_PID), get(FID_OFS), get(FID_BIT_OFS))
+		        : String.format("%02X.%d.%d", get(FID_PID), get(FID_OFS), get(FID_BIT_OFS)));
 	}
 }
@@ -102,6 +102,40 @@ public class LinearConversion extends NumericConversion
 		this.limits = limits;
 	}
 
+	/**
+	 * Is conversion static, so it may be compiled into a decoder?
+	 *
+	 * @return true if conversion has no dynamic factor and no limits
+	 */
+	boolean isStatic()
+	{
+		return factMnemonic == null && limits == null;
+	}
+
+	/** @return conversion factor */
+	int getFactor()
+	{
+		return factor;
+	}
+
+	/** @return conversion divider */
+	int getDivider()
+	{
+		return divider;
+	}
+
+	/** @return offset added to raw value before conversion */
+	int getOffset()
+	{
+		return offset;
+	}
+
+	/** @return physical offset added after conversion */
+	int getOffsetPhys()
+	{
+		return offsetPhys;
+	}
+
 	/**
 	 * Dynamic update of conversion factor from other measurement value
 	 *
@@ -118,7 +152,7 @@ public class LinearConversion extends NumericConversion
 			if (newFactItm != null)
 			{
 				// Get value of dynamic conversion factor
-				Number factVal = (Number)newFactItm.pv.get(EcuDataPv.FID_VALUE);
+				Number factVal = (Number)newFactItm.getPv().get(EcuDataPv.FID_VALUE);
 				// If there is a valid value, update factor with dynamic factor
 				if (    factVal != null                 // Factor defined
                      && factVal.intValue() > 0          // and specified ...
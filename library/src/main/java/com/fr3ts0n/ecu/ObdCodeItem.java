@@ -18,8 +18,6 @@
 
 package com.fr3ts0n.ecu;
 
-import com.fr3ts0n.prot.ProtoHeader;
-
 /**
  * Definition of a single OBD failure code
  *
@@ -35,18 +33,8 @@ public class ObdCodeItem extends EcuCodeItem
 	/** code types */
 	private static final String codeTypes = "PCBU";
 
-	private static final int ID_CODE_TYPE = 0;
-	private static final int ID_CODE_VALUE = 1;
-
-	/**
-	 * List of telegram parameters in order of appearance
-	 */
-	private static final int[][] TC_PARAMETERS =
-	/*  START,  LEN,     PARAM-TYPE     // REMARKS */
-    /* ------------------------------------------- */
-		{{0, 1, ProtoHeader.PT_ALPHA},   // ID_CODE_TYPE
-			{1, 4, ProtoHeader.PT_HEX},     // ID_CODE_VALUE
-		};
+	/** hex digits of code value */
+	private static final char[] hexDigits = "0123456789ABCDEF".toCharArray();
 
 	/** Creates a new instance of ObdCodeItem */
 	public ObdCodeItem()
@@ -104,11 +92,15 @@ public class ObdCodeItem extends EcuCodeItem
 	 */
 	static String getPCode(int numericCode)
 	{
+		// code type followed by 4 hex digits of code value (zero padded)
 		char[] buffer = new char[5];
-		int codeType = numericCode >> 14;
+		buffer[0] = codeTypes.charAt((numericCode >> 14) & 0x03);
 		int codeVal = numericCode & 0x3FFF;
-		ProtoHeader.setParamValue(ID_CODE_TYPE, TC_PARAMETERS, buffer, codeTypes.substring(codeType, codeType + 1));
-		ProtoHeader.setParamValue(ID_CODE_VALUE, TC_PARAMETERS, buffer, Integer.valueOf(codeVal));
+		for (int i = 4; i > 0; i--)
+		{
+			buffer[i] = hexDigits[codeVal & 0x0F];
+			codeVal >>= 4;
+		}
 		return (new String(buffer));
 	}
 }
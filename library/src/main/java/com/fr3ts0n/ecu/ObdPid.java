@@ -1,12 +1,11 @@
 package com.fr3ts0n.ecu;
 
-import java.util.Comparator;
-
 /**
  * OBD PID definition
  * - Allow prioritization of PID requests by providing:
  *   - timestamp (ms) of next expected request
- *   - sort algorithm by request timestamp for PID Collections
+ *     (maintained by {@link PidScheduler})
+ * - Provide request statistics (requested vs. achieved update rate)
  */
 public class ObdPid
     extends Number
@@ -15,6 +14,21 @@ public class ObdPid
     private final int pid;
     /** Timestamp (system ms) for next expected data request */
     private long nextRequest_ms = 0;
+    /** Update period [ms] requested by the PID data items */
+    private long updatePeriod_ms = 0;
+    /** Number of requests sent for this PID */
+    private int numRequests = 0;
+    /** Number of responses received for this PID */
+    private int numResponses = 0;
+    /** Timestamp (system ms) of last response */
+    private long lastResponse_ms = 0;
+    /** Averaged period [ms] between responses */
+    private double avgPeriod_ms = 0;
+
+    /** Position within scheduler heap (-1 if not scheduled) */
+    int heapIndex = -1;
+    /** Scheduling sequence number to keep order of PIDs with same request time */
+    long sequence = 0;
 
     public ObdPid(int pidCode)
     {
@@ -47,32 +61,87 @@ public class ObdPid
     }
 
     /**
-     * Set timestamp of next expected PID request
-     * @param _nextRequest Timestamp [ms] of next expected request
+     * Get timestamp of next expected PID request
+     * @return Timestamp of next expected PID request
      */
-    public void setNextRequest(long _nextRequest)
+    public long getNextRequest()
     {
-        nextRequest_ms = _nextRequest;
+        return nextRequest_ms;
     }
 
     /**
-     * Get timestamp of next expected PID request
-     * @return Timestamp of next expected PID request
+     * Get update period requested by the PID data items
+     * @return requested update period [ms], 0 for fastest possible update
      */
-    public long getNextRequest()
+    public long getUpdatePeriod()
     {
-        return nextRequest_ms;
+        return updatePeriod_ms;
+    }
+
+    /**
+     * Get number of requests sent for this PID
+     * @return number of requests
+     */
+    public int getNumRequests()
+    {
+        return numRequests;
+    }
+
+    /**
+     * Get number of responses received for this PID
+     * @return number of responses
+     */
+    public int getNumResponses()
+    {
+        return numResponses;
+    }
+
+    /**
+     * Get averaged period between two responses for this PID
+     * @return achieved update period [ms], 0 if not known yet
+     */
+    public long getAchievedPeriod()
+    {
+        return Math.round(avgPeriod_ms);
+    }
+
+    /**
+     * Get averaged update rate achieved for this PID
+     * @return achieved update rate [1/s], 0 if not known yet
+     */
+    public double getAchievedRate()
+    {
+        return avgPeriod_ms > 0 ? 1000.0 / avgPeriod_ms : 0;
     }
 
     /**
-     * Comparator to allow list / vector sorting by next request
+     * Record request of this PID
+     * @param time_ms Timestamp [ms] of request
      */
-    public static Comparator<ObdPid> requestSorter = new Comparator<ObdPid>()
+    void requested(long time_ms)
     {
-        @Override
-        public int compare(ObdPid arg0, ObdPid arg1)
+        nextRequest_ms = time_ms;
+        numRequests++;
+    }
+
+    /**
+     * Record response for this PID
+     * @param time_ms Timestamp [ms] of response
+     * @param updatePeriod Update period [ms] requested by the PID data items
+     */
+    void responded(long time_ms, long updatePeriod)
+    {
+        if (numResponses > 0)
         {
-            return Long.compare(arg0.nextRequest_ms, arg1.nextRequest_ms);
+            long period = time_ms - lastResponse_ms;
+            // exponential moving average over approx. 8 responses
+            avgPeriod_ms = (avgPeriod_ms == 0)
+                           ? period
+                           : avgPeriod_ms + (period - avgPeriod_ms) / 8;
         }
-    };
+        numResponses++;
+        lastResponse_ms = time_ms;
+        updatePeriod_ms = updatePeriod;
+        nextRequest_ms = time_ms + updatePeriod;
+    }
 }
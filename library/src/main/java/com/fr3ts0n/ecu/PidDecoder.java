@@ -0,0 +1,294 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+/**
+ * Compiled decoder program for all data items of a single service/PID
+ * <p>
+ * The program is a flat table of primitive instructions (one per data item),
+ * which is executed directly on the ASCII hex payload of a response:
+ * <ul>
+ * <li>LUT - 1 byte items with static linear conversion, physical value
+ * is looked up in a 256 entry table</li>
+ * <li>LINEAR - items with static linear conversion,
+ * raw value is extracted, shifted, masked and converted with int parameters</li>
+ * <li>CONVERSION - other numeric items, raw value is extracted and
+ * converted with the item's conversion</li>
+ * <li>BYTES - string and variable length items, which are updated from
+ * binary data with {@link EcuDataItem#updatePvFomBuffer(char[])}</li>
+ * </ul>
+ * Results are identical to {@link EcuDataItem#updatePvFomBuffer(char[])}.
+ * A program is only valid for the conversion system it was compiled for.
+ */
+public final class PidDecoder
+{
+	/** instruction types */
+	static final int OP_LUT = 0;
+	static final int OP_LINEAR = 1;
+	static final int OP_CONVERSION = 2;
+	static final int OP_BYTES = 3;
+
+	/** values of hex digits, -1 for invalid characters */
+	private static final byte[] HEX_DIGITS = new byte[128];
+
+	static
+	{
+		for (int i = 0; i < HEX_DIGITS.length; i++)
+		{
+			HEX_DIGITS[i] = (byte) Character.digit(i, 16);
+		}
+	}
+
+	/** data items the program was compiled from */
+	final EcuDataItem[] items;
+	/** conversion system the program was compiled for */
+	private final int system;
+	/** number of data bytes required by all numeric items */
+	private final int dataLength;
+	/** program contains items which need binary data */
+	private final boolean needsBytes;
+
+	/** instruction table (index = data item) */
+	private final int[] op;
+	private final int[] ofs;
+	private final int[] len;
+	private final int[] shift;
+	private final long[] mask;
+	private final int[] factor;
+	private final int[] divider;
+	private final int[] offset;
+	private final int[] offsetPhys;
+	private final float[][] lut;
+
+	/**
+	 * compile decoder program for data items of a service/PID
+	 *
+	 * @param items data items of service/PID
+	 */
+	public PidDecoder(EcuDataItem[] items)
+	{
+		int numItems = items.length;
+		this.items = items;
+		system = EcuDataItem.cnvSystem;
+		op = new int[numItems];
+		ofs = new int[numItems];
+		len = new int[numItems];
+		shift = new int[numItems];
+		mask = new long[numItems];
+		factor = new int[numItems];
+		divider = new int[numItems];
+		offset = new int[numItems];
+		offsetPhys = new int[numItems];
+		lut = new float[numItems][];
+
+		int maxLength = 0;
+		boolean bytesRequired = false;
+		for (int i = 0; i < numItems; i++)
+		{
+			EcuDataItem item = items[i];
+			Conversion conversion = (item.cnv != null) ? item.cnv[system] : null;
+			ofs[i] = item.ofs;
+			len[i] = item.getNumBytes();
+			shift[i] = item.getBitOffset();
+			mask[i] = item.getRawMask();
+
+			if (conversion == null || len[i] == 0 || len[i] > 4)
+			{
+				// string or variable length item
+				op[i] = OP_BYTES;
+				bytesRequired = true;
+				continue;
+			}
+			maxLength = Math.max(maxLength, ofs[i] + len[i]);
+			if (conversion instanceof LinearConversion
+			    && ((LinearConversion) conversion).isStatic())
+			{
+				LinearConversion lin = (LinearConversion) conversion;
+				factor[i] = lin.getFactor();
+				divider[i] = lin.getDivider();
+				offset[i] = lin.getOffset();
+				offsetPhys[i] = lin.getOffsetPhys();
+				op[i] = OP_LINEAR;
+				if (len[i] == 1)
+				{
+					lut[i] = new float[256];
+					for (int raw = 0; raw < 256; raw++)
+					{
+						lut[i][raw] = linear(i, ((long) raw >> shift[i]) & mask[i]);
+					}
+					op[i] = OP_LUT;
+				}
+			}
+			else
+			{
+				op[i] = OP_CONVERSION;
+			}
+		}
+		dataLength = maxLength;
+		needsBytes = bytesRequired;
+	}
+
+	/**
+	 * @return true if program is valid for current conversion system
+	 */
+	public boolean isValid()
+	{
+		return system == EcuDataItem.cnvSystem;
+	}
+
+	/**
+	 * Update data items from ASCII hex payload
+	 *
+	 * @param itemList data items to be updated
+	 *                 (same definitions as the program was compiled from)
+	 * @param hex      buffer containing the ASCII hex payload
+	 * @param pos      start of PID data within buffer
+	 * @param length   number of hex digits of PID data
+	 * @return max. update period of updated items [ms]
+	 */
+	public long update(EcuDataItem[] itemList, char[] hex, int pos, int length)
+	{
+		long nextUpdate = 0;
+		int numItems = op.length;
+		// unexpected items, truncated data or invalid digits -> item's own decoding
+		if (itemList.length != numItems
+		    || (length % 2) != 0
+		    || 2 * dataLength > length
+		    || !isHex(hex, pos, 2 * dataLength))
+		{
+			char[] bytes = toBytes(hex, pos, length);
+			for (EcuDataItem item : itemList)
+			{
+				nextUpdate = Math.max(nextUpdate, item.updatePvFomBuffer(bytes));
+			}
+			return nextUpdate;
+		}
+
+		char[] bytes = needsBytes ? toBytes(hex, pos, length) : null;
+		for (int i = 0; i < numItems; i++)
+		{
+			EcuDataItem item = itemList[i];
+			long itemUpdate;
+			switch (op[i])
+			{
+				case OP_LUT:
+					itemUpdate = item.updatePvFromValue(lut[i][rawByte(hex, pos + 2 * ofs[i])]);
+					break;
+
+				case OP_LINEAR:
+					itemUpdate = item.updatePvFromValue(linear(i, raw(i, hex, pos)));
+					break;
+
+				case OP_CONVERSION:
+					itemUpdate = item.updatePvFromRaw(raw(i, hex, pos));
+					break;
+
+				case OP_BYTES:
+				default:
+					itemUpdate = item.updatePvFomBuffer(bytes);
+					break;
+			}
+			nextUpdate = Math.max(nextUpdate, itemUpdate);
+		}
+		return nextUpdate;
+	}
+
+	/**
+	 * extract raw value of item from hex payload
+	 * (int accumulation, shift and masks as in EcuDataItem)
+	 */
+	private long raw(int i, char[] hex, int pos)
+	{
+		int acc = 0;
+		int start = pos + 2 * ofs[i];
+		for (int n = 0; n < len[i]; n++)
+		{
+			acc = (acc << 8) | rawByte(hex, start + 2 * n);
+		}
+		long value = acc;
+		return (value >> shift[i]) & mask[i];
+	}
+
+	/**
+	 * static linear conversion of raw value as in LinearConversion
+	 */
+	private float linear(int i, long value)
+	{
+		return ((float) (value + offset[i]) * factor[i] / divider[i] + offsetPhys[i]);
+	}
+
+	/**
+	 * value of two (valid) hex digits
+	 */
+	private static int rawByte(char[] hex, int pos)
+	{
+		return (HEX_DIGITS[hex[pos]] << 4) | HEX_DIGITS[hex[pos + 1]];
+	}
+
+	/**
+	 * check if buffer section contains valid hex digits only
+	 */
+	private static boolean isHex(char[] hex, int pos, int length)
+	{
+		for (int i = pos; i < pos + length; i++)
+		{
+			if (hex[i] >= HEX_DIGITS.length || HEX_DIGITS[hex[i]] < 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * get value of two hex digits within buffer
+	 *
+	 * @param hex buffer containing hex digits
+	 * @param pos position of first digit
+	 * @return byte value
+	 * @throws NumberFormatException if characters are no hex digits
+	 */
+	public static int parseHexByte(char[] hex, int pos)
+	{
+		if (pos + 2 > hex.length || !isHex(hex, pos, 2))
+		{
+			throw new NumberFormatException("Invalid hex byte at " + pos);
+		}
+		return rawByte(hex, pos);
+	}
+
+	/**
+	 * convert hex digits into binary data
+	 *
+	 * @param hex buffer containing hex digits
+	 * @param pos start of hex digits
+	 * @param length number of hex digits
+	 * @return binary data
+	 * @throws NumberFormatException if characters are no hex digits
+	 */
+	private static char[] toBytes(char[] hex, int pos, int length)
+	{
+		char[] result = new char[length / 2];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = (char) parseHexByte(hex, pos + 2 * i);
+		}
+		return result;
+	}
+}
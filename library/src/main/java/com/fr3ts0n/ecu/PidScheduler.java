@@ -0,0 +1,363 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import java.util.BitSet;
+import java.util.Vector;
+
+/**
+ * Deadline scheduler for cyclic PID requests
+ * - PIDs are kept in a binary min-heap ordered by timestamp of next request,
+ *   so selecting and re-scheduling a PID is O(log n) instead of sorting
+ *   the complete PID list on every request
+ * - PIDs with same request timestamp are served in order of scheduling
+ * - Scheduling may be limited to a set of fixed PIDs
+ */
+public class PidScheduler
+{
+    /** max. number of PIDs (PID codes 0x00 - 0xFF) */
+    private static final int MAX_PIDS = 0x100;
+
+    /** all known PIDs, indexed by PID code */
+    private final ObdPid[] pids = new ObdPid[MAX_PIDS];
+    /** fixed PIDs to limit scheduling to (empty = all known PIDs) */
+    private final BitSet fixedPids = new BitSet(MAX_PIDS);
+    /** heap of scheduled PIDs, ordered by next request */
+    private final ObdPid[] heap = new ObdPid[MAX_PIDS];
+    /** number of scheduled PIDs */
+    private int size = 0;
+    /** scheduling sequence counter */
+    private long sequence = 0;
+
+    /**
+     * Remove all PIDs and fixed PIDs
+     */
+    public synchronized void clear()
+    {
+        for (int i = 0; i < MAX_PIDS; i++)
+        {
+            if (pids[i] != null)
+            {
+                pids[i].heapIndex = -1;
+                pids[i] = null;
+            }
+            heap[i] = null;
+        }
+        fixedPids.clear();
+        size = 0;
+    }
+
+    /**
+     * Add PID to list of known PIDs and schedule it for immediate request
+     * @param pidCode PID code to add
+     * @return PID entry
+     */
+    public synchronized ObdPid add(int pidCode)
+    {
+        ObdPid pid = pids[pidCode];
+        if (pid == null)
+        {
+            pid = new ObdPid(pidCode);
+            pids[pidCode] = pid;
+            pid.sequence = sequence++;
+            if (fixedPids.isEmpty())
+            {
+                insert(pid);
+            }
+        }
+        return pid;
+    }
+
+    /**
+     * Get PID entry for specified PID code
+     * @param pidCode PID code
+     * @return PID entry, null if PID is not known
+     */
+    public synchronized ObdPid get(int pidCode)
+    {
+        return (pidCode >= 0 && pidCode < MAX_PIDS) ? pids[pidCode] : null;
+    }
+
+    /**
+     * Get all known PIDs in ascending order of PID codes
+     * @return list of known PIDs
+     */
+    public synchronized Vector<ObdPid> getPids()
+    {
+        Vector<ObdPid> result = new Vector<ObdPid>();
+        for (ObdPid pid : pids)
+        {
+            if (pid != null)
+            {
+                result.add(pid);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get number of scheduled PIDs
+     * @return number of scheduled PIDs
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Limit scheduling to fixed PIDs for faster data update
+     * @param pidCodes PID codes to be added to fixed PIDs
+     */
+    public synchronized void setFixedPids(int[] pidCodes)
+    {
+        for (int pidCode : pidCodes)
+        {
+            if (get(pidCode) != null)
+            {
+                fixedPids.set(pidCode);
+            }
+        }
+        rebuild();
+    }
+
+    /**
+     * Reset fixed PIDs to schedule all known PIDs again
+     */
+    public synchronized void resetFixedPids()
+    {
+        fixedPids.clear();
+        rebuild();
+    }
+
+    /**
+     * Get PID with earliest request timestamp without removing it
+     * @return PID with earliest request timestamp, null if no PIDs are scheduled
+     */
+    public synchronized ObdPid peek()
+    {
+        return heap[0];
+    }
+
+    /**
+     * Remove PID with earliest request timestamp from schedule
+     * (PID is re-scheduled by {@link #requested(ObdPid, long)} or {@link #restore(ObdPid)})
+     * @return PID with earliest request timestamp, null if no PIDs are scheduled
+     */
+    public synchronized ObdPid remove()
+    {
+        ObdPid result = heap[0];
+        if (result != null)
+        {
+            removeAt(0);
+        }
+        return result;
+    }
+
+    /**
+     * Get next PID to be requested and re-schedule it as requested
+     * @param time_ms current timestamp [ms]
+     * @return next PID to be requested, null if no PIDs are scheduled
+     */
+    public synchronized ObdPid next(long time_ms)
+    {
+        ObdPid result = remove();
+        if (result != null)
+        {
+            requested(result, time_ms);
+        }
+        return result;
+    }
+
+    /**
+     * Re-schedule removed PID as requested at specified time
+     * @param pid PID which was requested
+     * @param time_ms Timestamp [ms] of request
+     */
+    public synchronized void requested(ObdPid pid, long time_ms)
+    {
+        pid.requested(time_ms);
+        reschedule(pid);
+    }
+
+    /**
+     * Re-schedule removed PID without changing its request timestamp
+     * @param pid PID to be re-scheduled
+     */
+    public synchronized void restore(ObdPid pid)
+    {
+        if (pid.heapIndex < 0 && isScheduled(pid))
+        {
+            insert(pid);
+        }
+    }
+
+    /**
+     * Re-schedule PID based on received response
+     * @param pidCode PID code of response
+     * @param time_ms Timestamp [ms] of response
+     * @param updatePeriod Update period [ms] requested by the PID data items
+     */
+    public synchronized void responded(int pidCode, long time_ms, long updatePeriod)
+    {
+        ObdPid pid = get(pidCode);
+        if (pid != null)
+        {
+            pid.responded(time_ms, updatePeriod);
+            reschedule(pid);
+        }
+    }
+
+    /**
+     * Get idle time until next PID is due for request
+     * @param time_ms current timestamp [ms]
+     * @return time [ms] until next PID is due, 0 if a PID is due already
+     *         or no PIDs are scheduled
+     */
+    public synchronized long getIdleTime(long time_ms)
+    {
+        return (heap[0] != null) ? Math.max(0, heap[0].getNextRequest() - time_ms) : 0;
+    }
+
+    /**
+     * Is PID to be scheduled based on fixed PID selection?
+     */
+    private boolean isScheduled(ObdPid pid)
+    {
+        return pids[pid.intValue()] == pid
+               && (fixedPids.isEmpty() || fixedPids.get(pid.intValue()));
+    }
+
+    /**
+     * update position of PID after change of request timestamp
+     */
+    private void reschedule(ObdPid pid)
+    {
+        pid.sequence = sequence++;
+        if (pid.heapIndex >= 0)
+        {
+            siftDown(siftUp(pid.heapIndex));
+        }
+        else if (isScheduled(pid))
+        {
+            insert(pid);
+        }
+    }
+
+    /**
+     * re-build heap from known PIDs and fixed PID selection
+     * (ascending PID codes keep their order for same request timestamps)
+     */
+    private void rebuild()
+    {
+        for (int i = 0; i < size; i++)
+        {
+            heap[i].heapIndex = -1;
+            heap[i] = null;
+        }
+        size = 0;
+        for (ObdPid pid : pids)
+        {
+            if (pid != null && isScheduled(pid))
+            {
+                pid.sequence = sequence++;
+                insert(pid);
+            }
+        }
+    }
+
+    private void insert(ObdPid pid)
+    {
+        heap[size] = pid;
+        pid.heapIndex = size++;
+        siftUp(pid.heapIndex);
+    }
+
+    private void removeAt(int index)
+    {
+        ObdPid pid = heap[index];
+        pid.heapIndex = -1;
+        size--;
+        if (index != size)
+        {
+            heap[index] = heap[size];
+            heap[index].heapIndex = index;
+            heap[size] = null;
+            siftDown(siftUp(index));
+        }
+        else
+        {
+            heap[size] = null;
+        }
+    }
+
+    /**
+     * is PID a due before PID b?
+     */
+    private static boolean isBefore(ObdPid a, ObdPid b)
+    {
+        return a.getNextRequest() < b.getNextRequest()
+               || (a.getNextRequest() == b.getNextRequest() && a.sequence < b.sequence);
+    }
+
+    private int siftUp(int index)
+    {
+        ObdPid pid = heap[index];
+        while (index > 0)
+        {
+            int parent = (index - 1) >> 1;
+            if (!isBefore(pid, heap[parent]))
+            {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].heapIndex = index;
+            index = parent;
+        }
+        heap[index] = pid;
+        pid.heapIndex = index;
+        return index;
+    }
+
+    private int siftDown(int index)
+    {
+        ObdPid pid = heap[index];
+        while (true)
+        {
+            int child = 2 * index + 1;
+            if (child >= size)
+            {
+                break;
+            }
+            if (child + 1 < size && isBefore(heap[child + 1], heap[child]))
+            {
+                child++;
+            }
+            if (!isBefore(heap[child], pid))
+            {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = pid;
+        pid.heapIndex = index;
+        return index;
+    }
+}
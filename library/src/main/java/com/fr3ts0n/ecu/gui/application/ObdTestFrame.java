@@ -22,8 +22,8 @@ import com.fr3ts0n.common.UTF8Bundle;
 import com.fr3ts0n.common.UTF8Control;
 import com.fr3ts0n.ecu.EcuDataItem;
 import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.ecu.prot.obd.ElmBaudRate;
 import com.fr3ts0n.ecu.prot.obd.ElmProt;
-import com.fr3ts0n.ecu.prot.obd.ObdProt;
 import com.fr3ts0n.prot.gui.SerialHandler;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
@@ -106,17 +106,17 @@ public class ObdTestFrame extends javax.swing.JFrame
 	/** Creates new form ObdTestFrame */
 	private ObdTestFrame()
 	{
-		ObdProt.VidPvs.addPvChangeListener(this);
+		prt.VidPvs.addPvChangeListener(this);
 		// set up serial handler and protocol drivers
 		ser.setMessageHandler(prt);
 		prt.addTelegramWriter(ser);
 		initComponents();
 		// panAbout.setText(about);
-		panObdData.setPidPvs(ObdProt.PidPvs);
-		panObdFreezeFrame.setPidPvs(ObdProt.PidPvs);
-		panCanData.setPidPvs(ElmProt.canProt.CanPvs);
+		panObdData.setPidPvs(prt.PidPvs);
+		panObdFreezeFrame.setPidPvs(prt.PidPvs);
+		panCanData.setPidPvs(prt.canProt.CanPvs);
 		panCanData.setTitle("CAN Data Graph");
-		panObdDtc.setTcList(ObdProt.tCodes);
+		panObdDtc.setTcList(prt.tCodes);
 		panObdDtc.addActionListener(hdlrCodeButtons);
 	/* handle number of DTC changes */
 		prt.addPropertyChangeListener(panObdDtc);
@@ -142,7 +142,7 @@ public class ObdTestFrame extends javax.swing.JFrame
 		javax.swing.JLabel lblTitle = new javax.swing.JLabel();
 		javax.swing.JLabel lblFooter = new javax.swing.JLabel();
 		javax.swing.JPanel jPanel1 = new javax.swing.JPanel();
-		TblVehIDs = new com.fr3ts0n.pvs.gui.PvTable(ObdProt.VidPvs);
+		TblVehIDs = new com.fr3ts0n.pvs.gui.PvTable(prt.VidPvs);
 		javax.swing.JLabel jLabel1 = new javax.swing.JLabel();
 		panObdDtc = new com.fr3ts0n.ecu.gui.application.ObdDtcPanel();
 		panObdFreezeFrame = new com.fr3ts0n.ecu.gui.application.ObdDataPanel();
@@ -400,8 +400,8 @@ public class ObdTestFrame extends javax.swing.JFrame
 					Integer currPage = Integer.valueOf(tabMain.getSelectedIndex());
 					oOut.writeObject(currPage);
         /* save the data */
-					oOut.writeObject(ObdProt.PidPvs);
-					oOut.writeObject(ElmProt.canProt.CanPvs);
+					oOut.writeObject(prt.PidPvs);
+					oOut.writeObject(prt.canProt.CanPvs);
 					oOut.writeObject(panObdData.selPids);
 					oOut.writeObject(panCanData.selPids);
 					oOut.close();
@@ -431,11 +431,11 @@ public class ObdTestFrame extends javax.swing.JFrame
 				Integer currPage = (Integer) oIn.readObject();
 				tabMain.setSelectedIndex(currPage);
         /* read in the data */
-				ObdProt.PidPvs = (PvList) oIn.readObject();
-				ElmProt.canProt.CanPvs = (PvList) oIn.readObject();
+				prt.PidPvs = (PvList) oIn.readObject();
+				prt.canProt.CanPvs = (PvList) oIn.readObject();
 				// re-setup data connection
-				panObdData.setPidPvs(ObdProt.PidPvs);
-				panCanData.setPidPvs(ElmProt.canProt.CanPvs);
+				panObdData.setPidPvs(prt.PidPvs);
+				panCanData.setPidPvs(prt.canProt.CanPvs);
 				// read measurement history
 				panObdData.selPids = (HashMap) oIn.readObject();
 				panCanData.selPids = (HashMap) oIn.readObject();
@@ -538,7 +538,7 @@ public class ObdTestFrame extends javax.swing.JFrame
 	/**
 	 * The main routine
 	 *
-	 * @param args the command line arguments
+	 * @param args the command line arguments [serial device] [max. baud rate for upgrade]
 	 */
 	public static void main(String args[])
 	{
@@ -550,6 +550,13 @@ public class ObdTestFrame extends javax.swing.JFrame
 			try
 			{
 				ser.setDeviceName(args[0]);
+				// optional baud rate upgrade
+				if (args.length > 1)
+				{
+					int defaultRate = ser.getBaudRate();
+					int baudRate = new ElmBaudRate().upgrade(ser, args[0], Integer.parseInt(args[1]));
+					prt.setKeepBaudRate(baudRate != defaultRate);
+				}
 			} catch (Exception ex)
 			{
 				JOptionPane.showMessageDialog(frm,
@@ -0,0 +1,264 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Capabilities of the connected adapter
+ * (identified from ATI / STI / STDI responses)
+ * - adapters based on STN chips support the extended request STPX,
+ *   which carries TX header and number of expected responses,
+ *   so no header switches are needed and the adapter does not wait
+ *   for further responses until timeout
+ * - the gain of extended requests is measured against control samples
+ *   which are sent as plain ELM requests
+ */
+public class AdapterCapabilities
+{
+	/** min. STN firmware version which supports STPX (4.0.0) */
+	static final int STPX_MIN_FIRMWARE = 40000;
+	/** every n-th extended request is sent as plain request for gain measurement */
+	static final int CONTROL_INTERVAL = 32;
+
+	/** version number "v4.2.1" / "r1.2" */
+	private static final Pattern VERSION = Pattern.compile("[vr](\\d+)(?:\\.(\\d+))?(?:\\.(\\d+))?");
+
+	/** ELM identity (ATI) */
+	private String elmId = "";
+	/** STN chip identity (STI), empty for plain ELM adapters */
+	private String stnId = "";
+	/** device identity (STDI) */
+	private String deviceId = "";
+	/** STN firmware version (major * 10000 + minor * 100 + patch) */
+	private int firmware = 0;
+
+	/** request cycle statistics [ns] (index 0 = plain, 1 = extended) */
+	private final long[] numRequests = new long[2];
+	private final long[] cycleTime = new long[2];
+	/** number of TX header switches which were saved by extended requests */
+	private long numSwitchesSaved = 0;
+	/** counter for control samples */
+	private int controlCounter = 0;
+
+	/**
+	 * Forget identified capabilities (new adapter or adapter reset)
+	 *
+	 * @param elmId ELM identity of adapter (ATI response)
+	 */
+	public synchronized void reset(String elmId)
+	{
+		this.elmId = elmId;
+		stnId = "";
+		deviceId = "";
+		firmware = 0;
+	}
+
+	/**
+	 * Set STN chip identity from STI response
+	 * (plain ELM adapters reject STI, so other responses are ignored)
+	 *
+	 * @param response STI response, e.g. "STN1110 v4.2.1"
+	 */
+	public synchronized void setStnId(String response)
+	{
+		String id = response.trim();
+		if (!id.startsWith("STN"))
+		{
+			return;
+		}
+		stnId = id;
+		firmware = parseVersion(id);
+	}
+
+	/**
+	 * Set device identity from STDI response
+	 *
+	 * @param response STDI response, e.g. "OBDLink SX r4.2"
+	 */
+	public synchronized void setDeviceId(String response)
+	{
+		if (!response.startsWith("?"))
+		{
+			deviceId = response.trim();
+		}
+	}
+
+	/**
+	 * @return ELM identity (ATI response)
+	 */
+	public synchronized String getElmId()
+	{
+		return elmId;
+	}
+
+	/**
+	 * @return STN chip identity, empty for plain ELM adapters
+	 */
+	public synchronized String getStnId()
+	{
+		return stnId;
+	}
+
+	/**
+	 * @return device identity, empty if unknown
+	 */
+	public synchronized String getDeviceId()
+	{
+		return deviceId;
+	}
+
+	/**
+	 * @return true if adapter is based on a STN chip
+	 */
+	public synchronized boolean isStn()
+	{
+		return stnId.length() > 0;
+	}
+
+	/**
+	 * @return true if adapter supports extended requests (STPX)
+	 */
+	public synchronized boolean isExtendedRequestSupported()
+	{
+		return isStn() && firmware >= STPX_MIN_FIRMWARE;
+	}
+
+	/**
+	 * Shall next request be sent as plain request for gain measurement?
+	 *
+	 * @return true for every n-th call
+	 */
+	synchronized boolean isControlSample()
+	{
+		return (++controlCounter % CONTROL_INTERVAL) == 0;
+	}
+
+	/**
+	 * Record completed request cycle (request to prompt)
+	 *
+	 * @param extended request was sent as extended request
+	 * @param duration duration of request cycle [ns]
+	 */
+	synchronized void requestCompleted(boolean extended, long duration)
+	{
+		int idx = extended ? 1 : 0;
+		numRequests[idx]++;
+		cycleTime[idx] += duration;
+	}
+
+	/**
+	 * Record TX header switch which was saved by extended request
+	 */
+	synchronized void switchSaved()
+	{
+		numSwitchesSaved++;
+	}
+
+	/**
+	 * @param extended extended or plain requests
+	 * @return number of measured request cycles
+	 */
+	public synchronized long getNumRequests(boolean extended)
+	{
+		return numRequests[extended ? 1 : 0];
+	}
+
+	/**
+	 * @param extended extended or plain requests
+	 * @return mean duration of request cycles [us], 0 if none measured
+	 */
+	public synchronized long getMeanCycleTime(boolean extended)
+	{
+		int idx = extended ? 1 : 0;
+		return numRequests[idx] > 0 ? cycleTime[idx] / numRequests[idx] / 1000 : 0;
+	}
+
+	/**
+	 * @return number of TX header switches saved by extended requests
+	 */
+	public synchronized long getNumSwitchesSaved()
+	{
+		return numSwitchesSaved;
+	}
+
+	/**
+	 * Get measured gain of extended requests
+	 * (reduction of mean request cycle time compared to plain requests)
+	 *
+	 * @return gain [%], 0 if not measured yet
+	 */
+	public synchronized float getGain()
+	{
+		long plain = getMeanCycleTime(false);
+		long extended = getMeanCycleTime(true);
+		return (plain > 0 && extended > 0) ? 100f * (plain - extended) / plain : 0f;
+	}
+
+	/**
+	 * Reset gain measurement
+	 */
+	public synchronized void resetStatistics()
+	{
+		numRequests[0] = numRequests[1] = 0;
+		cycleTime[0] = cycleTime[1] = 0;
+		numSwitchesSaved = 0;
+		controlCounter = 0;
+	}
+
+	/**
+	 * parse version number from identity
+	 *
+	 * @param id identity, e.g. "STN1110 v4.2.1"
+	 * @return version (major * 10000 + minor * 100 + patch), 0 if not found
+	 */
+	static int parseVersion(String id)
+	{
+		Matcher matcher = VERSION.matcher(id);
+		if (!matcher.find())
+		{
+			return 0;
+		}
+		int result = 0;
+		for (int i = 1; i <= 3; i++)
+		{
+			result *= 100;
+			if (matcher.group(i) != null)
+			{
+				result += Math.min(99, Integer.parseInt(matcher.group(i)));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		if (!isStn())
+		{
+			return elmId;
+		}
+		return String.format("%s %s (%s) extended: %d / %d us, plain: %d / %d us, gain: %.1f%%, switches saved: %d",
+		                     stnId, deviceId, elmId,
+		                     numRequests[1], getMeanCycleTime(true),
+		                     numRequests[0], getMeanCycleTime(false),
+		                     getGain(), numSwitchesSaved);
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.prot.TelegramListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded single producer / single consumer ring of CAN frames
+ * - decouples reception of CAN monitor frames (RX thread) from decoding them
+ *   (decoder thread), so reception never waits for decoding
+ * - frames are copied into pre-allocated slots, so no allocation per frame
+ * - the decoder thread drains all available frames in batches
+ * - frames which don't fit into the ring (ring full) are dropped,
+ *   frames which don't fit into a slot are counted as overflows
+ */
+public class CanFrameRing implements Runnable
+{
+	/** default number of frame slots */
+	public static final int DEFAULT_CAPACITY = 1024;
+	/** max. length of a frame [chars] */
+	public static final int SLOT_SIZE = 64;
+	/** max. number of frames to be decoded in one batch */
+	private static final int MAX_BATCH = 64;
+	/** max. time decoder thread waits for new frames [ns] */
+	private static final long MAX_WAIT_NS = 10000000L;
+
+	/** Logging object */
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.prot.can");
+
+	/** frame slots */
+	private final char[][] slots;
+	/** frame lengths per slot */
+	private final int[] lengths;
+	/** mask to get slot index from sequence */
+	private final int mask;
+	/** sequence of next frame to be decoded (written by consumer) */
+	private final AtomicLong head = new AtomicLong();
+	/** sequence of next frame to be received (written by producer) */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** counters (each written by one thread only) */
+	private volatile long numReceived = 0;
+	private volatile long numDropped = 0;
+	private volatile long numOverflows = 0;
+	private volatile long numDecoded = 0;
+	private volatile long numBatches = 0;
+
+	/** listener to decode frames */
+	private volatile TelegramListener decoder = null;
+	/** decoder thread */
+	private volatile Thread decoderThread = null;
+	/** is decoder thread waiting for frames? */
+	private volatile boolean waiting = false;
+
+	/**
+	 * Create ring with default capacity
+	 */
+	public CanFrameRing()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create ring
+	 *
+	 * @param capacity min. number of frame slots (rounded up to power of 2)
+	 */
+	public CanFrameRing(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		slots = new char[size][SLOT_SIZE];
+		lengths = new int[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Start decoder thread
+	 *
+	 * @param listener listener to decode frames
+	 */
+	public synchronized void start(TelegramListener listener)
+	{
+		stop();
+		decoder = listener;
+		head.set(tail.get());
+		decoderThread = new Thread(this, "CanDecoder");
+		decoderThread.setDaemon(true);
+		decoderThread.start();
+	}
+
+	/**
+	 * Stop decoder thread, pending frames are discarded
+	 */
+	public synchronized void stop()
+	{
+		Thread thread = decoderThread;
+		if (thread != null)
+		{
+			decoderThread = null;
+			LockSupport.unpark(thread);
+			try
+			{
+				thread.join(1000);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			log.info(toString());
+		}
+	}
+
+	/**
+	 * Is decoder thread running?
+	 *
+	 * @return true if decoder thread is running
+	 */
+	public boolean isRunning()
+	{
+		return decoderThread != null;
+	}
+
+	/**
+	 * Add received frame to ring (producer side)
+	 *
+	 * @param buffer receive buffer
+	 * @param offset offset of frame within buffer
+	 * @param length length of frame
+	 * @return true if frame was added, false if it was dropped
+	 */
+	public boolean offer(char[] buffer, int offset, int length)
+	{
+		numReceived++;
+		if (length > SLOT_SIZE)
+		{
+			numOverflows++;
+			return false;
+		}
+		long seq = tail.get();
+		if (seq - head.get() > mask)
+		{
+			numDropped++;
+			return false;
+		}
+		int idx = (int) seq & mask;
+		System.arraycopy(buffer, offset, slots[idx], 0, length);
+		lengths[idx] = length;
+		tail.lazySet(seq + 1);
+		if (waiting)
+		{
+			LockSupport.unpark(decoderThread);
+		}
+		return true;
+	}
+
+	/**
+	 * Decode all available frames, up to one batch (consumer side)
+	 *
+	 * @return number of decoded frames
+	 */
+	int drain()
+	{
+		long seq = head.get();
+		int count = (int) Math.min(tail.get() - seq, MAX_BATCH);
+		for (int i = 0; i < count; i++)
+		{
+			int idx = (int) (seq + i) & mask;
+			try
+			{
+				decoder.handleTelegram(slots[idx], 0, lengths[idx]);
+			}
+			catch (Exception e)
+			{
+				log.log(Level.SEVERE, e.toString(), e);
+			}
+		}
+		if (count > 0)
+		{
+			head.lazySet(seq + count);
+			numDecoded += count;
+			numBatches++;
+		}
+		return count;
+	}
+
+	/**
+	 * Decoder thread loop
+	 */
+	@Override
+	public void run()
+	{
+		Thread self = Thread.currentThread();
+		log.fine("CAN decoder started");
+		while (decoderThread == self)
+		{
+			if (drain() == 0)
+			{
+				waiting = true;
+				// re-check to not miss a frame which was added before waiting was set
+				if (tail.get() == head.get() && decoderThread == self)
+				{
+					LockSupport.parkNanos(this, MAX_WAIT_NS);
+				}
+				waiting = false;
+			}
+		}
+		log.fine("CAN decoder stopped");
+	}
+
+	/**
+	 * Get number of frames waiting for decoding
+	 *
+	 * @return number of frames waiting
+	 */
+	public int getSize()
+	{
+		return (int) (tail.get() - head.get());
+	}
+
+	/**
+	 * Get number of frame slots
+	 *
+	 * @return number of frame slots
+	 */
+	public int getCapacity()
+	{
+		return mask + 1;
+	}
+
+	/** @return number of received frames */
+	public long getNumReceived() { return numReceived; }
+
+	/** @return number of frames dropped because the ring was full */
+	public long getNumDropped() { return numDropped; }
+
+	/** @return number of frames dropped because they exceeded the slot size */
+	public long getNumOverflows() { return numOverflows; }
+
+	/** @return number of decoded frames */
+	public long getNumDecoded() { return numDecoded; }
+
+	/** @return number of decoded batches */
+	public long getNumBatches() { return numBatches; }
+
+	@Override
+	public String toString()
+	{
+		return String.format("CAN frames RX:%d decoded:%d batches:%d dropped:%d overflows:%d",
+		                     numReceived, numDecoded, numBatches, numDropped, numOverflows);
+	}
+}
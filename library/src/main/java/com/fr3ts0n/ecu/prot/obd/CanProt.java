@@ -23,6 +23,9 @@ import com.fr3ts0n.ecu.EcuDataPv;
 import com.fr3ts0n.prot.ProtoHeader;
 import com.fr3ts0n.pvs.PvList;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Vector;
@@ -66,6 +69,9 @@ public abstract class CanProt extends ProtoHeader
 	/** internal Map for CAN messages to parameters */
 	private final HashMap<Integer, Vector<Integer>> canMsgMap = new HashMap<Integer, Vector<Integer>>();
 
+	/** signal decoder loaded from DBC file (null = use built-in message parameters) */
+	private CanSignalDecoder dbcDecoder = null;
+
 	/** Creates a new instance of CanProt */
 	CanProt()
 	{
@@ -102,6 +108,8 @@ public abstract class CanProt extends ProtoHeader
 	 */
 	public void preparePidPvs()
 	{
+		// units of DBC signals are fixed
+		if (dbcDecoder != null) return;
 		for (int i = 0; i < getMsgParameters().length; i++)
 		{
 			Integer paramId = i;
@@ -115,6 +123,33 @@ public abstract class CanProt extends ProtoHeader
 		}
 	}
 
+	/**
+	 * Load DBC file to decode CAN signals
+	 * - signals of the DBC file replace the built-in message parameters
+	 *   in the list of process variables
+	 *
+	 * @param reader reader for DBC file content
+	 * @throws IOException on read errors
+	 */
+	public void loadDbc(Reader reader) throws IOException
+	{
+		CanSignalDecoder decoder = new CanSignalDecoder();
+		decoder.load(reader);
+		CanPvs.clear();
+		decoder.putPvs(CanPvs);
+		dbcDecoder = decoder;
+	}
+
+	/**
+	 * Get signal decoder loaded from DBC file
+	 *
+	 * @return signal decoder, null if no DBC file is loaded
+	 */
+	public CanSignalDecoder getDbcDecoder()
+	{
+		return dbcDecoder;
+	}
+
 	/**
 	 * get List of message dependent telegram parameters in order of appearance
 	 * Each parameter set contains following elements<br>
@@ -200,11 +235,50 @@ public abstract class CanProt extends ProtoHeader
 	 * @param buffer - telegram buffer
 	 * @return number of listeners notified
 	 */
-	@SuppressWarnings("rawtypes")
 	@Override
 	public int handleTelegram(char[] buffer)
+	{
+		return handleTelegram(buffer, 0, buffer.length);
+	}
+
+	/**
+	 * handle incoming protocol telegram from a section of a receive buffer
+	 * (telegrams at start of buffer are decoded without copying them)
+	 *
+	 * @param buffer - receive buffer
+	 * @param offset - offset of telegram within buffer
+	 * @param length - length of telegram
+	 * @return number of listeners notified
+	 */
+	@Override
+	public int handleTelegram(char[] buffer, int offset, int length)
+	{
+		CanSignalDecoder decoder = dbcDecoder;
+		if (decoder != null)
+		{
+			return Math.max(0, decoder.decode(buffer, offset, length));
+		}
+		return (offset == 0)
+		       ? decodeTelegram(buffer, length)
+		       : handleTelegram(Arrays.copyOfRange(buffer, offset, offset + length));
+	}
+
+	/**
+	 * decode telegram and update process vars of contained parameters
+	 * (parameters which exceed the telegram length are ignored)
+	 *
+	 * @param buffer - telegram buffer, starting with telegram
+	 * @param length - length of telegram
+	 * @return number of parameters decoded
+	 */
+	@SuppressWarnings("rawtypes")
+	private int decodeTelegram(char[] buffer, int length)
 	{
 		int retValue = 0;
+		if (length < CAN_PARAMETERS[ID_CAN_SVC][1])
+		{
+			return retValue;
+		}
 		try
 		{
 			Integer msgId = (Integer) getParamValue(ID_CAN_SVC, buffer);
@@ -215,6 +289,11 @@ public abstract class CanProt extends ProtoHeader
 				while (it.hasNext())
 				{
 					Integer parId = (Integer) it.next();
+					int[] param = getMsgParameters()[parId.intValue()];
+					if (param[0] + param[1] > length)
+					{
+						continue;
+					}
 					float value = getMsgValue(parId.intValue(), buffer);
 					EcuDataPv pv = (EcuDataPv) CanPvs.get(parId);
 					if (pv != null)
@@ -222,8 +301,8 @@ public abstract class CanProt extends ProtoHeader
 						// now store all changes to PV
 						pv.put(EcuDataPv.FIELDS[EcuDataPv.FID_VALUE], Float.valueOf(value));
 					}
+					retValue++;
 				}
-				retValue = params.size();
 			}
 		} catch (Exception e)
 		{
@@ -0,0 +1,540 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.pvs.PvList;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generic CAN signal decoder, compiled from a DBC file
+ * - CAN IDs are mapped to their signals by an int keyed open addressing
+ *   table, signal descriptors are kept in primitive arrays
+ * - signals are extracted bit by bit from Intel (little endian) and
+ *   Motorola (big endian) layouts, with sign extension and scale/offset
+ * - multiplexed signals are only decoded if the multiplexor matches
+ * - decoding a frame does not allocate memory, process vars are only updated
+ *   if the raw value of a signal has changed
+ */
+public class CanSignalDecoder
+{
+	/** Logging object */
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.prot.can");
+
+	/** max. number of data bytes per frame (CAN FD) */
+	private static final int MAX_DATA = 64;
+	/** flag bits of signal descriptors */
+	private static final int FLG_INTEL = 0x01;
+	private static final int FLG_SIGNED = 0x02;
+	private static final int FLG_MUXOR = 0x04;
+	/** CAN ID mask of extended frames */
+	private static final int EXT_ID_MASK = 0x1FFFFFFF;
+
+	/** DBC message definition: BO_ <ID> <NAME>: <DLC> <SENDER> */
+	private static final Pattern DBC_MSG =
+		Pattern.compile("^BO_\\s+(\\d+)\\s+(\\w+)\\s*:\\s*(\\d+).*");
+	/** DBC signal definition: SG_ <NAME> [M|mX] : <START>|<LEN>@<ORDER><SIGN> (<FACTOR>,<OFFSET>) [<MIN>|<MAX>] "<UNIT>" ... */
+	private static final Pattern DBC_SIGNAL =
+		Pattern.compile("^SG_\\s+(\\w+)\\s*(M|m\\d+)?\\s*:\\s*(\\d+)\\|(\\d+)@([01])([+-])"
+		                + "\\s*\\(([^,]+),([^)]+)\\)\\s*\\[([^|]+)\\|([^]]+)]\\s*\"([^\"]*)\".*");
+	/** DBC signal comment: CM_ SG_ <ID> <NAME> "<TEXT>"; */
+	private static final Pattern DBC_COMMENT =
+		Pattern.compile("^CM_\\s+SG_\\s+(\\d+)\\s+(\\w+)\\s+\"([^\"]*)\"\\s*;.*");
+
+	/** open addressing table: CAN ID -> message index */
+	private int[] idKeys = new int[0];
+	private int[] idValues = new int[0];
+	private int idMask = 0;
+
+	/** messages: CAN ID, first signal, number of signals, multiplexor signal */
+	private int[] msgIds = new int[0];
+	private int[] msgFirstSignal = new int[0];
+	private int[] msgNumSignals = new int[0];
+	private int[] msgMuxSignal = new int[0];
+
+	/** signals */
+	private String[] sigNames = new String[0];
+	private int[] sigStart = new int[0];
+	private int[] sigLength = new int[0];
+	private int[] sigFlags = new int[0];
+	private int[] sigMuxValue = new int[0];
+	private double[] sigFactor = new double[0];
+	private double[] sigOffset = new double[0];
+	private long[] sigLastRaw = new long[0];
+	private EcuDataPv[] sigPvs = new EcuDataPv[0];
+
+	/** data bytes of currently decoded frame */
+	private final int[] data = new int[MAX_DATA];
+	/** raw values of currently decoded frame */
+	private long[] raw = new long[0];
+
+	/**
+	 * Signal definition while loading DBC file
+	 */
+	private static class Signal
+	{
+		String name;
+		String description;
+		String units;
+		int start;
+		int length;
+		int flags;
+		int muxValue = -1;
+		double factor;
+		double offset;
+		double min;
+		double max;
+	}
+
+	/**
+	 * Load DBC file and compile decoder
+	 * (previously loaded definitions are replaced)
+	 *
+	 * @param reader reader for DBC file content
+	 * @throws IOException on read errors
+	 */
+	public synchronized void load(Reader reader) throws IOException
+	{
+		// messages in order of appearance: CAN ID -> signals
+		HashMap<Integer, Vector<Signal>> messages = new HashMap<Integer, Vector<Signal>>();
+		Vector<Integer> ids = new Vector<Integer>();
+		HashMap<String, String> comments = new HashMap<String, String>();
+		Vector<Signal> currMsg = null;
+		Integer currId = null;
+
+		BufferedReader rdr = new BufferedReader(reader);
+		String line;
+		while ((line = rdr.readLine()) != null)
+		{
+			line = line.trim();
+			Matcher m;
+			if ((m = DBC_MSG.matcher(line)).matches())
+			{
+				currId = Integer.valueOf((int) (Long.parseLong(m.group(1)) & EXT_ID_MASK));
+				currMsg = messages.get(currId);
+				if (currMsg == null)
+				{
+					currMsg = new Vector<Signal>();
+					messages.put(currId, currMsg);
+					ids.add(currId);
+				}
+			}
+			else if ((m = DBC_SIGNAL.matcher(line)).matches() && currMsg != null)
+			{
+				Signal sig = new Signal();
+				sig.name = m.group(1);
+				String mux = m.group(2);
+				if ("M".equals(mux))
+				{
+					sig.flags |= FLG_MUXOR;
+				}
+				else if (mux != null)
+				{
+					sig.muxValue = Integer.parseInt(mux.substring(1));
+				}
+				sig.start = Integer.parseInt(m.group(3));
+				sig.length = Integer.parseInt(m.group(4));
+				sig.flags |= "1".equals(m.group(5)) ? FLG_INTEL : 0;
+				sig.flags |= "-".equals(m.group(6)) ? FLG_SIGNED : 0;
+				sig.factor = Double.parseDouble(m.group(7).trim());
+				sig.offset = Double.parseDouble(m.group(8).trim());
+				sig.min = Double.parseDouble(m.group(9).trim());
+				sig.max = Double.parseDouble(m.group(10).trim());
+				sig.units = m.group(11);
+				if (sig.length < 1 || sig.length > 64)
+				{
+					log.warning("Invalid signal length: " + line);
+					continue;
+				}
+				currMsg.add(sig);
+			}
+			else if ((m = DBC_COMMENT.matcher(line)).matches())
+			{
+				comments.put(((Long.parseLong(m.group(1)) & EXT_ID_MASK) + "." + m.group(2)), m.group(3));
+			}
+			else if (!line.startsWith("SG_"))
+			{
+				currMsg = null;
+			}
+		}
+
+		// compile message and signal tables
+		int numSignals = 0;
+		for (Vector<Signal> sigs : messages.values())
+		{
+			numSignals += sigs.size();
+		}
+		int numMsgs = ids.size();
+		msgIds = new int[numMsgs];
+		msgFirstSignal = new int[numMsgs];
+		msgNumSignals = new int[numMsgs];
+		msgMuxSignal = new int[numMsgs];
+		sigNames = new String[numSignals];
+		sigStart = new int[numSignals];
+		sigLength = new int[numSignals];
+		sigFlags = new int[numSignals];
+		sigMuxValue = new int[numSignals];
+		sigFactor = new double[numSignals];
+		sigOffset = new double[numSignals];
+		sigLastRaw = new long[numSignals];
+		sigPvs = new EcuDataPv[numSignals];
+		raw = new long[numSignals];
+		Arrays.fill(sigLastRaw, Long.MIN_VALUE);
+
+		int sigIdx = 0;
+		for (int msgIdx = 0; msgIdx < numMsgs; msgIdx++)
+		{
+			int id = ids.get(msgIdx);
+			msgIds[msgIdx] = id;
+			msgFirstSignal[msgIdx] = sigIdx;
+			msgMuxSignal[msgIdx] = -1;
+			for (Signal sig : messages.get(id))
+			{
+				if ((sig.flags & FLG_MUXOR) != 0)
+				{
+					msgMuxSignal[msgIdx] = sigIdx;
+				}
+				sigNames[sigIdx] = sig.name;
+				sigStart[sigIdx] = sig.start;
+				sigLength[sigIdx] = sig.length;
+				sigFlags[sigIdx] = sig.flags;
+				sigMuxValue[sigIdx] = sig.muxValue;
+				sigFactor[sigIdx] = sig.factor;
+				sigOffset[sigIdx] = sig.offset;
+				sig.description = comments.get(id + "." + sig.name);
+				sigPvs[sigIdx] = createPv(sigIdx, id, sig);
+				sigIdx++;
+			}
+			msgNumSignals[msgIdx] = sigIdx - msgFirstSignal[msgIdx];
+		}
+
+		// build CAN ID index with load factor <= 0.5
+		int size = Integer.highestOneBit(Math.max(1, numMsgs) * 2) << 1;
+		idKeys = new int[size];
+		idValues = new int[size];
+		idMask = size - 1;
+		Arrays.fill(idKeys, -1);
+		for (int msgIdx = 0; msgIdx < numMsgs; msgIdx++)
+		{
+			int slot = hash(msgIds[msgIdx]) & idMask;
+			while (idKeys[slot] != -1)
+			{
+				slot = (slot + 1) & idMask;
+			}
+			idKeys[slot] = msgIds[msgIdx];
+			idValues[slot] = msgIdx;
+		}
+		log.info(String.format("DBC loaded: %d messages, %d signals", numMsgs, numSignals));
+	}
+
+	/**
+	 * create process var for a signal
+	 */
+	private static EcuDataPv createPv(int index, int canId, Signal sig)
+	{
+		// number of decimals to display signal resolution
+		int decimals = 0;
+		for (double res = Math.abs(sig.factor);
+		     Math.abs(res - Math.rint(res)) > 1e-9 && decimals < 6;
+		     res *= 10)
+		{
+			decimals++;
+		}
+		EcuDataPv pv = new EcuDataPv();
+		pv.put(EcuDataPv.FID_PID, Integer.valueOf(index));
+		pv.put(EcuDataPv.FID_OFS, Integer.valueOf(canId));
+		pv.put(EcuDataPv.FID_MNEMONIC, sig.name);
+		pv.put(EcuDataPv.FID_DESCRIPT, sig.description != null ? sig.description : sig.name);
+		pv.put(EcuDataPv.FID_UNITS, sig.units);
+		pv.put(EcuDataPv.FID_FORMAT, "%." + decimals + "f");
+		pv.put(EcuDataPv.FID_MIN, Float.valueOf((float) sig.min));
+		pv.put(EcuDataPv.FID_MAX, Float.valueOf((float) sig.max));
+		pv.put(EcuDataPv.FID_VALUE, Float.valueOf(0));
+		return pv;
+	}
+
+	/**
+	 * Put process vars of all signals into list
+	 *
+	 * @param pvs list of process vars to receive signal process vars
+	 */
+	public synchronized void putPvs(PvList pvs)
+	{
+		for (int i = 0; i < sigPvs.length; i++)
+		{
+			pvs.put(Integer.valueOf(i), sigPvs[i]);
+		}
+	}
+
+	/**
+	 * Get number of signals
+	 *
+	 * @return number of signals
+	 */
+	public synchronized int getNumSignals()
+	{
+		return sigPvs.length;
+	}
+
+	/**
+	 * Get number of messages
+	 *
+	 * @return number of messages
+	 */
+	public synchronized int getNumMessages()
+	{
+		return msgIds.length;
+	}
+
+	/**
+	 * Get process var of a signal
+	 *
+	 * @param index signal index
+	 * @return process var of signal
+	 */
+	public synchronized EcuDataPv getPv(int index)
+	{
+		return sigPvs[index];
+	}
+
+	/**
+	 * Get index of a signal
+	 *
+	 * @param name signal name
+	 * @return signal index, -1 if signal is not known
+	 */
+	public synchronized int getSignalIndex(String name)
+	{
+		for (int i = 0; i < sigNames.length; i++)
+		{
+			if (sigNames[i].equals(name)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Get last decoded physical value of a signal
+	 *
+	 * @param index signal index
+	 * @return physical value, NaN if signal was not received yet
+	 */
+	public synchronized double getValue(int index)
+	{
+		return sigLastRaw[index] == Long.MIN_VALUE
+		       ? Double.NaN
+		       : sigLastRaw[index] * sigFactor[index] + sigOffset[index];
+	}
+
+	/**
+	 * Decode a CAN monitor frame
+	 * Frame consists of hex digits (optionally separated by spaces),
+	 * starting with the CAN ID, followed by the data bytes.
+	 * 11 bit IDs (3 digits) and 29 bit IDs (8 digits) are identified
+	 * by the odd/even number of digits.
+	 *
+	 * @param buffer receive buffer
+	 * @param offset offset of frame within buffer
+	 * @param length length of frame
+	 * @return number of decoded signals, -1 if frame is no valid CAN frame
+	 */
+	public synchronized int decode(char[] buffer, int offset, int length)
+	{
+		// count hex digits
+		int numDigits = 0;
+		for (int i = offset; i < offset + length; i++)
+		{
+			char chr = buffer[i];
+			if (chr == ' ') continue;
+			if (Character.digit(chr, 16) < 0) return -1;
+			numDigits++;
+		}
+		int idDigits = ((numDigits & 1) != 0) ? 3 : 8;
+		if (numDigits < idDigits) return -1;
+
+		// parse CAN ID and data bytes
+		int id = 0;
+		int dlc = 0;
+		int digit = 0;
+		for (int i = offset; i < offset + length; i++)
+		{
+			char chr = buffer[i];
+			if (chr == ' ') continue;
+			int val = Character.digit(chr, 16);
+			if (digit < idDigits)
+			{
+				id = (id << 4) | val;
+			}
+			else if (((digit - idDigits) & 1) == 0)
+			{
+				if (dlc >= MAX_DATA) break;
+				data[dlc] = val << 4;
+			}
+			else
+			{
+				data[dlc++] |= val;
+			}
+			digit++;
+		}
+		return decode(id, data, dlc);
+	}
+
+	/**
+	 * Decode CAN frame data
+	 *
+	 * @param canId CAN ID of frame
+	 * @param frameData data bytes
+	 * @param dlc number of data bytes
+	 * @return number of decoded signals, 0 if CAN ID is not known
+	 */
+	public synchronized int decode(int canId, int[] frameData, int dlc)
+	{
+		int msgIdx = findMessage(canId);
+		if (msgIdx < 0) return 0;
+
+		// frame data as little/big endian words for fast extraction
+		long le = 0;
+		long be = 0;
+		if (dlc <= 8)
+		{
+			for (int i = 0; i < dlc; i++)
+			{
+				le |= (long) (frameData[i] & 0xFF) << (8 * i);
+				be |= (long) (frameData[i] & 0xFF) << (56 - 8 * i);
+			}
+		}
+
+		int first = msgFirstSignal[msgIdx];
+		int last = first + msgNumSignals[msgIdx];
+		// multiplexor value
+		long muxValue = -1;
+		int muxSig = msgMuxSignal[msgIdx];
+		if (muxSig >= 0 && extract(muxSig, frameData, dlc, le, be))
+		{
+			muxValue = raw[muxSig];
+		}
+
+		int result = 0;
+		for (int i = first; i < last; i++)
+		{
+			if (sigMuxValue[i] >= 0 && sigMuxValue[i] != muxValue) continue;
+			if (!extract(i, frameData, dlc, le, be)) continue;
+			result++;
+			if (raw[i] != sigLastRaw[i])
+			{
+				sigLastRaw[i] = raw[i];
+				// primitive update, boxed/notified only if PV has listeners
+				sigPvs[i].setValue((float) (raw[i] * sigFactor[i] + sigOffset[i]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * extract raw value of signal into raw value array
+	 *
+	 * @return true if signal is contained in frame data
+	 */
+	private boolean extract(int sig, int[] frameData, int dlc, long le, long be)
+	{
+		int start = sigStart[sig];
+		int len = sigLength[sig];
+		long value;
+		if ((sigFlags[sig] & FLG_INTEL) != 0)
+		{
+			// Intel: start bit is LSB, bits ascending
+			if (start + len > dlc * 8) return false;
+			if (dlc <= 8)
+			{
+				value = le >>> start;
+			}
+			else
+			{
+				value = 0;
+				for (int i = len - 1; i >= 0; i--)
+				{
+					int bit = start + i;
+					value = (value << 1) | ((frameData[bit >> 3] >> (bit & 7)) & 1);
+				}
+			}
+		}
+		else
+		{
+			// Motorola: start bit is MSB, bits descending within byte, then next byte
+			int pos = (start & ~7) + (7 - (start & 7));
+			if (pos + len > dlc * 8) return false;
+			if (dlc <= 8)
+			{
+				value = (be << pos) >>> (64 - len);
+			}
+			else
+			{
+				value = 0;
+				for (int i = 0; i < len; i++)
+				{
+					int bit = pos + i;
+					value = (value << 1) | ((frameData[bit >> 3] >> (7 - (bit & 7))) & 1);
+				}
+			}
+		}
+		if (len < 64)
+		{
+			value &= (1L << len) - 1;
+			// sign extension
+			if ((sigFlags[sig] & FLG_SIGNED) != 0)
+			{
+				value = (value << (64 - len)) >> (64 - len);
+			}
+		}
+		raw[sig] = value;
+		return true;
+	}
+
+	/**
+	 * find message index for CAN ID
+	 *
+	 * @return message index, -1 if not found
+	 */
+	private int findMessage(int canId)
+	{
+		if (idKeys.length == 0) return -1;
+		int slot = hash(canId) & idMask;
+		int key;
+		while ((key = idKeys[slot]) != -1)
+		{
+			if (key == canId) return idValues[slot];
+			slot = (slot + 1) & idMask;
+		}
+		return -1;
+	}
+
+	private static int hash(int canId)
+	{
+		int h = canId * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
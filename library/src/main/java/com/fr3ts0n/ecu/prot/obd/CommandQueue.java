@@ -0,0 +1,311 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+/**
+ * Queue of commands/requests to be sent to the adapter
+ * - commands are queued in priority classes, higher classes are sent first
+ * - within a class, the most recently queued command is sent first
+ *   (command sequences are queued in reverse order)
+ * - identical commands within a class are queued only once
+ *   (except initialisation sequences)
+ * - commands which are not sent before their deadline are dropped
+ * - the depth of each class is limited, oldest commands are dropped first
+ * - queue wait times are recorded per class
+ */
+public class CommandQueue
+{
+	/** max. number of queued commands per priority class */
+	static final int MAX_DEPTH = 64;
+
+	/** Logging object */
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.prot.obd");
+
+	/**
+	 * Priority classes (highest priority first)
+	 */
+	public enum Priority
+	{
+		/** adapter initialisation and error recovery */
+		INIT(0),
+		/** requests triggered by user actions */
+		USER(0),
+		/** periodic data polling */
+		POLL(1000),
+		/** background discovery (e.g. supported PIDs) */
+		DISCOVERY(0);
+
+		/** default max. queue wait time [ms] (0 = no deadline) */
+		final long maxWait;
+
+		Priority(long maxWait)
+		{
+			this.maxWait = maxWait;
+		}
+	}
+
+	/**
+	 * queued command
+	 */
+	private static class Entry
+	{
+		final String cmd;
+		/** time of queueing [ns] */
+		final long queued;
+		/** deadline [ns] (0 = no deadline) */
+		final long deadline;
+
+		Entry(String cmd, long queued, long deadline)
+		{
+			this.cmd = cmd;
+			this.queued = queued;
+			this.deadline = deadline;
+		}
+	}
+
+	/**
+	 * queue wait statistics of one priority class
+	 */
+	private static class WaitStats
+	{
+		long numSent;
+		long numExpired;
+		long numDropped;
+		long waitSum;
+		long waitMax;
+	}
+
+	/** queued commands per priority class */
+	private final ArrayDeque<Entry>[] queues;
+	/** wait statistics per priority class */
+	private final WaitStats[] stats;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public CommandQueue()
+	{
+		queues = new ArrayDeque[Priority.values().length];
+		stats = new WaitStats[Priority.values().length];
+		for (int i = 0; i < queues.length; i++)
+		{
+			queues[i] = new ArrayDeque<Entry>();
+			stats[i] = new WaitStats();
+		}
+	}
+
+	/**
+	 * Queue command with default deadline of priority class
+	 *
+	 * @param priority priority class
+	 * @param cmd command to be queued
+	 */
+	public void push(Priority priority, String cmd)
+	{
+		push(priority, cmd, priority.maxWait);
+	}
+
+	/**
+	 * Queue command
+	 *
+	 * @param priority priority class
+	 * @param cmd command to be queued
+	 * @param maxWait max. queue wait time [ms] (0 = no deadline)
+	 */
+	public synchronized void push(Priority priority, String cmd, long maxWait)
+	{
+		ArrayDeque<Entry> queue = queues[priority.ordinal()];
+		long now = System.nanoTime();
+		long queued = now;
+		// identical command is queued already -> move it to top
+		if (priority != Priority.INIT)
+		{
+			Iterator<Entry> it = queue.iterator();
+			while (it.hasNext())
+			{
+				Entry entry = it.next();
+				if (entry.cmd.equals(cmd))
+				{
+					queued = entry.queued;
+					it.remove();
+					break;
+				}
+			}
+		}
+		// queue is full -> drop oldest command
+		if (queue.size() >= MAX_DEPTH)
+		{
+			Entry entry = queue.removeFirst();
+			stats[priority.ordinal()].numDropped++;
+			log.warning(String.format("Queue %s full, dropped: %s", priority, entry.cmd));
+		}
+		queue.addLast(new Entry(cmd, queued, (maxWait > 0) ? now + maxWait * 1000000L : 0));
+	}
+
+	/**
+	 * Get next command to be sent and remove it from queue
+	 * (commands which passed their deadline are dropped)
+	 *
+	 * @return next command, null if queue is empty
+	 */
+	public synchronized String pop()
+	{
+		long now = System.nanoTime();
+		for (int i = 0; i < queues.length; i++)
+		{
+			Entry entry;
+			while ((entry = queues[i].pollLast()) != null)
+			{
+				WaitStats stat = stats[i];
+				if (entry.deadline != 0 && now - entry.deadline > 0)
+				{
+					stat.numExpired++;
+					log.fine(String.format("Queue %s, expired: %s", Priority.values()[i], entry.cmd));
+					continue;
+				}
+				long wait = now - entry.queued;
+				stat.numSent++;
+				stat.waitSum += wait;
+				stat.waitMax = Math.max(stat.waitMax, wait);
+				return entry.cmd;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return total number of queued commands
+	 */
+	public synchronized int size()
+	{
+		int result = 0;
+		for (ArrayDeque<Entry> queue : queues)
+		{
+			result += queue.size();
+		}
+		return result;
+	}
+
+	/**
+	 * @param priority priority class
+	 * @return number of queued commands of priority class
+	 */
+	public synchronized int size(Priority priority)
+	{
+		return queues[priority.ordinal()].size();
+	}
+
+	/**
+	 * @return true if no commands are queued
+	 */
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	/**
+	 * Remove all queued commands
+	 */
+	public synchronized void clear()
+	{
+		for (ArrayDeque<Entry> queue : queues)
+		{
+			queue.clear();
+		}
+	}
+
+	/**
+	 * Remove all queued commands of a priority class
+	 *
+	 * @param priority priority class
+	 */
+	public synchronized void clear(Priority priority)
+	{
+		queues[priority.ordinal()].clear();
+	}
+
+	/**
+	 * @param priority priority class
+	 * @return number of sent commands of priority class
+	 */
+	public synchronized long getNumSent(Priority priority)
+	{
+		return stats[priority.ordinal()].numSent;
+	}
+
+	/**
+	 * @param priority priority class
+	 * @return number of commands dropped due to deadline or queue depth
+	 */
+	public synchronized long getNumDropped(Priority priority)
+	{
+		WaitStats stat = stats[priority.ordinal()];
+		return stat.numExpired + stat.numDropped;
+	}
+
+	/**
+	 * @param priority priority class
+	 * @return mean queue wait time of sent commands [ms]
+	 */
+	public synchronized double getMeanWaitTime(Priority priority)
+	{
+		WaitStats stat = stats[priority.ordinal()];
+		return (stat.numSent > 0) ? stat.waitSum / 1000000.0 / stat.numSent : 0;
+	}
+
+	/**
+	 * @param priority priority class
+	 * @return max. queue wait time of sent commands [ms]
+	 */
+	public synchronized double getMaxWaitTime(Priority priority)
+	{
+		return stats[priority.ordinal()].waitMax / 1000000.0;
+	}
+
+	/**
+	 * Reset wait statistics
+	 */
+	public synchronized void resetStatistics()
+	{
+		for (int i = 0; i < stats.length; i++)
+		{
+			stats[i] = new WaitStats();
+		}
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		StringBuilder result = new StringBuilder();
+		for (Priority priority : Priority.values())
+		{
+			WaitStats stat = stats[priority.ordinal()];
+			result.append(String.format("%s queued:%d sent:%d dropped:%d wait:%.1f/%.1fms%n",
+			                            priority,
+			                            queues[priority.ordinal()].size(),
+			                            stat.numSent,
+			                            stat.numExpired + stat.numDropped,
+			                            getMeanWaitTime(priority),
+			                            getMaxWaitTime(priority)));
+		}
+		return result.toString();
+	}
+}
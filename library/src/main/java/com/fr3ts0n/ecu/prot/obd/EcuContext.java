@@ -0,0 +1,296 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.ecu.EcuDataItem;
+import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.ecu.PidDecoder;
+import com.fr3ts0n.ecu.PidScheduler;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * Polling context of a single ECU when several ECUs are polled in one session,
+ * or of all ECUs of a session ({@link #ALL_ECUS})
+ * - supported PIDs of the ECU and their request scheduling
+ * - data items of the ECU with their own process vars, so values of
+ *   different ECUs/sessions don't overwrite each other
+ *   (process vars of a single ECU are tagged with {@link EcuDataPv#FID_ECU})
+ */
+public class EcuContext
+{
+	/** address of context which covers all ECUs (functional addressing) */
+	static final int ALL_ECUS = 0;
+	/** offset of physical request address to response address (ISO 15765-4, 11 bit) */
+	private static final int RESPONSE_ADDRESS_OFFSET = 8;
+	/** first/last OBD response address of 11 bit CAN */
+	static final int MIN_RESPONSE_ADDRESS = 0x7E8;
+	static final int MAX_RESPONSE_ADDRESS = 0x7EF;
+
+	/** ECU (response) address */
+	private final int address;
+	/** PIDs supported by the ECU, scheduled by next expected request */
+	private final PidScheduler scheduler = new PidScheduler();
+	/** data items of this ECU, indexed by service and PID */
+	private final PidItems[][] items = new PidItems[256][];
+	/** supported PIDs are requested already? */
+	boolean supportRequested = false;
+
+	/**
+	 * Create polling context for an ECU
+	 *
+	 * @param address ECU (response) address
+	 */
+	public EcuContext(int address)
+	{
+		this.address = address;
+	}
+
+	/**
+	 * Can ECU be addressed physically within a multi ECU session?
+	 *
+	 * @param address ECU (response) address
+	 * @return true if address is a 11 bit CAN OBD response address
+	 */
+	static boolean isPhysicalAddress(int address)
+	{
+		return address >= MIN_RESPONSE_ADDRESS && address <= MAX_RESPONSE_ADDRESS;
+	}
+
+	/**
+	 * @return ECU (response) address
+	 */
+	public int getAddress()
+	{
+		return address;
+	}
+
+	/**
+	 * @return physical request address (TX header) of ECU
+	 */
+	public int getRequestAddress()
+	{
+		return address - RESPONSE_ADDRESS_OFFSET;
+	}
+
+	/**
+	 * @return scheduler of PIDs supported by this ECU
+	 */
+	public PidScheduler getScheduler()
+	{
+		return scheduler;
+	}
+
+	/**
+	 * Get data items of this ECU for a PID
+	 * - items are created from the common data item definitions on first use
+	 *
+	 * @param service OBD service
+	 * @param pid PID
+	 * @return data items of this ECU, null if no data items are defined for PID
+	 */
+	public Vector<EcuDataItem> getPidDataItems(int service, int pid)
+	{
+		PidItems result = getItems(service, pid);
+		return (result != null) ? result.list : null;
+	}
+
+	/**
+	 * Get data items of this ECU for a PID
+	 * - items are created from the common data item definitions on first use
+	 *
+	 * @param service OBD service
+	 * @param pid PID
+	 * @return data items of this ECU, null if no data items are defined for PID
+	 */
+	private synchronized PidItems getItems(int service, int pid)
+	{
+		if (((service | pid) & ~0xFF) != 0)
+		{
+			return null;
+		}
+		PidItems[] svcItems = items[service];
+		PidItems result = (svcItems != null) ? svcItems[pid] : null;
+		if (result == null)
+		{
+			EcuDataItem[] commonItems = ObdProt.dataItems.getPidItems(service, pid);
+			if (commonItems != null)
+			{
+				EcuDataItem[] ecuItems = new EcuDataItem[commonItems.length];
+				for (int i = 0; i < commonItems.length; i++)
+				{
+					ecuItems[i] = createItem(commonItems[i]);
+				}
+				result = new PidItems(ecuItems);
+				if (svcItems == null)
+				{
+					svcItems = items[service] = new PidItems[256];
+				}
+				svcItems[pid] = result;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Add data item for a PID which has no common data item definition
+	 * (e.g. placeholder item of a PID which is unknown, but supported by the ECU)
+	 * - the item is kept within this context only, common definitions are not changed
+	 *
+	 * @param service OBD service
+	 * @param item data item definition
+	 * @return data items of this ECU for the item's PID
+	 */
+	public synchronized Vector<EcuDataItem> addPidDataItem(int service, EcuDataItem item)
+	{
+		if (((service | item.pid) & ~0xFF) != 0)
+		{
+			throw new IllegalArgumentException(String.format("Invalid service/PID: %02X/%02X", service, item.pid));
+		}
+		PidItems[] svcItems = items[service];
+		if (svcItems == null)
+		{
+			svcItems = items[service] = new PidItems[256];
+		}
+		PidItems current = svcItems[item.pid];
+		EcuDataItem[] ecuItems = (current != null)
+		                         ? Arrays.copyOf(current.array, current.array.length + 1)
+		                         : new EcuDataItem[1];
+		ecuItems[ecuItems.length - 1] = createItem(item);
+		PidItems result = new PidItems(ecuItems);
+		result.local = true;
+		svcItems[item.pid] = result;
+		return result.list;
+	}
+
+	/**
+	 * Forget data items of this ECU
+	 * (items are re-created from the current data item definitions on next use)
+	 */
+	public synchronized void clearDataItems()
+	{
+		Arrays.fill(items, null);
+	}
+
+	/**
+	 * Update data items of this ECU from received data
+	 *
+	 * @param service OBD service
+	 * @param pid PID
+	 * @param buffer received data bytes
+	 * @return max. update period of updated items [ms]
+	 */
+	public long updateDataItems(int service, int pid, char[] buffer)
+	{
+		long nextUpdate = 0;
+		PidItems currItms = getItems(service, pid);
+		if (currItms != null)
+		{
+			for (EcuDataItem currItm : currItms.array)
+			{
+				nextUpdate = Math.max(nextUpdate, currItm.updatePvFomBuffer(buffer));
+			}
+		}
+		return nextUpdate;
+	}
+
+	/**
+	 * Update data items of this ECU from received ASCII hex data
+	 * (compiled decoder of common data item definitions)
+	 *
+	 * @param service OBD service
+	 * @param pid PID
+	 * @param hex buffer containing ASCII hex data
+	 * @param pos start of PID data within buffer
+	 * @param length number of hex digits of PID data
+	 * @return max. update period of updated items [ms]
+	 */
+	public long updateDataItems(int service, int pid, char[] hex, int pos, int length)
+	{
+		PidItems currItms = getItems(service, pid);
+		if (currItms == null)
+		{
+			return 0;
+		}
+		PidDecoder decoder = currItms.local
+		                     ? currItms.getDecoder()
+		                     : ObdProt.dataItems.getDecoder(service, pid);
+		return (decoder != null) ? decoder.update(currItms.array, hex, pos, length) : 0;
+	}
+
+	/**
+	 * create data item of this ECU from common data item
+	 * (process var is copied instead of cloned, to not share change listeners)
+	 */
+	private EcuDataItem createItem(EcuDataItem commonItem)
+	{
+		EcuDataItem result = (EcuDataItem) commonItem.clone();
+		EcuDataPv pv = new EcuDataPv();
+		pv.putAll(commonItem.getPv());
+		result.setPv(pv);
+		if (address == ALL_ECUS)
+		{
+			return result;
+		}
+		pv.put(EcuDataPv.FID_ECU, Integer.valueOf(address));
+		pv.put(EcuDataPv.FID_DESCRIPT,
+		       String.format("%X %s", address, commonItem.getPv().get(EcuDataPv.FID_DESCRIPT)));
+		return result;
+	}
+
+	/**
+	 * data items of this ECU for a single service/PID
+	 * (as Vector for API users, as array for response handling)
+	 */
+	private static final class PidItems
+	{
+		final EcuDataItem[] array;
+		final Vector<EcuDataItem> list;
+		/** items are defined within this context only (own decoder) */
+		boolean local = false;
+		/** decoder of local items */
+		private PidDecoder decoder;
+
+		PidItems(EcuDataItem[] array)
+		{
+			this.array = array;
+			list = new Vector<EcuDataItem>(Arrays.asList(array));
+		}
+
+		/**
+		 * get decoder of local items
+		 * (recompiled after change of conversion system)
+		 */
+		synchronized PidDecoder getDecoder()
+		{
+			if (decoder == null || !decoder.isValid())
+			{
+				decoder = new PidDecoder(array);
+			}
+			return decoder;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("ECU 0x%X (%d PIDs)", address, scheduler.getPids().size());
+	}
+}
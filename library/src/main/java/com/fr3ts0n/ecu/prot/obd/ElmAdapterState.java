@@ -0,0 +1,252 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import java.util.EnumMap;
+import java.util.logging.Logger;
+
+/**
+ * Shadow of the current settings of an ELM adapter
+ * (protocol, echo, headers, spaces, linefeeds, timeout, adaptive timing,
+ * TX header, RX filter)
+ * - settings are remembered from the commands sent to the adapter
+ * - commands which would not change the current setting are redundant
+ *   and don't need to be sent
+ * - settings are unknown after reset/defaults commands, unknown commands
+ *   and adapter errors
+ */
+public class ElmAdapterState
+{
+	/** Logging object */
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.prot.obd");
+
+	/** commands which change adapter settings */
+	private static final ElmProt.CMD[] SETTING_CMDS =
+		{
+			ElmProt.CMD.ECHO,
+			ElmProt.CMD.SETLINEFEED,
+			ElmProt.CMD.SETSPACES,
+			ElmProt.CMD.SETHEADER,
+			ElmProt.CMD.SETPROTAUTO,
+			ElmProt.CMD.SETPROT,
+			ElmProt.CMD.ADAPTTIMING,
+			ElmProt.CMD.SETTIMEOUT,
+			ElmProt.CMD.SETTXHDR,
+			ElmProt.CMD.SETCANRXFLT,
+			ElmProt.CMD.CLRCANRXFLT,
+		};
+
+	/** commands which don't change any adapter settings */
+	private static final ElmProt.CMD[] NEUTRAL_CMDS =
+		{
+			ElmProt.CMD.INFO,
+			ElmProt.CMD.GETPROT,
+			ElmProt.CMD.GETPROTNUM,
+			ElmProt.CMD.PROTOCLOSE,
+			ElmProt.CMD.CANMONITOR,
+			ElmProt.CMD.LOWPOWER,
+		};
+
+	/** current value of each known setting */
+	private final EnumMap<ElmProt.CMD, String> settings =
+		new EnumMap<ElmProt.CMD, String>(ElmProt.CMD.class);
+	/** setting of last sent command */
+	private ElmProt.CMD lastSetting = null;
+	/** number of commands which were not sent since they were redundant */
+	private long numSaved = 0;
+	/** number of sent setting commands */
+	private long numSent = 0;
+
+	/**
+	 * Is command redundant, since adapter setting has the requested value already?
+	 * (redundant commands are counted as saved round trips)
+	 *
+	 * @param cmd command to be sent
+	 * @return true if command would not change current adapter setting
+	 */
+	public synchronized boolean isRedundant(String cmd)
+	{
+		ElmProt.CMD cmdId = getSettingCmd(cmd);
+		boolean result = cmdId != null && getValue(cmdId, cmd).equals(settings.get(getSetting(cmdId)));
+		if (result)
+		{
+			numSaved++;
+			log.fine("Redundant command skipped: " + cmd);
+		}
+		return result;
+	}
+
+	/**
+	 * Update settings from command which is sent to adapter
+	 *
+	 * @param cmd command which is sent
+	 */
+	public synchronized void sent(String cmd)
+	{
+		lastSetting = null;
+		// OBD requests don't change settings
+		if (!cmd.startsWith(ElmProt.CMD.CMD_HEADER))
+		{
+			return;
+		}
+		ElmProt.CMD cmdId = getSettingCmd(cmd);
+		if (cmdId != null)
+		{
+			lastSetting = getSetting(cmdId);
+			settings.put(lastSetting, getValue(cmdId, cmd));
+			numSent++;
+		}
+		else if (!isNeutral(cmd))
+		{
+			// reset, defaults or unknown (custom) command
+			invalidate();
+		}
+	}
+
+	/**
+	 * Last sent command was rejected by the adapter ('?'),
+	 * so the corresponding setting is unknown
+	 */
+	public synchronized void rejected()
+	{
+		if (lastSetting != null)
+		{
+			settings.remove(lastSetting);
+			lastSetting = null;
+		}
+	}
+
+	/**
+	 * Forget all settings (after adapter reset or error)
+	 */
+	public synchronized void invalidate()
+	{
+		settings.clear();
+		lastSetting = null;
+	}
+
+	/**
+	 * Get current value of a setting
+	 *
+	 * @param cmdId command of setting
+	 * @return current value of setting (parameter digits), null if unknown
+	 */
+	public synchronized String get(ElmProt.CMD cmdId)
+	{
+		return settings.get(getSetting(cmdId));
+	}
+
+	/**
+	 * @return number of saved round trips (redundant commands not sent)
+	 */
+	public synchronized long getNumSaved()
+	{
+		return numSaved;
+	}
+
+	/**
+	 * @return number of setting commands which were sent
+	 */
+	public synchronized long getNumSent()
+	{
+		return numSent;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("%s sent:%d saved:%d", settings, numSent, numSaved);
+	}
+
+	/**
+	 * get setting command which matches the command string
+	 *
+	 * @return command ID, null if command string is no setting command
+	 */
+	static ElmProt.CMD getSettingCmd(String cmd)
+	{
+		for (ElmProt.CMD cmdId : SETTING_CMDS)
+		{
+			String cmdStr = cmdId.toString();
+			if (cmd.length() == cmdStr.length() + cmdId.paramDigits
+			    && cmd.startsWith(cmdStr)
+			    && isHex(cmd, cmdStr.length()))
+			{
+				return cmdId;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * get setting which is changed by a setting command
+	 * (automatic/fixed protocol and set/clear filter change the same setting)
+	 */
+	private static ElmProt.CMD getSetting(ElmProt.CMD cmdId)
+	{
+		switch (cmdId)
+		{
+			case SETPROTAUTO:
+				return ElmProt.CMD.SETPROT;
+			case CLRCANRXFLT:
+				return ElmProt.CMD.SETCANRXFLT;
+			default:
+				return cmdId;
+		}
+	}
+
+	/**
+	 * get value of setting from command string
+	 */
+	private static String getValue(ElmProt.CMD cmdId, String cmd)
+	{
+		String value = cmd.substring(cmdId.toString().length());
+		return (cmdId == ElmProt.CMD.SETPROTAUTO) ? "A" + value : value;
+	}
+
+	/**
+	 * is command known to not change any settings?
+	 */
+	private static boolean isNeutral(String cmd)
+	{
+		for (ElmProt.CMD cmdId : NEUTRAL_CMDS)
+		{
+			if (cmd.equals(cmdId.toString()))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * are all characters from offset hex digits?
+	 */
+	private static boolean isHex(String cmd, int offset)
+	{
+		for (int i = offset; i < cmd.length(); i++)
+		{
+			if (Character.digit(cmd.charAt(i), 16) < 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,421 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.prot.SerialLine;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Baud rate upgrade of serial ELM adapters (ATBRD/ATBRT)
+ * <p>
+ * The adapter is switched to the highest baud rate which passes the
+ * ELM handshake and a verification with several identification requests.
+ * If verification fails, the previous baud rate is restored.
+ * The highest stable baud rate of each adapter is remembered, so it is
+ * tried first on the next connection, and an adapter which still runs
+ * at an upgraded rate (e.g. after a lost connection) is found again.
+ * <p>
+ * The upgrade is done on the serial line before the ELM protocol handler
+ * takes over. Afterwards the adapter must not be reset with ATZ,
+ * since this restores the default baud rate.
+ *
+ * @see ElmProt#setKeepBaudRate(boolean)
+ */
+public class ElmBaudRate
+{
+	/** ELM clock for baud rate divisors [Hz] */
+	static final int ELM_CLOCK = 4000000;
+	/** baud rates to be tried, highest first */
+	static final int[] BAUD_RATES = {500000, 250000, 115200, 57600};
+	/** baud rate handshake timeout of adapter (ATBRT, 5 ms units) */
+	static final int HANDSHAKE_TIMEOUT = 0x28;
+	/** max. time [ms] to wait for a response */
+	static final int RESPONSE_TIMEOUT = 1000;
+	/** max. time [ms] to wait for adapter reset */
+	static final int RESET_TIMEOUT = 3000;
+	/** number of identification requests to verify a new baud rate */
+	static final int NUM_VERIFICATIONS = 3;
+
+	/** Logging object */
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.prot.obd");
+
+	/** highest stable baud rate by adapter */
+	private final TreeMap<String, Integer> stableRates = new TreeMap<String, Integer>();
+
+	/**
+	 * Get baud rate divisor of ELM adapter
+	 *
+	 * @param baudRate baud rate [bps]
+	 * @return divisor for ATBRD command
+	 */
+	static int getDivisor(int baudRate)
+	{
+		return Math.min(0xFF, Math.max(1, Math.round((float) ELM_CLOCK / baudRate)));
+	}
+
+	/**
+	 * Get remembered stable baud rate of an adapter
+	 *
+	 * @param adapter adapter identity (e.g. serial port/device ID)
+	 * @return highest stable baud rate, 0 if unknown
+	 */
+	public synchronized int getStableRate(String adapter)
+	{
+		Integer result = stableRates.get(adapter);
+		return (result != null) ? result : 0;
+	}
+
+	/**
+	 * Get remembered stable baud rates as text lines "adapter=rate"
+	 *
+	 * @return stable baud rates
+	 */
+	public synchronized String getStableRates()
+	{
+		StringBuilder result = new StringBuilder();
+		for (Map.Entry<String, Integer> entry : stableRates.entrySet())
+		{
+			result.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Set remembered stable baud rates from text lines "adapter=rate"
+	 * - invalid lines are ignored
+	 *
+	 * @param rates stable baud rates
+	 */
+	public synchronized void setStableRates(String rates)
+	{
+		stableRates.clear();
+		if (rates == null)
+		{
+			return;
+		}
+		for (String line : rates.split("\n"))
+		{
+			int pos = line.lastIndexOf('=');
+			try
+			{
+				if (pos > 0)
+				{
+					stableRates.put(line.substring(0, pos), Integer.parseInt(line.substring(pos + 1).trim()));
+				}
+			}
+			catch (NumberFormatException ex)
+			{
+				log.warning("Invalid baud rate: " + line);
+			}
+		}
+	}
+
+	/**
+	 * Upgrade baud rate of adapter
+	 *
+	 * @param line    serial line, opened with adapter's default baud rate
+	 * @param adapter adapter identity (e.g. serial port/device ID)
+	 * @param maxRate max. baud rate supported by the serial line
+	 * @return baud rate the adapter and the line are running with
+	 * @throws IOException on communication errors
+	 */
+	public int upgrade(SerialLine line, String adapter, int maxRate) throws IOException
+	{
+		LineReader reader = new LineReader(line);
+		int initialRate = line.getBaudRate();
+		int stableRate = getStableRate(adapter);
+		String id = reader.request("ATI");
+		if (id == null && stableRate > 0)
+		{
+			// adapter may still run at the upgraded rate,
+			// first request flushes the garbled one
+			line.setBaudRate(stableRate);
+			reader.request("ATI");
+			id = reader.request("ATI");
+			if (id != null)
+			{
+				log.info(String.format("Adapter still running at %d baud", stableRate));
+				return stableRate;
+			}
+			line.setBaudRate(initialRate);
+			id = reader.request("ATI");
+		}
+		if (id == null)
+		{
+			log.warning("Adapter not responding, baud rate not changed");
+			return initialRate;
+		}
+		if (!"OK".equals(reader.request(String.format("ATBRT%02X", HANDSHAKE_TIMEOUT))))
+		{
+			log.info("Adapter does not support baud rate change");
+			return initialRate;
+		}
+		for (int baudRate : BAUD_RATES)
+		{
+			// remembered stable rate is the highest rate to be tried
+			if (baudRate > maxRate
+			    || baudRate <= initialRate
+			    || (stableRate > 0 && baudRate > stableRate))
+			{
+				continue;
+			}
+			if (switchRate(reader, baudRate, id))
+			{
+				if (verify(reader, id))
+				{
+					log.info(String.format("Baud rate upgraded: %d -> %d", initialRate, baudRate));
+					synchronized (this)
+					{
+						stableRates.put(adapter, baudRate);
+					}
+					return baudRate;
+				}
+				rollback(reader, initialRate, id);
+			}
+			// rate is not stable, don't try again
+			if (baudRate == stableRate)
+			{
+				synchronized (this)
+				{
+					stableRates.remove(adapter);
+				}
+				stableRate = 0;
+			}
+		}
+		log.info(String.format("Baud rate not upgraded: %d", initialRate));
+		return initialRate;
+	}
+
+	/**
+	 * switch adapter and line to new baud rate with ELM handshake
+	 *
+	 * @return true if adapter and line run with new baud rate
+	 */
+	private boolean switchRate(LineReader reader, int baudRate, String id) throws IOException
+	{
+		SerialLine line = reader.line;
+		int oldRate = line.getBaudRate();
+		String cmd = String.format("ATBRD%02X", getDivisor(baudRate));
+		log.fine(String.format("Trying %d baud: %s", baudRate, cmd));
+		reader.write(cmd);
+		// OK is sent with old rate
+		String rsp;
+		do
+		{
+			rsp = reader.readLine(RESPONSE_TIMEOUT);
+		} while (rsp != null && rsp.equals(cmd));
+		if (!"OK".equals(rsp))
+		{
+			reader.readPrompt(RESPONSE_TIMEOUT);
+			return false;
+		}
+		// adapter sends ID with new rate and waits for CR,
+		// give up early enough to receive the prompt at the old rate
+		// (rest of old rate response may be received as garbage)
+		line.setBaudRate(baudRate);
+		rsp = reader.readLine(HANDSHAKE_TIMEOUT * 5 / 2);
+		if (rsp != null && (rsp.endsWith(id) || rsp.contains("ELM")))
+		{
+			reader.write("");
+			rsp = reader.readPrompt(RESPONSE_TIMEOUT);
+			if (rsp != null && rsp.contains("OK"))
+			{
+				return true;
+			}
+			// confirmation lost, adapter may run with either rate
+			if (reader.request("ATI") != null)
+			{
+				return true;
+			}
+			line.setBaudRate(oldRate);
+			reader.request("ATI");
+			return false;
+		}
+		// adapter returns to old rate after handshake timeout
+		line.setBaudRate(oldRate);
+		reader.readPrompt(RESPONSE_TIMEOUT);
+		return false;
+	}
+
+	/**
+	 * verify new baud rate with identification requests
+	 *
+	 * @return true if all requests are answered correctly
+	 */
+	private boolean verify(LineReader reader, String id) throws IOException
+	{
+		for (int i = 0; i < NUM_VERIFICATIONS; i++)
+		{
+			if (!id.equals(reader.request("ATI")))
+			{
+				log.warning(String.format("Baud rate verification failed: %d", reader.line.getBaudRate()));
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * restore previous baud rate after failed verification
+	 * (by handshake, or by adapter reset if the handshake fails)
+	 */
+	private void rollback(LineReader reader, int baudRate, String id) throws IOException
+	{
+		log.info(String.format("Rolling back to %d baud", baudRate));
+		if (!switchRate(reader, baudRate, id))
+		{
+			reader.write("ATZ");
+			reader.line.setBaudRate(baudRate);
+			reader.readPrompt(RESET_TIMEOUT);
+			// reset also restores the default handshake timeout
+			reader.request(String.format("ATBRT%02X", HANDSHAKE_TIMEOUT));
+		}
+	}
+
+	/**
+	 * Reader for responses on serial line
+	 */
+	private static class LineReader
+	{
+		/** serial line */
+		final SerialLine line;
+		/** receive buffer */
+		private final byte[] buffer = new byte[64];
+		/** read position in receive buffer */
+		private int pos = 0;
+		/** number of bytes in receive buffer */
+		private int len = 0;
+
+		LineReader(SerialLine line)
+		{
+			this.line = line;
+		}
+
+		/**
+		 * write command (incl. CR)
+		 */
+		void write(String cmd) throws IOException
+		{
+			line.write((cmd + "\r").getBytes("US-ASCII"));
+		}
+
+		/**
+		 * send command and read response up to prompt
+		 *
+		 * @return response w/o echo, null on timeout
+		 */
+		String request(String cmd) throws IOException
+		{
+			// forget any stale data
+			len = 0;
+			write(cmd);
+			String rsp = readPrompt(RESPONSE_TIMEOUT);
+			if (rsp == null)
+			{
+				return null;
+			}
+			StringBuilder result = new StringBuilder();
+			for (String rspLine : rsp.split("[\r\n]+"))
+			{
+				if (rspLine.length() > 0 && !rspLine.equals(cmd))
+				{
+					if (result.length() > 0)
+					{
+						result.append('\n');
+					}
+					result.append(rspLine);
+				}
+			}
+			return result.toString();
+		}
+
+		/**
+		 * read next non-empty line
+		 *
+		 * @return received line, null on timeout
+		 */
+		String readLine(int timeout) throws IOException
+		{
+			StringBuilder result = new StringBuilder();
+			long end = System.currentTimeMillis() + timeout;
+			int chr;
+			while ((chr = read(end)) >= 0)
+			{
+				if (chr == '\r' || chr == '\n' || chr == '>')
+				{
+					if (result.length() > 0)
+					{
+						return result.toString();
+					}
+				}
+				else
+				{
+					result.append((char) chr);
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * read until prompt
+		 *
+		 * @return received text before prompt, null on timeout
+		 */
+		String readPrompt(int timeout) throws IOException
+		{
+			StringBuilder result = new StringBuilder();
+			long end = System.currentTimeMillis() + timeout;
+			int chr;
+			while ((chr = read(end)) >= 0)
+			{
+				if (chr == '>')
+				{
+					return result.toString();
+				}
+				result.append((char) chr);
+			}
+			return null;
+		}
+
+		/**
+		 * read next byte
+		 *
+		 * @param end time [ms] to give up waiting
+		 * @return received byte, -1 on timeout
+		 */
+		private int read(long end) throws IOException
+		{
+			while (pos >= len)
+			{
+				long timeout = end - System.currentTimeMillis();
+				if (timeout <= 0)
+				{
+					return -1;
+				}
+				pos = 0;
+				len = line.read(buffer, (int) timeout);
+			}
+			return buffer[pos++] & 0xFF;
+		}
+	}
+}
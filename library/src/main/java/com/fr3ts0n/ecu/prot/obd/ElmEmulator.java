@@ -0,0 +1,1460 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.prot.SerialLine;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ELM327 adapter emulator
+ * <p>
+ * Emulates an ELM327 adapter with connected CAN (ISO 15765-4, 11 bit, 500 kBit)
+ * vehicle ECUs on a local TCP port, as provided by WiFi adapters.
+ * So it may be used as counterpart of a network connection or
+ * a StreamHandler for testing throughput and timeout behaviour without
+ * vehicle and adapter.
+ * <p>
+ * Emulated features:
+ * <ul>
+ * <li>AT commands used by ElmProt (echo, spaces, linefeeds, headers, protocol,
+ * timeout, RX filter, TX header, CAN monitor)</li>
+ * <li>OBD services 01, 02, 03, 04, 07, 09, 0A of multiple ECUs</li>
+ * <li>multi PID requests and multi frame (ISO-TP) responses</li>
+ * <li>configurable response latency with latency spikes,
+ * exceeding the adapter timeout results in NO DATA</li>
+ * <li>injection of NRC, NO DATA and BUFFER FULL responses</li>
+ * <li>CAN monitor traffic with configurable frame rate</li>
+ * <li>baud rate change (ATBRD/ATBRT) on serial line sessions</li>
+ * <li>optional STN extended dialect (STI, STDI, STPX)</li>
+ * </ul>
+ * <p>
+ * Configuration is done by {@link Config}, which may be loaded from properties.
+ *
+ * @see Config#load(Properties)
+ */
+public class ElmEmulator implements Runnable
+{
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.ecu.prot.obd.emulator");
+
+	/** default TCP port (as used by most WiFi adapters) */
+	public static final int DEFAULT_PORT = 35000;
+	/** adapter identification */
+	static final String ELM_ID = "ELM327 v1.5";
+	/** default ELM timeout (ATST value, 4 ms units) */
+	static final int DEFAULT_TIMEOUT = 0x32;
+	/** CAN protocol description */
+	static final String PROTOCOL_DESCRIPTION = "ISO 15765-4 (CAN 11/500)";
+	/** ELM protocol number of emulated protocol */
+	static final int PROTOCOL_NUMBER = 6;
+	/** default baud rate handshake timeout (ATBRT value, 5 ms units) */
+	static final int DEFAULT_BAUDRATE_TIMEOUT = 0x0F;
+
+	/**
+	 * emulated vehicle ECU
+	 */
+	public static class Ecu
+	{
+		/** CAN response address */
+		final int address;
+		/** supported PIDs of service 01/02 */
+		final TreeSet<Integer> pids = new TreeSet<Integer>();
+		/** stored trouble codes per service (03, 07, 0A) */
+		final Vector<Integer> dtcs = new Vector<Integer>();
+		/** vehicle identification number */
+		String vin = "WF0XXXGCDX1234567";
+		/** ECU name */
+		String name = "ECM-EngineControl";
+		/** additional response latency [ms] of this ECU */
+		int latency = 0;
+
+		/**
+		 * create ECU with specified response address
+		 *
+		 * @param address CAN response address (e.g. 0x7E8)
+		 */
+		public Ecu(int address)
+		{
+			this.address = address;
+		}
+
+		/**
+		 * set supported PIDs of service 01/02
+		 *
+		 * @param pidCodes PID codes
+		 */
+		public Ecu setPids(int... pidCodes)
+		{
+			pids.clear();
+			for (int pid : pidCodes)
+			{
+				pids.add(pid);
+			}
+			return this;
+		}
+
+		/**
+		 * set stored trouble codes
+		 *
+		 * @param codes trouble codes in clear text (e.g. P0100)
+		 */
+		public Ecu setDtcs(String... codes)
+		{
+			dtcs.clear();
+			for (String code : codes)
+			{
+				dtcs.add(dtcValue(code));
+			}
+			return this;
+		}
+
+		/**
+		 * set additional response latency of this ECU
+		 *
+		 * @param latency additional latency [ms]
+		 */
+		public Ecu setLatency(int latency)
+		{
+			this.latency = latency;
+			return this;
+		}
+
+		/**
+		 * get support bitmap of PIDs [start+1 .. start+0x20]
+		 *
+		 * @param start start PID (multiple of 0x20)
+		 * @return 32 bit support bitmap
+		 */
+		long getPidBitmap(int start)
+		{
+			long result = 0;
+			for (int pid : pids)
+			{
+				if (pid > start && pid <= start + 0x20)
+				{
+					result |= 0x80000000L >> (pid - start - 1);
+				}
+				else if (pid > start + 0x20)
+				{
+					// PIDs within next block available
+					result |= 1;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * convert trouble code text into numeric trouble code
+		 *
+		 * @param code trouble code in clear text (e.g. P0100)
+		 * @return numeric trouble code
+		 */
+		static int dtcValue(String code)
+		{
+			int type = "PCBU".indexOf(Character.toUpperCase(code.charAt(0)));
+			return (type << 14) | Integer.parseInt(code.substring(1), 16);
+		}
+	}
+
+	/**
+	 * emulator configuration
+	 */
+	public static class Config
+	{
+		/** emulated ECUs */
+		public final Vector<Ecu> ecus = new Vector<Ecu>();
+		/** min. response latency [ms] */
+		public int latencyMin = 5;
+		/** max. response latency [ms] */
+		public int latencyMax = 20;
+		/** probability of a latency spike */
+		public double latencySpikeRate = 0;
+		/** latency spike [ms] */
+		public int latencySpike = 500;
+		/** probability of a NO DATA response */
+		public double noDataRate = 0;
+		/** probability of a negative response (NRC) */
+		public double nrcRate = 0;
+		/** NRC to respond with */
+		public int nrc = 0x12;
+		/** probability of a BUFFER FULL response */
+		public double bufferFullRate = 0;
+		/** CAN monitor frame rate [frames/s] */
+		public int monitorRate = 100;
+		/** CAN IDs of CAN monitor frames */
+		public int[] monitorIds = {0x02, 0x10, 0x25};
+		/** seed of random generator (0 = random seed) */
+		public long seed = 0;
+		/** STN chip identity (STI response), null = plain ELM adapter */
+		public String stnId = null;
+		/** device identity (STDI response) */
+		public String deviceId = "OBDLink SX r4.2";
+
+		/**
+		 * create configuration with a single engine ECU
+		 */
+		public Config()
+		{
+			ecus.add(new Ecu(0x7E8).setPids(0x01, 0x03, 0x04, 0x05, 0x06, 0x07, 0x0B, 0x0C,
+			                                0x0D, 0x0E, 0x0F, 0x10, 0x11, 0x13, 0x1C, 0x1F,
+			                                0x21, 0x2F, 0x33, 0x42, 0x46));
+		}
+
+		/**
+		 * load configuration from properties
+		 * <pre>
+		 * ecus=7E8,7E9                   CAN response addresses of ECUs
+		 * ecu.7E8.pids=04,05,0C,0D       supported PIDs of service 01/02
+		 * ecu.7E8.dtcs=P0100,U0001       stored trouble codes
+		 * ecu.7E8.vin=...                vehicle identification number
+		 * ecu.7E8.name=...               ECU name
+		 * ecu.7E8.latency=10             additional response latency [ms]
+		 * latency.min=5                  min. response latency [ms]
+		 * latency.max=20                 max. response latency [ms]
+		 * latency.spike.rate=0.01        probability of latency spike
+		 * latency.spike=500              latency spike [ms]
+		 * rate.nodata=0.01               probability of NO DATA
+		 * rate.nrc=0.01                  probability of NRC response
+		 * nrc=12                         NRC to respond with
+		 * rate.bufferfull=0.001          probability of BUFFER FULL
+		 * monitor.rate=1000              CAN monitor frame rate [frames/s]
+		 * monitor.ids=02,10,25           CAN IDs of CAN monitor frames
+		 * seed=1                         seed of random generator
+		 * stn.id=STN1110 v4.2.1          STN chip identity (STN dialect)
+		 * stn.device=OBDLink SX r4.2     STN device identity
+		 * </pre>
+		 *
+		 * @param props properties to load configuration from
+		 * @return configuration
+		 */
+		public static Config load(Properties props)
+		{
+			Config cfg = new Config();
+			String ecuList = props.getProperty("ecus");
+			if (ecuList != null)
+			{
+				cfg.ecus.clear();
+				for (String adr : ecuList.split(","))
+				{
+					String prefix = "ecu." + adr.trim().toUpperCase() + ".";
+					Ecu ecu = new Ecu(Integer.parseInt(adr.trim(), 16));
+					ecu.setPids(hexList(props.getProperty(prefix + "pids",
+					                                      "04,05,0C,0D,0F,10,11")));
+					String dtcs = props.getProperty(prefix + "dtcs");
+					if (dtcs != null && dtcs.trim().length() > 0)
+					{
+						ecu.setDtcs(dtcs.trim().split("\\s*,\\s*"));
+					}
+					ecu.vin = props.getProperty(prefix + "vin", ecu.vin);
+					ecu.name = props.getProperty(prefix + "name", ecu.name);
+					ecu.latency = Integer.parseInt(props.getProperty(prefix + "latency", "0"));
+					cfg.ecus.add(ecu);
+				}
+			}
+			cfg.latencyMin = Integer.parseInt(props.getProperty("latency.min", String.valueOf(cfg.latencyMin)));
+			cfg.latencyMax = Integer.parseInt(props.getProperty("latency.max", String.valueOf(cfg.latencyMax)));
+			cfg.latencySpikeRate = Double.parseDouble(props.getProperty("latency.spike.rate", String.valueOf(cfg.latencySpikeRate)));
+			cfg.latencySpike = Integer.parseInt(props.getProperty("latency.spike", String.valueOf(cfg.latencySpike)));
+			cfg.noDataRate = Double.parseDouble(props.getProperty("rate.nodata", String.valueOf(cfg.noDataRate)));
+			cfg.nrcRate = Double.parseDouble(props.getProperty("rate.nrc", String.valueOf(cfg.nrcRate)));
+			cfg.nrc = Integer.parseInt(props.getProperty("nrc", Integer.toHexString(cfg.nrc)), 16);
+			cfg.bufferFullRate = Double.parseDouble(props.getProperty("rate.bufferfull", String.valueOf(cfg.bufferFullRate)));
+			cfg.monitorRate = Integer.parseInt(props.getProperty("monitor.rate", String.valueOf(cfg.monitorRate)));
+			String ids = props.getProperty("monitor.ids");
+			if (ids != null)
+			{
+				cfg.monitorIds = hexList(ids);
+			}
+			cfg.seed = Long.parseLong(props.getProperty("seed", String.valueOf(cfg.seed)));
+			cfg.stnId = props.getProperty("stn.id", cfg.stnId);
+			cfg.deviceId = props.getProperty("stn.device", cfg.deviceId);
+			return cfg;
+		}
+
+		/**
+		 * convert comma separated list of hex values into int array
+		 */
+		private static int[] hexList(String list)
+		{
+			String[] values = list.trim().split("\\s*,\\s*");
+			int[] result = new int[values.length];
+			for (int i = 0; i < values.length; i++)
+			{
+				result[i] = Integer.parseInt(values[i], 16);
+			}
+			return result;
+		}
+	}
+
+	/** emulator configuration */
+	private final Config config;
+	/** server socket */
+	private ServerSocket serverSocket;
+	/** active client sessions */
+	private final Vector<Session> sessions = new Vector<Session>();
+
+	/** number of received OBD requests */
+	private long numRequests = 0;
+	/** number of sent OBD responses */
+	private long numResponses = 0;
+	/** number of NO DATA responses */
+	private long numNoData = 0;
+	/** number of negative responses */
+	private long numNrc = 0;
+	/** number of BUFFER FULL responses */
+	private long numBufferFull = 0;
+	/** number of sent CAN monitor frames */
+	private long numMonitorFrames = 0;
+
+	/**
+	 * create emulator with specified configuration
+	 *
+	 * @param config emulator configuration
+	 */
+	public ElmEmulator(Config config)
+	{
+		this.config = config;
+	}
+
+	/**
+	 * start emulator on specified TCP port
+	 *
+	 * @param port TCP port to listen on (0 = any free port)
+	 * @return TCP port the emulator is listening on
+	 * @throws IOException if port can't be opened
+	 */
+	public int start(int port) throws IOException
+	{
+		return start(null, port);
+	}
+
+	/**
+	 * start emulator on specified local address and TCP port
+	 *
+	 * @param address local address to listen on (null = all addresses)
+	 * @param port TCP port to listen on (0 = any free port)
+	 * @return TCP port the emulator is listening on
+	 * @throws IOException if port can't be opened
+	 */
+	public int start(InetAddress address, int port) throws IOException
+	{
+		serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		serverSocket.bind(new InetSocketAddress(address, port));
+		Thread acceptThread = new Thread(this, "ElmEmulator");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+		log.info(String.format("ELM emulator listening on port %d", serverSocket.getLocalPort()));
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * start emulator session on a serial line (e.g. pseudo terminal)
+	 * - the session supports baud rate changes (ATBRD/ATBRT)
+	 *
+	 * @param line serial line to serve
+	 */
+	public void startSession(SerialLine line)
+	{
+		Session session = new Session(line);
+		sessions.add(session);
+		Thread sessionThread = new Thread(session, "ElmEmulatorSession");
+		sessionThread.setDaemon(true);
+		sessionThread.start();
+		log.info(String.format("ELM emulator serving serial line at %d baud", line.getBaudRate()));
+	}
+
+	/**
+	 * stop emulator and close all client sessions
+	 */
+	public void stop()
+	{
+		try
+		{
+			if (serverSocket != null)
+			{
+				serverSocket.close();
+			}
+		}
+		catch (IOException e)
+		{
+			log.warning(e.getMessage());
+		}
+		for (Session session : new Vector<Session>(sessions))
+		{
+			session.close();
+		}
+	}
+
+	/**
+	 * accept loop for client connections
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			while (!serverSocket.isClosed())
+			{
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				log.info("Client connected: " + socket.getRemoteSocketAddress());
+				Session session = new Session(socket);
+				sessions.add(session);
+				Thread sessionThread = new Thread(session, "ElmEmulatorSession");
+				sessionThread.setDaemon(true);
+				sessionThread.start();
+			}
+		}
+		catch (IOException e)
+		{
+			if (!serverSocket.isClosed())
+			{
+				log.log(Level.WARNING, "Accept failed", e);
+			}
+		}
+	}
+
+	/**
+	 * get number of received OBD requests
+	 *
+	 * @return number of requests
+	 */
+	public synchronized long getNumRequests()
+	{
+		return numRequests;
+	}
+
+	/**
+	 * get number of sent OBD responses
+	 *
+	 * @return number of responses
+	 */
+	public synchronized long getNumResponses()
+	{
+		return numResponses;
+	}
+
+	/**
+	 * get number of NO DATA responses (injected or timed out)
+	 *
+	 * @return number of NO DATA responses
+	 */
+	public synchronized long getNumNoData()
+	{
+		return numNoData;
+	}
+
+	/**
+	 * get number of negative responses
+	 *
+	 * @return number of NRC responses
+	 */
+	public synchronized long getNumNrc()
+	{
+		return numNrc;
+	}
+
+	/**
+	 * get number of BUFFER FULL responses
+	 *
+	 * @return number of BUFFER FULL responses
+	 */
+	public synchronized long getNumBufferFull()
+	{
+		return numBufferFull;
+	}
+
+	/**
+	 * get number of sent CAN monitor frames
+	 *
+	 * @return number of CAN monitor frames
+	 */
+	public synchronized long getNumMonitorFrames()
+	{
+		return numMonitorFrames;
+	}
+
+	/**
+	 * Emulated adapter state of a single client connection
+	 */
+	class Session implements Runnable
+	{
+		/** client socket (null for serial line sessions) */
+		private final Socket socket;
+		/** serial line (null for socket sessions) */
+		private final SerialLine line;
+		/** default baud rate of serial line */
+		private int defaultBaudRate = 0;
+		private InputStream in;
+		private OutputStream out;
+		private final Random random = (config.seed != 0) ? new Random(config.seed) : new Random();
+
+		/** adapter settings */
+		private boolean echo = true;
+		private boolean lineFeeds = true;
+		private boolean spaces = true;
+		private boolean headers = false;
+		private int protocol = 0;
+		private boolean protocolFound = false;
+		private int timeout = DEFAULT_TIMEOUT;
+		private int baudRateTimeout = DEFAULT_BAUDRATE_TIMEOUT;
+		/** CAN RX filter address (0 = all ECUs) */
+		private int rxFilter = 0;
+		/** last command for repetition by empty command */
+		private String lastCommand = "";
+
+		Session(Socket socket)
+		{
+			this.socket = socket;
+			this.line = null;
+		}
+
+		Session(SerialLine line)
+		{
+			this.socket = null;
+			this.line = line;
+		}
+
+		/**
+		 * close client connection
+		 * (serial line sessions end when the line fails)
+		 */
+		void close()
+		{
+			try
+			{
+				if (socket != null)
+				{
+					socket.close();
+				}
+			}
+			catch (IOException e)
+			{
+				// ignore
+			}
+		}
+
+		/**
+		 * open streams of socket or serial line
+		 */
+		private void openStreams() throws IOException
+		{
+			if (socket != null)
+			{
+				in = socket.getInputStream();
+				out = socket.getOutputStream();
+				return;
+			}
+			defaultBaudRate = line.getBaudRate();
+			in = new InputStream()
+			{
+				final byte[] buffer = new byte[1];
+
+				@Override
+				public int read() throws IOException
+				{
+					line.read(buffer, 0);
+					return buffer[0] & 0xFF;
+				}
+			};
+			out = new OutputStream()
+			{
+				@Override
+				public void write(int b) throws IOException
+				{
+					line.write(new byte[]{(byte) b});
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException
+				{
+					line.write(Arrays.copyOfRange(b, off, off + len));
+				}
+			};
+		}
+
+		/**
+		 * command loop of client connection
+		 */
+		@Override
+		public void run()
+		{
+			StringBuilder cmd = new StringBuilder();
+			try
+			{
+				openStreams();
+				int chr;
+				while ((chr = in.read()) >= 0)
+				{
+					switch (chr)
+					{
+						case '\r':
+							handleCommand(cmd.toString());
+							cmd.setLength(0);
+							break;
+
+						case '\n':
+						case ' ':
+							break;
+
+						default:
+							cmd.append((char) chr);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				log.fine("Session closed: " + e.getMessage());
+			}
+			close();
+			sessions.remove(this);
+			log.info("Client disconnected");
+		}
+
+		/**
+		 * handle received command and send response
+		 *
+		 * @param command received command (w/o spaces)
+		 */
+		void handleCommand(String command) throws IOException
+		{
+			StringBuilder rsp = new StringBuilder();
+			if (echo)
+			{
+				rsp.append(command).append(eol());
+			}
+			// empty command repeats last command
+			if (command.length() == 0)
+			{
+				command = lastCommand;
+			}
+			lastCommand = command;
+			String cmd = command.toUpperCase();
+
+			if (cmd.startsWith("AT"))
+			{
+				// monitor sends its response itself
+				if (handleAtCommand(cmd.substring(2), rsp))
+				{
+					return;
+				}
+			}
+			else if (cmd.startsWith("ST"))
+			{
+				handleStCommand(cmd.substring(2), rsp);
+			}
+			else
+			{
+				handleObdRequest(cmd, rsp);
+			}
+			rsp.append(eol()).append('>');
+			write(rsp);
+		}
+
+		/**
+		 * handle AT command
+		 *
+		 * @param cmd command w/o AT prefix
+		 * @param rsp response buffer
+		 * @return true if response was already sent
+		 */
+		private boolean handleAtCommand(String cmd, StringBuilder rsp) throws IOException
+		{
+			String result = "OK";
+			if (cmd.equals("Z") || cmd.equals("WS"))
+			{
+				echo = true;
+				lineFeeds = true;
+				spaces = true;
+				headers = false;
+				timeout = DEFAULT_TIMEOUT;
+				rxFilter = 0;
+				protocolFound = false;
+				result = eol() + ELM_ID;
+				// full reset restores default baud rate
+				if (line != null && cmd.equals("Z"))
+				{
+					baudRateTimeout = DEFAULT_BAUDRATE_TIMEOUT;
+					line.setBaudRate(defaultBaudRate);
+				}
+			}
+			else if (cmd.equals("I"))
+			{
+				result = ELM_ID;
+			}
+			else if (cmd.equals("D"))
+			{
+				headers = false;
+				spaces = true;
+				timeout = DEFAULT_TIMEOUT;
+			}
+			else if (cmd.matches("E[01]"))
+			{
+				echo = cmd.endsWith("1");
+			}
+			else if (cmd.matches("L[01]"))
+			{
+				lineFeeds = cmd.endsWith("1");
+			}
+			else if (cmd.matches("S[01]"))
+			{
+				spaces = cmd.endsWith("1");
+			}
+			else if (cmd.matches("H[01]"))
+			{
+				headers = cmd.endsWith("1");
+			}
+			else if (cmd.matches("SPA?[0-9A-C]"))
+			{
+				protocol = Integer.parseInt(cmd.substring(cmd.length() - 1), 16);
+				protocolFound = false;
+			}
+			else if (cmd.equals("DP"))
+			{
+				result = (protocol == 0 ? "AUTO, " : "") + PROTOCOL_DESCRIPTION;
+			}
+			else if (cmd.equals("DPN"))
+			{
+				result = (protocol == 0 ? "A" + PROTOCOL_NUMBER : Integer.toHexString(protocol).toUpperCase());
+			}
+			else if (cmd.matches("ST[0-9A-F]{2}"))
+			{
+				timeout = Integer.parseInt(cmd.substring(2), 16);
+				if (timeout == 0)
+				{
+					timeout = DEFAULT_TIMEOUT;
+				}
+			}
+			else if (cmd.matches("CRA[0-9A-F]{3}"))
+			{
+				rxFilter = Integer.parseInt(cmd.substring(3), 16);
+			}
+			else if (cmd.equals("CRA"))
+			{
+				rxFilter = 0;
+			}
+			else if (cmd.equals("MA"))
+			{
+				monitor();
+				return true;
+			}
+			else if (line != null && cmd.matches("BRD[0-9A-F]{2}")
+			         && Integer.parseInt(cmd.substring(3), 16) > 0)
+			{
+				rsp.append("OK").append(eol());
+				write(rsp);
+				changeBaudRate(ElmBaudRate.ELM_CLOCK / Integer.parseInt(cmd.substring(3), 16));
+				return true;
+			}
+			else if (line != null && cmd.matches("BRT[0-9A-F]{2}"))
+			{
+				baudRateTimeout = Integer.parseInt(cmd.substring(3), 16);
+				if (baudRateTimeout == 0)
+				{
+					baudRateTimeout = 0x100;
+				}
+			}
+			else if (!(cmd.matches("AT[0-2]")
+			           || cmd.matches("SH[0-9A-F]{3}")
+			           || cmd.equals("PC")
+			           || cmd.equals("LP")))
+			{
+				result = "?";
+			}
+			rsp.append(result).append(eol());
+			return false;
+		}
+
+		/**
+		 * handle STN extended command
+		 * (rejected if no STN chip is emulated)
+		 *
+		 * @param cmd command w/o ST prefix
+		 * @param rsp response buffer
+		 */
+		private void handleStCommand(String cmd, StringBuilder rsp)
+		{
+			String result = "?";
+			if (config.stnId == null)
+			{
+				// plain ELM adapter
+			}
+			else if (cmd.equals("I"))
+			{
+				result = config.stnId;
+			}
+			else if (cmd.equals("DI"))
+			{
+				result = config.deviceId;
+			}
+			else if (cmd.startsWith("PX"))
+			{
+				handleExtendedRequest(cmd.substring(2), rsp);
+				return;
+			}
+			rsp.append(result).append(eol());
+		}
+
+		/**
+		 * handle extended request (STPX)
+		 * - H: TX header, physical requests are only answered by the addressed ECU
+		 * - D: request data
+		 * - R: number of expected responses, adapter stops waiting when received
+		 *
+		 * @param params request parameters w/o spaces, e.g. "H:7E0,D:0100,R:1"
+		 * @param rsp response buffer
+		 */
+		private void handleExtendedRequest(String params, StringBuilder rsp)
+		{
+			String data = null;
+			int filter = rxFilter;
+			int numResponses = 0;
+			try
+			{
+				for (String param : params.split(","))
+				{
+					if (param.startsWith("H:"))
+					{
+						int header = Integer.parseInt(param.substring(2), 16);
+						filter = (header == ElmProt.FUNCTIONAL_ADDRESS) ? 0 : header + 8;
+					}
+					else if (param.startsWith("D:"))
+					{
+						data = param.substring(2);
+					}
+					else if (param.startsWith("R:"))
+					{
+						numResponses = Integer.parseInt(param.substring(2));
+					}
+				}
+			}
+			catch (NumberFormatException e)
+			{
+				data = null;
+			}
+			if (data == null)
+			{
+				rsp.append('?').append(eol());
+				return;
+			}
+			handleObdRequest(data, rsp, filter, numResponses);
+		}
+
+		/**
+		 * try baud rate change with ELM handshake
+		 * - ID is sent with new baud rate
+		 * - new baud rate is kept if CR is received within baud rate timeout,
+		 *   otherwise the old baud rate is restored
+		 *
+		 * @param baudRate new baud rate
+		 */
+		private void changeBaudRate(int baudRate) throws IOException
+		{
+			int oldRate = line.getBaudRate();
+			line.setBaudRate(baudRate);
+			write(ELM_ID + "\r");
+			long end = System.currentTimeMillis() + baudRateTimeout * 5;
+			byte[] buffer = new byte[1];
+			long remaining;
+			while ((remaining = end - System.currentTimeMillis()) > 0)
+			{
+				if (line.read(buffer, (int) remaining) > 0 && buffer[0] == '\r')
+				{
+					log.info(String.format("Baud rate changed: %d -> %d", oldRate, baudRate));
+					write("OK" + eol() + ">");
+					return;
+				}
+			}
+			line.setBaudRate(oldRate);
+			write(">");
+		}
+
+		/**
+		 * handle OBD request
+		 *
+		 * @param cmd request in hex digits
+		 * @param rsp response buffer
+		 */
+		private void handleObdRequest(String cmd, StringBuilder rsp)
+		{
+			handleObdRequest(cmd, rsp, rxFilter, 0);
+		}
+
+		/**
+		 * handle OBD request
+		 *
+		 * @param cmd request in hex digits
+		 * @param rsp response buffer
+		 * @param filter address of responding ECU (0 = all ECUs)
+		 * @param maxResponses number of responses to wait for (0 = all)
+		 */
+		private void handleObdRequest(String cmd, StringBuilder rsp, int filter, int maxResponses)
+		{
+			if (cmd.length() == 0 || (cmd.length() % 2) != 0 || !cmd.matches("[0-9A-F]+"))
+			{
+				rsp.append('?').append(eol());
+				return;
+			}
+			char[] request = new char[cmd.length() / 2];
+			for (int i = 0; i < request.length; i++)
+			{
+				request[i] = (char) Integer.parseInt(cmd.substring(2 * i, 2 * i + 2), 16);
+			}
+			synchronized (ElmEmulator.this)
+			{
+				numRequests++;
+			}
+			if (protocol == 0 && !protocolFound)
+			{
+				rsp.append("SEARCHING...").append(eol());
+				protocolFound = true;
+			}
+
+			// error injection
+			if (random.nextDouble() < config.bufferFullRate)
+			{
+				countBufferFull();
+				rsp.append("BUFFER FULL").append(eol());
+				return;
+			}
+			if (random.nextDouble() < config.noDataRate)
+			{
+				countNoData();
+				rsp.append("NO DATA").append(eol());
+				return;
+			}
+
+			int maxLatency = 0;
+			int numEcuResponses = 0;
+			for (Ecu ecu : config.ecus)
+			{
+				if (filter != 0 && filter != ecu.address)
+				{
+					continue;
+				}
+				// expected number of responses received
+				if (maxResponses > 0 && numEcuResponses >= maxResponses)
+				{
+					break;
+				}
+				char[] payload;
+				if (random.nextDouble() < config.nrcRate)
+				{
+					countNrc();
+					payload = new char[]{0x7F, request[0], (char) config.nrc};
+				}
+				else
+				{
+					payload = createResponse(ecu, request);
+				}
+				if (payload == null)
+				{
+					continue;
+				}
+				int latency = getLatency() + ecu.latency;
+				// ECU does not respond within adapter timeout
+				if (latency > timeout * 4)
+				{
+					continue;
+				}
+				maxLatency = Math.max(maxLatency, latency);
+				appendFrames(rsp, ecu.address, payload);
+				numEcuResponses++;
+			}
+			if (numEcuResponses == 0)
+			{
+				countNoData();
+				rsp.append("NO DATA").append(eol());
+				maxLatency = timeout * 4;
+			}
+			else
+			{
+				synchronized (ElmEmulator.this)
+				{
+					numResponses += numEcuResponses;
+				}
+			}
+			sleep(maxLatency);
+		}
+
+		/**
+		 * create ECU response payload for request
+		 *
+		 * @param ecu ECU to respond
+		 * @param request request bytes
+		 * @return response payload bytes, null if ECU does not respond
+		 */
+		private char[] createResponse(Ecu ecu, char[] request)
+		{
+			int service = request[0];
+			StringBuilder rsp = new StringBuilder();
+			rsp.append((char) (service | 0x40));
+			switch (service)
+			{
+				case ObdProt.OBD_SVC_DATA:
+				case ObdProt.OBD_SVC_FREEZEFRAME:
+				{
+					int pidLen = (service == ObdProt.OBD_SVC_FREEZEFRAME) ? 2 : 1;
+					for (int i = 1; i + pidLen <= request.length; i += pidLen)
+					{
+						int pid = request[i];
+						char[] data = createPidData(ecu, service, pid);
+						if (data != null)
+						{
+							rsp.append((char) pid);
+							if (pidLen > 1)
+							{
+								rsp.append(request[i + 1]);
+							}
+							rsp.append(data);
+						}
+					}
+					// no supported PIDs requested
+					if (rsp.length() == 1)
+					{
+						return null;
+					}
+					break;
+				}
+
+				case ObdProt.OBD_SVC_READ_CODES:
+				case ObdProt.OBD_SVC_PENDINGCODES:
+				case ObdProt.OBD_SVC_PERMACODES:
+					rsp.append((char) ecu.dtcs.size());
+					for (int code : ecu.dtcs)
+					{
+						rsp.append((char) ((code >> 8) & 0xFF)).append((char) (code & 0xFF));
+					}
+					break;
+
+				case ObdProt.OBD_SVC_CLEAR_CODES:
+					ecu.dtcs.clear();
+					break;
+
+				case ObdProt.OBD_SVC_VEH_INFO:
+				{
+					if (request.length < 2)
+					{
+						return null;
+					}
+					int pid = request[1];
+					rsp.append((char) pid);
+					switch (pid)
+					{
+						case 0x00:
+							appendLong(rsp, 0x54400000L);
+							break;
+						case 0x02:
+							rsp.append((char) 1).append(ecu.vin);
+							break;
+						case 0x0A:
+							rsp.append((char) 1).append(ecu.name);
+							for (int i = ecu.name.length(); i < 20; i++)
+							{
+								rsp.append((char) 0);
+							}
+							break;
+						default:
+							// count of data items
+							rsp.append((char) 1).append((char) 0);
+					}
+					break;
+				}
+
+				default:
+					// service not supported
+					return new char[]{0x7F, (char) service, 0x11};
+			}
+			return rsp.toString().toCharArray();
+		}
+
+		/**
+		 * create data bytes of a single PID
+		 *
+		 * @return data bytes, null if PID is not supported
+		 */
+		private char[] createPidData(Ecu ecu, int service, int pid)
+		{
+			StringBuilder data = new StringBuilder();
+			if ((pid % 0x20) == 0)
+			{
+				// support bitmap
+				if (pid > 0 && ecu.getPidBitmap(pid - 0x20) % 2 == 0)
+				{
+					return null;
+				}
+				appendLong(data, ecu.getPidBitmap(pid));
+			}
+			else if (!ecu.pids.contains(pid))
+			{
+				return null;
+			}
+			else if (pid == 0x01)
+			{
+				// monitor status: MIL + number of DTCs
+				data.append((char) ((ecu.dtcs.isEmpty() ? 0 : 0x80) | ecu.dtcs.size()))
+				    .append((char) 0x07).append((char) 0xE5).append((char) 0x00);
+			}
+			else
+			{
+				int len = ObdProt.dataItems.getPidDataLength(service, pid);
+				for (int i = 0; i < (len > 0 ? len : 4); i++)
+				{
+					data.append((char) random.nextInt(0x100));
+				}
+			}
+			return data.toString().toCharArray();
+		}
+
+		/**
+		 * append frames of ECU response to response buffer
+		 * (multi frame responses are formatted as ELM does with/without headers)
+		 */
+		private void appendFrames(StringBuilder rsp, int address, char[] payload)
+		{
+			if (payload.length <= 7)
+			{
+				// single frame
+				if (headers)
+				{
+					appendHeader(rsp, address);
+					appendBytes(rsp, new char[]{(char) payload.length}, 0, 1);
+				}
+				appendBytes(rsp, payload, 0, payload.length);
+				rsp.append(eol());
+				return;
+			}
+
+			// multi frame
+			if (!headers)
+			{
+				rsp.append(String.format("%03X", payload.length)).append(eol());
+			}
+			int pos = 0;
+			for (int frame = 0; pos < payload.length; frame++)
+			{
+				int len = Math.min(payload.length - pos, frame == 0 ? 6 : 7);
+				if (headers)
+				{
+					appendHeader(rsp, address);
+					if (frame == 0)
+					{
+						appendBytes(rsp, new char[]{(char) (0x10 | (payload.length >> 8)),
+						                            (char) (payload.length & 0xFF)}, 0, 2);
+					}
+					else
+					{
+						appendBytes(rsp, new char[]{(char) (0x20 | (frame & 0x0F))}, 0, 1);
+					}
+				}
+				else
+				{
+					rsp.append(Integer.toHexString(frame & 0x0F).toUpperCase()).append(':');
+					if (spaces)
+					{
+						rsp.append(' ');
+					}
+				}
+				appendBytes(rsp, payload, pos, len);
+				rsp.append(eol());
+				pos += len;
+			}
+		}
+
+		private void appendHeader(StringBuilder rsp, int address)
+		{
+			rsp.append(String.format("%03X", address));
+			if (spaces)
+			{
+				rsp.append(' ');
+			}
+		}
+
+		private void appendBytes(StringBuilder rsp, char[] bytes, int ofs, int len)
+		{
+			for (int i = ofs; i < ofs + len; i++)
+			{
+				rsp.append(String.format("%02X", (int) bytes[i]));
+				if (spaces && i < ofs + len - 1)
+				{
+					rsp.append(' ');
+				}
+			}
+			if (spaces)
+			{
+				rsp.append(' ');
+			}
+		}
+
+		private void appendLong(StringBuilder rsp, long value)
+		{
+			for (int shift = 24; shift >= 0; shift -= 8)
+			{
+				rsp.append((char) ((value >> shift) & 0xFF));
+			}
+		}
+
+		/**
+		 * CAN monitor mode: send CAN frames with configured rate until
+		 * any character is received
+		 * (without headers the CAN ID is sent as first data byte,
+		 * as expected by CanProtFord)
+		 */
+		private void monitor() throws IOException
+		{
+			write(new StringBuilder());
+			long start = System.nanoTime();
+			long sent = 0;
+			String stopReason = "STOPPED";
+			while (in.available() == 0)
+			{
+				long due = (System.nanoTime() - start) * config.monitorRate / 1000000000L;
+				StringBuilder frames = new StringBuilder();
+				for (; sent < due; sent++)
+				{
+					if (random.nextDouble() < config.bufferFullRate)
+					{
+						countBufferFull();
+						stopReason = "BUFFER FULL";
+						break;
+					}
+					int id = config.monitorIds[random.nextInt(config.monitorIds.length)];
+					char[] data = new char[8];
+					for (int i = 0; i < data.length; i++)
+					{
+						data[i] = (char) random.nextInt(0x100);
+					}
+					if (headers)
+					{
+						appendHeader(frames, id);
+					}
+					else
+					{
+						appendBytes(frames, new char[]{(char) id}, 0, 1);
+					}
+					appendBytes(frames, data, 0, data.length);
+					frames.append(eol());
+					synchronized (ElmEmulator.this)
+					{
+						numMonitorFrames++;
+					}
+				}
+				write(frames);
+				if (!stopReason.equals("STOPPED"))
+				{
+					break;
+				}
+				sleep(1);
+			}
+			// consume char which stopped monitoring
+			while (in.available() > 0 && in.read() != '\r')
+			{
+				// skip
+			}
+			write(new StringBuilder(stopReason).append(eol()).append(eol()).append('>'));
+		}
+
+		/**
+		 * get latency of next response
+		 *
+		 * @return latency [ms]
+		 */
+		private int getLatency()
+		{
+			int result = config.latencyMin
+			             + random.nextInt(Math.max(1, config.latencyMax - config.latencyMin + 1));
+			if (random.nextDouble() < config.latencySpikeRate)
+			{
+				result += config.latencySpike;
+			}
+			return result;
+		}
+
+		private void countNoData()
+		{
+			synchronized (ElmEmulator.this)
+			{
+				numNoData++;
+			}
+		}
+
+		private void countNrc()
+		{
+			synchronized (ElmEmulator.this)
+			{
+				numNrc++;
+			}
+		}
+
+		private void countBufferFull()
+		{
+			synchronized (ElmEmulator.this)
+			{
+				numBufferFull++;
+			}
+		}
+
+		private String eol()
+		{
+			return lineFeeds ? "\r\n" : "\r";
+		}
+
+		private void write(CharSequence data) throws IOException
+		{
+			if (data.length() > 0)
+			{
+				byte[] bytes = new byte[data.length()];
+				for (int i = 0; i < bytes.length; i++)
+				{
+					bytes[i] = (byte) data.charAt(i);
+				}
+				out.write(bytes);
+				out.flush();
+			}
+		}
+
+		private void sleep(int ms)
+		{
+			try
+			{
+				Thread.sleep(ms);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Serial line on a character device
+	 * - the baud rate is only recorded, pseudo terminals ignore it anyway
+	 */
+	static class DeviceLine implements SerialLine
+	{
+		private final FileInputStream in;
+		private final FileOutputStream out;
+		private int baudRate = 38400;
+
+		DeviceLine(String path) throws IOException
+		{
+			in = new FileInputStream(path);
+			out = new FileOutputStream(path);
+		}
+
+		@Override
+		public int getBaudRate()
+		{
+			return baudRate;
+		}
+
+		@Override
+		public void setBaudRate(int baudRate)
+		{
+			log.info(String.format("Baud rate: %d", baudRate));
+			this.baudRate = baudRate;
+		}
+
+		@Override
+		public int read(byte[] buffer, int timeout) throws IOException
+		{
+			long end = System.currentTimeMillis() + timeout;
+			// poll for data to support read timeouts
+			while (timeout > 0 && in.available() == 0)
+			{
+				if (System.currentTimeMillis() >= end)
+				{
+					return 0;
+				}
+				try
+				{
+					Thread.sleep(1);
+				}
+				catch (InterruptedException e)
+				{
+					throw new IOException(e);
+				}
+			}
+			int len = in.read(buffer);
+			if (len < 0)
+			{
+				throw new IOException("Device closed");
+			}
+			return len;
+		}
+
+		@Override
+		public void write(byte[] data) throws IOException
+		{
+			out.write(data);
+		}
+	}
+
+	/**
+	 * run standalone emulator
+	 *
+	 * @param args [port|serial device] [configuration properties file]
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		String portOrDevice = (args.length > 0) ? args[0] : String.valueOf(DEFAULT_PORT);
+		Properties props = new Properties();
+		if (args.length > 1)
+		{
+			InputStream propStream = new FileInputStream(args[1]);
+			props.load(propStream);
+			propStream.close();
+		}
+		ElmEmulator emulator = new ElmEmulator(Config.load(props));
+		if (portOrDevice.matches("[0-9]+"))
+		{
+			emulator.start(Integer.parseInt(portOrDevice));
+		}
+		else
+		{
+			// serial device, e.g. slave side of a pseudo terminal pair
+			emulator.startSession(new DeviceLine(portOrDevice));
+		}
+		// run until process is terminated
+		while (true)
+		{
+			Thread.sleep(10000);
+			log.info(String.format("requests: %d, responses: %d, NO DATA: %d, NRC: %d, BUFFER FULL: %d, CAN frames: %d",
+			                       emulator.getNumRequests(), emulator.getNumResponses(),
+			                       emulator.getNumNoData(), emulator.getNumNrc(),
+			                       emulator.getNumBufferFull(), emulator.getNumMonitorFrames()));
+		}
+	}
+}
@@ -23,11 +23,19 @@ import com.fr3ts0n.prot.TelegramWriter;
 
 import java.beans.PropertyChangeEvent;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.logging.Level;
 
 
 /**
@@ -37,12 +45,20 @@ import java.util.Vector;
  */
 public class ElmProt
 	extends ObdProt
-	implements TelegramListener, TelegramWriter, Runnable
+	implements TelegramListener, TelegramWriter
 {
 	/**
 	 * virtual OBD service for CAN monitoring
 	 */
 	public static final int OBD_SVC_CAN_MONITOR = 256;
+	/**
+	 * functional (broadcast) request address of 11 bit CAN
+	 */
+	static final int FUNCTIONAL_ADDRESS = 0x7DF;
+	/**
+	 * max. number of requests to the same ECU in a row, if several ECUs are polled
+	 */
+	static final int MAX_ECU_BURST = 8;
 	
 	/**
 	 * property name for ECU addresses
@@ -56,16 +72,12 @@ public class ElmProt
 	/**
 	 * CAN protocol handler
 	 */
-	public static final CanProtFord canProt = new CanProtFord();
+	public final CanProtFord canProt = new CanProtFord();
 	/**
 	 * Adaptive timing handler
 	 */
 	public final AdaptiveTiming mAdaptiveTiming = new AdaptiveTiming();
 	
-	/**
-	 * number of bytes expected from opponent
-	 */
-	private int charsExpected = 0;
 	/**
 	 * remember last command which was sent
 	 */
@@ -74,7 +86,12 @@ public class ElmProt
 	/**
 	 * preferred ELM protocol to be selected
 	 */
-	static private PROT preferredProtocol = PROT.ELM_PROT_AUTO;
+	private PROT preferredProtocol = PROT.ELM_PROT_AUTO;
+	
+	/**
+	 * ELM commands which are disabled for this adapter
+	 */
+	private final Set<CMD> disabledCmds = EnumSet.noneOf(CMD.class);
 	
 	/**
 	 * list of identified ECU addresses
@@ -84,14 +101,137 @@ public class ElmProt
 	 * selected ECU address
 	 */
 	private int selectedEcuAddress = 0;
+	/**
+	 * ECU address selected for single ECU polling
+	 */
+	private int singleEcuAddress = 0;
+	/**
+	 * poll all detected ECUs within one session?
+	 */
+	private boolean multiEcuEnabled = false;
+	/**
+	 * polling contexts of ECUs, if several ECUs are polled (empty = single ECU)
+	 */
+	private final TreeMap<Integer, EcuContext> ecuContexts = new TreeMap<Integer, EcuContext>();
+	/**
+	 * physical TX header which is set in adapter (0 = functional request address)
+	 */
+	private int txHeader = 0;
+	/**
+	 * number of requests to currently polled ECU in a row
+	 */
+	private int ecuBurst = 0;
+	/**
+	 * ECU switching statistics (TX header / RX filter changes)
+	 */
+	private long numEcuSwitches = 0;
+	private long ecuSwitchTime = 0;
+	private long ecuSwitchStart = 0;
 	/**
 	 * custom ELM initialisation commands
 	 */
 	private final Vector<String> customInitCommands = new Vector<String>();
 	/**
-	 * last detected message counter ID
+	 * multi frame response reassemblers per ECU address
+	 */
+	private final HashMap<Integer, IsoTpReassembler> reassemblers = new HashMap<Integer, IsoTpReassembler>();
+	/**
+	 * reassembler of last response
+	 */
+	private IsoTpReassembler lastReassembler = null;
+	/**
+	 * CAN protocol (ISO 15765) detected on ECU detection
+	 */
+	private boolean canProtocol = false;
+	/**
+	 * multi PID requests enabled?
+	 */
+	private boolean multiPidEnabled = true;
+	/**
+	 * adapter runs with upgraded baud rate, which must be kept on reset
+	 */
+	private volatile boolean keepBaudRate = false;
+	/**
+	 * ECU addresses which did reject/truncate multi PID requests
+	 */
+	private final TreeSet<Integer> singlePidEcus = new TreeSet<Integer>();
+	/**
+	 * default timer to resume PID requests after idle time
+	 * (shared by all protocol instances w/o own timer)
+	 */
+	private static Timer defaultIdleTimer = null;
+	/**
+	 * timer to resume PID requests after idle time
+	 */
+	private Timer idleTimer = null;
+	/**
+	 * pending PID request which waits for next PID to become due
+	 */
+	private TimerTask idleRequest = null;
+	/**
+	 * PIDs which are selected for next request, but wait for timeout to be set
+	 */
+	private int[] deferredPids = null;
+	/**
+	 * request/response statistics
+	 */
+	private final RequestStatistics statistics = new RequestStatistics();
+	/**
+	 * identity of connected adapter (model/version)
+	 */
+	private String adapterId = "";
+	/**
+	 * capabilities of connected adapter (STN extended commands)
+	 */
+	private final AdapterCapabilities capabilities = new AdapterCapabilities();
+	/**
+	 * extended request which is sent instead of pending OBD request (null = plain request)
+	 */
+	private String extendedRequest = null;
+	/**
+	 * start time [ns] of pending OBD request cycle (0 = not measured)
+	 */
+	private long requestCycleStart = 0;
+	/**
+	 * pending OBD request cycle is an extended request
+	 */
+	private boolean requestCycleExtended = false;
+	/**
+	 * ELM protocol number detected on ECU detection
+	 */
+	private int detectedProtocol = 0;
+	/**
+	 * known vehicle profiles
+	 */
+	private final VehicleProfiles vehicleProfiles = new VehicleProfiles();
+	/**
+	 * profile of connected vehicle (null = unknown)
+	 */
+	private VehicleProfile vehicleProfile = null;
+	/**
+	 * vehicle profile is used, but not yet confirmed by vehicle responses
+	 */
+	private boolean profileValidating = false;
+	/**
+	 * service which is polled with supported PIDs from vehicle profile
+	 */
+	private int profilePidService = OBD_SVC_NONE;
+	/**
+	 * vehicle profile did not match, use full discovery on next initialisation
+	 */
+	private boolean profileRejected = false;
+	/**
+	 * ELM protocol of current session (preferred protocol or protocol of vehicle profile)
+	 */
+	private int sessionProtocol = 0;
+	/**
+	 * shadow of current adapter settings
+	 */
+	private final ElmAdapterState adapterState = new ElmAdapterState();
+	/**
+	 * received CAN monitor frames, waiting to be decoded
 	 */
-	private int lastMsgId = 0;
+	private final CanFrameRing canFrames = new CanFrameRing();
 
 	/**
 	 * ELM protocol ID's
@@ -214,6 +354,7 @@ public class ElmProt
 		SETSPACES("S", 1, true), ///< enable/disable spaces
 		SETHEADER("H", 1, true), ///< enable/disable header response
 		GETPROT("DP", 0, true), ///< get protocol
+		GETPROTNUM("DPN", 0, true), ///< get protocol number
 		SETPROT("SP", 1, true), ///< set protocol
 		CANMONITOR("MA", 0, true), ///< monitor CAN messages
 		SETPROTAUTO("SPA", 1, true), ///< set protocol auto
@@ -221,16 +362,27 @@ public class ElmProt
 		SETTIMEOUT("ST", 2, true), ///< set timeout (x*4ms)
 		SETTXHDR("SH", 3, true), ///< set TX header
 		SETCANRXFLT("CRA", 3, true), ///< set CAN RX filter
-		CLRCANRXFLT("CRA", 0, true); ///< clear CAN RX filter
+		CLRCANRXFLT("CRA", 0, true), ///< clear CAN RX filter
+		STNINFO(CMD.ST_HEADER, "I", 0, true), ///< request STN chip info (STN adapters)
+		STNDEVICE(CMD.ST_HEADER, "DI", 0, true), ///< request device info (STN adapters)
+		EXTREQUEST(CMD.ST_HEADER, "PX", 0, true); ///< extended request (STN adapters)
 		
 		static final String CMD_HEADER = "AT";
+		/** header of STN extended commands */
+		static final String ST_HEADER = "ST";
+		private final String header;
 		private final String command;
 		final int paramDigits;
 		private final boolean disablingAllowed;
-		private boolean enabled = true;
 		
 		CMD(String cmd, int numDigitsParameter, @SuppressWarnings("SameParameterValue") boolean allowAdaption)
 		{
+			this(CMD_HEADER, cmd, numDigitsParameter, allowAdaption);
+		}
+		
+		CMD(String cmdHeader, String cmd, int numDigitsParameter, @SuppressWarnings("SameParameterValue") boolean allowAdaption)
+		{
+			header = cmdHeader;
 			command = cmd;
 			paramDigits = numDigitsParameter;
 			disablingAllowed = allowAdaption;
@@ -239,24 +391,7 @@ public class ElmProt
 		@Override
 		public String toString()
 		{
-			return CMD_HEADER + command;
-		}
-		
-		public boolean isEnabled()
-		{
-			return enabled;
-		}
-		
-		void setEnabled(boolean enabled)
-		{
-			if (disablingAllowed)
-			{
-				this.enabled = enabled;
-			}
-			// log current state
-			log.fine(String.format("ELM command '%s' -> %s",
-				toString(),
-				this.enabled ? "enabled" : "disabled"));
+			return header + command;
 		}
 		
 		public boolean isDisablingAllowed()
@@ -279,6 +414,9 @@ public class ElmProt
 	/**
 	 * Adaptive ELM timing handler
 	 * * optimizes ELM message timeout at runtime
+	 * * in SOFTWARE mode the timeout is learned per ECU address, service and PID
+	 *   from the observed response times, and the ELM timeout is only changed
+	 *   if the next request requires a different timeout
 	 */
 	public class AdaptiveTiming
 	{
@@ -298,18 +436,42 @@ public class ElmProt
 		 */
 		private static final int ELM_TIMEOUT_RES = 4;
 		/**
-		 * minimum ELM timeout
+		 * min. number of response times to learn a timeout from
 		 */
-		int ELM_TIMEOUT_MIN = 12;
+		private static final int LEARN_MIN_SAMPLES = 8;
+		/**
+		 * percentile of response times which shall be covered by learned timeout
+		 */
+		private static final double LEARN_PERCENTILE = 95.0;
+		/**
+		 * safety margin on top of response time percentile [ms]
+		 */
+		private static final int LEARN_MARGIN = 8;
 		/**
-		 * minimum ELM timeout (learned from vehicle)
+		 * minimum ELM timeout
 		 */
-		int ELM_TIMEOUT_LRN_LOW = 12;
+		int ELM_TIMEOUT_MIN = 12;
 		/**
 		 * ELM message timeout: defaults to approx 200 [ms]
 		 */
 		int elmMsgTimeout = ELM_TIMEOUT_MAX;
 		
+		/**
+		 * Learned timeout of one ECU address / service / PID combination
+		 */
+		private class LearnedTimeout
+		{
+			/** timeout learned from response times [ms] (0 = not learned yet) */
+			int timeout = 0;
+			/** lower limit of timeout for this session, raised on NO DATA [ms] */
+			int lowLimit = 0;
+		}
+		
+		/**
+		 * learned timeouts, indexed by ECU address, service and PID
+		 */
+		private final HashMap<Long, LearnedTimeout> learnedTimeouts = new HashMap<Long, LearnedTimeout>();
+		
 		/**
 		 * adaptive timing handling enabled?
 		 */
@@ -353,6 +515,56 @@ public class ElmProt
 			ELM_TIMEOUT_MIN = elmTimeoutMin;
 		}
 		
+		/**
+		 * Get learned timeouts to be persisted
+		 *
+		 * @return learned timeouts, one line per ECU address/service/PID
+		 *         formatted as "ECU.SVC.PID=TIMEOUT"
+		 */
+		public synchronized String getLearnedTimeouts()
+		{
+			StringBuilder result = new StringBuilder();
+			for (Map.Entry<Long, LearnedTimeout> entry : new TreeMap<Long, LearnedTimeout>(learnedTimeouts).entrySet())
+			{
+				int timeout = Math.max(entry.getValue().timeout, entry.getValue().lowLimit);
+				if (timeout > 0)
+				{
+					long key = entry.getKey();
+					result.append(String.format("%X.%02X.%02X=%d\n",
+						key >> 16, (key >> 8) & 0xFF, key & 0xFF, timeout));
+				}
+			}
+			return result.toString();
+		}
+		
+		/**
+		 * Set learned timeouts from previous sessions
+		 *
+		 * @param timeouts learned timeouts as provided by {@link #getLearnedTimeouts()}
+		 */
+		public synchronized void setLearnedTimeouts(String timeouts)
+		{
+			learnedTimeouts.clear();
+			if (timeouts == null) { return; }
+			for (String line : timeouts.split("\n"))
+			{
+				String[] fields = line.trim().split("[.=]");
+				if (fields.length != 4) { continue; }
+				try
+				{
+					getLearnedTimeout(Long.parseLong(fields[0], 16),
+						Integer.parseInt(fields[1], 16),
+						Integer.parseInt(fields[2], 16)).timeout =
+						limitTimeout(Integer.parseInt(fields[3]));
+				}
+				catch (NumberFormatException e)
+				{
+					log.warning("Invalid learned timeout: " + line);
+				}
+			}
+			log.info(String.format("Learned timeouts loaded: %d", learnedTimeouts.size()));
+		}
+		
 		/**
 		 * Initialize timing hadler
 		 */
@@ -360,8 +572,14 @@ public class ElmProt
 		{
 			if (mode == AdaptTimingMode.SOFTWARE)
 			{
-				// ... reset learned minimum timeout ...
-				setElmTimeoutLrnLow(getElmTimeoutMin());
+				// ... reset session limits of learned timeouts ...
+				synchronized (this)
+				{
+					for (LearnedTimeout learned : learnedTimeouts.values())
+					{
+						learned.lowLimit = 0;
+					}
+				}
 				// set default timeout
 				setElmMsgTimeout(ELM_TIMEOUT_DEFAULT);
 				// switch OFF ELM internal adaptive timing
@@ -374,55 +592,117 @@ public class ElmProt
 		}
 		
 		/**
-		 * Adapt ELM message timeout
+		 * Select ELM message timeout for next request
+		 * - timeout is the max. timeout learned for all requested PIDs
+		 * - if the timeout differs from current ELM timeout, the new timeout
+		 *   is sent to the ELM adapter immediately
 		 *
-		 * @param increaseTimeout increase/decrease timeout
+		 * @param ecuAddress address of requested ECU
+		 * @param obdService OBD service to be requested
+		 * @param pids PIDs to be requested
+		 * @return true if timeout command was sent, and the request needs to wait for prompt
 		 */
-		void adapt(boolean increaseTimeout)
+		synchronized boolean selectTimeout(int ecuAddress, int obdService, int[] pids)
 		{
-			if (mode != AdaptTimingMode.SOFTWARE) { return; }
-			if (increaseTimeout)
+			if (mode != AdaptTimingMode.SOFTWARE || !isEnabled(CMD.SETTIMEOUT))
+			{
+				return false;
+			}
+			int timeout = 0;
+			for (int pid : pids)
 			{
-				// increase OBD timeout since we may expect answers too fast
-				if ((elmMsgTimeout + ELM_TIMEOUT_RES) < ELM_TIMEOUT_MAX)
+				LearnedTimeout learned = learnedTimeouts.get(timeoutKey(ecuAddress, obdService, pid));
+				int pidTimeout = (learned == null || learned.timeout == 0)
+				                 ? ELM_TIMEOUT_DEFAULT
+				                 : learned.timeout;
+				if (learned != null)
 				{
-					// increase timeout, since we have just timed out
-					setElmMsgTimeout(elmMsgTimeout + ELM_TIMEOUT_RES);
-					// ... and limit MIN timeout for this session
-					setElmTimeoutLrnLow(elmMsgTimeout);
+					pidTimeout = Math.max(pidTimeout, learned.lowLimit);
 				}
+				timeout = Math.max(timeout, pidTimeout);
 			}
-			else
+			timeout = limitTimeout(timeout);
+			if (timeout == elmMsgTimeout)
 			{
-				// reduce OBD timeout towards minimum limit
-				if ((elmMsgTimeout - ELM_TIMEOUT_RES) >= getElmTimeoutLrnLow())
+				return false;
+			}
+			log.fine("ELM Timeout: " + elmMsgTimeout + " -> " + timeout);
+			elmMsgTimeout = timeout;
+			sendCommand(CMD.SETTIMEOUT, timeout / 4);
+			return true;
+		}
+		
+		/**
+		 * Learn timeouts of last request from recorded response times
+		 *
+		 * @param statistics request statistics of last request
+		 */
+		synchronized void responded(RequestStatistics statistics)
+		{
+			if (mode != AdaptTimingMode.SOFTWARE) { return; }
+			for (int i = 0; i < statistics.getNumPending(); i++)
+			{
+				RequestStatistics.Entry entry = statistics.getPending(i);
+				if (entry.getNumRtt() >= LEARN_MIN_SAMPLES)
 				{
-					setElmMsgTimeout(elmMsgTimeout - ELM_TIMEOUT_RES);
+					int timeout = (int) (entry.getRttPercentile(LEARN_PERCENTILE) / 1000)
+					              + LEARN_MARGIN;
+					getLearnedTimeout(entry.getEcuAddress(), entry.getService(), entry.getPid())
+						.timeout = limitTimeout(timeout);
 				}
-				
 			}
 		}
 		
 		/**
-		 * LOW Learn value ELM Message Timeout
+		 * Raise timeouts of last request after NO DATA response
+		 * (we may expect answers too fast)
 		 *
-		 * @return currently learned timout value [ms]
+		 * @param statistics request statistics of last request
 		 */
-		private int getElmTimeoutLrnLow()
+		synchronized void timedOut(RequestStatistics statistics)
 		{
-			return ELM_TIMEOUT_LRN_LOW;
+			if (mode != AdaptTimingMode.SOFTWARE) { return; }
+			for (int i = 0; i < statistics.getNumPending(); i++)
+			{
+				RequestStatistics.Entry entry = statistics.getPending(i);
+				LearnedTimeout learned =
+					getLearnedTimeout(entry.getEcuAddress(), entry.getService(), entry.getPid());
+				// ... and limit MIN timeout for this session
+				learned.lowLimit = limitTimeout(Math.max(learned.lowLimit,
+					entry.getElmTimeout() + ELM_TIMEOUT_RES));
+			}
 		}
 		
 		/**
-		 * set LOW Learn value ELM Message Timeout
-		 *
-		 * @param elmTimeoutLrnLow new learn value [ms]
+		 * get learned timeout entry, create if it does not exist yet
+		 */
+		private LearnedTimeout getLearnedTimeout(long ecuAddress, int obdService, int pid)
+		{
+			Long key = timeoutKey(ecuAddress, obdService, pid);
+			LearnedTimeout result = learnedTimeouts.get(key);
+			if (result == null)
+			{
+				result = new LearnedTimeout();
+				learnedTimeouts.put(key, result);
+			}
+			return result;
+		}
+		
+		/**
+		 * key of learned timeout: ECU address, service and PID
+		 */
+		private long timeoutKey(long ecuAddress, int obdService, int pid)
+		{
+			return (ecuAddress << 16) | ((obdService & 0xFF) << 8) | (pid & 0xFF);
+		}
+		
+		/**
+		 * limit timeout to configured range and learning resolution
 		 */
-		private void setElmTimeoutLrnLow(int elmTimeoutLrnLow)
+		private int limitTimeout(int timeout)
 		{
-			log.info(String.format("ELM learn timeout: %d -> %d",
-				ELM_TIMEOUT_LRN_LOW, elmTimeoutLrnLow));
-			ELM_TIMEOUT_LRN_LOW = elmTimeoutLrnLow;
+			timeout = ((timeout + ELM_TIMEOUT_RES - 1) / ELM_TIMEOUT_RES) * ELM_TIMEOUT_RES;
+			return Math.min(ELM_TIMEOUT_MAX, Math.max(getElmTimeoutMin(), timeout));
 		}
 		
 		/**
@@ -452,12 +732,23 @@ public class ElmProt
 	{
 	}
 	
+	/**
+	 * Creates a new instance of ElmProtocol, which uses a shared timer
+	 * for delayed PID requests (e.g. for many protocol instances within one process)
+	 *
+	 * @param idleTimer timer to schedule delayed PID requests
+	 */
+	public ElmProt(Timer idleTimer)
+	{
+		this.idleTimer = idleTimer;
+	}
+	
 	/**
 	 * set preferred ELM protocol to be used
 	 *
 	 * @param protoIndex preferred ELM protocol index
 	 */
-	public static void setPreferredProtocol(int protoIndex)
+	public void setPreferredProtocol(int protoIndex)
 	{
 		preferredProtocol = PROT.values()[protoIndex];
 		log.info("Preferred protocol: " + preferredProtocol);
@@ -471,6 +762,12 @@ public class ElmProt
 	public void setEcuAddress(int ecuAddress)
 	{
 		log.info(String.format("Set ECU address: 0x%x", ecuAddress));
+		singleEcuAddress = ecuAddress;
+		// several ECUs are polled -> address is used after polling is finished
+		if (!ecuContexts.isEmpty())
+		{
+			return;
+		}
 		selectedEcuAddress = ecuAddress;
 		// ensure headers are off
 		pushCommand(CMD.SETHEADER, 0);
@@ -480,135 +777,978 @@ public class ElmProt
 	}
 	
 	/**
-	 * disable a set of ELM commands ELM commands from preference
+	 * enable/disable polling of all detected ECUs within one session
+	 * (OBD data service on 11 bit CAN protocols)
+	 * - each ECU is polled with its own supported PIDs and scheduling
+	 * - data items of each ECU are kept in their own process vars
 	 *
-	 * @param disabledCmds set of ELM commands (ATxx strings) to be disabled
+	 * @param enabled true to poll all detected ECUs
 	 */
-	public static void disableCommands(Set<String> disabledCmds)
+	public void setMultiEcuEnabled(boolean enabled)
 	{
-		for (CMD cmd : CMD.values())
-		{
-			cmd.setEnabled(disabledCmds == null
-			               || !disabledCmds.contains(cmd.toString()));
-		}
+		log.info(String.format("Multi ECU polling = %b", enabled));
+		multiEcuEnabled = enabled;
 	}
-	
+
 	/**
-	 * create ELM command string from command id and paramter
+	 * Get polling contexts of ECUs
 	 *
-	 * @param cmdID ID of ELM command
-	 * @param param parameter for ELM command (0 if not required)
-	 * @return command char sequence or NULL if command disabled/invalid
+	 * @return polling contexts of all polled ECUs, empty if a single ECU is polled
 	 */
-	private String createCommand(CMD cmdID, int param)
+	public Collection<EcuContext> getEcuContexts()
 	{
-		String cmd = null;
-		if (cmdID.isEnabled())
-		{
-			cmd = cmdID.toString();
-			// if parameter is required and provided, add parameter to command
-			if (cmdID.paramDigits > 0)
-			{
-				String fmtString = "%0".concat(String.valueOf(cmdID.paramDigits)).concat("X");
-				cmd += String.format(fmtString, param);
-			}
-		}
-		// return command String
-		return cmd;
+		return ecuContexts.values();
 	}
-	
+
 	/**
-	 * send command to ELM adapter
-	 *
-	 * @param cmdID ID of ELM command
-	 * @param param parameter for ELM command (0 if not required)
+	 * @return number of ECU switches (TX header / RX filter changes)
 	 */
-	public void sendCommand(CMD cmdID, int param)
+	public long getNumEcuSwitches()
 	{
-		// now send command
-		String cmd = createCommand(cmdID, param);
-		if (cmd != null) { sendTelegram(cmd.toCharArray()); }
+		return numEcuSwitches;
 	}
-	
+
 	/**
-	 * queue command to ELM command queue
-	 *
-	 * @param cmdID ID of ELM command
-	 * @param param parameter for ELM command (0 if not required)
+	 * @return total time [ms] spent for ECU switches
 	 */
-	private void pushCommand(CMD cmdID, int param)
-	{
-		String cmd = createCommand(cmdID, param);
-		if (cmd != null) { cmdQueue.add(cmd); }
-	}
-	
-	@Override
-	public void sendTelegram(char[] buffer)
+	public long getEcuSwitchTime()
 	{
-		log.fine(this.toString() + " TX:'" + String.valueOf(buffer) + "'");
-		lastCommand = buffer;
-		super.sendTelegram(buffer);
+		return ecuSwitchTime / 1000000;
 	}
-	
+
 	/**
-	 * return numeric ID to given response
+	 * setup ECU polling contexts for specified service
+	 * - several ECUs are polled if enabled and supported by protocol/adapter
 	 *
-	 * @param response clear text response from ELM adapter
+	 * @param obdService OBD service to be polled
 	 */
-	private static RSP_ID getResponseId(String response)
+	private void setupEcuContexts(int obdService)
 	{
-		RSP_ID result = RSP_ID.UNKNOWN;
-		for (RSP_ID id : RSP_ID.values())
+		ecuContexts.clear();
+		ecuContext = null;
+		selectedEcuAddress = singleEcuAddress;
+		ecuBurst = 0;
+
+		if (multiEcuEnabled
+		    && obdService == OBD_SVC_DATA
+		    && canProtocol
+		    && isEnabled(CMD.SETTXHDR)
+		    && isEnabled(CMD.SETCANRXFLT))
 		{
-			if (response.startsWith(id.toString()))
+			for (Integer address : ecuAddresses)
 			{
-				result = id;
-				break;
+				if (EcuContext.isPhysicalAddress(address))
+				{
+					ecuContexts.put(address, new EcuContext(address));
+				}
+			}
+			// polling of several ECUs only
+			if (ecuContexts.size() < 2)
+			{
+				ecuContexts.clear();
+			}
+			else
+			{
+				log.info("Multi ECU polling: " + ecuContexts.keySet());
 			}
 		}
-		// return ID
-		return (result);
 	}
-	
+
 	/**
-	 * send ELM adapter to sleep mode
+	 * enable response headers for services with multi frame responses,
+	 * if functional requests are answered by several ECUs
+	 * - multi frame responses of several ECUs may be interleaved,
+	 *   so they are reassembled per response CAN ID
+	 *
+	 * @param obdService OBD service to be requested
 	 */
-	public void goToSleep()
+	private void setupResponseHeaders(int obdService)
 	{
-		sendCommand(CMD.LOWPOWER, 0);
+		boolean headers = canProtocol
+		                  && selectedEcuAddress == 0
+		                  && ecuAddresses.size() > 1
+		                  && (obdService == OBD_SVC_VEH_INFO
+		                      || Arrays.binarySearch(dfcServices, obdService) >= 0);
+		pushCommand(CMD.SETHEADER, headers ? 1 : 0);
 	}
-	
+
 	/**
-	 * reset ELM adapter
+	 * are responses received with CAN headers?
+	 *
+	 * @return true if response headers are enabled on a CAN protocol
 	 */
-	public void reset()
+	private boolean isCanFramed()
 	{
-		// reset all learned protocol data
-		super.reset();
-		// either RESET or INFO command needs to be enabled
-		if (CMD.RESET.isEnabled())
-		{ sendCommand(CMD.RESET, 0); }
-		else
-		{ sendCommand(CMD.INFO, 0); }
+		return canProtocol && "1".equals(adapterState.get(CMD.SETHEADER));
 	}
-	
+
 	/**
-	 * request addresses of all connected ECUs
-	 * (received IDs are evaluated in @ref:handleDataMessage)
+	 * select ECU to be requested next, if several ECUs are polled
+	 * - supported PIDs are requested from each ECU first
+	 * - requests stay with current ECU while its PIDs are due
+	 *   (max. MAX_ECU_BURST requests in a row) to minimise ECU switches
+	 * - otherwise the ECU with the earliest due PID is selected
+	 *
+	 * @return true if a ECU is selected which has a request due
 	 */
-	private void queryEcus()
+	private boolean selectNextEcu()
 	{
-		// set status to ECU detection
-		setStatus(STAT.ECU_DETECT);
-		
-		// clear all identified ECU addresses
-		ecuAddresses.clear();
-		// clear selected ECU
+		long now = System.currentTimeMillis();
+		EcuContext next = null;
+		long nextIdle = Long.MAX_VALUE;
+		for (EcuContext ctx : ecuContexts.values())
+		{
+			if (!ctx.supportRequested)
+			{
+				selectEcuContext(ctx);
+				return true;
+			}
+			if (ctx.getScheduler().size() == 0)
+			{
+				continue;
+			}
+			long idle = ctx.getScheduler().getIdleTime(now);
+			// current ECU is preferred, unless it had its share of requests
+			boolean preferred = (ctx == ecuContext) == (ecuBurst < MAX_ECU_BURST);
+			if (idle < nextIdle || (idle == nextIdle && preferred))
+			{
+				next = ctx;
+				nextIdle = idle;
+			}
+		}
+		if (next == null)
+		{
+			log.warning("Multi ECU polling: No supported PIDs");
+			return false;
+		}
+		if (nextIdle > 0)
+		{
+			scheduleIdleRequest(nextIdle);
+			return false;
+		}
+		selectEcuContext(next);
+		ecuBurst++;
+		return true;
+	}
+
+	/**
+	 * select ECU to be polled
+	 * (TX header / RX filter are changed before the next OBD request is sent)
+	 *
+	 * @param ctx polling context of ECU
+	 */
+	private void selectEcuContext(EcuContext ctx)
+	{
+		if (ctx != ecuContext)
+		{
+			ecuContext = ctx;
+			selectedEcuAddress = ctx.getAddress();
+			ecuBurst = 0;
+		}
+	}
+
+	/**
+	 * switch TX header and RX filter to currently polled ECU
+	 * - the OBD request is sent after TX header and RX filter are set
+	 *
+	 * @param request OBD request to be sent to ECU
+	 * @param header physical TX header of ECU (0 = functional request address)
+	 */
+	private void switchEcu(char[] request, int header)
+	{
+		log.fine(String.format("Switch ECU: 0x%x -> 0x%x", txHeader, header));
+		txHeader = header;
+		numEcuSwitches++;
+		ecuSwitchStart = System.nanoTime();
+		// queued commands are sent in reverse order
+		cmdQueue.push(CommandQueue.Priority.INIT, String.valueOf(request));
+		pushCommand((selectedEcuAddress != 0) ? CMD.SETCANRXFLT : CMD.CLRCANRXFLT,
+			selectedEcuAddress);
+		sendCommand(CMD.SETTXHDR, (header != 0) ? header : FUNCTIONAL_ADDRESS);
+	}
+
+	/**
+	 * is telegram a OBD request (services 01 - 0F)?
+	 *
+	 * @param buffer telegram to be sent
+	 * @return true if telegram is a OBD request, false for adapter commands
+	 */
+	private static boolean isObdRequest(char[] buffer)
+	{
+		return buffer.length >= 2
+		       && buffer[0] == '0'
+		       && Character.digit(buffer[1], 16) >= 0;
+	}
+
+	/**
+	 * get number of responses which are expected for a OBD request
+	 *
+	 * @return number of responding ECUs, 0 if unknown
+	 */
+	private int getExpectedResponses()
+	{
+		// physical request or RX filter -> single ECU
+		if (ecuContext != null || selectedEcuAddress != 0)
+		{
+			return 1;
+		}
+		return ecuAddresses.size();
+	}
+
+	/**
+	 * may OBD request be sent as extended request (STPX)?
+	 * - data requests on CAN protocols after ECU detection
+	 * - extended request only gains something if it saves a header switch
+	 *   or the adapter knows the number of expected responses
+	 *
+	 * @param request OBD request
+	 * @param header physical TX header of ECU (0 = functional request address)
+	 * @param numResponses number of expected responses (0 = unknown)
+	 * @return true if extended request is allowed
+	 */
+	private boolean isExtendedRequestEligible(char[] request, int header, int numResponses)
+	{
+		return capabilities.isExtendedRequestSupported()
+		       && isEnabled(CMD.EXTREQUEST)
+		       && canProtocol
+		       && request[1] == '1'
+		       && status != STAT.INITIALIZING
+		       && status != STAT.ECU_DETECT
+		       && (header != txHeader || numResponses > 0);
+	}
+
+	/**
+	 * create extended request (STPX) for OBD request
+	 * - TX header is only contained if it differs from adapter's TX header
+	 *
+	 * @param request OBD request
+	 * @param header physical TX header of ECU (0 = functional request address)
+	 * @param numResponses number of expected responses (0 = unknown)
+	 * @return extended request
+	 */
+	private String createExtendedRequest(char[] request, int header, int numResponses)
+	{
+		StringBuilder result = new StringBuilder(CMD.EXTREQUEST.toString()).append(' ');
+		if (header != txHeader)
+		{
+			result.append(String.format("H:%03X,", (header != 0) ? header : FUNCTIONAL_ADDRESS));
+			capabilities.switchSaved();
+		}
+		result.append("D:").append(request);
+		if (numResponses > 0)
+		{
+			result.append(",R:").append(numResponses);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Get capabilities of connected adapter
+	 * (incl. measured gain of extended requests)
+	 *
+	 * @return adapter capabilities
+	 */
+	public AdapterCapabilities getAdapterCapabilities()
+	{
+		return capabilities;
+	}
+
+	/**
+	 * enable/disable multi PID requests
+	 * (multiple PIDs requested within one request on CAN protocols)
+	 *
+	 * @param enabled true to enable multi PID requests
+	 */
+	public void setMultiPidEnabled(boolean enabled)
+	{
+		log.info(String.format("Multi PID requests = %b", enabled));
+		multiPidEnabled = enabled;
+	}
+
+	/**
+	 * Keep baud rate of adapter on reset
+	 * (adapter is reset by warm start instead of full reset,
+	 * which would restore the default baud rate)
+	 *
+	 * @param keepBaudRate true if adapter runs with an upgraded baud rate
+	 * @see ElmBaudRate
+	 */
+	public void setKeepBaudRate(boolean keepBaudRate)
+	{
+		this.keepBaudRate = keepBaudRate;
+	}
+
+	/**
+	 * Are multi PID requests allowed for current service and ECU?
+	 *
+	 * @return true if multi PID requests are allowed
+	 */
+	private boolean isMultiPidAllowed()
+	{
+		return multiPidEnabled
+		       && canProtocol
+		       && (service == OBD_SVC_DATA || service == OBD_SVC_FREEZEFRAME)
+		       && !singlePidEcus.contains(selectedEcuAddress);
+	}
+
+	/**
+	 * disable a set of ELM commands ELM commands from preference
+	 *
+	 * @param disabledCmds set of ELM commands (ATxx strings) to be disabled
+	 */
+	public synchronized void disableCommands(Set<String> disabledCmds)
+	{
+		this.disabledCmds.clear();
+		for (CMD cmd : CMD.values())
+		{
+			if (disabledCmds != null
+			    && disabledCmds.contains(cmd.toString())
+			    && cmd.isDisablingAllowed())
+			{
+				this.disabledCmds.add(cmd);
+			}
+			// log current state
+			log.fine(String.format("ELM command '%s' -> %s",
+				cmd.toString(),
+				isEnabled(cmd) ? "enabled" : "disabled"));
+		}
+	}
+
+	/**
+	 * Is ELM command enabled for this adapter?
+	 *
+	 * @param cmdID ID of ELM command
+	 * @return true if command is enabled
+	 */
+	public synchronized boolean isEnabled(CMD cmdID)
+	{
+		return !disabledCmds.contains(cmdID);
+	}
+	
+	/**
+	 * create ELM command string from command id and paramter
+	 *
+	 * @param cmdID ID of ELM command
+	 * @param param parameter for ELM command (0 if not required)
+	 * @return command char sequence or NULL if command disabled/invalid
+	 */
+	private String createCommand(CMD cmdID, int param)
+	{
+		String cmd = null;
+		if (isEnabled(cmdID))
+		{
+			cmd = cmdID.toString();
+			// if parameter is required and provided, add parameter to command
+			if (cmdID.paramDigits > 0)
+			{
+				String fmtString = "%0".concat(String.valueOf(cmdID.paramDigits)).concat("X");
+				cmd += String.format(fmtString, param);
+			}
+		}
+		// return command String
+		return cmd;
+	}
+	
+	/**
+	 * send command to ELM adapter
+	 *
+	 * @param cmdID ID of ELM command
+	 * @param param parameter for ELM command (0 if not required)
+	 */
+	public void sendCommand(CMD cmdID, int param)
+	{
+		// now send command
+		String cmd = createCommand(cmdID, param);
+		if (cmd != null) { sendTelegram(cmd.toCharArray()); }
+	}
+	
+	/**
+	 * queue command to ELM command queue
+	 *
+	 * @param cmdID ID of ELM command
+	 * @param param parameter for ELM command (0 if not required)
+	 */
+	private void pushCommand(CMD cmdID, int param)
+	{
+		String cmd = createCommand(cmdID, param);
+		if (cmd != null) { cmdQueue.push(CommandQueue.Priority.INIT, cmd); }
+	}
+	
+	/**
+	 * request next PID(s) of current service
+	 * - if no PID is due for request yet, the request is delayed until
+	 *   the next PID becomes due, instead of polling PIDs ahead of their
+	 *   update period
+	 */
+	private void requestNextPids()
+	{
+		int[] pids = deferredPids;
+		deferredPids = null;
+		if (pids == null)
+		{
+			// several ECUs are polled -> select ECU to be requested next
+			if (!ecuContexts.isEmpty() && !selectNextEcu())
+			{
+				return;
+			}
+			// request supported PIDs of newly selected ECU first
+			if (ecuContext != null && !ecuContext.supportRequested)
+			{
+				ecuContext.supportRequested = true;
+				writeTelegram(emptyBuffer, service, 0);
+				return;
+			}
+
+			long idleTime = getIdleTime();
+			if (idleTime > 0)
+			{
+				scheduleIdleRequest(idleTime);
+				return;
+			}
+
+			pids = isMultiPidAllowed()
+			       ? getNextSupportedPids(service,
+			                              service == OBD_SVC_FREEZEFRAME
+			                              ? MAX_FRZFRM_PIDS_PER_REQUEST
+			                              : MAX_PIDS_PER_REQUEST)
+			       : new int[] { getNextSupportedPid() };
+
+			// set learned ELM timeout first, request PIDs on next prompt
+			if (mAdaptiveTiming.selectTimeout(selectedEcuAddress, service, pids))
+			{
+				deferredPids = pids;
+				return;
+			}
+		}
+		writeMultiPidTelegram(service, pids);
+	}
+
+	/**
+	 * schedule delayed request of next PID(s)
+	 *
+	 * @param delay delay [ms] until next PID is due
+	 */
+	private synchronized void scheduleIdleRequest(long delay)
+	{
+		log.fine(String.format("No PID due, idle for %d ms", delay));
+		if (idleTimer == null)
+		{
+			idleTimer = getDefaultIdleTimer();
+		}
+		idleRequest = new TimerTask()
+		{
+			@Override
+			public void run()
+			{
+				synchronized (ElmProt.this)
+				{
+					// request is obsolete if any other command was sent in the meantime
+					if (idleRequest == this)
+					{
+						idleRequest = null;
+						if (service != OBD_SVC_NONE)
+						{
+							try
+							{
+								requestNextPids();
+							}
+							catch (RuntimeException ex)
+							{
+								// keep shared timer thread alive
+								log.log(Level.WARNING, "Idle PID request", ex);
+							}
+						}
+					}
+				}
+			}
+		};
+		idleTimer.schedule(idleRequest, delay);
+	}
+
+	/**
+	 * get default timer for delayed PID requests
+	 * - one daemon thread for all protocol instances w/o own timer
+	 *
+	 * @return default idle timer
+	 */
+	private static synchronized Timer getDefaultIdleTimer()
+	{
+		if (defaultIdleTimer == null)
+		{
+			defaultIdleTimer = new Timer("ElmProtIdle", true);
+		}
+		return defaultIdleTimer;
+	}
+
+	/**
+	 * cancel pending delayed PID request
+	 */
+	private synchronized void cancelIdleRequest()
+	{
+		if (idleRequest != null)
+		{
+			idleRequest.cancel();
+			idleRequest = null;
+		}
+	}
+
+	@Override
+	public void sendTelegram(char[] buffer)
+	{
+		cancelIdleRequest();
+		extendedRequest = null;
+		requestCycleStart = 0;
+		// OBD requests need TX header / RX filter of polled ECU
+		if (isObdRequest(buffer))
+		{
+			int header = (ecuContext != null) ? ecuContext.getRequestAddress() : 0;
+			int numResponses = getExpectedResponses();
+			boolean eligible = isExtendedRequestEligible(buffer, header, numResponses);
+			// every n-th request is sent as plain request to measure the gain
+			boolean extended = eligible && (header != txHeader || !capabilities.isControlSample());
+			// physical requests w/o header switch need a cleared RX filter
+			if (extended && header != txHeader && !"".equals(adapterState.get(CMD.CLRCANRXFLT)))
+			{
+				cmdQueue.push(CommandQueue.Priority.INIT, String.valueOf(buffer));
+				sendCommand(CMD.CLRCANRXFLT, 0);
+				return;
+			}
+			if (!extended && header != txHeader)
+			{
+				switchEcu(buffer, header);
+				return;
+			}
+			if (ecuSwitchStart != 0)
+			{
+				ecuSwitchTime += System.nanoTime() - ecuSwitchStart;
+				ecuSwitchStart = 0;
+			}
+			if (extended)
+			{
+				extendedRequest = createExtendedRequest(buffer, header, numResponses);
+			}
+			if (eligible)
+			{
+				requestCycleExtended = extended;
+				requestCycleStart = System.nanoTime();
+			}
+		}
+		if (log.isLoggable(Level.FINE))
+		{
+			log.fine(this.toString() + " TX:'" + String.valueOf(buffer) + "'");
+		}
+		lastCommand = buffer;
+		adapterState.sent(String.valueOf(buffer));
+		statistics.requestSent(selectedEcuAddress, buffer, mAdaptiveTiming.elmMsgTimeout);
+		super.sendTelegram(buffer);
+	}
+
+	/**
+	 * OBD requests are sent as extended request, if selected in sendTelegram
+	 */
+	@Override
+	char[] getTxTelegram(char[] buffer)
+	{
+		return (extendedRequest != null) ? extendedRequest.toCharArray() : buffer;
+	}
+
+	/**
+	 * request PIDs supported for specified service
+	 * - if several ECUs are polled, they are requested from each ECU
+	 *
+	 * @param obdService OBD service to request supported PIDs for
+	 */
+	@Override
+	void requestSupportedPids(int obdService)
+	{
+		if (!ecuContexts.isEmpty())
+		{
+			requestNextPids();
+			return;
+		}
+
+		profilePidService = OBD_SVC_NONE;
+		if (vehicleProfile != null
+		    && (obdService == OBD_SVC_DATA || obdService == OBD_SVC_VEH_INFO))
+		{
+			long[] pidMasks = vehicleProfile.getSupportedPids(selectedEcuAddress, obdService);
+			if (pidMasks != null)
+			{
+				// start polling with supported PIDs of vehicle profile immediately ...
+				log.info(String.format("Supported PIDs of service %02X from vehicle profile", obdService));
+				profilePidService = obdService;
+				setSupportedPids(obdService, pidMasks);
+			}
+			else
+			{
+				// ... or discover them for the vehicle profile
+				vehicleProfile.clearSupportedPids(selectedEcuAddress, obdService);
+			}
+		}
+		// supported PIDs from profile are validated with the response
+		super.requestSupportedPids(obdService);
+	}
+
+	/**
+	 * notification of received supported PIDs
+	 * - PIDs are recorded in vehicle profile
+	 * - PIDs from vehicle profile are validated
+	 *
+	 * @param obdService OBD service of supported PIDs
+	 * @param start Start PID (multiple of 0x20) of bitmask
+	 * @param bitmask 32-Bit bitmask which indicates support for the next 32 PIDs
+	 * @return true if received PIDs are known from vehicle profile
+	 */
+	@Override
+	boolean supportedPidsReceived(int obdService, int start, long bitmask)
+	{
+		if (vehicleProfile == null
+		    || !ecuContexts.isEmpty()
+		    || (obdService != OBD_SVC_DATA && obdService != OBD_SVC_VEH_INFO))
+		{
+			return false;
+		}
+		if (obdService == profilePidService)
+		{
+			long[] pidMasks = vehicleProfile.getSupportedPids(selectedEcuAddress, obdService);
+			// all received PIDs are known (several ECUs may respond to the same request)
+			if (pidMasks != null
+			    && (pidMasks[(start / 0x20) % pidMasks.length] & bitmask) == bitmask)
+			{
+				return true;
+			}
+			// vehicle profile is outdated -> discover supported PIDs again
+			log.warning(String.format("Supported PIDs of service %02X changed: %08X", obdService, bitmask));
+			profilePidService = OBD_SVC_NONE;
+			vehicleProfile.clearSupportedPids(selectedEcuAddress, obdService);
+			(obdService == OBD_SVC_DATA ? PidPvs : VidPvs).clear();
+		}
+		vehicleProfile.addSupportedPids(selectedEcuAddress, obdService, start, bitmask);
+		return false;
+	}
+
+	/**
+	 * use ECUs from vehicle profile instead of ECU detection
+	 */
+	private void applyVehicleProfile()
+	{
+		log.info("Using vehicle profile: " + vehicleProfile.getKey());
+		ecuAddresses.clear();
+		ecuAddresses.addAll(vehicleProfile.getEcuAddresses());
+		canProtocol = vehicleProfile.isCanProtocol();
+		singlePidEcus.clear();
+		selectedEcuAddress = 0;
+		ecuContexts.clear();
+		ecuContext = null;
+		vehicleProfile.setLastUsed(System.currentTimeMillis());
+		if (vehicleProfile.getLearnedTimeouts().length() > 0)
+		{
+			mAdaptiveTiming.setLearnedTimeouts(vehicleProfile.getLearnedTimeouts());
+		}
+		setStatus(STAT.ECU_DETECTED);
+	}
+
+	/**
+	 * create vehicle profile from ECU detection
+	 */
+	private void createVehicleProfile()
+	{
+		vehicleProfile = null;
+		if (adapterId.length() > 0 && detectedProtocol > 0 && !ecuAddresses.isEmpty())
+		{
+			vehicleProfile = new VehicleProfile(adapterId, detectedProtocol, canProtocol, ecuAddresses);
+			vehicleProfile.setLastUsed(System.currentTimeMillis());
+			vehicleProfiles.put(vehicleProfile);
+			log.info("New vehicle profile: " + vehicleProfile.getKey());
+		}
+	}
+
+	/**
+	 * vehicle does not respond as expected from used vehicle profile
+	 * -> fall back to full protocol search and ECU detection
+	 */
+	private void vehicleProfileMismatch()
+	{
+		log.warning("Vehicle profile does not match: " + vehicleProfile.getKey());
+		vehicleProfile = null;
+		profileValidating = false;
+		profileRejected = true;
+		profilePidService = OBD_SVC_NONE;
+		cmdQueue.clear();
+		reset();
+	}
+
+	/**
+	 * is last received message the response to specified command?
+	 *
+	 * @param cmdID ID of ELM command
+	 * @return true if last sent command was specified command
+	 */
+	private boolean isResponseTo(CMD cmdID)
+	{
+		return lastCommand != null && cmdID.toString().equals(String.valueOf(lastCommand));
+	}
+
+	/**
+	 * Get known vehicle profiles
+	 * (to be loaded from / saved to persistent storage)
+	 *
+	 * @return vehicle profiles
+	 */
+	public VehicleProfiles getVehicleProfiles()
+	{
+		// keep learned timeouts of connected vehicle
+		if (vehicleProfile != null)
+		{
+			vehicleProfile.setLearnedTimeouts(mAdaptiveTiming.getLearnedTimeouts());
+		}
+		return vehicleProfiles;
+	}
+
+	/**
+	 * Get profile of connected vehicle
+	 *
+	 * @return vehicle profile, null if not known
+	 */
+	public VehicleProfile getVehicleProfile()
+	{
+		return vehicleProfile;
+	}
+
+	/**
+	 * Get request/response statistics
+	 *
+	 * @return request/response statistics
+	 */
+	public RequestStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	/**
+	 * Get shadow of current adapter settings
+	 * (provides number of redundant commands which were skipped)
+	 *
+	 * @return adapter settings
+	 */
+	public ElmAdapterState getAdapterState()
+	{
+		return adapterState;
+	}
+
+	/**
+	 * Get ring of received CAN monitor frames
+	 * (provides reception/decoding counters of CAN monitor mode)
+	 *
+	 * @return ring of CAN monitor frames
+	 */
+	public CanFrameRing getCanFrames()
+	{
+		return canFrames;
+	}
+	
+	/**
+	 * ELM responses indexed by their first character
+	 * (candidates in order of declaration)
+	 */
+	private static final RSP_ID[][] responsesByFirstChar = new RSP_ID[0x80][];
+	static
+	{
+		for (RSP_ID id : RSP_ID.values())
+		{
+			String rsp = id.toString();
+			if (rsp.length() > 0)
+			{
+				RSP_ID[] ids = responsesByFirstChar[rsp.charAt(0)];
+				ids = (ids == null) ? new RSP_ID[1] : Arrays.copyOf(ids, ids.length + 1);
+				ids[ids.length - 1] = id;
+				responsesByFirstChar[rsp.charAt(0)] = ids;
+			}
+		}
+	}
+
+	/**
+	 * return numeric ID to given response
+	 *
+	 * @param buffer buffer containing clear text response from ELM adapter
+	 * @param offset offset of response within buffer
+	 * @param length length of response
+	 */
+	private static RSP_ID getResponseId(char[] buffer, int offset, int length)
+	{
+		RSP_ID result = RSP_ID.UNKNOWN;
+		RSP_ID[] candidates = (length > 0 && buffer[offset] < responsesByFirstChar.length)
+		                      ? responsesByFirstChar[buffer[offset]]
+		                      : null;
+		if (candidates != null)
+		{
+			for (RSP_ID id : candidates)
+			{
+				if (startsWith(buffer, offset, length, id.toString()))
+				{
+					result = id;
+					break;
+				}
+			}
+		}
+		// return ID
+		return (result);
+	}
+
+	/**
+	 * check if buffer section starts with specified prefix
+	 *
+	 * @param buffer buffer to check
+	 * @param offset offset of section within buffer
+	 * @param length length of section
+	 * @param prefix prefix to check for
+	 * @return true if section starts with prefix
+	 */
+	private static boolean startsWith(char[] buffer, int offset, int length, String prefix)
+	{
+		if (prefix.length() > length)
+		{
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++)
+		{
+			if (buffer[offset + i] != prefix.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * check if buffer section is the echo of last sent command
+	 *
+	 * @param buffer buffer to check
+	 * @param offset offset of section within buffer
+	 * @param length length of section
+	 * @return true if section equals last sent command (ignoring case)
+	 */
+	private boolean isEcho(char[] buffer, int offset, int length)
+	{
+		String txMsg = (extendedRequest != null) ? extendedRequest : lastTxMsg;
+		if (txMsg.length() != length)
+		{
+			return false;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			if (Character.toUpperCase(buffer[offset + i]) != Character.toUpperCase(txMsg.charAt(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * get numeric value of hex digits within buffer
+	 *
+	 * @param buffer buffer containing hex digits
+	 * @param offset offset of hex digits
+	 * @param length number of hex digits
+	 * @return numeric value
+	 * @throws NumberFormatException if buffer contains no valid hex digits
+	 */
+	private static int hexValue(char[] buffer, int offset, int length)
+	{
+		int result = 0;
+		for (int i = offset; i < offset + length; i++)
+		{
+			int digit = Character.digit(buffer[i], 16);
+			if (digit < 0)
+			{
+				throw new NumberFormatException(String.valueOf(buffer, offset, length));
+			}
+			result = (result << 4) | digit;
+		}
+		return result;
+	}
+
+	/**
+	 * set content of received message buffer
+	 *
+	 * @param buffer buffer containing message
+	 * @param offset offset of message within buffer
+	 * @param length length of message
+	 */
+	private void setRxMsg(char[] buffer, int offset, int length)
+	{
+		rxMsgLen = 0;
+		appendRxMsg(buffer, offset, length);
+	}
+
+	/**
+	 * append to content of received message buffer
+	 *
+	 * @param buffer buffer containing message section
+	 * @param offset offset of message section within buffer
+	 * @param length length of message section
+	 */
+	private void appendRxMsg(char[] buffer, int offset, int length)
+	{
+		if (rxMsgLen + length > rxMsg.length)
+		{
+			rxMsg = Arrays.copyOf(rxMsg, Math.max(2 * rxMsg.length, rxMsgLen + length));
+		}
+		System.arraycopy(buffer, offset, rxMsg, rxMsgLen, length);
+		rxMsgLen += length;
+	}
+	
+	/**
+	 * send ELM adapter to sleep mode
+	 */
+	public void goToSleep()
+	{
+		sendCommand(CMD.LOWPOWER, 0);
+	}
+	
+	/**
+	 * reset ELM adapter
+	 */
+	public void reset()
+	{
+		// reset all learned protocol data
+		super.reset();
+		// warm start keeps upgraded baud rate,
+		// otherwise either RESET or INFO command needs to be enabled
+		if (keepBaudRate && isEnabled(CMD.WARMSTART))
+		{ sendCommand(CMD.WARMSTART, 0); }
+		else if (isEnabled(CMD.RESET) && !keepBaudRate)
+		{ sendCommand(CMD.RESET, 0); }
+		else
+		{ sendCommand(CMD.INFO, 0); }
+	}
+	
+	/**
+	 * request addresses of all connected ECUs
+	 * (received IDs are evaluated in @ref:handleDataMessage)
+	 */
+	private void queryEcus()
+	{
+		// set status to ECU detection
+		setStatus(STAT.ECU_DETECT);
+		
+		// clear all identified ECU addresses
+		ecuAddresses.clear();
+		// protocol and multi PID capabilities will be re-detected
+		canProtocol = false;
+		singlePidEcus.clear();
+		// clear selected ECU
 		selectedEcuAddress = 0;
+		ecuContexts.clear();
+		ecuContext = null;
+		// get detected protocol after ECU detection
+		detectedProtocol = 0;
+		pushCommand(CMD.GETPROTNUM, 0);
 		// remember to disable headers again
 		pushCommand(CMD.SETHEADER, 0);
 		// request PIDs (from all devices)
-		cmdQueue.add("0100");
+		cmdQueue.push(CommandQueue.Priority.INIT, "0100");
 		// enable headers
 		sendCommand(CMD.SETHEADER, 1);
 	}
@@ -618,11 +1758,31 @@ public class ElmProt
 		// set status to INITIALIZING
 		setStatus(STAT.INITIALIZING);
 		
+		// adapter is reset to functional request address
+		txHeader = 0;
+		// ... and settings are unknown
+		adapterState.invalidate();
+		
 		// push custom init commands
-		cmdQueue.addAll(customInitCommands);
+		for (String cmd : customInitCommands)
+		{
+			cmdQueue.push(CommandQueue.Priority.INIT, cmd);
+		}
+		
+		// use profile of last vehicle which was connected with this adapter
+		vehicleProfile = profileRejected ? null : vehicleProfiles.find(adapterId);
+		profileRejected = false;
+		profileValidating = vehicleProfile != null
+		                    && (preferredProtocol == PROT.ELM_PROT_AUTO
+		                        || preferredProtocol.ordinal() == vehicleProfile.getProtocol());
+		if (!profileValidating)
+		{
+			vehicleProfile = null;
+		}
 		
-		// set to preferred protocol
-		pushCommand(CMD.SETPROT, preferredProtocol.ordinal());
+		// set to preferred protocol (or known protocol to skip protocol search)
+		sessionProtocol = profileValidating ? vehicleProfile.getProtocol() : preferredProtocol.ordinal();
+		pushCommand(CMD.SETPROT, sessionProtocol);
 		
 		// initialize adaptive timing handler
 		mAdaptiveTiming.initialize();
@@ -631,6 +1791,10 @@ public class ElmProt
 		pushCommand(CMD.SETSPACES, 0);
 		pushCommand(CMD.SETLINEFEED, 0);
 		
+		// probe for STN extended commands (plain ELM adapters reject them)
+		pushCommand(CMD.STNDEVICE, 0);
+		pushCommand(CMD.STNINFO, 0);
+		
 		// immediate set echo off
 		pushCommand(CMD.ECHO, 0);
 	}
@@ -643,6 +1807,18 @@ public class ElmProt
 	 * multiline response is pending, for responses w/o a length info
 	 */
 	private boolean responsePending = false;
+	/**
+	 * services which respond with DFCs
+	 */
+	private static final int[] dfcServices = {OBD_SVC_READ_CODES, OBD_SVC_PENDINGCODES, OBD_SVC_PERMACODES};
+	/**
+	 * last received message / accumulated multiline response
+	 */
+	private char[] rxMsg = new char[256];
+	/**
+	 * length of last received message
+	 */
+	private int rxMsgLen = 0;
 	
 	/**
 	 * handle incoming protocol telegram
@@ -651,31 +1827,51 @@ public class ElmProt
 	 * @return number of listeners notified
 	 */
 	@Override
-	public synchronized int handleTelegram(char[] buffer)
+	public int handleTelegram(char[] buffer)
+	{
+		return handleTelegram(buffer, 0, buffer.length);
+	}
+
+	/**
+	 * handle incoming protocol telegram from a section of a receive buffer
+	 *
+	 * @param buffer - receive buffer
+	 * @param offset - offset of telegram within buffer
+	 * @param length - length of telegram
+	 * @return number of listeners notified
+	 */
+	@Override
+	@SuppressWarnings("fallthrough")
+	public synchronized int handleTelegram(char[] buffer, int offset, int length)
 	{
 		int result = 0;
-		String bufferStr = new String(buffer);
 		
-		log.fine(this.toString() + " RX:'" + bufferStr + "'");
+		if (log.isLoggable(Level.FINE))
+		{
+			log.fine(this.toString() + " RX:'" + String.valueOf(buffer, offset, length) + "'");
+		}
 		
 		// empty result
-		if (buffer.length == 0)
+		if (length == 0)
 		{
 			return result;
 		}
 		
 		// if ths is echo of last command
-		if (lastTxMsg.compareToIgnoreCase(bufferStr) == 0)
+		if (isEcho(buffer, offset, length))
 		{
 			// ignore echoed command
 			return result;
 		}
 		
 		// log message reception as answer to last TX message
-		log.fine("ELM rx:'" + bufferStr + "' (" + lastTxMsg + ")");
+		if (log.isLoggable(Level.FINE))
+		{
+			log.fine("ELM rx:'" + String.valueOf(buffer, offset, length) + "' (" + lastTxMsg + ")");
+		}
 		
 		// handle response
-		switch (getResponseId(bufferStr))
+		switch (getResponseId(buffer, offset, length))
 		{
 			case SEARCH:
 				setStatus(status != STAT.ECU_DETECT ? STAT.CONNECTING : status);
@@ -698,24 +1894,33 @@ public class ElmProt
 			case RXERROR:
 				// remember this as last received message
 				// do NOT respond immediately
-				lastRxMsg = bufferStr;
+				setRxMsg(buffer, offset, length);
 				break;
 
 			case STOPPED:
 				// remember this as last received message
-				lastRxMsg = bufferStr;
+				setRxMsg(buffer, offset, length);
 				// re-queue last command
-				cmdQueue.add(String.valueOf(lastCommand));
+				cmdQueue.push(CommandQueue.Priority.INIT, String.valueOf(lastCommand));
 				break;
 
 			case MODEL:
+				// remember adapter identity
+				adapterId = String.valueOf(buffer, offset, length).trim();
+				capabilities.reset(adapterId);
 				initialize();
 				break;
 			
 			// received a PROMPT, what was the last response?
 			case PROMPT:
+				// measure request cycle for gain of extended requests
+				if (requestCycleStart != 0)
+				{
+					capabilities.requestCompleted(requestCycleExtended, System.nanoTime() - requestCycleStart);
+					requestCycleStart = 0;
+				}
 				// check for last received message
-				switch (getResponseId(lastRxMsg))
+				switch (getResponseId(rxMsg, 0, rxMsgLen))
 				{
 					case NOCONN:
 					case NOCONN2:
@@ -727,8 +1932,16 @@ public class ElmProt
 					case BUSBUSY:
 					case FBERROR:
 						setStatus(STAT.DISCONNECTED);
+						// adapter settings are unknown after errors
+						adapterState.invalidate();
+						// vehicle does not match used vehicle profile?
+						if (profileValidating)
+						{
+							vehicleProfileMismatch();
+							break;
+						}
 						// re-queue last command
-						cmdQueue.add(String.valueOf(lastCommand));
+						cmdQueue.push(CommandQueue.Priority.INIT, String.valueOf(lastCommand));
 						// queue setting to preferred protocol
 						pushCommand(CMD.SETPROT, preferredProtocol.ordinal());
 						// Initialize adaptive timing
@@ -739,34 +1952,46 @@ public class ElmProt
 					
 					case DATAERROR:
 						setStatus(STAT.DATAERROR);
+						adapterState.invalidate();
 						sendCommand(CMD.WARMSTART, 0);
 						break;
 					
 					case BUFFERFULL:
 					case RXERROR:
 						setStatus(STAT.RXERROR);
+						adapterState.invalidate();
 						sendCommand(CMD.WARMSTART, 0);
 						break;
 					
 					case ERROR:
 						setStatus(STAT.ERROR);
+						adapterState.invalidate();
 						sendCommand(CMD.WARMSTART, 0);
 						break;
 
 					case NODATA:
 						setStatus(STAT.NODATA);
+						statistics.noDataReceived();
+						// vehicle does not match used vehicle profile?
+						if (profileValidating)
+						{
+							vehicleProfileMismatch();
+							break;
+						}
 						// re-queue next data item
-						if (service != OBD_SVC_NONE)
+						// (unless a polled ECU has no supported PIDs)
+						if (service != OBD_SVC_NONE
+						    && (ecuContext == null || getScheduler().size() > 0))
 						{
-							cmdQueue.add(
+							cmdQueue.push(CommandQueue.Priority.POLL,
 								String.valueOf(
 									createTelegram(emptyBuffer, service, getNextSupportedPid()))
 							);
 						}
 						// increase OBD timeout since we may expect answers too fast
-						mAdaptiveTiming.adapt(true);
+						mAdaptiveTiming.timedOut(statistics);
 						// set to preferred protocol
-						pushCommand(CMD.SETPROT, preferredProtocol.ordinal());
+						pushCommand(CMD.SETPROT, sessionProtocol);
 						// NO break here since reaction is only quqeued
 					
 					case MODEL:
@@ -775,22 +2000,43 @@ public class ElmProt
 						// was already handled before prompt
 					case QMARK:
 						// last command stays ignored
+						if (getResponseId(rxMsg, 0, rxMsgLen) == RSP_ID.QMARK)
+						{
+							adapterState.rejected();
+						}
 					
 					case OK:
 					default:
 						// if there is a pending data response, handle it now ...
 						if (responsePending)
 						{
-							result = handleDataMessage(lastRxMsg);
+							responsePending = false;
+							IsoTpReassembler isoTp = getReassembler(selectedEcuAddress);
+							if (isoTp.finish())
+							{
+								result = handleDataMessage(isoTp.getPayload(), isoTp.getLength());
+							}
+						}
+
+						// multi PID request rejected or truncated by ECU?
+						if (!isMultiPidResponseComplete())
+						{
+							log.warning(String.format("Multi PID request failed (ECU 0x%x): %s -> single PID requests",
+							                          selectedEcuAddress, lastTxMsg));
+							singlePidEcus.add(selectedEcuAddress);
 						}
 						
 						// queued commands will be sent first
-						if (cmdQueue.size() > 0)
+						// (commands which don't change adapter settings are skipped)
+						// (higher priority classes first)
+						String cmd;
+						do
+						{
+							cmd = cmdQueue.pop();
+						}
+						while (cmd != null && adapterState.isRedundant(cmd));
+						if (cmd != null)
 						{
-							// get last command
-							String cmd = cmdQueue.lastElement();
-							// and remove it from list
-							cmdQueue.remove(cmd);
 							// send the command
 							sendTelegram(cmd.toCharArray());
 						}
@@ -801,19 +2047,31 @@ public class ElmProt
 							{
 								// set status to initialized
 								setStatus(STAT.INITIALIZED);
-								// initiate query of connected ECUs
-								queryEcus();
+								if (profileValidating)
+								{
+									// ECUs are known from vehicle profile
+									applyVehicleProfile();
+								}
+								else
+								{
+									// initiate query of connected ECUs
+									queryEcus();
+								}
 								break;
 							}
 							
 							// all queued commands are sent -> we are done detecting ECUs
-							setStatus(status == STAT.ECU_DETECT ? STAT.ECU_DETECTED : status);
+							if (status == STAT.ECU_DETECT)
+							{
+								createVehicleProfile();
+								setStatus(STAT.ECU_DETECTED);
+							}
 							
 							switch (service)
 							{
 								case OBD_SVC_VEH_INFO:
 									// if all pid's have been read once ...
-									if (pidsWrapped)
+									if (pidsWrapped && deferredPids == null)
 									{
 										// ... terminate service loop
 										break;
@@ -821,13 +2079,9 @@ public class ElmProt
 									// no break here ...
 								case OBD_SVC_DATA:
 								case OBD_SVC_FREEZEFRAME:
-								{
-									// otherwise the next PID will be requested
-									writeTelegram(emptyBuffer, service, getNextSupportedPid());
-									// reduce OBD timeout towards minimum limit
-									mAdaptiveTiming.adapt(false);
-								}
-								break;
+									// otherwise the next PID(s) will be requested
+									requestNextPids();
+									break;
 								
 								case OBD_SVC_NONE:
 								default:
@@ -839,11 +2093,33 @@ public class ElmProt
 			
 			// handle data response
 			default:
+				// response to protocol number request
+				if (isResponseTo(CMD.GETPROTNUM))
+				{
+					// protocol number, "A" prefix for automatic protocol detection
+					detectedProtocol = Character.digit(buffer[offset + length - 1], 16);
+					return result;
+				}
+				// responses to STN capability probe
+				if (isResponseTo(CMD.STNINFO))
+				{
+					capabilities.setStnId(String.valueOf(buffer, offset, length));
+					log.info("Adapter capabilities: " + capabilities);
+					return result;
+				}
+				if (isResponseTo(CMD.STNDEVICE))
+				{
+					capabilities.setDeviceId(String.valueOf(buffer, offset, length));
+					return result;
+				}
+				
 				// if we are still initializing check for address entries
 				switch (status)
 				{
 					case ECU_DETECT:
 					{
+						statistics.responseReceived();
+						String bufferStr = String.valueOf(buffer, offset, length);
 						// start of 0100 response is end of address
 						int adrEnd = bufferStr.indexOf("41");
 						// if not a service response, check for possible NRC
@@ -890,6 +2166,8 @@ public class ElmProt
 									adrStart = 0;
 								}
 							}
+							// CAN address (11/29 bit) -> ISO 15765 protocol
+							canProtocol |= (adrLen == 3 || adrLen == 8);
 							// extract address
 							String address = bufferStr.substring(adrStart, adrStart + adrLen);
 							
@@ -897,7 +2175,7 @@ public class ElmProt
 							// and add to list of addresses
 							ecuAddresses.add(Integer.valueOf(address, 16));
 						}
-						return lastRxMsg.length();
+						return rxMsgLen;
 					}
 					default:
 						break;
@@ -905,289 +2183,215 @@ public class ElmProt
 				
 				// we are connected ...
 				setStatus(STAT.CONNECTED);
+				// ... so a used vehicle profile is valid
+				if (profileValidating)
+				{
+					log.info("Vehicle profile confirmed: " + vehicleProfile.getKey());
+					profileValidating = false;
+				}
 				
 				// ELM clone verbose message (starting with '+')
-				if(buffer[0] == '+')
+				if(buffer[offset] == '+')
 				{
 					// ignore message
 					return (result);
 				}
+
+				// CAN monitor frames are decoded by decoder thread
+				if (service == OBD_SVC_CAN_MONITOR && canFrames.isRunning())
+				{
+					canFrames.offer(buffer, offset, length);
+					return (result);
+				}
 				
+				// responses with headers are reassembled per response CAN ID
+				if (isCanFramed())
+				{
+					return handleCanFrame(buffer, offset, length);
+				}
+
+				// multi frame responses are reassembled per ECU
+				IsoTpReassembler isoTp = getReassembler(selectedEcuAddress);
+
 				// is this a length identifier?
-				if (buffer[0] == '0' && buffer.length == 3)
+				if (buffer[offset] == '0' && length == 3)
 				{
-					// then remember the length to be expected
-					charsExpected = Integer.valueOf(bufferStr, 16) * 2;
-					lastRxMsg = "";
+					// then start a response of expected length
+					isoTp.start(hexValue(buffer, offset, length));
 					return (result);
 				}
 				
 				// is this a multi-line response
-				int idx = bufferStr.indexOf(':');
+				int idx = -1;
+				for (int i = 0; i < length && idx < 0; i++)
+				{
+					if (buffer[offset + i] == ':')
+					{
+						idx = i;
+					}
+				}
+				// length of message w/o padding
+				int msgLen = length;
+				IsoTpReassembler.Result frameResult = IsoTpReassembler.Result.IGNORED;
 
+				if (idx >= 0)
+				{
+					frameResult = isoTp.addIndexedLine(buffer, offset, length, idx);
+				}
 				// .. or a ISO multi line response with format SVC PID MSGID DATA...
-				if((idx < 0) && (buffer.length == 14))
+				// (a CAN response to a multi PID request may have the same length)
+				else if ((length == 14) && !isMultiPidRequest())
 				{
-					final int[] dfcServices = {OBD_SVC_READ_CODES, OBD_SVC_PENDINGCODES, OBD_SVC_PERMACODES};
-					int msgService = Integer.valueOf(bufferStr.substring(0, 2), 0x10) & ~0x40;
+					int msgService = hexValue(buffer, offset, 2) & ~0x40;
 					// If response to current service and no DFC response ...
 					if(msgService == getService()
 					   && Arrays.binarySearch(dfcServices, msgService) < 0)
 					{
-						// Use header on 1st response, cut from continuation messages
-						int msgId = Integer.valueOf(bufferStr.substring(4,6),0x10);
-						if(msgId <= 1)
-						{
-							// 1st response line
-							idx = 0;
-							lastMsgId = msgId;
-						}
-						else if (msgId == (lastMsgId + 1))
-						{
-							// continuation line
-							idx = 5;
-							lastMsgId = msgId;
-						}
-						else
+						frameResult = isoTp.addIsoLine(buffer, offset, length);
+						if (frameResult == IsoTpReassembler.Result.IGNORED)
 						{
 							// NOT a ISO multi line message
-							idx = -1;
 							// cut additional (padding) byte
-							bufferStr = bufferStr.substring(0,buffer.length-2);
+							msgLen = length - 2;
 						}
 					}
 				}
 
-				if (idx >= 0)
+				switch (frameResult)
 				{
-					if(idx == 0)
-					{
-						// initial ISO multiline message
-						lastRxMsg = bufferStr;
-						charsExpected = 0;
-					}
-					else if (buffer[0] == '0')
-					{
-						// first line of a multiline message
-						lastRxMsg = bufferStr.substring(idx + 1);
-					}
-					else
-					{
-						// continuation lines
-						// concat response without line counter
-						lastRxMsg += bufferStr.substring(idx + 1);
-					}
+					case PENDING:
+						/* set marker for pending response
+						   response of unknown length will be finished on reception of prompt */
+						responsePending = true;
+						break;
 
-					/* no length known, set marker for pending response
-					   response will be finished on reception of prompt */
-					responsePending = (charsExpected == 0);
-				}
-				else
-				{
-					// otherwise use this as last received message
-					lastRxMsg = bufferStr;
-					charsExpected = 0;
-					responsePending = false;
-				}
-				
+					case COMPLETE:
+						// multi line response is finished, handle it
+						responsePending = false;
+						result = handleDataMessage(isoTp.getPayload(), isoTp.getLength());
+						break;
 
-				// if we haven't received complete result yet, then wait for the rest
-				if (lastRxMsg.length() < charsExpected)
-				{
-					return (result);
-				}
-				
-				// Trim a multiline response to expected length (cut off padding)
-				if((charsExpected > 0) && (lastRxMsg.length() > charsExpected))
-				{
-					lastRxMsg = lastRxMsg.substring(0, charsExpected);
-				}
-				
-				// if response is finished, handle it
-				if (!responsePending)
-				{
-					result = handleDataMessage(lastRxMsg);
+					case GAP:
+						log.warning(String.format("Multi line response (ECU 0x%x) incomplete: %s",
+						                          selectedEcuAddress, String.valueOf(buffer, offset, length)));
+						responsePending = false;
+						break;
+
+					default:
+						// otherwise use this as last received message
+						setRxMsg(buffer, offset, msgLen);
+						responsePending = false;
+						result = handleDataMessage(rxMsg, rxMsgLen);
 				}
 		}
 		return (result);
 	}
-	
+
 	/**
-	 * forward data message for further handling
+	 * handle CAN frame of a response with headers "IIIDDDDDDDDDDDDDDDD"
+	 * - frame data starts with PCI byte
+	 * - frames of several ECUs may be interleaved, they are reassembled
+	 *   in the reassembler of the response CAN ID
 	 *
-	 * @param lastRxMsg received message to be forwarded
+	 * @param buffer receive buffer
+	 * @param offset offset of frame within buffer
+	 * @param length length of frame
 	 * @return number of bytes processed
 	 */
-	private int handleDataMessage(String lastRxMsg)
+	private int handleCanFrame(char[] buffer, int offset, int length)
 	{
 		int result = 0;
-		
-		// otherwise process response
-		switch (service)
+		// 11 bit CAN ID: 3 digits, 29 bit CAN ID: 8 digits (+ even number of data digits)
+		int idLen = ((length % 2) != 0) ? 3 : 8;
+		int canId;
+		try
 		{
-			case OBD_SVC_NONE:
-				// ignore messages
+			canId = (length > idLen) ? hexValue(buffer, offset, idLen) : -1;
+		}
+		catch (NumberFormatException e)
+		{
+			canId = -1;
+		}
+		if (canId < 0)
+		{
+			log.warning("Invalid CAN frame: " + String.valueOf(buffer, offset, length));
+			return result;
+		}
+		IsoTpReassembler isoTp = getReassembler(canId);
+		switch (isoTp.addFrame(buffer, offset + idLen, length - idLen))
+		{
+			case COMPLETE:
+				result = handleDataMessage(isoTp.getPayload(), isoTp.getLength());
 				break;
-			
-			case OBD_SVC_CAN_MONITOR:
-				result = canProt.handleTelegram(lastRxMsg.toCharArray());
+
+			case GAP:
+				log.warning(String.format("Multi frame response (ECU 0x%x) incomplete: %s",
+				                          isoTp.getEcuAddress(), String.valueOf(buffer, offset, length)));
 				break;
-			
+
 			default:
-				// Let the OBD protocol handle the telegram
-				result = super.handleTelegram(lastRxMsg.toCharArray());
+				break;
 		}
 		return result;
 	}
-	
-	// switch to exit the demo thread
-	public static boolean runDemo;
+
+	/**
+	 * get multi frame response reassembler for ECU address
+	 *
+	 * @param ecuAddress ECU address
+	 * @return reassembler for ECU address
+	 */
+	private IsoTpReassembler getReassembler(int ecuAddress)
+	{
+		if (lastReassembler == null || lastReassembler.getEcuAddress() != ecuAddress)
+		{
+			lastReassembler = reassemblers.get(ecuAddress);
+			if (lastReassembler == null)
+			{
+				lastReassembler = new IsoTpReassembler(ecuAddress);
+				reassemblers.put(ecuAddress, lastReassembler);
+			}
+		}
+		return lastReassembler;
+	}
 	
 	/**
-	 * run threaded loop to simulate incoming telegrams
+	 * forward received data message for further handling
+	 *
+	 * @param msg buffer containing message
+	 * @param msgLen length of message
+	 * @return number of bytes processed
 	 */
-	public void run()
+	private int handleDataMessage(char[] msg, int msgLen)
 	{
-		int value = 0;
-		Integer pid;
-		runDemo = true;
+		int result = 0;
 		
-		log.info("ELM DEMO thread started");
-		while (runDemo)
+		// otherwise process response
+		switch (service)
 		{
-			try
-			{
-				handleTelegram(RSP_ID.MODEL.toString().toCharArray());
-				// test case for issue AndrOBD/#61
-				handleTelegram("+CONNECTING<<94:65:2D:9E:DF:B5".toCharArray());
-				
-				setStatus(STAT.ECU_DETECT);
-				handleTelegram("SEARCHING...".toCharArray());
-				handleTelegram("7EA074100000000".toCharArray());
-				handleTelegram("486B104100BF9FA8919B".toCharArray());
-				handleTelegram("...486B104100BF9FA8919B".toCharArray());
-				handleTelegram("7E8064100000000".toCharArray());
-				handleTelegram("7E9074100000000".toCharArray());
-				handleTelegram("7EA074100000000".toCharArray());
-				// test case for issue AndrOBD/#60
-				handleTelegram("18DAF110064100BE3EB811".toCharArray());
-				// test case for issue AndrOBD-Plugin/#10 (NRC22 on detect)
-				handleTelegram("7E8037F0122".toCharArray());
-				setStatus(STAT.ECU_DETECTED);
-				
-				while (runDemo)
+			case OBD_SVC_NONE:
+				// ignore messages
+				break;
+			
+			case OBD_SVC_CAN_MONITOR:
+				result = canProt.handleTelegram(msg, 0, msgLen);
+				break;
+			
+			default:
+				// record response (or negative response) for statistics
+				if (msgLen >= 2 && msg[0] == '7' && (msg[1] == 'F' || msg[1] == 'f'))
 				{
-					switch (service)
-					{
-						// read any kinds of trouble codes
-						case OBD_SVC_READ_CODES:
-						case OBD_SVC_PENDINGCODES:
-						case OBD_SVC_PERMACODES:
-							// simulate 12 TCs set as multy line response
-							// number of codes = 12 + MIL ON
-							handleTelegram("41018C000000".toCharArray());
-							// send codes as multy line response
-							handleTelegram("014".toCharArray());
-							handleTelegram("0:438920B920BD".toCharArray());
-							handleTelegram("1:C002242A246E02".toCharArray());
-							handleTelegram("2:36010101162453".toCharArray());
-
-							// simulate 12 TCs set as subsequent single line responses
-							// send codes as subsequent single line responses
-							handleTelegram("478420BA20BC".toCharArray());
-							handleTelegram("4784C004242B".toCharArray());
-
-							// test pattern from AndrOBD/#78
-							// 4 DFCs, 10 byte multiline response , padded
-							handleTelegram("00A".toCharArray());
-							handleTelegram("0:4A8401180122".toCharArray());
-							handleTelegram("1:02232610000000".toCharArray());
-
-							Thread.sleep(500);
-							break;
-						
-						// otherwise send data ...
-						case OBD_SVC_DATA:
-						case OBD_SVC_FREEZEFRAME:
-							pid = getNextSupportedPid();
-							if (pid != 0)
-							{
-								value++;
-								value &= 0xFF;
-								// format new data message and handle it as new reception
-								handleTelegram(String.format(
-									service == OBD_SVC_DATA ? "4%X%02X%02X%02X%02X%02X"
-									                        : "4%X%02X00%02X%02X%02X%02X",
-									service, pid, value, value, value, value).toCharArray());
-							}
-							else
-							{
-								// simulate "ALL PIDs supported"
-								int i;
-								for (i = 0; i < 0xE0; i += 0x20)
-								{
-									handleTelegram(String.format(
-										service == OBD_SVC_DATA ? "4%X%02XFFFFFFFF"
-										                        : "4%X%02X00FFFFFFFF", service, i)
-										               .toCharArray());
-								}
-								handleTelegram(String.format(
-									service == OBD_SVC_DATA ? "4%X%02XFFFFFFFE"
-									                        : "4%X%02X00FFFFFFFE", service, i)
-									               .toCharArray());
-							}
-							break;
-						
-						case OBD_SVC_VEH_INFO:
-							pid = getNextSupportedPid();
-							if (pid == 0)
-							{
-								// simulate "ALL pids supported"
-								handleTelegram("490054000000".toCharArray());
-							}
-							
-							// send VIN "0123456789ABCDEFG"
-							handleTelegram("014".toCharArray());
-							handleTelegram("1:49020130313233".toCharArray());
-							handleTelegram("2:343536373839".toCharArray());
-							handleTelegram("3:41424344454647".toCharArray());
-							
-							// send 2 CAL-IDs "GSPA..." without length id
-							handleTelegram("0:490402475350".toCharArray());
-							handleTelegram("1:412D3132333435".toCharArray());
-							handleTelegram("2:363738393030".toCharArray());
-							handleTelegram("3:30313233".toCharArray());
-							handleTelegram("4:343536373839".toCharArray());
-							handleTelegram("5:414243444546".toCharArray());
-							
-							// CAL-ID 01234567
-							handleTelegram("490601234567".toCharArray());
-							break;
-						
-						case OBD_SVC_CTRL_MODE:
-							handleTelegram("4800C0000000".toCharArray());
-							break;
-
-						case OBD_SVC_NONE:
-							// just keep quiet until soneone requests something
-							break;
-						
-						default:
-							// respond "service not supported"
-							handleTelegram(String.format("7F%02X11", service).toCharArray());
-							Thread.sleep(500);
-							break;
-						
-					}
-					Thread.sleep(50);
+					statistics.nrcReceived();
 				}
-			}
-			catch (Exception ex)
-			{
-				log.severe(ex.getLocalizedMessage());
-			}
+				else
+				{
+					statistics.responseReceived();
+					mAdaptiveTiming.responded(statistics);
+				}
+				// Let the OBD protocol handle the telegram
+				result = handleResponse(msg, msgLen);
 		}
-		log.info("ELM DEMO thread finished");
+		return result;
 	}
 	
 	/**
@@ -1225,10 +2429,14 @@ public class ElmProt
 			switch (service)
 			{
 				case OBD_SVC_CAN_MONITOR:
+					canFrames.start(canProt);
 					sendCommand(CMD.CANMONITOR, 0);
 					break;
 				
 				default:
+					canFrames.stop();
+					setupEcuContexts(service);
+					setupResponseHeaders(service);
 					super.setService(service, clearLists);
 			}
 		}
@@ -0,0 +1,357 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+/**
+ * Reassembler for multi frame responses of one ECU
+ * Accepts response lines in the formats provided by ELM adapters:
+ * - ELM formatted ISO 15765 responses: length line (e.g. "014"),
+ *   followed by indexed lines ("0:...", "1:...", ... "F:", "0:", ...)
+ * - ISO 9141/14230 multi line responses: SVC PID MSGID DATA...
+ * - raw ISO 15765 frames (headers on / CAF0) with PCI byte:
+ *   single frame, first frame and consecutive frames
+ *
+ * Payload is collected as hex digits in a pre-allocated buffer,
+ * sequence gaps are detected and a complete payload is reported exactly once.
+ */
+public class IsoTpReassembler
+{
+	/** max. ISO-TP payload length [bytes] */
+	public static final int MAX_PAYLOAD = 4095;
+
+	/**
+	 * Result of adding a response line
+	 */
+	public enum Result
+	{
+		/** line is no multi frame line of expected format */
+		IGNORED,
+		/** more lines are expected */
+		PENDING,
+		/** payload is complete */
+		COMPLETE,
+		/** sequence gap detected, payload is discarded */
+		GAP
+	}
+
+	/** ECU address of responses */
+	private final int ecuAddress;
+	/** reassembled payload [hex digits] */
+	private final char[] payload = new char[MAX_PAYLOAD * 2];
+	/** length of reassembled payload [hex digits] */
+	private int length = 0;
+	/** expected payload length [hex digits], 0 = unknown */
+	private int expected = 0;
+	/** expected sequence number of next line */
+	private int nextSeq = 0;
+	/** reassembly in progress? */
+	private boolean active = false;
+	/** statistics */
+	private long numComplete = 0;
+	private long numGaps = 0;
+
+	/**
+	 * Create reassembler
+	 *
+	 * @param ecuAddress address of ECU which sends the responses
+	 */
+	public IsoTpReassembler(int ecuAddress)
+	{
+		this.ecuAddress = ecuAddress;
+	}
+
+	/**
+	 * Start new payload
+	 *
+	 * @param expectedBytes expected payload length [bytes], 0 if unknown
+	 */
+	public void start(int expectedBytes)
+	{
+		expected = Math.min(expectedBytes, MAX_PAYLOAD) * 2;
+		length = 0;
+		nextSeq = 0;
+		active = true;
+	}
+
+	/**
+	 * Reset reassembly, a pending payload is discarded
+	 */
+	public void reset()
+	{
+		active = false;
+		length = 0;
+		expected = 0;
+	}
+
+	/**
+	 * Add ELM formatted ISO 15765 line "N:DATA"
+	 * (length is announced by a preceding length line, see {@link #start(int)})
+	 *
+	 * @param buffer receive buffer
+	 * @param offset offset of line within buffer
+	 * @param len length of line
+	 * @param colon offset of ':' within line
+	 * @return result of reassembly
+	 */
+	public Result addIndexedLine(char[] buffer, int offset, int len, int colon)
+	{
+		int seq = hexValue(buffer, offset, colon);
+		if (seq < 0)
+		{
+			return Result.IGNORED;
+		}
+		seq &= 0x0F;
+		// first line of a new payload
+		if (seq == 0 && (!active || nextSeq != 0))
+		{
+			if (active)
+			{
+				// previous payload is incomplete
+				numGaps++;
+			}
+			start(0);
+		}
+		// some adapters start counting at 1 after the length line
+		if (active && length == 0)
+		{
+			nextSeq = seq;
+		}
+		if (!active || seq != nextSeq)
+		{
+			return gap();
+		}
+		nextSeq = (seq + 1) & 0x0F;
+		return append(buffer, offset + colon + 1, len - colon - 1);
+	}
+
+	/**
+	 * Add ISO 9141/14230 multi line response "SVC PID MSGID DATA"
+	 * - first line is kept including header
+	 * - continuation lines are appended without header
+	 *
+	 * @param buffer receive buffer
+	 * @param offset offset of line within buffer
+	 * @param len length of line
+	 * @return result of reassembly, IGNORED if line is no part of a multi line response
+	 */
+	public Result addIsoLine(char[] buffer, int offset, int len)
+	{
+		int msgId = hexValue(buffer, offset + 4, 2);
+		if (msgId < 0)
+		{
+			return Result.IGNORED;
+		}
+		if (msgId <= 1)
+		{
+			// 1st response line
+			start(0);
+			nextSeq = msgId + 1;
+			return append(buffer, offset, len);
+		}
+		if (active && msgId == nextSeq)
+		{
+			// continuation line
+			nextSeq = msgId + 1;
+			return append(buffer, offset + 6, len - 6);
+		}
+		return Result.IGNORED;
+	}
+
+	/**
+	 * Add raw ISO 15765 frame (data bytes starting with PCI byte)
+	 *
+	 * @param buffer receive buffer
+	 * @param offset offset of frame data within buffer
+	 * @param len length of frame data
+	 * @return result of reassembly
+	 */
+	public Result addFrame(char[] buffer, int offset, int len)
+	{
+		int pci = hexValue(buffer, offset, 1);
+		switch (pci)
+		{
+			case 0:
+				// single frame
+				int sfLen = hexValue(buffer, offset + 1, 1);
+				if (sfLen < 1 || 2 + 2 * sfLen > len)
+				{
+					return Result.IGNORED;
+				}
+				start(sfLen);
+				return append(buffer, offset + 2, 2 * sfLen);
+
+			case 1:
+				// first frame
+				int ffLen = hexValue(buffer, offset + 1, 3);
+				if (ffLen < 0 || len < 4)
+				{
+					return Result.IGNORED;
+				}
+				if (active)
+				{
+					// previous payload is incomplete
+					numGaps++;
+				}
+				start(ffLen);
+				nextSeq = 1;
+				return append(buffer, offset + 4, len - 4);
+
+			case 2:
+				// consecutive frame
+				int seq = hexValue(buffer, offset + 1, 1);
+				if (!active || seq != nextSeq)
+				{
+					return gap();
+				}
+				nextSeq = (seq + 1) & 0x0F;
+				return append(buffer, offset + 2, len - 2);
+
+			default:
+				// flow control or invalid frame
+				return Result.IGNORED;
+		}
+	}
+
+	/**
+	 * Finish payload of unknown length (on reception of prompt)
+	 * (a pending payload of known length is incomplete and discarded)
+	 *
+	 * @return true if a pending payload is complete now
+	 */
+	public boolean finish()
+	{
+		if (active && length > 0 && expected == 0)
+		{
+			active = false;
+			numComplete++;
+			return true;
+		}
+		if (active && expected > 0)
+		{
+			gap();
+		}
+		return false;
+	}
+
+	/**
+	 * Is reassembly in progress?
+	 *
+	 * @return true if more lines are expected
+	 */
+	public boolean isActive()
+	{
+		return active;
+	}
+
+	/**
+	 * @return ECU address of responses
+	 */
+	public int getEcuAddress()
+	{
+		return ecuAddress;
+	}
+
+	/**
+	 * Get reassembled payload
+	 * (buffer is re-used for next payload)
+	 *
+	 * @return payload buffer [hex digits]
+	 */
+	public char[] getPayload()
+	{
+		return payload;
+	}
+
+	/**
+	 * @return length of reassembled payload [hex digits]
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * @return number of completed payloads
+	 */
+	public long getNumComplete()
+	{
+		return numComplete;
+	}
+
+	/**
+	 * @return number of discarded payloads due to sequence gaps
+	 */
+	public long getNumGaps()
+	{
+		return numGaps;
+	}
+
+	/**
+	 * append payload section and check for completion
+	 */
+	private Result append(char[] buffer, int offset, int len)
+	{
+		len = Math.max(0, Math.min(len, payload.length - length));
+		System.arraycopy(buffer, offset, payload, length, len);
+		length += len;
+		if (expected > 0 && length >= expected)
+		{
+			// cut off padding
+			length = expected;
+			active = false;
+			numComplete++;
+			return Result.COMPLETE;
+		}
+		return Result.PENDING;
+	}
+
+	/**
+	 * handle sequence gap
+	 */
+	private Result gap()
+	{
+		numGaps++;
+		reset();
+		return Result.GAP;
+	}
+
+	/**
+	 * get value of hex digits
+	 *
+	 * @return value, -1 if characters are no valid hex digits
+	 */
+	private static int hexValue(char[] buffer, int offset, int len)
+	{
+		if (len <= 0 || offset + len > buffer.length)
+		{
+			return -1;
+		}
+		int result = 0;
+		for (int i = offset; i < offset + len; i++)
+		{
+			int digit = Character.digit(buffer[i], 16);
+			if (digit < 0)
+			{
+				return -1;
+			}
+			result = (result << 4) | digit;
+		}
+		return result;
+	}
+}
@@ -28,6 +28,8 @@ import com.fr3ts0n.ecu.EcuDataItems;
 import com.fr3ts0n.ecu.EcuDataPv;
 import com.fr3ts0n.ecu.ObdCodeItem;
 import com.fr3ts0n.ecu.ObdPid;
+import com.fr3ts0n.ecu.PidDecoder;
+import com.fr3ts0n.ecu.PidScheduler;
 import com.fr3ts0n.prot.ProtoHeader;
 import com.fr3ts0n.prot.TelegramListener;
 import com.fr3ts0n.prot.TelegramWriter;
@@ -36,7 +38,6 @@ import com.fr3ts0n.pvs.PvList;
 
 import java.beans.PropertyChangeEvent;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Vector;
 
@@ -66,6 +67,11 @@ public class ObdProt extends ProtoHeader
     /** negative response ID */
     private static final int OBD_ID_NRC = 0x7F;
 
+    /** max. number of PIDs within one multi PID data request (service 01) */
+    static final int MAX_PIDS_PER_REQUEST = 6;
+    /** max. number of PID/frame pairs within one multi PID freeze frame request (service 02) */
+    static final int MAX_FRZFRM_PIDS_PER_REQUEST = 3;
+
     /** perform immediate reset on NRC reception? */
     private boolean isResetOnNrc()
     {
@@ -169,21 +175,26 @@ public class ObdProt extends ProtoHeader
     public static final String PROP_NUM_CODES = "numCodes";
     public static final String PROP_NRC = "NRC";
 
-    // current supported PID
-    private static int currSupportedPid = 0;
-    static boolean pidsWrapped = false;
+    boolean pidsWrapped = false;
 
     /** content of last sent message */
-    static String lastTxMsg = "";
-    /** content of last received message */
-    static String lastRxMsg = "";
+    String lastTxMsg = "";
     /** Holds value of property service. */
     int service = OBD_SVC_NONE;
     /** service of last incoming message */
     private int msgService = OBD_SVC_NONE;
 
-    /** List of PIDs supported by the vehicle */
-    private static final Vector<ObdPid> pidSupported = new Vector<ObdPid>();
+    /** data items and supported PIDs of this session (all ECUs) */
+    private final EcuContext sessionContext = new EcuContext(EcuContext.ALL_ECUS);
+    /** PIDs supported by the vehicle, scheduled by next expected request */
+    private final PidScheduler pidSupported = sessionContext.getScheduler();
+    /** ECU which is currently polled, if several ECUs are polled in one session (null = single ECU) */
+    EcuContext ecuContext = null;
+
+    /** PIDs of last multi PID request (null if last request was no multi PID request) */
+    private int[] multiPidRequest = null;
+    /** PIDs of last multi PID request which are not answered yet */
+    private final Vector<Integer> multiPidMissing = new Vector<Integer>();
 
     /** positive response fields */
     private static final int ID_OBD_SVC = 0;
@@ -255,19 +266,22 @@ public class ObdProt extends ProtoHeader
 		"OBD PID",
 	};
 
-    /** new style data items */
+    /**
+     * new style data items
+     * (item definitions shared by all sessions, values are kept per session)
+     */
     public static final EcuDataItems dataItems = new EcuDataItems();
 
     /** OBD data items */
-    public static PvList PidPvs = new PvList();
+    public PvList PidPvs = new PvList();
     /** OBD vehicle identification items */
-    public static PvList VidPvs = new PvList();
+    public PvList VidPvs = new PvList();
     /** current fault codes */
-    public static PvList tCodes = new PvList();
+    public PvList tCodes = new PvList();
     /** list of known fault codes */
     private static final EcuCodeList knownCodes = EcuConversions.codeList;
     /** queue of ELM commands to be sent */
-    static final Vector<String> cmdQueue = new Vector<String>();
+    final CommandQueue cmdQueue = new CommandQueue();
     /** freeze frame ID to request */
     private int freezeFrame_Id = 0;
     /** perform reset on NRC reception */
@@ -410,9 +424,10 @@ public class ObdProt extends ProtoHeader
         resetFixedPid();
 
         HashMap<String, EcuDataPv> newList = new HashMap<String, EcuDataPv>();
-        for (ObdPid currPid : pidSupported)
+        for (ObdPid currPid : getScheduler().getPids())
         {
-            Vector<EcuDataItem> items = dataItems.getPidDataItems(obdService, currPid.intValue());
+            // items of a polled ECU are kept within the ECU's namespace
+            Vector<EcuDataItem> items = getContext().getPidDataItems(obdService, currPid.intValue());
             // if no items defined, create dummy item
             if (items == null)
             {
@@ -425,17 +440,15 @@ public class ObdProt extends ProtoHeader
                                                       String.format("PID %02X", currPid.intValue()),
                                                       String.format("PID_%02X", currPid.intValue())
                                                      );
-                dataItems.appendItemToService(obdService, newItem);
-
-                // re-load data items for this PID
-                items = dataItems.getPidDataItems(obdService, currPid.intValue());
+                // item is kept within this session (shared item definitions are read-only)
+                items = getContext().addPidDataItem(obdService, newItem);
             }
             // loop through all items found ...
             for (EcuDataItem pidPv : items)
             {
                 if (pidPv != null)
                 {
-                    newList.put(pidPv.toString(), pidPv.pv);
+                    newList.put(pidPv.getPv().toString(), pidPv.getPv());
                 }
             }
         }
@@ -450,32 +463,31 @@ public class ObdProt extends ProtoHeader
     private synchronized void markSupportedPids(int obdService, int start, long bitmask,
                                                 PvList pvList)
     {
-        currSupportedPid = 0;
+        // PIDs are known already?
+        if (supportedPidsReceived(obdService, start, bitmask))
+        {
+            return;
+        }
 
         // Clear PID list on initial bitmask (offset 0)
         if( start == 0)
         {
-            pidSupported.clear();
+            getScheduler().clear();
         }
 
-        // loop through bits and mark corresponding PIDs as supported
-        for (int i = 0; i < 0x1F; i++)
-        {
-            if ((bitmask & (0x80000000L >> i)) != 0)
-            {
-                pidSupported.add(new ObdPid(i + start + 1));
-            }
-        }
+        // mark PIDs as supported
+        addSupportedPids(start, bitmask);
 
         log.fine(Long.toHexString(bitmask).toUpperCase()
                      + "(" + Long.toHexString(start) + "):"
-                     + pidSupported);
+                     + getScheduler().getPids());
 
         // if next block may be requested
         if ((bitmask & 1) != 0)
         {
             // request next block
-            cmdQueue.add(String.format("%02X%02X", obdService, start + 0x20));
+            cmdQueue.push(CommandQueue.Priority.DISCOVERY,
+                          String.format("%02X%02X", obdService, start + 0x20));
         }
         else
         {
@@ -484,30 +496,125 @@ public class ObdProt extends ProtoHeader
         }
     }
 
+    /**
+     * mark PIDs of a bitmask as supported
+     * @param start Start PID (multiple of 0x20) of bitmask
+     * @param bitmask 32-Bit bitmask which indicates support for the next 32 PIDs
+     */
+    private void addSupportedPids(int start, long bitmask)
+    {
+        // loop through bits and mark corresponding PIDs as supported
+        for (int i = 0; i < 0x1F; i++)
+        {
+            if ((bitmask & (0x80000000L >> i)) != 0)
+            {
+                getScheduler().add(i + start + 1);
+            }
+        }
+    }
+
+    /**
+     * notification of received supported PIDs
+     * @param obdService OBD service of supported PIDs
+     * @param start Start PID (multiple of 0x20) of bitmask
+     * @param bitmask 32-Bit bitmask which indicates support for the next 32 PIDs
+     * @return true if received PIDs are known already and need no further handling
+     */
+    boolean supportedPidsReceived(int obdService, int start, long bitmask)
+    {
+        return false;
+    }
+
+    /**
+     * set PIDs supported by the vehicle from known bitmasks
+     * (e.g. from a vehicle profile, without requesting them from the vehicle)
+     * @param obdService OBD service of supported PIDs
+     * @param bitmasks 32-Bit bitmasks of all blocks of 32 PIDs
+     */
+    synchronized void setSupportedPids(int obdService, long[] bitmasks)
+    {
+        getScheduler().clear();
+        for (int i = 0; i < bitmasks.length; i++)
+        {
+            addSupportedPids(i * 0x20, bitmasks[i]);
+        }
+        preparePidPvs(obdService,
+                      (obdService == OBD_SVC_DATA || obdService == OBD_SVC_FREEZEFRAME)
+                      ? PidPvs : VidPvs);
+    }
+
     /** Holds value of property numCodes. */
     private int numCodes;
 
-    /** fixed PIDs to limit PID loop to single access */
-    private static final Vector<ObdPid> fixedPids = new Vector<ObdPid>();
-
     /**
      * Set fixed PID for faster data update
      * @param pidCodes the fixedPid to set
      */
-    public static synchronized void setFixedPid(int[] pidCodes)
+    public synchronized void setFixedPid(int[] pidCodes)
     {
-        for (ObdPid currPid : pidSupported)
-        {
-            if (Arrays.binarySearch(pidCodes, currPid.intValue()) >= 0)
-            {
-                fixedPids.add(currPid);
-            }
-        }
+        pidSupported.setFixedPids(pidCodes);
+    }
+
+    public synchronized void resetFixedPid()
+    {
+        pidSupported.resetFixedPids();
+    }
+
+    /**
+     * get request statistics of all supported PIDs
+     * @return list of supported PIDs with request statistics
+     */
+    public Vector<ObdPid> getPidStatistics()
+    {
+        return pidSupported.getPids();
+    }
+
+    /**
+     * get scheduler of supported PIDs of currently polled ECU
+     * @return PID scheduler
+     */
+    PidScheduler getScheduler()
+    {
+        return getContext().getScheduler();
+    }
+
+    /**
+     * get context of currently polled ECU
+     * @return context of polled ECU, session context if all ECUs are polled together
+     */
+    EcuContext getContext()
+    {
+        return (ecuContext != null) ? ecuContext : sessionContext;
     }
 
-    public static synchronized void resetFixedPid()
+    /**
+     * get data items of this session for a PID
+     * @param obdService OBD service
+     * @param pid PID
+     * @return data items of this session, null if no data items are defined for PID
+     */
+    public Vector<EcuDataItem> getPidDataItems(int obdService, int pid)
+    {
+        return sessionContext.getPidDataItems(obdService, pid);
+    }
+
+    /**
+     * get queue of commands to be sent
+     * (to access queue wait statistics per priority class)
+     * @return command queue
+     */
+    public CommandQueue getCommandQueue()
+    {
+        return cmdQueue;
+    }
+
+    /**
+     * get idle time until next supported PID is due for request
+     * @return time [ms] until next PID is due, 0 if a PID is due already
+     */
+    long getIdleTime()
     {
-        fixedPids.clear();
+        return getScheduler().getIdleTime(System.currentTimeMillis());
     }
 
     /**
@@ -517,41 +624,278 @@ public class ObdProt extends ProtoHeader
     synchronized Integer getNextSupportedPid()
     {
         Integer result = 0;
-        /* get corresponding PID list */
-        Vector<ObdPid> pidsToCheck = (fixedPids.size() > 0) ? fixedPids : pidSupported;
-        try
+        PidScheduler scheduler = getScheduler();
+        ObdPid pid = scheduler.peek();
+        if (pid != null)
         {
-            /* sort by next expected request */
-            Collections.sort(pidsToCheck, ObdPid.requestSorter);
-            ObdPid pid = pidsToCheck.firstElement();
             /* detect wrap around in PID list */
             pidsWrapped = pid.getNextRequest() != 0;
             /* mark PID as handled */
-            pid.setNextRequest(System.currentTimeMillis());
-            /* and return first list element */
+            scheduler.next(System.currentTimeMillis());
+            /* and return PID with earliest request time */
             result = pid.intValue();
         }
-        catch(Exception e)
+
+        return result;
+    }
+
+    /**
+     * get the next available supported PIDs to be requested within a single
+     * multi PID request
+     * - The next PID is always returned, additional PIDs are only added if they
+     *   are already due for update and have a known response data length
+     *
+     * @param obdService OBD service to get PIDs for
+     * @param maxPids max. number of PIDs to be returned
+     * @return array of next PIDs to be requested
+     */
+    synchronized int[] getNextSupportedPids(int obdService, int maxPids)
+    {
+        Vector<ObdPid> result = new Vector<ObdPid>();
+        Vector<ObdPid> skipped = new Vector<ObdPid>();
+        PidScheduler scheduler = getScheduler();
+        ObdPid pid = scheduler.peek();
+        if (pid != null)
         {
-            /* ignore */
+            long now = System.currentTimeMillis();
+            /* detect wrap around in PID list */
+            pidsWrapped = pid.getNextRequest() != 0;
+            /* take PIDs in order of next expected request */
+            while (result.size() < maxPids
+                   && (pid = scheduler.peek()) != null
+                   && (result.size() == 0 || pid.getNextRequest() <= now))
+            {
+                scheduler.remove();
+                /* PIDs of unknown length can't be de-multiplexed from response */
+                if (dataItems.getPidDataLength(obdService, pid.intValue()) == 0)
+                {
+                    /* ... so they are requested on their own */
+                    if (result.size() == 0)
+                    {
+                        result.add(pid);
+                        break;
+                    }
+                    skipped.add(pid);
+                    continue;
+                }
+                result.add(pid);
+            }
+            /* mark PIDs as handled */
+            for (ObdPid currPid : result)
+            {
+                scheduler.requested(currPid, now);
+            }
+            /* and put back the ones which are not requested */
+            for (ObdPid currPid : skipped)
+            {
+                scheduler.restore(currPid);
+            }
+        }
+
+        int[] pids = new int[result.size()];
+        for (int i = 0; i < pids.length; i++)
+        {
+            pids[i] = result.get(i).intValue();
         }
+        return pids;
+    }
 
+    /**
+     * write a multi PID request for specified PIDs
+     * - a single PID is requested as a regular PID request
+     *
+     * @param obdService OBD service to be requested
+     * @param pids PIDs to be requested
+     */
+    void writeMultiPidTelegram(int obdService, int[] pids)
+    {
+        if (pids.length == 1)
+        {
+            writeTelegram(emptyBuffer, obdService, pids[0]);
+            return;
+        }
+
+        StringBuilder request = new StringBuilder(String.format("%02X", obdService));
+        for (int pid : pids)
+        {
+            request.append(String.format("%02X", pid));
+            // freeze frame requests contain frame ID for every PID
+            if (obdService == OBD_SVC_FREEZEFRAME)
+            {
+                request.append(String.format("%02X", freezeFrame_Id));
+            }
+        }
+        sendTelegram(request.toString().toCharArray());
+    }
+
+    /**
+     * Is last request a multi PID request?
+     *
+     * @return true if last request was a multi PID request
+     */
+    boolean isMultiPidRequest()
+    {
+        return multiPidRequest != null;
+    }
+
+    /**
+     * Check if last multi PID request has been answered completely
+     *
+     * @return true if all requested PIDs have been answered,
+     *         or if last request was no multi PID request
+     */
+    boolean isMultiPidResponseComplete()
+    {
+        return multiPidRequest == null || multiPidMissing.isEmpty();
+    }
+
+    /**
+     * Evaluate PIDs of a multi PID request
+     *
+     * @param request request message
+     * @return array of requested PIDs, null if request is no multi PID request
+     */
+    private static int[] getMultiPidRequest(String request)
+    {
+        int[] result = null;
+        try
+        {
+            int svc = Integer.parseInt(request.substring(0, 2), 16);
+            // freeze frame requests contain frame ID after each PID
+            int pidLen = (svc == OBD_SVC_FREEZEFRAME) ? 4 : 2;
+            int numPids = (request.length() - 2) / pidLen;
+            if ((svc == OBD_SVC_DATA || svc == OBD_SVC_FREEZEFRAME)
+                && numPids > 1
+                && (request.length() - 2) % pidLen == 0)
+            {
+                result = new int[numPids];
+                for (int i = 0; i < numPids; i++)
+                {
+                    int ofs = 2 + i * pidLen;
+                    result[i] = Integer.parseInt(request.substring(ofs, ofs + 2), 16);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            // no OBD request (e.g. AT command)
+        }
         return result;
     }
 
+    /**
+     * handle response to a multi PID request
+     * - response contains data of multiple PIDs: SVC PID DATA PID DATA ...
+     *   (freeze frame responses contain frame ID after every PID)
+     * - data of each PID is forwarded to the corresponding data items
+     *
+     * @param obdService OBD service of response
+     * @param buffer response telegram buffer
+     * @param length length of response telegram
+     * @return number of PIDs handled
+     */
+    private int handleMultiPidResponse(int obdService, char[] buffer, int length)
+    {
+        int result = 0;
+        int pidHdrLen = (obdService == OBD_SVC_FREEZEFRAME) ? 4 : 2;
+        // PID data starts after service ID
+        int pos = 2;
+        while (pos + pidHdrLen <= length)
+        {
+            int pid = PidDecoder.parseHexByte(buffer, pos);
+            // stop on PID which was not requested (e.g. trailing padding bytes)
+            boolean requested = false;
+            for (int reqPid : multiPidRequest)
+            {
+                requested |= (reqPid == pid);
+            }
+            if (!requested)
+            {
+                break;
+            }
+            // stop on truncated PID data
+            int len = 2 * dataItems.getPidDataLength(obdService, pid);
+            pos += pidHdrLen;
+            if (len == 0 || pos + len > length)
+            {
+                log.warning(String.format("Truncated multi PID response: %s", new String(buffer, 0, length)));
+                break;
+            }
+
+            // OBD number of fault codes
+            if (pid == 1)
+            {
+                setNumCodes(PidDecoder.parseHexByte(buffer, pos));
+            }
+            handlePidData(obdService, pid, buffer, pos, len);
+            multiPidMissing.remove(Integer.valueOf(pid));
+            pos += len;
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * handle received data of a single PID
+     * - update corresponding data items
+     * - update expected request timestamp for PID
+     *
+     * @param obdService OBD service of data
+     * @param pid PID of data
+     * @param buffer buffer containing ASCII hex data
+     * @param pos start of PID data within buffer
+     * @param len number of hex digits of PID data
+     */
+    private void handlePidData(int obdService, int pid, char[] buffer, int pos, int len)
+    {
+        long updatePeriod = getContext().updateDataItems(obdService, pid, buffer, pos, len);
+        /* Update expected request timestamp for PID */
+        getScheduler().responded(pid, System.currentTimeMillis(), updatePeriod);
+    }
+
     /**
      * handle OBD response telegram
      * @param buffer - telegram buffer
      * @return number of listeners notified
      */
     @Override
+    public int handleTelegram(char[] buffer)
+    {
+        return handleResponse(buffer, buffer.length);
+    }
+
+    /**
+     * handle OBD response telegram from a section of a receive buffer
+     * (telegrams at start of buffer are handled without copying them)
+     *
+     * @param buffer - receive buffer
+     * @param offset - offset of telegram within buffer
+     * @param length - length of telegram
+     * @return number of listeners notified
+     */
+    @Override
+    public int handleTelegram(char[] buffer, int offset, int length)
+    {
+        return (offset == 0)
+               ? handleResponse(buffer, length)
+               : handleResponse(Arrays.copyOfRange(buffer, offset, offset + length), length);
+    }
+
+    /**
+     * handle OBD response telegram
+     * (buffer may be longer than the telegram, e.g. a reused receive buffer)
+     *
+     * @param buffer - telegram buffer, starting with telegram
+     * @param length - length of telegram
+     * @return number of listeners notified
+     */
     @SuppressWarnings("fallthrough")
-    public synchronized int handleTelegram(char[] buffer)
+    protected synchronized int handleResponse(char[] buffer, int length)
     {
         int result = 0;
         int msgPid;
 
-        if (checkTelegram(buffer))
+        if (length >= getHeaderLength() + getFooterLength())
         {
             try
             {
@@ -614,6 +958,12 @@ public class ObdProt extends ProtoHeader
                     case OBD_SVC_FREEZEFRAME:
                     case OBD_SVC_DATA:
                         msgPid = (Integer) getParamValue(ID_OBD_PID, buffer);
+                        // response to multi PID request (no supported PID response)?
+                        if (multiPidRequest != null && (msgPid % 0x20) != 0)
+                        {
+                            handleMultiPidResponse(msgService, buffer, length);
+                            break;
+                        }
                         switch (msgPid)
                         {
                             case 0x00:
@@ -625,7 +975,7 @@ public class ObdProt extends ProtoHeader
                             case 0xC0:
                             case 0xE0:
                                 // Check for optional message count byte, find offset to payload
-                                int offset = (buffer.length % 4 == 0) ? 4 : 6;
+                                int offset = (length % 4 == 0) ? 4 : 6;
                                 // get payload data and mark the indicated supported PIDs
                                 long msgPayload = Long.valueOf(new String(buffer, offset, 8), 16);
                                 markSupportedPids(msgService, msgPid, msgPayload, PidPvs);
@@ -639,19 +989,11 @@ public class ObdProt extends ProtoHeader
                                 setNumCodes(Long.valueOf(msgPayload).intValue());
                                 // no break here ...
                             default:
-                                long updatePeriod =
-                                    dataItems.updateDataItems(msgService,
-                                                            msgPid,
-                                                            hexToBytes(String.valueOf(
-                                                                    getPayLoad(buffer))));
-                                /* Update expected request timestamp for PID */
-                                for( ObdPid pid : pidSupported)
-                                {
-                                    if(pid.intValue()==msgPid)
-                                    {
-                                        pid.setNextRequest(System.currentTimeMillis()+updatePeriod);
-                                    }
-                                }
+                                handlePidData(msgService,
+                                              msgPid,
+                                              buffer,
+                                              getHeaderLength(),
+                                              length - getHeaderLength() - getFooterLength());
                                 break;
                         }
                         break;
@@ -670,26 +1012,18 @@ public class ObdProt extends ProtoHeader
                             case 0xC0:
                             case 0xE0:
                                 // Check for optional message count byte, find offset to payload
-                                int offset = (buffer.length % 4 == 0) ? 4 : 6;
+                                int offset = (length % 4 == 0) ? 4 : 6;
                                 // get payload data and mark the indicated supported PIDs
                                 long msgPayload = Long.valueOf(new String(buffer, offset, 8), 16);
                                 markSupportedPids(msgService, msgPid, msgPayload, VidPvs);
                                 break;
 
                             default:
-                                long updatePeriod =
-                                    dataItems.updateDataItems(msgService,
-                                                                msgPid,
-                                                                hexToBytes(String.valueOf(
-                                                                        getPayLoad(buffer))));
-                                /* Update expected request timestamp for PID */
-                                for( ObdPid pid : pidSupported)
-                                {
-                                    if(pid.intValue()==msgPid)
-                                    {
-                                        pid.setNextRequest(System.currentTimeMillis()+updatePeriod);
-                                    }
-                                }
+                                handlePidData(msgService,
+                                              msgPid,
+                                              buffer,
+                                              getHeaderLength(),
+                                              length - getHeaderLength() - getFooterLength());
                                 break;
                         }
                         break;
@@ -707,7 +1041,7 @@ public class ObdProt extends ProtoHeader
                         int DTCOffs = 2;
                         
                         // If message contains optional number of codes (1 Byte) then set it ...
-                        boolean hasNumCodes = ((buffer.length % 4) == 0);
+                        boolean hasNumCodes = ((length % 4) == 0);
                         if (hasNumCodes)
                         {
                             nCodes = Integer.valueOf(new String(buffer, 2, 2), 16);
@@ -717,18 +1051,19 @@ public class ObdProt extends ProtoHeader
                         }
 
                         // read in all trouble codes
-                        for (int i = DTCOffs; i < buffer.length; i += 4)
+                        for (int i = DTCOffs; i + 4 <= length; i += 4)
                         {
                             key = Integer.valueOf(new String(buffer, i, 4), 16);
                             currCode = key.intValue();
                             if (currCode != 0)
                             {
-                                if ((code = knownCodes.get(key)) == null)
-                                {
-                                    code = new ObdCodeItem(key.intValue(),
-                                                           Messages.getString(
-                                                           "customer.specific.trouble.code.see.manual"));
-                                }
+                                // own item for status (known code items are shared)
+                                EcuCodeItem knownCode = knownCodes.get(key);
+                                code = new ObdCodeItem(key.intValue(),
+                                                       knownCode != null
+                                                       ? String.valueOf(knownCode.get(EcuCodeItem.FID_DESCRIPT))
+                                                       : Messages.getString(
+                                                       "customer.specific.trouble.code.see.manual"));
                                 log.fine(String.format("+DFC: %04x: %s", key, code.toString()));
                                 // Remember received message service to know code status
                                 code.put(EcuCodeItem.FID_STATUS, Integer.valueOf(msgService));
@@ -757,7 +1092,7 @@ public class ObdProt extends ProtoHeader
                 }
             } catch (Exception e)
             {
-                log.warning("'" + Arrays.toString(buffer) + "':" + e.getMessage());
+                log.warning("'" + new String(buffer, 0, length) + "':" + e.getMessage());
             }
         }
         return (result);
@@ -772,7 +1107,29 @@ public class ObdProt extends ProtoHeader
     {
         // remember last sent message
         lastTxMsg = new String(buffer);
-        super.sendTelegram(buffer);
+        // remember PIDs of multi PID request to check for complete response
+        multiPidRequest = getMultiPidRequest(lastTxMsg);
+        multiPidMissing.clear();
+        if (multiPidRequest != null)
+        {
+            for (int pid : multiPidRequest)
+            {
+                multiPidMissing.add(pid);
+            }
+        }
+        super.sendTelegram(getTxTelegram(buffer));
+    }
+
+    /**
+     * Get telegram which is actually sent for a request
+     * (adapters may wrap requests into their own request format)
+     *
+     * @param buffer - request telegram
+     * @return telegram to be sent
+     */
+    char[] getTxTelegram(char[] buffer)
+    {
+        return buffer;
     }
 
     /**
@@ -816,10 +1173,10 @@ public class ObdProt extends ProtoHeader
         setService(OBD_SVC_NONE, true);
         // clear command queue
         cmdQueue.clear();
-        // clear supported PIDs
+        // clear supported PIDs and fixed PIDs
         pidSupported.clear();
-        // reset fixed PIDs
-        resetFixedPid();
+        // re-create data items from current item definitions
+        sessionContext.clearDataItems();
         // Clear data items
         PidPvs.clear();
         tCodes.clear();
@@ -857,6 +1214,15 @@ public class ObdProt extends ProtoHeader
         }
     }
 
+    /**
+     * request PIDs supported for specified service
+     * @param obdService OBD service to request supported PIDs for
+     */
+    void requestSupportedPids(int obdService)
+    {
+        writeTelegram(emptyBuffer, obdService, 0);
+    }
+
     /**
      * Setter for property service.
      *  This includes initialisation of the requested service to the vehicle
@@ -887,7 +1253,7 @@ public class ObdProt extends ProtoHeader
             case OBD_SVC_VEH_INFO:
                 // read vehicle information
                 // request for PID/TID's supported
-                writeTelegram(emptyBuffer, obdService, 0);
+                requestSupportedPids(obdService);
                 break;
 
             case OBD_SVC_READ_CODES:
@@ -895,9 +1261,9 @@ public class ObdProt extends ProtoHeader
             case OBD_SVC_PERMACODES:
                 numCodes = 0;
                 // Queue requests for reading all trouble codes
-                cmdQueue.add(String.format("%02X", OBD_SVC_READ_CODES, 0));
-                cmdQueue.add(String.format("%02X", OBD_SVC_PENDINGCODES, 0));
-                cmdQueue.add(String.format("%02X", OBD_SVC_PERMACODES, 0));
+                cmdQueue.push(CommandQueue.Priority.USER, String.format("%02X", OBD_SVC_READ_CODES, 0));
+                cmdQueue.push(CommandQueue.Priority.USER, String.format("%02X", OBD_SVC_PENDINGCODES, 0));
+                cmdQueue.push(CommandQueue.Priority.USER, String.format("%02X", OBD_SVC_PERMACODES, 0));
                 // read PID number of codes ...
                 writeTelegram(emptyBuffer, OBD_SVC_DATA, 1);
                 break;
@@ -0,0 +1,558 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.pvs.PvList;
+
+import java.util.Vector;
+
+/**
+ * Request/response statistics of OBD requests
+ * - round trip times per ECU address, service and PID are recorded
+ *   in fixed log-linear histograms (no allocation per sample)
+ * - NO DATA, negative responses and timeouts are counted
+ * - request/response rates are measured in windows of 1 second
+ * - statistics may be published as process variables for display
+ */
+public class RequestStatistics
+{
+	/** number of histogram sub-buckets per power of 2 */
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** number of histogram buckets (covers RTTs up to 2^30 us) */
+	public static final int NUM_BUCKETS = 30 * SUB_BUCKETS;
+	/** max. number of OBD services (0x00 - 0x0F) */
+	private static final int MAX_SERVICES = 0x10;
+	/** max. number of PIDs per service */
+	private static final int MAX_PIDS = 0x100;
+	/** max. number of PIDs within one request */
+	private static final int MAX_PENDING = 8;
+	/** length of rate measurement window [ns] */
+	private static final long RATE_WINDOW_NS = 1000000000L;
+
+	/**
+	 * Statistics of one ECU address / service / PID combination
+	 */
+	public static class Entry
+	{
+		final int ecuAddress;
+		final int service;
+		final int pid;
+		long numRequests;
+		long numResponses;
+		long numNoData;
+		long numNrc;
+		long numTimeouts;
+		/** RTT histogram buckets */
+		final long[] buckets = new long[NUM_BUCKETS];
+		long numRtt;
+		long rttSum_us;
+		long rttMin_us = Long.MAX_VALUE;
+		long rttMax_us;
+		/** ELM message timeout [ms] at time of last request */
+		int elmTimeout;
+		/** process var to publish statistics (if enabled) */
+		EcuDataPv pv;
+
+		Entry(int ecuAddress, int service, int pid)
+		{
+			this.ecuAddress = ecuAddress;
+			this.service = service;
+			this.pid = pid;
+		}
+
+		public int getEcuAddress() { return ecuAddress; }
+
+		public int getService() { return service; }
+
+		public int getPid() { return pid; }
+
+		public synchronized long getNumRequests() { return numRequests; }
+
+		public synchronized long getNumResponses() { return numResponses; }
+
+		public synchronized long getNumNoData() { return numNoData; }
+
+		public synchronized long getNumNrc() { return numNrc; }
+
+		public synchronized long getNumTimeouts() { return numTimeouts; }
+
+		/**
+		 * Get ELM message timeout which was active on last request
+		 * @return ELM message timeout [ms]
+		 */
+		public synchronized int getElmTimeout() { return elmTimeout; }
+
+		/**
+		 * Get number of recorded round trip times
+		 * @return number of recorded RTTs
+		 */
+		public synchronized long getNumRtt() { return numRtt; }
+
+		/**
+		 * Get minimum round trip time
+		 * @return minimum RTT [us], 0 if no RTT was recorded
+		 */
+		public synchronized long getRttMin()
+		{
+			return numRtt > 0 ? rttMin_us : 0;
+		}
+
+		/**
+		 * Get maximum round trip time
+		 * @return maximum RTT [us]
+		 */
+		public synchronized long getRttMax() { return rttMax_us; }
+
+		/**
+		 * Get average round trip time
+		 * @return average RTT [us], 0 if no RTT was recorded
+		 */
+		public synchronized long getRttAvg()
+		{
+			return numRtt > 0 ? rttSum_us / numRtt : 0;
+		}
+
+		/**
+		 * Get round trip time percentile
+		 * (result is the upper limit of the histogram bucket which contains
+		 * the percentile, so the relative error is below 1/4)
+		 *
+		 * @param percentile percentile to evaluate (0.0 - 100.0)
+		 * @return RTT [us] which is not exceeded by given percentile of responses,
+		 *         0 if no RTT was recorded
+		 */
+		public synchronized long getRttPercentile(double percentile)
+		{
+			if (numRtt == 0) return 0;
+			long limit = (long) Math.ceil(numRtt * percentile / 100.0);
+			long count = 0;
+			for (int i = 0; i < NUM_BUCKETS; i++)
+			{
+				count += buckets[i];
+				if (count >= limit && count > 0)
+				{
+					return Math.min(bucketLimit(i), rttMax_us);
+				}
+			}
+			return rttMax_us;
+		}
+
+		/**
+		 * Get copy of RTT histogram buckets
+		 * (upper limits of buckets are provided by {@link #bucketLimit(int)})
+		 * @return RTT histogram counts
+		 */
+		public synchronized long[] getHistogram()
+		{
+			return buckets.clone();
+		}
+
+		synchronized void addRtt(long rtt_us)
+		{
+			buckets[bucketIndex(rtt_us)]++;
+			numRtt++;
+			rttSum_us += rtt_us;
+			if (rtt_us < rttMin_us) rttMin_us = rtt_us;
+			if (rtt_us > rttMax_us) rttMax_us = rtt_us;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("ECU:%x SVC:%02X PID:%02X REQ:%d RSP:%d NODATA:%d NRC:%d TMO:%d RTT[us] avg:%d p50:%d p99:%d max:%d",
+			                     ecuAddress, service, pid,
+			                     getNumRequests(), getNumResponses(), getNumNoData(),
+			                     getNumNrc(), getNumTimeouts(), getRttAvg(),
+			                     getRttPercentile(50), getRttPercentile(99), getRttMax());
+		}
+	}
+
+	/**
+	 * Statistics entries of one ECU address
+	 */
+	private static class EcuEntries
+	{
+		final int ecuAddress;
+		/** entries indexed by service and PID */
+		final Entry[] entries = new Entry[MAX_SERVICES * MAX_PIDS];
+
+		EcuEntries(int ecuAddress)
+		{
+			this.ecuAddress = ecuAddress;
+		}
+	}
+
+	/** statistics of all ECUs */
+	private final Vector<EcuEntries> ecus = new Vector<EcuEntries>();
+	/** ECU entries of last request */
+	private EcuEntries lastEcu = null;
+	/** entries of pending request */
+	private final Entry[] pending = new Entry[MAX_PENDING];
+	private int numPending = 0;
+	/** is pending request answered already? */
+	private boolean answered = true;
+	/** timestamp of pending request [ns] */
+	private long requestTime_ns;
+
+	/** rate measurement */
+	private long windowStart_ns = System.nanoTime();
+	private long windowRequests = 0;
+	private long windowResponses = 0;
+	private float requestRate = 0;
+	private float responseRate = 0;
+
+	/** process vars to publish statistics (null = disabled) */
+	private PvList pvs = null;
+
+	/**
+	 * Get histogram bucket for a round trip time
+	 * @param rtt_us round trip time [us]
+	 * @return bucket index
+	 */
+	static int bucketIndex(long rtt_us)
+	{
+		if (rtt_us < SUB_BUCKETS) return (int) Math.max(0, rtt_us);
+		int msb = 63 - Long.numberOfLeadingZeros(rtt_us);
+		int sub = (int) (rtt_us >> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return Math.min((msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub, NUM_BUCKETS - 1);
+	}
+
+	/**
+	 * Get upper limit of histogram bucket
+	 * @param index bucket index
+	 * @return max. round trip time [us] within bucket
+	 */
+	public static long bucketLimit(int index)
+	{
+		if (index < SUB_BUCKETS) return index;
+		int shift = index / SUB_BUCKETS - 1;
+		int sub = index % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * Record OBD request which was sent
+	 *
+	 * @param ecuAddress address of requested ECU (0 = broadcast)
+	 * @param request request telegram (service followed by PIDs)
+	 * @param elmTimeout ELM message timeout [ms] used for request
+	 */
+	public synchronized void requestSent(int ecuAddress, char[] request, int elmTimeout)
+	{
+		// previous request without any response -> timeout
+		if (!answered)
+		{
+			for (int i = 0; i < numPending; i++)
+			{
+				pending[i].numTimeouts++;
+			}
+		}
+		numPending = 0;
+		answered = true;
+
+		int service = hexValue(request, 0);
+		if (service < 0 || service >= MAX_SERVICES) return;
+
+		EcuEntries ecu = getEcu(ecuAddress);
+		// PID list of request (service 2 also contains frame numbers)
+		int step = (service == ObdProt.OBD_SVC_FREEZEFRAME) ? 4 : 2;
+		for (int pos = 2; pos + 2 <= request.length && numPending < MAX_PENDING; pos += step)
+		{
+			int pid = hexValue(request, pos);
+			if (pid < 0) break;
+			pending[numPending++] = getEntry(ecu, service, pid);
+		}
+		// request w/o PIDs
+		if (numPending == 0)
+		{
+			pending[numPending++] = getEntry(ecu, service, 0);
+		}
+		for (int i = 0; i < numPending; i++)
+		{
+			synchronized (pending[i])
+			{
+				pending[i].numRequests++;
+				pending[i].elmTimeout = elmTimeout;
+			}
+		}
+		answered = false;
+		requestTime_ns = System.nanoTime();
+		updateRates(requestTime_ns);
+		windowRequests++;
+	}
+
+	/**
+	 * Record data response for pending request
+	 * (only first response of a request contributes a round trip time)
+	 */
+	public synchronized void responseReceived()
+	{
+		if (numPending == 0) return;
+		long now = System.nanoTime();
+		for (int i = 0; i < numPending; i++)
+		{
+			Entry entry = pending[i];
+			synchronized (entry)
+			{
+				entry.numResponses++;
+			}
+			if (!answered)
+			{
+				entry.addRtt((now - requestTime_ns) / 1000);
+				updatePv(entry);
+			}
+		}
+		answered = true;
+		updateRates(now);
+		windowResponses++;
+	}
+
+	/**
+	 * Record negative response (NRC) for pending request
+	 */
+	public synchronized void nrcReceived()
+	{
+		for (int i = 0; i < numPending; i++)
+		{
+			synchronized (pending[i])
+			{
+				pending[i].numNrc++;
+			}
+		}
+		answered = true;
+	}
+
+	/**
+	 * Record NO DATA response for pending request
+	 */
+	public synchronized void noDataReceived()
+	{
+		for (int i = 0; i < numPending; i++)
+		{
+			synchronized (pending[i])
+			{
+				pending[i].numNoData++;
+			}
+		}
+		answered = true;
+	}
+
+	/**
+	 * Get number of entries of last request
+	 * @return number of requested PIDs
+	 */
+	synchronized int getNumPending()
+	{
+		return numPending;
+	}
+
+	/**
+	 * Get entry of last request
+	 * @param index index of requested PID
+	 * @return statistics entry
+	 */
+	synchronized Entry getPending(int index)
+	{
+		return pending[index];
+	}
+
+	/**
+	 * Get requests per second within last measurement window
+	 * @return requests/s
+	 */
+	public synchronized float getRequestRate()
+	{
+		updateRates(System.nanoTime());
+		return requestRate;
+	}
+
+	/**
+	 * Get responses per second within last measurement window
+	 * @return responses/s
+	 */
+	public synchronized float getResponseRate()
+	{
+		updateRates(System.nanoTime());
+		return responseRate;
+	}
+
+	/**
+	 * Get statistics entry
+	 * @param ecuAddress ECU address
+	 * @param service OBD service
+	 * @param pid PID
+	 * @return statistics entry, null if no request was recorded
+	 */
+	public synchronized Entry get(int ecuAddress, int service, int pid)
+	{
+		for (EcuEntries ecu : ecus)
+		{
+			if (ecu.ecuAddress == ecuAddress
+			    && service >= 0 && service < MAX_SERVICES
+			    && pid >= 0 && pid < MAX_PIDS)
+			{
+				return ecu.entries[service * MAX_PIDS + pid];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get all statistics entries
+	 * @return list of entries in order of ECU, service and PID
+	 */
+	public synchronized Vector<Entry> getEntries()
+	{
+		Vector<Entry> result = new Vector<Entry>();
+		for (EcuEntries ecu : ecus)
+		{
+			for (Entry entry : ecu.entries)
+			{
+				if (entry != null) result.add(entry);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get process vars of statistics
+	 * (Statistics are published as process vars after first call)
+	 *
+	 * @return list of process vars, one per entry, with average RTT [ms] as value
+	 */
+	public synchronized PvList getPvs()
+	{
+		if (pvs == null)
+		{
+			pvs = new PvList();
+			for (Entry entry : getEntries())
+			{
+				updatePv(entry);
+			}
+		}
+		return pvs;
+	}
+
+	/**
+	 * Clear all statistics
+	 */
+	public synchronized void reset()
+	{
+		ecus.clear();
+		lastEcu = null;
+		numPending = 0;
+		answered = true;
+		windowStart_ns = System.nanoTime();
+		windowRequests = 0;
+		windowResponses = 0;
+		requestRate = 0;
+		responseRate = 0;
+		if (pvs != null) pvs.clear();
+	}
+
+	private EcuEntries getEcu(int ecuAddress)
+	{
+		if (lastEcu != null && lastEcu.ecuAddress == ecuAddress) return lastEcu;
+		lastEcu = null;
+		for (EcuEntries ecu : ecus)
+		{
+			if (ecu.ecuAddress == ecuAddress)
+			{
+				lastEcu = ecu;
+				break;
+			}
+		}
+		if (lastEcu == null)
+		{
+			lastEcu = new EcuEntries(ecuAddress);
+			ecus.add(lastEcu);
+		}
+		return lastEcu;
+	}
+
+	private Entry getEntry(EcuEntries ecu, int service, int pid)
+	{
+		int index = service * MAX_PIDS + pid;
+		Entry entry = ecu.entries[index];
+		if (entry == null)
+		{
+			entry = new Entry(ecu.ecuAddress, service, pid);
+			ecu.entries[index] = entry;
+		}
+		return entry;
+	}
+
+	/**
+	 * update published process var of entry (if publishing is enabled)
+	 */
+	private void updatePv(Entry entry)
+	{
+		if (pvs == null) return;
+		if (entry.pv == null)
+		{
+			String key = String.format("%x.%02X.%02X", entry.ecuAddress, entry.service, entry.pid);
+			entry.pv = new EcuDataPv();
+			entry.pv.put(EcuDataPv.FID_PID, Integer.valueOf(entry.pid));
+			entry.pv.put(EcuDataPv.FID_OFS, Integer.valueOf(entry.ecuAddress));
+			entry.pv.put(EcuDataPv.FID_MNEMONIC, key);
+			entry.pv.put(EcuDataPv.FID_DESCRIPT,
+			             String.format("RTT ECU %x, Service %02X, PID %02X",
+			                           entry.ecuAddress, entry.service, entry.pid));
+			entry.pv.put(EcuDataPv.FID_UNITS, "ms");
+			entry.pv.put(EcuDataPv.FID_FORMAT, "%.1f");
+			entry.pv.put(EcuDataPv.FID_VALUE, Float.valueOf(entry.getRttAvg() / 1000f));
+			pvs.put(key, entry.pv);
+		}
+		else
+		{
+			entry.pv.put(EcuDataPv.FID_VALUE, Float.valueOf(entry.getRttAvg() / 1000f));
+		}
+	}
+
+	/**
+	 * close rate measurement window if it is expired
+	 */
+	private void updateRates(long now_ns)
+	{
+		long duration = now_ns - windowStart_ns;
+		if (duration >= RATE_WINDOW_NS)
+		{
+			// no activity within a complete window -> rate is 0
+			requestRate = (duration < 2 * RATE_WINDOW_NS) ? windowRequests * 1e9f / duration : 0;
+			responseRate = (duration < 2 * RATE_WINDOW_NS) ? windowResponses * 1e9f / duration : 0;
+			windowStart_ns = now_ns;
+			windowRequests = 0;
+			windowResponses = 0;
+		}
+	}
+
+	/**
+	 * get value of 2 hex digits
+	 * @return value, -1 if characters are no valid hex digits
+	 */
+	private static int hexValue(char[] buffer, int offset)
+	{
+		if (offset + 2 > buffer.length) return -1;
+		int hi = Character.digit(buffer[offset], 16);
+		int lo = Character.digit(buffer[offset + 1], 16);
+		return (hi < 0 || lo < 0) ? -1 : (hi << 4) | lo;
+	}
+}
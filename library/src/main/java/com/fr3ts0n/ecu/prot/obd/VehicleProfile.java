@@ -0,0 +1,249 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Profile of a vehicle, as detected with a specific adapter
+ * - detected protocol and ECU addresses
+ * - supported PIDs per ECU and service
+ * - learned ELM timeouts
+ *
+ * A profile allows to start polling on reconnect without protocol search,
+ * ECU detection and discovery of supported PIDs.
+ */
+public class VehicleProfile
+{
+	/** number of PID blocks (0x20 PIDs each) */
+	static final int NUM_PID_BLOCKS = 8;
+
+	/** adapter identity (adapter model/version) */
+	private final String adapter;
+	/** ELM protocol number */
+	private final int protocol;
+	/** CAN (ISO 15765) protocol? */
+	private final boolean canProtocol;
+	/** detected ECU addresses */
+	private final TreeSet<Integer> ecuAddresses = new TreeSet<Integer>();
+	/** supported PID bitmasks, indexed by ECU address and service */
+	private final TreeMap<Long, long[]> supportedPids = new TreeMap<Long, long[]>();
+	/** learned ELM timeouts (format of {@link ElmProt.AdaptiveTiming#getLearnedTimeouts()}) */
+	private String learnedTimeouts = "";
+	/** timestamp of last use [ms] */
+	private long lastUsed = 0;
+
+	/**
+	 * Create vehicle profile
+	 *
+	 * @param adapter adapter identity
+	 * @param protocol ELM protocol number
+	 * @param canProtocol CAN (ISO 15765) protocol?
+	 * @param ecuAddresses detected ECU addresses
+	 */
+	public VehicleProfile(String adapter, int protocol, boolean canProtocol,
+	                      Collection<Integer> ecuAddresses)
+	{
+		this.adapter = adapter;
+		this.protocol = protocol;
+		this.canProtocol = canProtocol;
+		this.ecuAddresses.addAll(ecuAddresses);
+	}
+
+	/**
+	 * Get key of profile (adapter identity and ECU addresses)
+	 *
+	 * @return profile key
+	 */
+	public String getKey()
+	{
+		StringBuilder result = new StringBuilder(adapter);
+		for (Integer address : ecuAddresses)
+		{
+			result.append(String.format("|%X", address));
+		}
+		return result.toString();
+	}
+
+	public String getAdapter()
+	{
+		return adapter;
+	}
+
+	public int getProtocol()
+	{
+		return protocol;
+	}
+
+	public boolean isCanProtocol()
+	{
+		return canProtocol;
+	}
+
+	public TreeSet<Integer> getEcuAddresses()
+	{
+		return ecuAddresses;
+	}
+
+	public synchronized String getLearnedTimeouts()
+	{
+		return learnedTimeouts;
+	}
+
+	public synchronized void setLearnedTimeouts(String learnedTimeouts)
+	{
+		this.learnedTimeouts = (learnedTimeouts != null) ? learnedTimeouts : "";
+	}
+
+	public synchronized long getLastUsed()
+	{
+		return lastUsed;
+	}
+
+	public synchronized void setLastUsed(long lastUsed)
+	{
+		this.lastUsed = lastUsed;
+	}
+
+	/**
+	 * Get supported PIDs of an ECU
+	 *
+	 * @param ecuAddress ECU address (0 = all ECUs)
+	 * @param service OBD service
+	 * @return supported PID bitmasks of all PID blocks, null if not known
+	 */
+	public synchronized long[] getSupportedPids(int ecuAddress, int service)
+	{
+		long[] result = supportedPids.get(getPidKey(ecuAddress, service));
+		return (result != null) ? result.clone() : null;
+	}
+
+	/**
+	 * Add supported PIDs of an ECU
+	 * (responses of several ECUs to the same request are combined)
+	 *
+	 * @param ecuAddress ECU address (0 = all ECUs)
+	 * @param service OBD service
+	 * @param start start PID of block (multiple of 0x20)
+	 * @param bitmask supported PIDs of block
+	 */
+	public synchronized void addSupportedPids(int ecuAddress, int service, int start, long bitmask)
+	{
+		Long key = getPidKey(ecuAddress, service);
+		long[] masks = supportedPids.get(key);
+		if (masks == null)
+		{
+			masks = new long[NUM_PID_BLOCKS];
+			supportedPids.put(key, masks);
+		}
+		masks[(start / 0x20) % NUM_PID_BLOCKS] |= bitmask;
+	}
+
+	/**
+	 * Forget supported PIDs of an ECU
+	 *
+	 * @param ecuAddress ECU address (0 = all ECUs)
+	 * @param service OBD service
+	 */
+	public synchronized void clearSupportedPids(int ecuAddress, int service)
+	{
+		supportedPids.remove(getPidKey(ecuAddress, service));
+	}
+
+	/**
+	 * Format profile as text lines "key=value"
+	 * (first line "profile=..." starts a profile)
+	 *
+	 * @return profile text
+	 */
+	@Override
+	public synchronized String toString()
+	{
+		StringBuilder result = new StringBuilder();
+		result.append("profile=").append(adapter).append('\n');
+		result.append("protocol=").append(Integer.toHexString(protocol).toUpperCase()).append('\n');
+		result.append("can=").append(canProtocol).append('\n');
+		result.append("ecus=");
+		String separator = "";
+		for (Integer address : ecuAddresses)
+		{
+			result.append(separator).append(Integer.toHexString(address).toUpperCase());
+			separator = ",";
+		}
+		result.append('\n');
+		result.append("used=").append(lastUsed).append('\n');
+		for (Map.Entry<Long, long[]> entry : supportedPids.entrySet())
+		{
+			result.append(String.format("pids.%X.%02X=", entry.getKey() >> 8, entry.getKey() & 0xFF));
+			separator = "";
+			for (long mask : entry.getValue())
+			{
+				result.append(separator).append(String.format("%08X", mask));
+				separator = ",";
+			}
+			result.append('\n');
+		}
+		if (learnedTimeouts.length() > 0)
+		{
+			result.append("timeouts=").append(learnedTimeouts.trim().replace('\n', ';')).append('\n');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Parse profile attribute line "key=value"
+	 * (adapter, protocol, CAN flag and ECUs are handled by {@link VehicleProfiles#load(String)})
+	 *
+	 * @param key attribute key
+	 * @param value attribute value
+	 */
+	synchronized void parse(String key, String value)
+	{
+		if (key.equals("used"))
+		{
+			lastUsed = Long.parseLong(value);
+		}
+		else if (key.equals("timeouts"))
+		{
+			learnedTimeouts = value.replace(';', '\n');
+		}
+		else if (key.startsWith("pids."))
+		{
+			String[] ids = key.split("\\.");
+			String[] masks = value.split(",");
+			int ecuAddress = (int) Long.parseLong(ids[1], 16);
+			int service = Integer.parseInt(ids[2], 16);
+			for (int i = 0; i < masks.length && i < NUM_PID_BLOCKS; i++)
+			{
+				addSupportedPids(ecuAddress, service, i * 0x20, Long.parseLong(masks[i], 16));
+			}
+		}
+	}
+
+	/**
+	 * get key of supported PIDs
+	 */
+	private static Long getPidKey(int ecuAddress, int service)
+	{
+		return ((ecuAddress & 0xFFFFFFFFL) << 8) | (service & 0xFF);
+	}
+}
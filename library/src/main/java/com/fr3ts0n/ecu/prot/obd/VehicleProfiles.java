@@ -0,0 +1,209 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import java.util.HashMap;
+import java.util.Vector;
+import java.util.logging.Logger;
+
+/**
+ * Persistent store of vehicle profiles
+ * - profiles are identified by adapter identity and ECU addresses
+ * - the store is limited to MAX_PROFILES, least recently used
+ *   profiles are dropped first
+ * - the store is saved/loaded as text lines (e.g. for preferences)
+ */
+public class VehicleProfiles
+{
+	/** max. number of stored profiles */
+	static final int MAX_PROFILES = 8;
+
+	/** Logging object */
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.prot.obd");
+
+	/** profiles by profile key */
+	private final HashMap<String, VehicleProfile> profiles = new HashMap<String, VehicleProfile>();
+
+	/**
+	 * Find most recently used profile of an adapter
+	 *
+	 * @param adapter adapter identity
+	 * @return most recently used profile, null if no profile is known
+	 */
+	public synchronized VehicleProfile find(String adapter)
+	{
+		VehicleProfile result = null;
+		for (VehicleProfile profile : profiles.values())
+		{
+			if (profile.getAdapter().equals(adapter)
+			    && (result == null || profile.getLastUsed() > result.getLastUsed()))
+			{
+				result = profile;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get profile by key
+	 *
+	 * @param key profile key
+	 * @return profile, null if not known
+	 */
+	public synchronized VehicleProfile get(String key)
+	{
+		return profiles.get(key);
+	}
+
+	/**
+	 * Add profile, a previous profile with same key is replaced
+	 *
+	 * @param profile profile to be added
+	 */
+	public synchronized void put(VehicleProfile profile)
+	{
+		profiles.put(profile.getKey(), profile);
+		// drop least recently used profiles
+		while (profiles.size() > MAX_PROFILES)
+		{
+			VehicleProfile oldest = null;
+			for (VehicleProfile currProfile : profiles.values())
+			{
+				if (oldest == null || currProfile.getLastUsed() < oldest.getLastUsed())
+				{
+					oldest = currProfile;
+				}
+			}
+			remove(oldest);
+		}
+	}
+
+	/**
+	 * Remove profile
+	 *
+	 * @param profile profile to be removed
+	 */
+	public synchronized void remove(VehicleProfile profile)
+	{
+		profiles.remove(profile.getKey());
+	}
+
+	/**
+	 * @return number of stored profiles
+	 */
+	public synchronized int size()
+	{
+		return profiles.size();
+	}
+
+	/**
+	 * Remove all profiles
+	 */
+	public synchronized void clear()
+	{
+		profiles.clear();
+	}
+
+	/**
+	 * Load profiles from text (as created by {@link #toString()})
+	 * - invalid profiles are ignored
+	 *
+	 * @param text profile text
+	 */
+	public synchronized void load(String text)
+	{
+		if (text == null)
+		{
+			return;
+		}
+		// collect lines of each profile
+		Vector<String[]> lines = new Vector<String[]>();
+		for (String line : text.split("\n"))
+		{
+			String[] keyValue = line.trim().split("=", 2);
+			if (keyValue.length != 2)
+			{
+				continue;
+			}
+			if (keyValue[0].equals("profile") && lines.size() > 0)
+			{
+				loadProfile(lines);
+				lines.clear();
+			}
+			lines.add(keyValue);
+		}
+		loadProfile(lines);
+	}
+
+	/**
+	 * Format all profiles as text lines
+	 *
+	 * @return profile text
+	 */
+	@Override
+	public synchronized String toString()
+	{
+		StringBuilder result = new StringBuilder();
+		for (VehicleProfile profile : profiles.values())
+		{
+			result.append(profile.toString());
+		}
+		return result.toString();
+	}
+
+	/**
+	 * create profile from text lines "key=value"
+	 */
+	private void loadProfile(Vector<String[]> lines)
+	{
+		if (lines.isEmpty())
+		{
+			return;
+		}
+		try
+		{
+			HashMap<String, String> attributes = new HashMap<String, String>();
+			for (String[] keyValue : lines)
+			{
+				attributes.put(keyValue[0], keyValue[1]);
+			}
+			Vector<Integer> ecuAddresses = new Vector<Integer>();
+			for (String address : attributes.get("ecus").split(","))
+			{
+				if (address.length() > 0)
+				{
+					ecuAddresses.add((int) Long.parseLong(address, 16));
+				}
+			}
+			VehicleProfile profile = new VehicleProfile(attributes.get("profile"),
+			                                            Integer.parseInt(attributes.get("protocol"), 16),
+			                                            Boolean.parseBoolean(attributes.get("can")),
+			                                            ecuAddresses);
+			for (String[] keyValue : lines)
+			{
+				profile.parse(keyValue[0], keyValue[1]);
+			}
+			put(profile);
+		}
+		catch (Exception ex)
+		{
+			log.warning("Invalid vehicle profile: " + ex);
+		}
+	}
+}
@@ -259,8 +259,8 @@ public class Kw1281Prot extends ProtoHeader
 									EcuDataItem itm = (EcuDataItem) it.next().clone();
 									itm.pid = frmNum;
 									itm.ofs = i - 1;
-									itm.pv.put(EcuDataPv.FID_PID, Integer.valueOf(itm.pid));
-									itm.pv.put(EcuDataPv.FID_OFS, Integer.valueOf(itm.ofs));
+									itm.getPv().put(EcuDataPv.FID_PID, Integer.valueOf(itm.pid));
+									itm.getPv().put(EcuDataPv.FID_OFS, Integer.valueOf(itm.ofs));
 									grpVec.add(itm);
 								}
 							}
@@ -614,7 +614,7 @@ public class Kw1281Prot extends ProtoHeader
 			while (itItm.hasNext())
 			{
 				EcuDataItem itm = itItm.next();
-				PidPvs.put(itm.pv.toString(), itm.pv);
+				PidPvs.put(itm.getPv().toString(), itm.getPv());
 			}
 		}
 	}
@@ -689,8 +689,8 @@ public class Kw1281Prot extends ProtoHeader
 								// set specific values for this item
 								currItm.pid = (int) getCurrDataGroup();
 								currItm.ofs += fldId;
-								currItm.pv.put(EcuDataPv.FID_PID, Integer.valueOf(currItm.pid));
-								currItm.pv.put(EcuDataPv.FID_OFS, Integer.valueOf(currItm.ofs));
+								currItm.getPv().put(EcuDataPv.FID_PID, Integer.valueOf(currItm.pid));
+								currItm.getPv().put(EcuDataPv.FID_OFS, Integer.valueOf(currItm.ofs));
 								// ensure there are enough elements in list
 								while (currGrpItems.size() <= fldId)
 									currGrpItems.add(null);
@@ -774,8 +774,8 @@ public class Kw1281Prot extends ProtoHeader
 								// set specific values for this item
 								currItm.pid = (int) getCurrDataGroup();
 								currItm.ofs += i / 3;
-								currItm.pv.put(EcuDataPv.FID_PID, Integer.valueOf(currItm.pid));
-								currItm.pv.put(EcuDataPv.FID_OFS, Integer.valueOf(currItm.ofs));
+								currItm.getPv().put(EcuDataPv.FID_PID, Integer.valueOf(currItm.pid));
+								currItm.getPv().put(EcuDataPv.FID_OFS, Integer.valueOf(currItm.ofs));
 								// ensure there are enough elements in list
 								while (currGrpItems.size() < (i / 3))
 									currGrpItems.add(null);
@@ -868,13 +868,12 @@ public class Kw1281Prot extends ProtoHeader
 						int dfcNum = getParamInt(i, 2, payLoad);
 						int dfcStat = getParamInt(i + 2, 1, payLoad);
 						// enter code into code list for visualisation
-						EcuCodeItem code = knownCodes.get(dfcNum);
-						// if code is not known ...
-						if (code == null)
-						{
-							// create new one and add it to list of known codes
-							code = new EcuCodeItem(dfcNum, "Unknown Fault code");
-						}
+						EcuCodeItem knownCode = knownCodes.get(dfcNum);
+						// own item for status (known code items are shared)
+						EcuCodeItem code = new EcuCodeItem(dfcNum,
+						                                   knownCode != null
+						                                   ? String.valueOf(knownCode.get(EcuCodeItem.FID_DESCRIPT))
+						                                   : "Unknown Fault code");
 						code.put(EcuCodeItem.FID_STATUS, Integer.valueOf(dfcStat));
 						tCodes.put(dfcNum, code);
 						if (dfcNum != 0xFFFF)
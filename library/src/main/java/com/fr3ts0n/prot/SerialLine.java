@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.prot;
+
+import java.io.IOException;
+
+/**
+ * SerialLine
+ * Interface to a serial line with adjustable baud rate,
+ * which is accessed directly (e.g. before a protocol handler takes over)
+ */
+public interface SerialLine
+{
+	/**
+	 * get current baud rate of line
+	 *
+	 * @return baud rate [bps]
+	 */
+	int getBaudRate();
+
+	/**
+	 * set baud rate of line
+	 *
+	 * @param baudRate new baud rate [bps]
+	 * @throws IOException if baud rate can't be set
+	 */
+	void setBaudRate(int baudRate) throws IOException;
+
+	/**
+	 * read received bytes
+	 *
+	 * @param buffer  buffer to receive bytes
+	 * @param timeout max. time [ms] to wait for data (0 = wait forever)
+	 * @return number of bytes received, 0 on timeout
+	 * @throws IOException on receive error
+	 */
+	int read(byte[] buffer, int timeout) throws IOException;
+
+	/**
+	 * write bytes
+	 *
+	 * @param data bytes to be sent
+	 * @throws IOException on transmit error
+	 */
+	void write(byte[] data) throws IOException;
+}
@@ -21,11 +21,12 @@ package com.fr3ts0n.prot;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.io.BufferedWriter;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,12 +39,35 @@ import java.util.logging.Logger;
 public class StreamHandler implements TelegramWriter, Runnable
 {
 	private static final Logger log = Logger.getLogger("stream");
+	/** max. number of telegrams waiting for transmission */
+	public static final int TX_QUEUE_SIZE = 32;
+	/** size of RX block buffer */
+	private static final int RX_BUFFER_SIZE = 1024;
+
 	private InputStream in;
-	private BufferedWriter out;
+
+	/** telegrams waiting for transmission */
+	private final BlockingQueue<TxTelegram> txQueue =
+		new ArrayBlockingQueue<TxTelegram>(TX_QUEUE_SIZE);
+	/** thread which transmits queued telegrams */
+	private Thread txThread = null;
+
+	/** number of transmitted telegrams */
+	private long txCount = 0;
+	/** number of telegrams dropped because of full TX queue */
+	private long txDropCount = 0;
+	/** sum of TX latencies [ns] */
+	private long txLatencySum = 0;
+	/** max. TX latency [ns] */
+	private long txLatencyMax = 0;
 	
 	private TelegramListener messageHandler;
-	// current receive message
-	private String message = "";
+	/** block buffer for received bytes */
+	private final byte[] rxBytes = new byte[RX_BUFFER_SIZE];
+	/** current receive message */
+	private char[] message = new char[256];
+	/** length of current receive message */
+	private int messageLen = 0;
 	
 	public StreamHandler()
 	{
@@ -69,9 +93,146 @@ public class StreamHandler implements TelegramWriter, Runnable
 	public void setStreams(InputStream inStream, OutputStream outStream)
 	{
 		in = inStream;
-		/* Output uses BufferedWriter with buffer size 1 byte to trigger
-		   flushing on every outgoing byte [$Fix #AndrOBD-27] */
-		out = new BufferedWriter(new OutputStreamWriter(outStream), 1);
+		/* Output is written unbuffered as one block per telegram, followed by
+		   a flush, to ensure immediate transmission [$Fix #AndrOBD-27] */
+		startTxThread(outStream);
+	}
+
+	/**
+	 * Start new TX thread for specified output stream
+	 * (a previously running TX thread is stopped)
+	 *
+	 * @param outStream stream for outgoing messages
+	 */
+	private synchronized void startTxThread(final OutputStream outStream)
+	{
+		stopTxThread();
+		txThread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				log.info("TX Thread started");
+				try
+				{
+					while (!Thread.currentThread().isInterrupted())
+					{
+						TxTelegram telegram = txQueue.take();
+						try
+						{
+							if (log.isLoggable(Level.FINER))
+							{
+								log.finer(StreamHandler.this.toString() + " TX:"
+								          + ProtUtils.hexDumpBuffer(telegram.chars));
+							}
+
+							outStream.write(telegram.data);
+							outStream.flush();
+							updateTxStatistics(System.nanoTime() - telegram.queued_ns);
+						}
+						catch (Exception ex)
+						{
+							log.severe("TX error:'"
+							           + ProtUtils.hexDumpBuffer(telegram.chars) + "':"
+							           + ex.getMessage());
+						}
+					}
+				}
+				catch (InterruptedException ex)
+				{
+					// stop requested
+				}
+				log.info("TX Thread stopped");
+			}
+		}, "StreamHandlerTx");
+		txThread.setDaemon(true);
+		txThread.start();
+	}
+
+	/**
+	 * Stop TX thread and discard pending telegrams
+	 */
+	private synchronized void stopTxThread()
+	{
+		if (txThread != null)
+		{
+			txThread.interrupt();
+			txThread = null;
+		}
+		txQueue.clear();
+	}
+
+	/**
+	 * update TX statistics with latency of transmitted telegram
+	 *
+	 * @param latency_ns latency [ns] between queueing and transmission of telegram
+	 */
+	private synchronized void updateTxStatistics(long latency_ns)
+	{
+		txCount++;
+		txLatencySum += latency_ns;
+		txLatencyMax = Math.max(txLatencyMax, latency_ns);
+	}
+
+	/**
+	 * Get number of telegrams waiting for transmission
+	 *
+	 * @return number of queued telegrams
+	 */
+	public int getTxQueueDepth()
+	{
+		return txQueue.size();
+	}
+
+	/**
+	 * Get number of transmitted telegrams
+	 *
+	 * @return number of transmitted telegrams
+	 */
+	public synchronized long getTxCount()
+	{
+		return txCount;
+	}
+
+	/**
+	 * Get number of telegrams dropped because of full TX queue
+	 *
+	 * @return number of dropped telegrams
+	 */
+	public synchronized long getTxDropCount()
+	{
+		return txDropCount;
+	}
+
+	/**
+	 * Get average latency between queueing and transmission of telegrams
+	 *
+	 * @return average TX latency [us]
+	 */
+	public synchronized long getTxLatencyAvg()
+	{
+		return txCount > 0 ? txLatencySum / txCount / 1000 : 0;
+	}
+
+	/**
+	 * Get max. latency between queueing and transmission of telegrams
+	 *
+	 * @return max. TX latency [us]
+	 */
+	public synchronized long getTxLatencyMax()
+	{
+		return txLatencyMax / 1000;
+	}
+
+	/**
+	 * Reset TX statistics
+	 */
+	public synchronized void resetTxStatistics()
+	{
+		txCount = 0;
+		txDropCount = 0;
+		txLatencySum = 0;
+		txLatencyMax = 0;
 	}
 	
 	/* (non-Javadoc)
@@ -90,73 +251,95 @@ public class StreamHandler implements TelegramWriter, Runnable
 	public int writeTelegram(final char[] buffer, int type, Object id)
 	{
 		int result = buffer.length;
-		
-		// Send data threaded to de-couple from main thread
-		new Thread(new Runnable()
+
+		// Send data by TX thread to de-couple from main thread
+		if (!txQueue.offer(new TxTelegram(buffer)))
 		{
-			@Override
-			public void run()
+			synchronized (this)
 			{
-				try
-				{
-					String msg = new String(buffer);
-					msg += "\r";
-					
-					log.finer(this.toString() + " TX:"
-					          + ProtUtils.hexDumpBuffer(msg.toCharArray()));
-					
-					out.write(msg.toCharArray());
-					out.flush();
-				}
-				catch (Exception ex)
-				{
-					log.severe("TX error:'"
-					           + ProtUtils.hexDumpBuffer(buffer) + "':"
-					           + ex.getStackTrace());
-				}
+				txDropCount++;
 			}
-		}).start();
+			log.warning("TX queue full, telegram dropped:'"
+			            + ProtUtils.hexDumpBuffer(buffer) + "'");
+			result = 0;
+		}
 		return (result);
 	}
 	
+	/**
+	 * Telegram queued for transmission
+	 */
+	private static class TxTelegram
+	{
+		/** telegram chars */
+		final char[] chars;
+		/** telegram bytes incl. terminating CR */
+		final byte[] data;
+		/** timestamp [ns] of queueing */
+		final long queued_ns;
+
+		TxTelegram(char[] buffer)
+		{
+			chars = buffer;
+			data = new byte[buffer.length + 1];
+			for (int i = 0; i < buffer.length; i++)
+			{
+				data[i] = (byte) buffer[i];
+			}
+			data[buffer.length] = '\r';
+			queued_ns = System.nanoTime();
+		}
+	}
+
+	/**
+	 * append character to current receive message
+	 *
+	 * @param chr the received char
+	 */
+	private void appendRxChar(int chr)
+	{
+		if (messageLen == message.length)
+		{
+			message = Arrays.copyOf(message, 2 * message.length);
+		}
+		message[messageLen++] = (char) chr;
+	}
+
 	/**
 	 * process incoming character
 	 *
 	 * @param chr the received char
 	 */
+	@SuppressWarnings("fallthrough")
 	private void processRxChar(int chr)
 	{
-		// process incoming data
-		log.finer(this.toString() + " RX: '"
-		          + String.format("%02X : %1c", (byte) chr, chr < 32 ? '.' : chr)
-		          + "'");
-		
 		switch (chr)
 		{
 			// ignore special characters
+			case 0:
 			case 32:
 				break;
 			
 			// trigger message handling for new request
 			case '>':
-				message += (char) chr;
+				appendRxChar(chr);
 				// trigger message handling
 			case 10:
 			case 13:
 				try
 				{
-					if (messageHandler != null && !message.isEmpty())
-					{ messageHandler.handleTelegram(message.toCharArray()); }
+					if (messageHandler != null && messageLen > 0)
+					{ messageHandler.handleTelegram(message, 0, messageLen); }
 				}
 				catch (Exception ex)
 				{
 					log.log(Level.WARNING, "handleTelegram", ex);
 				}
-				message = "";
+				messageLen = 0;
 				break;
 			
 			default:
-				message += (char) chr;
+				appendRxChar(chr);
 		}
 	}
 	
@@ -164,46 +347,35 @@ public class StreamHandler implements TelegramWriter, Runnable
 	 * start the thread
 	 */
 	@Override
-	@SuppressWarnings("fallthrough")
 	public void run()
 	{
-		int chr;
+		int len;
 		log.info("RX Thread started");
 		try
 		{
 			// loop until stream closed / invalid
-			while (true)
+			// (read blocks until data is available)
+			while ((len = in.read(rxBytes)) >= 0)
 			{
-				// if no data available, then wait for it
-				if (in.available() > 0)
+				if (log.isLoggable(Level.FINER))
 				{
-					// otherwise read- and process ...
-					
-					// Is end of stream reached?
-					if ((chr = in.read()) > 0)
-					{
-						// process incoming data
-						processRxChar(chr);
-					}
-					else
-					{
-						log.warning(this.toString() + " RX: End of stream!");
-						// stream finished - break loop
-						break;
-					}
+					log.finer(this.toString() + " RX: '"
+					          + new String(rxBytes, 0, len, "US-ASCII") + "'");
 				}
-				else
+				// process incoming data
+				for (int i = 0; i < len; i++)
 				{
-					// wait 1 ms for incoming data
-					Thread.sleep(1);
+					processRxChar(rxBytes[i] & 0xFF);
 				}
-				
 			}
+			log.warning(this.toString() + " RX: End of stream!");
 		}
 		catch (Exception ex)
 		{
 			log.log(Level.WARNING, "RX error", ex);
 		}
+		// stream is finished, so stop transmissions as well
+		stopTxThread();
 		
 		log.info("RX Thread stopped");
 	}
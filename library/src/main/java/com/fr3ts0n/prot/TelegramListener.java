@@ -18,6 +18,7 @@
 
 package com.fr3ts0n.prot;
 
+import java.util.Arrays;
 import java.util.EventListener;
 
 /**
@@ -33,4 +34,20 @@ public interface TelegramListener extends EventListener
 	 * @return number of listeners notified
 	 */
 	int handleTelegram(char[] buffer);
+
+	/**
+	 * handle incoming protocol telegram from a section of a receive buffer
+	 * - the buffer may be re-used by the caller after returning, so listeners
+	 *   which override this method must not keep references to it
+	 * - default implementation handles a copy of the telegram section
+	 *
+	 * @param buffer - receive buffer
+	 * @param offset - offset of telegram within buffer
+	 * @param length - length of telegram
+	 * @return number of listeners notified
+	 */
+	default int handleTelegram(char[] buffer, int offset, int length)
+	{
+		return handleTelegram(Arrays.copyOfRange(buffer, offset, offset + length));
+	}
 }
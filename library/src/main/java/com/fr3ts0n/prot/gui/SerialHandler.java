@@ -19,6 +19,7 @@
 package com.fr3ts0n.prot.gui;
 
 import com.fr3ts0n.prot.SerialExt;
+import com.fr3ts0n.prot.SerialLine;
 import com.fr3ts0n.prot.TelegramListener;
 import com.fr3ts0n.prot.TelegramWriter;
 
@@ -26,6 +27,7 @@ import java.awt.Color;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Field;
@@ -38,7 +40,7 @@ import java.util.logging.Logger;
  * @author erwin
  */
 public class SerialHandler extends Thread
-	implements TelegramWriter
+	implements TelegramWriter, SerialLine
 {
 	/** the serial device */
 	String deviceName = "/dev/ttyS0";
@@ -46,6 +48,10 @@ public class SerialHandler extends Thread
 	private ProtStatus protStat = ProtStatus.UNKNOWN;
 	/** file descriptor of serial device */
 	private long serialDeviceDescriptor = -1;
+	/** current baud rate of serial device (0 = not determined yet) */
+	private int baudRate = 0;
+	/** stream to check for available data on serial device */
+	private FileInputStream availStream;
 	// the logger object
 	static Logger log = Logger.getLogger("com.fr3ts0n.prot.ser");
 
@@ -185,6 +191,8 @@ public class SerialHandler extends Thread
 		// open java side file
 		wrtr = new RandomAccessFile(deviceName, "rw");
 		rdr = wrtr;
+		availStream = new FileInputStream(wrtr.getFD());
+		baudRate = 0;
 		// get system file descriptor
 		serialDeviceDescriptor = getSystemFD();
 		// and set it in serial extender
@@ -299,6 +307,81 @@ public class SerialHandler extends Thread
 		return (result);
 	}
 
+	/**
+	 * get current baud rate of serial device
+	 *
+	 * @return baud rate [bps]
+	 */
+	@Override
+	public int getBaudRate()
+	{
+		if (baudRate == 0)
+		{
+			try
+			{
+				baudRate = SerialExt.getCustomBaudrate();
+			} catch (IOException ex)
+			{
+				log.log(Level.WARNING, "getBaudRate", ex);
+			}
+		}
+		return baudRate;
+	}
+
+	/**
+	 * set baud rate of serial device
+	 * (e.g. for baud rate upgrade before the thread is started)
+	 *
+	 * @param baudRate new baud rate [bps]
+	 */
+	@Override
+	public void setBaudRate(int baudRate) throws IOException
+	{
+		SerialExt.setCustomBaudrate(baudRate);
+		this.baudRate = baudRate;
+	}
+
+	/**
+	 * read received bytes directly
+	 * (only allowed while the thread is not running)
+	 *
+	 * @param buffer  buffer to receive bytes
+	 * @param timeout max. time [ms] to wait for data (0 = wait forever)
+	 * @return number of bytes received, 0 on timeout
+	 */
+	@Override
+	public int read(byte[] buffer, int timeout) throws IOException
+	{
+		long end = System.currentTimeMillis() + timeout;
+		// poll for data to support read timeouts
+		while (timeout > 0 && availStream.available() == 0)
+		{
+			if (System.currentTimeMillis() >= end)
+			{
+				return 0;
+			}
+			try
+			{
+				Thread.sleep(1);
+			} catch (InterruptedException ex)
+			{
+				throw new IOException(ex);
+			}
+		}
+		return Math.max(0, rdr.read(buffer, 0, Math.max(1, Math.min(buffer.length, availStream.available()))));
+	}
+
+	/**
+	 * write bytes directly
+	 *
+	 * @param data bytes to be sent
+	 */
+	@Override
+	public void write(byte[] data) throws IOException
+	{
+		wrtr.write(data);
+	}
+
 	/**
 	 * configure serial handler
 	 * this method informs about generic serial ports need to be
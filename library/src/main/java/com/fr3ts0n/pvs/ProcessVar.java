@@ -401,6 +401,16 @@ public class ProcessVar
 		addPvChangeListener(l, PvChangeEvent.PV_ALLEVENTS);
 	}
 
+	/**
+	 * check if change events are delivered to any listener
+	 *
+	 * @return true if change events are currently allowed
+	 */
+	protected boolean isEventsAllowed()
+	{
+		return allowEvents;
+	}
+
 	/**
 	 * fire a Pv Change event
 	 *
@@ -0,0 +1,167 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.ecu.prot.obd.Messages;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EcuCodeIndexTest
+{
+	static final String BUNDLE = "com.fr3ts0n.ecu.prot.obd.res.codes";
+
+	@BeforeEach
+	void setUp()
+	{
+		// fallback text of unknown codes
+		Messages.init("com.fr3ts0n.ecu.prot.obd.res.messages");
+	}
+
+	static Properties properties(String name) throws IOException
+	{
+		Properties result = new Properties();
+		try (InputStream inStr = EcuCodeIndexTest.class.getResourceAsStream(name))
+		{
+			result.load(new InputStreamReader(inStr, "UTF-8"));
+		}
+		return result;
+	}
+
+	static EcuCodeIndex compile(String name) throws IOException
+	{
+		try (InputStream inStr = EcuCodeIndexTest.class.getResourceAsStream(name))
+		{
+			return new EcuCodeIndex(EcuCodeIndex.compile(inStr, EcuCodeIndex.FORMAT_PCODE));
+		}
+	}
+
+	/**
+	 * compiled index contains the same descriptions as the properties file
+	 */
+	@Test
+	void indexMatchesProperties() throws IOException
+	{
+		Properties codes = properties("prot/obd/res/codes.properties");
+		EcuCodeIndex index = compile("prot/obd/res/codes.properties");
+		assertEquals(codes.size(), index.size());
+		for (String key : codes.stringPropertyNames())
+		{
+			assertEquals(codes.getProperty(key), index.get(ObdCodeItem.getNumericCode(key)), key);
+		}
+		assertNull(index.get(0x3FFF));
+	}
+
+	/**
+	 * locale specific indexes fall back to descriptions of parent locales
+	 */
+	@Test
+	void localeFallback() throws IOException
+	{
+		Properties base = properties("prot/obd/res/codes.properties");
+		Properties german = properties("prot/obd/res/codes_de.properties");
+		// indexes compiled by this test (independent of build step)
+		File dir = Files.createTempDirectory("codeIndex").toFile();
+		try
+		{
+			File resDir = new File(dir, "com/fr3ts0n/ecu/prot/obd/res");
+			assertTrue(resDir.mkdirs());
+			for (String name : new String[]{"codes", "codes_de"})
+			{
+				try (InputStream inStr = EcuCodeIndexTest.class.getResourceAsStream("prot/obd/res/" + name + ".properties");
+				     OutputStream out = new FileOutputStream(new File(resDir, name + ".idx")))
+				{
+					out.write(EcuCodeIndex.compile(inStr, EcuCodeIndex.FORMAT_PCODE));
+				}
+			}
+			ClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, null);
+			EcuCodeIndex index = EcuCodeIndex.forLocale(BUNDLE, Locale.GERMANY, loader);
+			assertNotNull(index, "codes_de index");
+			assertEquals(german.size(), index.size());
+			Map<Integer, String> all = index.getAll();
+			for (String key : base.stringPropertyNames())
+			{
+				String expected = german.getProperty(key, base.getProperty(key));
+				assertEquals(expected, index.get(ObdCodeItem.getNumericCode(key)), key);
+				assertEquals(expected, all.get(ObdCodeItem.getNumericCode(key)), key);
+			}
+			assertNull(EcuCodeIndex.forLocale("com.fr3ts0n.ecu.prot.vag.res.codes", Locale.GERMANY, loader));
+		}
+		finally
+		{
+			delete(dir);
+		}
+	}
+
+	static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	@Test
+	void invalidCodes()
+	{
+		assertEquals(0x0100, EcuCodeIndex.parseCode("P0100", EcuCodeIndex.FORMAT_PCODE));
+		assertEquals(0x1A, EcuCodeIndex.parseCode("1a", "16"));
+		assertThrows(IllegalArgumentException.class,
+		             () -> EcuCodeIndex.parseCode("X0100", EcuCodeIndex.FORMAT_PCODE));
+		assertThrows(IllegalArgumentException.class,
+		             () -> EcuCodeIndex.parseCode("0100", "10"));
+		assertThrows(IllegalArgumentException.class,
+		             () -> new EcuCodeIndex(new byte[]{0x44, 0x54, 0x43, 0x49}));
+	}
+
+	@Test
+	void pCodes()
+	{
+		assertEquals("P0100", ObdCodeItem.getPCode(0x0100));
+		assertEquals("C0A1F", ObdCodeItem.getPCode(0x4A1F));
+		assertEquals("U3FFF", ObdCodeItem.getPCode(0xFFFF));
+		assertEquals(0x4A1F, ObdCodeItem.getNumericCode("C0A1F"));
+	}
+
+	/**
+	 * repeated lookups return the cached item
+	 * (from code index or resource bundle, whichever is available)
+	 */
+	@Test
+	void cachedItems()
+	{
+		EcuCodeList codeList = new ObdCodeList();
+		EcuCodeItem item = codeList.get(0x0100);
+		assertEquals("P0100", item.get(EcuCodeItem.FID_CODE));
+		assertNotEquals(Messages.getString("customer.specific.trouble.code.see.manual"),
+		                item.get(EcuCodeItem.FID_DESCRIPT));
+		assertSame(item, codeList.get(0x0100));
+		assertSame(codeList.physToPhysFmtString(0x0100, null),
+		           codeList.physToPhysFmtString(0x0100, null));
+		assertSame(codeList.values(), codeList.values());
+	}
+}
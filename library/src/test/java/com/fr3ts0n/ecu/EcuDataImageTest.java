@@ -0,0 +1,121 @@
+package com.fr3ts0n.ecu;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EcuDataImageTest
+{
+	static final String PIDS = "prot/obd/res/pids.csv";
+	static final String CONVERSIONS = "prot/obd/res/conversions.csv";
+	static final String MESSAGES = "com.fr3ts0n.ecu.prot.obd.res.messages";
+
+	static InputStream resource(String name)
+	{
+		return EcuDataItems.class.getResourceAsStream(name);
+	}
+
+	@Test
+	void imageName()
+	{
+		assertEquals("prot/obd/res/pids.bin", EcuDataImage.getImageName(PIDS));
+	}
+
+	@Test
+	void invalidImage()
+	{
+		assertThrows(IllegalArgumentException.class,
+		             () -> new EcuDataImage(new byte[]{0x4F, 0x42, 0x44, 0x49, 0, 0}));
+	}
+
+	/**
+	 * data items loaded from image are identical to items loaded from CSV files
+	 */
+	@Test
+	void imageMatchesCsv() throws IOException
+	{
+		// loading items replaces global conversions and mnemonic map
+		EcuConversions oldCnv = EcuDataItems.cnv;
+		EcuCodeList oldCodeList = EcuConversions.codeList;
+		Map<String, EcuDataItem> oldMnemonics = new HashMap<>(EcuDataItems.byMnemonic);
+		try
+		{
+			EcuDataImage image = new EcuDataImage(EcuDataImage.compile(resource(PIDS),
+			                                                           resource(CONVERSIONS)));
+			EcuDataItems fromImage = new EcuDataItems(MESSAGES);
+			fromImage.loadFromImage(image);
+			EcuConversions imageCnv = EcuDataItems.cnv;
+
+			EcuDataItems fromCsv = new EcuDataItems(MESSAGES);
+			EcuDataItems.cnv = new EcuConversions(CONVERSIONS);
+			fromCsv.loadFromStream(resource(PIDS));
+
+			assertEquals(EcuDataItems.cnv.keySet(), imageCnv.keySet());
+			assertEquals(fromCsv.keySet(), fromImage.keySet());
+			int numItems = 0;
+			for (Integer service : fromCsv.keySet())
+			{
+				assertEquals(fromCsv.get(service).keySet(), fromImage.get(service).keySet());
+				for (Integer pid : fromCsv.get(service).keySet())
+				{
+					EcuDataItem[] csvItems = fromCsv.getPidItems(service, pid);
+					EcuDataItem[] imageItems = fromImage.getPidItems(service, pid);
+					assertEquals(csvItems.length, imageItems.length);
+					for (int i = 0; i < csvItems.length; i++)
+					{
+						assertSameItem(csvItems[i], imageItems[i]);
+						numItems++;
+					}
+				}
+			}
+			assertEquals(true, numItems > 400);
+		}
+		finally
+		{
+			EcuDataItems.cnv = oldCnv;
+			EcuConversions.codeList = oldCodeList;
+			EcuDataItems.byMnemonic.clear();
+			EcuDataItems.byMnemonic.putAll(oldMnemonics);
+		}
+	}
+
+	static void assertSameItem(EcuDataItem expected, EcuDataItem actual)
+	{
+		String id = expected.toString();
+		assertEquals(expected.pid, actual.pid, id);
+		assertEquals(expected.ofs, actual.ofs, id);
+		assertEquals(expected.getNumBytes(), actual.getNumBytes(), id);
+		assertEquals(expected.getBitOffset(), actual.getBitOffset(), id);
+		assertEquals(expected.getRawMask(), actual.getRawMask(), id);
+		assertEquals(expected.label, actual.label, id);
+		assertEquals(expected.updatePeriod_ms, actual.updatePeriod_ms, id);
+		for (int system = 0; system < EcuDataItem.SYSTEM_TYPES; system++)
+		{
+			Conversion csvCnv = expected.cnv[system];
+			Conversion imageCnv = actual.cnv[system];
+			assertEquals(csvCnv == null, imageCnv == null, id);
+			if (csvCnv != null)
+			{
+				assertEquals(csvCnv.getClass(), imageCnv.getClass(), id);
+				assertEquals(csvCnv.getUnits(), imageCnv.getUnits(), id);
+			}
+		}
+		// process vars have the same content (except conversion instances)
+		EcuDataPv csvPv = expected.getPv();
+		EcuDataPv imagePv = actual.getPv();
+		assertEquals(csvPv.keySet(), imagePv.keySet(), id);
+		for (Object key : csvPv.keySet())
+		{
+			if (!EcuDataPv.FID_CNVID.equals(key))
+			{
+				assertEquals(csvPv.get(key), imagePv.get(key), id + "/" + key);
+			}
+		}
+	}
+}
@@ -6,7 +6,14 @@ import com.fr3ts0n.pvs.PvChangeListener;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * Test class for dynamic conversion ranges via PID 0x4F
@@ -29,7 +36,7 @@ class EcuDataItemsTest
 	@Test
 	void updateDataItems_Lambda()
 	{
-		ProcessVar pv = items.getPidDataItems(0x01, 0x24).get(0).pv;
+		ProcessVar pv = items.getPidDataItems(0x01, 0x24).get(0).getPv();
 		pv.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
 
 		// Dynamic factor undefined: Static conversion factor
@@ -56,7 +63,7 @@ class EcuDataItemsTest
 	@Test
 	void updateDataItems_O2Voltage()
 	{
-		ProcessVar pv = items.getPidDataItems(0x01, 0x24).get(1).pv;
+		ProcessVar pv = items.getPidDataItems(0x01, 0x24).get(1).getPv();
 		pv.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
 
 		// Dynamic factor undefined: Static conversion factor
@@ -83,7 +90,7 @@ class EcuDataItemsTest
 	@Test
 	void updateDataItems_O2Current()
 	{
-		ProcessVar pv = items.getPidDataItems(0x01, 0x34).get(1).pv;
+		ProcessVar pv = items.getPidDataItems(0x01, 0x34).get(1).getPv();
 		pv.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
 
 		// Dynamic factor undefined: Static conversion factor
@@ -110,7 +117,7 @@ class EcuDataItemsTest
 	@Test
 	void TestConversionSystem()
 	{
-		EcuDataPv pv = items.getPidDataItems(0x01, 0x05).get(0).pv;
+		EcuDataPv pv = items.getPidDataItems(0x01, 0x05).get(0).getPv();
 		pv.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
 
 		// Check metric conversion + Units
@@ -128,6 +135,39 @@ class EcuDataItemsTest
 		pv.removePvChangeListener(this);
 	}
 
+	/**
+	 * Test dense index update when extension items are loaded
+	 */
+	@Test
+	void loadExtension_Index()
+	{
+		EcuDataItems extended = new EcuDataItems();
+		EcuDataItem[] rpmItems = extended.getPidItems(0x01, 0x0C);
+		assertEquals(extended.getPidDataItems(0x01, 0x0C).size(), rpmItems.length);
+		assertNull(extended.getPidItems(0x22, 0xFE));
+
+		String csv = "svc\tpid\tofs\tlen\tbit_offset\tbit_length\tbit_mask\tformula\tformat\tmin\tmax\tupdate_cycle_ms\tmnemonic\tlabel\n"
+		             + "0x22\t0xFE\t0\t4\t0\t32\t0xFFFFFFFF\tONETOONE\t%#08x\t\t\t0\tpid_fe\tPID FE\n";
+		extended.loadFromStream(new ByteArrayInputStream(csv.getBytes()));
+		assertEquals("PID FE", extended.getPidItems(0x22, 0xFE)[0].getPv().get(EcuDataPv.FID_DESCRIPT));
+		assertNotNull(extended.getDecoder(0x22, 0xFE));
+		// index entries of other PIDs are equal
+		assertArrayEquals(rpmItems, extended.getPidItems(0x01, 0x0C));
+	}
+
+	/**
+	 * Loaded definitions are read-only
+	 */
+	@Test
+	void readOnly()
+	{
+		assertThrows(UnsupportedOperationException.class, () -> items.remove(0x01));
+		assertThrows(UnsupportedOperationException.class, () -> items.put(0x22, new HashMap<>()));
+		assertThrows(UnsupportedOperationException.class, () -> items.putAll(new HashMap<>()));
+		assertThrows(UnsupportedOperationException.class, items::clear);
+		assertNotNull(items.getPidItems(0x01, 0x0C));
+	}
+
 	/**
 	 * Handle PV change event
 	 * - store changed value to test result
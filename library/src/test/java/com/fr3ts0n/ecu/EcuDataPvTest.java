@@ -0,0 +1,102 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.pvs.PvChangeEvent;
+import com.fr3ts0n.pvs.ProcessVar;
+import com.fr3ts0n.pvs.PvChangeListener;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EcuDataPvTest
+{
+	@Test
+	void primitiveValueWithoutListeners()
+	{
+		EcuDataPv pv = new EcuDataPv();
+		// no sample yet
+		assertTrue(Double.isNaN(pv.getDoubleValue()));
+		assertEquals(0L, pv.getSequence());
+		pv.setValue(12.5f);
+		pv.setValue(13.5f);
+		assertEquals(13.5, pv.getDoubleValue(), 0.0);
+		assertEquals(2L, pv.getSequence());
+		assertTrue(pv.getSampleTime() > 0);
+		// map view is materialised on read
+		assertEquals(Float.valueOf(13.5f), pv.get(EcuDataPv.FID_VALUE));
+	}
+
+	@Test
+	void mapViewsContainPendingValue()
+	{
+		EcuDataPv pv = new EcuDataPv();
+		pv.setValue(42f);
+		EcuDataPv copy = new EcuDataPv();
+		copy.putAll(pv);
+		assertEquals(Float.valueOf(42f), copy.get(EcuDataPv.FID_VALUE));
+		assertEquals(42.0, copy.getDoubleValue(), 0.0);
+		pv.setValue(43f);
+		EcuDataPv clone = (EcuDataPv) pv.clone();
+		assertEquals(Float.valueOf(43f), clone.get(EcuDataPv.FID_VALUE));
+	}
+
+	/**
+	 * bulk updates (putAll, re-put of child PVs) update the numeric value
+	 */
+	@Test
+	void putAllUpdatesValue()
+	{
+		EcuDataPv pv = new EcuDataPv();
+		pv.setValue(1f);
+		Map<Object, Object> map = new HashMap<>();
+		map.put(EcuDataPv.FIELDS[EcuDataPv.FID_VALUE], 5f);
+		pv.putAll(map);
+		assertEquals(5.0, pv.getDoubleValue(), 0.0);
+		assertEquals(Float.valueOf(5f), pv.get(EcuDataPv.FID_VALUE));
+
+		ProcessVar parent = new ProcessVar();
+		parent.put("child", pv);
+		EcuDataPv update = new EcuDataPv();
+		update.setValue(7f);
+		parent.put("child", update);
+		assertSame(pv, parent.get("child"));
+		assertEquals(7.0, pv.getDoubleValue(), 0.0);
+	}
+
+	@Test
+	void listenersAreNotified()
+	{
+		final List<PvChangeEvent> events = new ArrayList<>();
+		EcuDataPv pv = new EcuDataPv();
+		pv.setValue(1f);
+		pv.addPvChangeListener(new PvChangeListener()
+		{
+			@Override
+			public void pvChanged(PvChangeEvent event)
+			{
+				events.add(event);
+			}
+		}, PvChangeEvent.PV_MODIFIED);
+		pv.setValue(2f);
+		assertEquals(1, events.size());
+		assertEquals(EcuDataPv.FIELDS[EcuDataPv.FID_VALUE], events.get(0).getKey());
+		assertEquals(Float.valueOf(2f), events.get(0).getValue());
+	}
+
+	@Test
+	void textValue()
+	{
+		EcuDataPv pv = new EcuDataPv();
+		pv.setValue("n/a");
+		assertEquals("n/a", pv.get(EcuDataPv.FID_VALUE));
+		assertTrue(Double.isNaN(pv.getDoubleValue()));
+		assertEquals(1L, pv.getSequence());
+	}
+}
@@ -0,0 +1,84 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.ecu.prot.obd.ObdProt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PidDecoderTest
+{
+	static final EcuDataItems items = ObdProt.dataItems;
+
+	/**
+	 * create copy of data items with own process vars
+	 */
+	static EcuDataItem[] copy(EcuDataItem[] source)
+	{
+		EcuDataItem[] result = new EcuDataItem[source.length];
+		for (int i = 0; i < source.length; i++)
+		{
+			result[i] = (EcuDataItem) source[i].clone();
+			EcuDataPv pv = new EcuDataPv();
+			pv.putAll(source[i].getPv());
+			result[i].setPv(pv);
+		}
+		return result;
+	}
+
+	@Test
+	void decodeHexPayload()
+	{
+		// response 410C1AF8 -> RPM = 0x1AF8 / 4
+		char[] rsp = "410C1AF8".toCharArray();
+		items.updateDataItems(ObdProt.OBD_SVC_DATA, 0x0C, rsp, 4, 4);
+		Number rpm = (Number) items.getPidDataItems(ObdProt.OBD_SVC_DATA, 0x0C).get(0).getPv().get(EcuDataPv.FID_VALUE);
+		assertEquals(1726.0, rpm.doubleValue(), 0.001);
+	}
+
+	@Test
+	void sameResultsAsBinaryDecoding()
+	{
+		Random random = new Random(1);
+		for (int pid = 0x01; pid < 0x60; pid++)
+		{
+			EcuDataItem[] pidItems = items.getPidItems(ObdProt.OBD_SVC_DATA, pid);
+			if (pidItems == null)
+			{
+				continue;
+			}
+			PidDecoder decoder = items.getDecoder(ObdProt.OBD_SVC_DATA, pid);
+			char[] bytes = new char[8];
+			StringBuilder hex = new StringBuilder();
+			for (int i = 0; i < bytes.length; i++)
+			{
+				bytes[i] = (char) random.nextInt(256);
+				hex.append(String.format("%02X", (int) bytes[i]));
+			}
+			EcuDataItem[] binary = copy(pidItems);
+			EcuDataItem[] compiled = copy(pidItems);
+			for (EcuDataItem item : binary)
+			{
+				item.updatePvFomBuffer(bytes);
+			}
+			decoder.update(compiled, hex.toString().toCharArray(), 0, hex.length());
+			for (int i = 0; i < binary.length; i++)
+			{
+				assertEquals(binary[i].getPv().get(EcuDataPv.FID_VALUE),
+				             compiled[i].getPv().get(EcuDataPv.FID_VALUE),
+				             binary[i].toString());
+			}
+		}
+	}
+
+	@Test
+	void parseHexByte()
+	{
+		assertEquals(0xA5, PidDecoder.parseHexByte("01a5".toCharArray(), 2));
+		assertThrows(NumberFormatException.class,
+		             () -> PidDecoder.parseHexByte("01G5".toCharArray(), 2));
+	}
+}
@@ -0,0 +1,143 @@
+package com.fr3ts0n.ecu;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PidSchedulerTest
+{
+	PidScheduler scheduler;
+
+	@BeforeEach
+	void setUp()
+	{
+		scheduler = new PidScheduler();
+	}
+
+	/**
+	 * PID codes in order of scheduling
+	 */
+	int[] order(int count, long time_ms)
+	{
+		int[] result = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			result[i] = scheduler.next(time_ms).intValue();
+		}
+		return result;
+	}
+
+	@Test
+	void deadlineOrder()
+	{
+		for (int pid : new int[]{0x0C, 0x0D, 0x05, 0x10})
+		{
+			scheduler.add(pid);
+		}
+		scheduler.responded(0x0C, 1000, 300);
+		scheduler.responded(0x0D, 1000, 100);
+		scheduler.responded(0x05, 1000, 1000);
+		scheduler.responded(0x10, 1000, 200);
+		assertSame(scheduler.get(0x0D), scheduler.peek());
+		assertEquals(100, scheduler.getIdleTime(1000));
+		assertEquals(0, scheduler.getIdleTime(1200));
+		assertEquals(4, scheduler.size());
+		for (int pid : new int[]{0x0D, 0x10, 0x0C, 0x05})
+		{
+			assertEquals(pid, scheduler.remove().intValue());
+		}
+		assertEquals(0, scheduler.size());
+		// requested PIDs stay due until their responses are received
+		scheduler.requested(scheduler.get(0x0C), 2100);
+		scheduler.requested(scheduler.get(0x05), 2200);
+		assertEquals(0x0C, scheduler.next(2300).intValue());
+		assertEquals(0x05, scheduler.next(2300).intValue());
+		assertEquals(0x0C, scheduler.peek().intValue());
+		scheduler.responded(0x0C, 2400, 1000);
+		assertEquals(0x05, scheduler.peek().intValue());
+	}
+
+	@Test
+	void tiesInSchedulingOrder()
+	{
+		for (int pid : new int[]{0x0C, 0x0D, 0x05, 0x10})
+		{
+			scheduler.add(pid);
+		}
+		// new PIDs are all due immediately -> order of adding
+		assertEquals(0x0C, scheduler.peek().intValue());
+		int[] first = order(4, 0);
+		assertEquals(0x0C, first[0]);
+		assertEquals(0x0D, first[1]);
+		assertEquals(0x05, first[2]);
+		assertEquals(0x10, first[3]);
+		// same request time -> order of last scheduling
+		scheduler.responded(0x10, 500, 0);
+		scheduler.responded(0x05, 500, 0);
+		scheduler.responded(0x0D, 500, 0);
+		scheduler.responded(0x0C, 500, 0);
+		int[] second = order(4, 500);
+		assertEquals(0x10, second[0]);
+		assertEquals(0x05, second[1]);
+		assertEquals(0x0D, second[2]);
+		assertEquals(0x0C, second[3]);
+	}
+
+	@Test
+	void fixedPids()
+	{
+		for (int pid = 0; pid < 8; pid++)
+		{
+			scheduler.add(pid);
+		}
+		// unknown PID 0x20 is ignored
+		scheduler.setFixedPids(new int[]{6, 2, 0x20});
+		assertEquals(2, scheduler.size());
+		for (int i = 0; i < 6; i++)
+		{
+			int pid = scheduler.next(i).intValue();
+			assertEquals(true, pid == 2 || pid == 6, "PID " + pid);
+		}
+		// responses of other PIDs do not schedule them
+		scheduler.responded(3, 10, 0);
+		assertEquals(2, scheduler.size());
+		scheduler.resetFixedPids();
+		assertEquals(8, scheduler.size());
+		scheduler.clear();
+		assertEquals(0, scheduler.size());
+		assertNull(scheduler.peek());
+		assertNull(scheduler.next(0));
+	}
+
+	@Test
+	void rescheduling()
+	{
+		for (int pid = 1; pid <= 3; pid++)
+		{
+			scheduler.add(pid);
+			scheduler.responded(pid, 0, 100 * pid);
+		}
+		// removed PID is not scheduled until it is restored
+		assertSame(scheduler.get(1), scheduler.remove());
+		assertEquals(2, scheduler.size());
+		assertEquals(2, scheduler.peek().intValue());
+		scheduler.restore(scheduler.get(1));
+		scheduler.restore(scheduler.get(1));
+		assertEquals(3, scheduler.size());
+		assertEquals(1, scheduler.peek().intValue());
+		assertEquals(100, scheduler.get(1).getNextRequest());
+		// later response moves PID behind the others
+		scheduler.responded(1, 250, 100);
+		assertEquals(2, scheduler.peek().intValue());
+		assertEquals(350, scheduler.get(1).getNextRequest());
+		int[] result = order(3, 400);
+		assertEquals(2, result[0]);
+		assertEquals(3, result[1]);
+		assertEquals(1, result[2]);
+		assertEquals(2, scheduler.get(1).getNumResponses());
+		assertEquals(1, scheduler.get(1).getNumRequests());
+	}
+}
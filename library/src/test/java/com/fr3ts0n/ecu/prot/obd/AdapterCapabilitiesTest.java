@@ -0,0 +1,72 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdapterCapabilitiesTest
+{
+	@Test
+	void plainElm()
+	{
+		AdapterCapabilities caps = new AdapterCapabilities();
+		caps.reset("ELM327 v1.5");
+		// plain ELM rejects STI
+		caps.setStnId("?");
+		caps.setDeviceId("?");
+		assertFalse(caps.isStn());
+		assertFalse(caps.isExtendedRequestSupported());
+		assertEquals("", caps.getDeviceId());
+	}
+
+	@Test
+	void stnAdapter()
+	{
+		AdapterCapabilities caps = new AdapterCapabilities();
+		caps.reset("ELM327 v1.4b");
+		caps.setStnId("STN1110 v4.2.1");
+		caps.setDeviceId("OBDLink SX r4.2");
+		assertTrue(caps.isStn());
+		assertTrue(caps.isExtendedRequestSupported());
+		assertEquals("OBDLink SX r4.2", caps.getDeviceId());
+		// old firmware w/o STPX
+		caps.setStnId("STN1110 v3.3.1");
+		assertFalse(caps.isExtendedRequestSupported());
+		// new adapter forgets capabilities
+		caps.reset("ELM327 v1.5");
+		assertFalse(caps.isStn());
+	}
+
+	@Test
+	void parseVersion()
+	{
+		assertEquals(40201, AdapterCapabilities.parseVersion("STN1110 v4.2.1"));
+		assertEquals(50000, AdapterCapabilities.parseVersion("STN2120 v5"));
+		assertEquals(40200, AdapterCapabilities.parseVersion("OBDLink SX r4.2"));
+		assertEquals(0, AdapterCapabilities.parseVersion("STN1110"));
+	}
+
+	@Test
+	void gain()
+	{
+		AdapterCapabilities caps = new AdapterCapabilities();
+		assertEquals(0f, caps.getGain());
+		caps.requestCompleted(false, 40000000L);
+		caps.requestCompleted(true, 20000000L);
+		caps.requestCompleted(true, 30000000L);
+		assertEquals(40000, caps.getMeanCycleTime(false));
+		assertEquals(25000, caps.getMeanCycleTime(true));
+		assertEquals(37.5f, caps.getGain(), 0.01f);
+		// every n-th request is a control sample
+		int samples = 0;
+		for (int i = 0; i < 2 * AdapterCapabilities.CONTROL_INTERVAL; i++)
+		{
+			samples += caps.isControlSample() ? 1 : 0;
+		}
+		assertEquals(2, samples);
+		caps.resetStatistics();
+		assertEquals(0, caps.getNumRequests(true));
+	}
+}
@@ -0,0 +1,77 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.prot.TelegramListener;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CanFrameRingTest
+{
+	/** decoded frames */
+	final Vector<String> frames = new Vector<String>();
+
+	final TelegramListener decoder = new TelegramListener()
+	{
+		@Override
+		public int handleTelegram(char[] buffer)
+		{
+			frames.add(String.valueOf(buffer));
+			return 1;
+		}
+
+		@Override
+		public int handleTelegram(char[] buffer, int offset, int length)
+		{
+			frames.add(String.valueOf(buffer, offset, length));
+			return 1;
+		}
+	};
+
+	@Test
+	void dropWhenFull()
+	{
+		CanFrameRing ring = new CanFrameRing(4);
+		char[] rx = "xx25 0BB8 0000 40xx".toCharArray();
+		for (int i = 0; i < 6; i++)
+		{
+			ring.offer(rx, 2, 15);
+		}
+		assertFalse(ring.offer(new char[CanFrameRing.SLOT_SIZE + 1], 0, CanFrameRing.SLOT_SIZE + 1));
+		assertEquals(4, ring.getSize());
+		assertEquals(7, ring.getNumReceived());
+		assertEquals(2, ring.getNumDropped());
+		assertEquals(1, ring.getNumOverflows());
+	}
+
+	@Test
+	void decodeInOrder() throws InterruptedException
+	{
+		CanFrameRing ring = new CanFrameRing(16);
+		ring.start(decoder);
+		for (int i = 0; i < 1000; i++)
+		{
+			char[] frame = String.format("%03X 01 02", i).toCharArray();
+			while (!ring.offer(frame, 0, frame.length))
+			{
+				Thread.sleep(1);
+			}
+		}
+		for (int i = 0; i < 100 && ring.getNumDecoded() < 1000; i++)
+		{
+			Thread.sleep(10);
+		}
+		ring.stop();
+		assertFalse(ring.isRunning());
+		assertEquals(1000, frames.size());
+		for (int i = 0; i < 1000; i++)
+		{
+			assertEquals(String.format("%03X 01 02", i), frames.get(i));
+		}
+		assertTrue(ring.getNumBatches() <= 1000);
+	}
+}
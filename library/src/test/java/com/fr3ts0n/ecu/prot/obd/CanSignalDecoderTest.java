@@ -0,0 +1,123 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.pvs.PvList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CanSignalDecoderTest
+{
+	static final String DBC =
+		"VERSION \"\"\n"
+		+ "\n"
+		+ "BO_ 513 Engine: 8 ECM\n"
+		+ " SG_ EngineSpeed : 0|16@1+ (0.25,0) [0|16383.75] \"rpm\" Vector__XXX\n"
+		+ " SG_ CoolantTemp : 16|8@1+ (1,-40) [-40|215] \"degC\" Vector__XXX\n"
+		+ " SG_ Torque : 31|12@0- (0.5,0) [-1024|1023.5] \"Nm\" Vector__XXX\n"
+		+ "\n"
+		+ "BO_ 2565799953 Status: 8 BCM\n"
+		+ " SG_ Page M : 0|8@1+ (1,0) [0|255] \"\" Vector__XXX\n"
+		+ " SG_ Voltage m1 : 8|8@1+ (0.1,0) [0|25.5] \"V\" Vector__XXX\n"
+		+ " SG_ Current m2 : 8|8@1- (1,0) [-128|127] \"A\" Vector__XXX\n"
+		+ "\n"
+		+ "CM_ SG_ 513 CoolantTemp \"Engine coolant temperature\";\n";
+
+	CanSignalDecoder decoder;
+
+	@BeforeEach
+	void setUp() throws IOException
+	{
+		decoder = new CanSignalDecoder();
+		decoder.load(new StringReader(DBC));
+	}
+
+	double value(String name)
+	{
+		return decoder.getValue(decoder.getSignalIndex(name));
+	}
+
+	@Test
+	void load()
+	{
+		assertEquals(2, decoder.getNumMessages());
+		assertEquals(6, decoder.getNumSignals());
+		PvList pvs = new PvList();
+		decoder.putPvs(pvs);
+		assertEquals(6, pvs.size());
+		EcuDataPv pv = decoder.getPv(decoder.getSignalIndex("CoolantTemp"));
+		assertEquals("Engine coolant temperature", pv.get(EcuDataPv.FID_DESCRIPT));
+		assertEquals("degC", pv.get(EcuDataPv.FID_UNITS));
+		assertEquals("%.2f", decoder.getPv(decoder.getSignalIndex("EngineSpeed")).get(EcuDataPv.FID_FORMAT));
+	}
+
+	@Test
+	void decodeIntelMotorola()
+	{
+		// speed 0x2EE0 * 0.25 = 3000, coolant 0x82 - 40 = 90, torque 0xF9C (-100) * 0.5
+		char[] frame = "201E02E82F9C0000000".toCharArray();
+		assertEquals(3, decoder.decode(frame, 0, frame.length));
+		assertEquals(3000.0, value("EngineSpeed"));
+		assertEquals(90.0, value("CoolantTemp"));
+		assertEquals(-50.0, value("Torque"));
+		assertEquals(3000.0f, decoder.getPv(decoder.getSignalIndex("EngineSpeed")).get(EcuDataPv.FIELDS[EcuDataPv.FID_VALUE]));
+		// unknown ID / invalid frames
+		assertEquals(0, decoder.decode("7E8 03 41 0D 00".toCharArray(), 0, 15));
+		assertEquals(-1, decoder.decode("NO DATA".toCharArray(), 0, 7));
+	}
+
+	@Test
+	void decodeMultiplexed()
+	{
+		// 29 bit ID with spaces
+		char[] frame = "18 EF 00 11 01 7B".toCharArray();
+		assertEquals(2, decoder.decode(frame, 0, frame.length));
+		assertEquals(12.3, value("Voltage"), 1e-9);
+		assertTrue(Double.isNaN(value("Current")));
+		frame = "18EF001102FE".toCharArray();
+		assertEquals(2, decoder.decode(frame, 0, frame.length));
+		assertEquals(-2.0, value("Current"));
+		assertEquals(12.3, value("Voltage"), 1e-9);
+	}
+
+	/**
+	 * decoding of changing signals w/o PV listeners does not allocate
+	 */
+	@Test
+	void decodeWithoutAllocation()
+	{
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)
+		    || !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported())
+		{
+			// allocation can not be measured on this VM
+			return;
+		}
+		com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+		allocation.setThreadAllocatedMemoryEnabled(true);
+		char[][] frames = {"201E02E82F9C0000000".toCharArray(),
+		                   "201E12E83F9C0000000".toCharArray()};
+		// warm up (class loading, JIT)
+		for (int i = 0; i < 20000; i++)
+		{
+			decoder.decode(frames[i & 1], 0, frames[i & 1].length);
+		}
+		long threadId = Thread.currentThread().getId();
+		long before = allocation.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < 10000; i++)
+		{
+			decoder.decode(frames[i & 1], 0, frames[i & 1].length);
+		}
+		long allocated = allocation.getThreadAllocatedBytes(threadId) - before;
+		// every frame changes 2 signals -> boxing would allocate > 300kB
+		assertTrue(allocated < 1024, "allocated " + allocated + " bytes");
+		assertEquals(3000.25, value("EngineSpeed"));
+	}
+}
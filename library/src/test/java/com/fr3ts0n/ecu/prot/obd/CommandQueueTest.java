@@ -0,0 +1,80 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandQueueTest
+{
+	@Test
+	void priorityOrder()
+	{
+		CommandQueue queue = new CommandQueue();
+		queue.push(CommandQueue.Priority.DISCOVERY, "0120");
+		queue.push(CommandQueue.Priority.POLL, "010D");
+		queue.push(CommandQueue.Priority.USER, "03");
+		// sequences within a class are sent in reverse order
+		queue.push(CommandQueue.Priority.INIT, "ATH0");
+		queue.push(CommandQueue.Priority.INIT, "0100");
+		queue.push(CommandQueue.Priority.INIT, "ATH1");
+		assertEquals(6, queue.size());
+		assertEquals("ATH1", queue.pop());
+		assertEquals("0100", queue.pop());
+		assertEquals("ATH0", queue.pop());
+		assertEquals("03", queue.pop());
+		assertEquals("010D", queue.pop());
+		assertEquals("0120", queue.pop());
+		assertNull(queue.pop());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	void duplicates()
+	{
+		CommandQueue queue = new CommandQueue();
+		queue.push(CommandQueue.Priority.USER, "03");
+		queue.push(CommandQueue.Priority.USER, "07");
+		queue.push(CommandQueue.Priority.USER, "03");
+		assertEquals(2, queue.size(CommandQueue.Priority.USER));
+		assertEquals("03", queue.pop());
+		assertEquals("07", queue.pop());
+		// init sequences may contain identical commands
+		queue.push(CommandQueue.Priority.INIT, "ATH0");
+		queue.push(CommandQueue.Priority.INIT, "0100");
+		queue.push(CommandQueue.Priority.INIT, "ATH0");
+		assertEquals(3, queue.size());
+		assertEquals("ATH0", queue.pop());
+		assertEquals("0100", queue.pop());
+		assertEquals("ATH0", queue.pop());
+	}
+
+	@Test
+	void deadlineAndDepth() throws InterruptedException
+	{
+		CommandQueue queue = new CommandQueue();
+		queue.push(CommandQueue.Priority.POLL, "010C", 1);
+		queue.push(CommandQueue.Priority.POLL, "010D", 0);
+		Thread.sleep(5);
+		assertEquals("010D", queue.pop());
+		assertNull(queue.pop());
+		assertEquals(1, queue.getNumDropped(CommandQueue.Priority.POLL));
+		assertEquals(1, queue.getNumSent(CommandQueue.Priority.POLL));
+		assertTrue(queue.getMaxWaitTime(CommandQueue.Priority.POLL) >= 5);
+
+		// oldest commands are dropped from full queue
+		for (int i = 0; i <= CommandQueue.MAX_DEPTH; i++)
+		{
+			queue.push(CommandQueue.Priority.DISCOVERY, String.format("01%02X", i));
+		}
+		assertEquals(CommandQueue.MAX_DEPTH, queue.size());
+		String cmd = null;
+		for (int i = 0; i < CommandQueue.MAX_DEPTH; i++)
+		{
+			cmd = queue.pop();
+		}
+		assertEquals("0101", cmd);
+		assertEquals(1, queue.getNumDropped(CommandQueue.Priority.DISCOVERY));
+	}
+}
@@ -0,0 +1,80 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.ecu.Conversion;
+import com.fr3ts0n.ecu.EcuConversions;
+import com.fr3ts0n.ecu.EcuDataItem;
+import com.fr3ts0n.ecu.EcuDataPv;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EcuContextTest
+{
+	@Test
+	void addresses()
+	{
+		EcuContext ecu = new EcuContext(0x7E9);
+		assertEquals(0x7E1, ecu.getRequestAddress());
+		assertTrue(EcuContext.isPhysicalAddress(0x7E8));
+		assertFalse(EcuContext.isPhysicalAddress(0x7DF));
+		assertFalse(EcuContext.isPhysicalAddress(0x18DAF110));
+	}
+
+	@Test
+	void separatePvs()
+	{
+		EcuContext engine = new EcuContext(0x7E8);
+		EcuContext gearbox = new EcuContext(0x7E9);
+		Vector<EcuDataItem> common = ObdProt.dataItems.getPidDataItems(ObdProt.OBD_SVC_DATA, 0x0D);
+		Vector<EcuDataItem> engineItems = engine.getPidDataItems(ObdProt.OBD_SVC_DATA, 0x0D);
+		Vector<EcuDataItem> gearboxItems = gearbox.getPidDataItems(ObdProt.OBD_SVC_DATA, 0x0D);
+		assertEquals(common.size(), engineItems.size());
+		assertSame(engineItems, engine.getPidDataItems(ObdProt.OBD_SVC_DATA, 0x0D));
+
+		EcuDataPv enginePv = engineItems.get(0).getPv();
+		EcuDataPv gearboxPv = gearboxItems.get(0).getPv();
+		assertNotSame(common.get(0).getPv(), enginePv);
+		assertEquals("7E8:0D.0.0", enginePv.toString());
+		assertEquals("7E9:0D.0.0", gearboxPv.toString());
+		assertEquals("0D.0.0", common.get(0).getPv().toString());
+
+		// vehicle speed 0x32 / 0x14 km/h
+		EcuDataItem.cnvSystem = EcuDataItem.SYSTEM_METRIC;
+		engine.updateDataItems(ObdProt.OBD_SVC_DATA, 0x0D, new char[] { 0x32 });
+		gearbox.updateDataItems(ObdProt.OBD_SVC_DATA, 0x0D, new char[] { 0x14 });
+		assertEquals(50, ((Number) enginePv.get(EcuDataPv.FID_VALUE)).intValue());
+		assertEquals(20, ((Number) gearboxPv.get(EcuDataPv.FID_VALUE)).intValue());
+
+		// unknown PID
+		assertEquals(null, engine.getPidDataItems(ObdProt.OBD_SVC_DATA, 0xFF));
+	}
+
+	/**
+	 * items of unknown PIDs are kept within the context
+	 */
+	@Test
+	void unknownPid()
+	{
+		EcuContext engine = new EcuContext(0x7E8);
+		Conversion[] cnvs = {EcuConversions.dfltCnv, EcuConversions.dfltCnv};
+		EcuDataItem item = new EcuDataItem(0x7D, 0, 0, 0, 32, 0xFFFFFFFF, cnvs,
+		                                   "%#08x", null, null, 0, "PID 7D", "PID_7D");
+		Vector<EcuDataItem> items = engine.addPidDataItem(ObdProt.OBD_SVC_DATA, item);
+		assertSame(items, engine.getPidDataItems(ObdProt.OBD_SVC_DATA, 0x7D));
+		assertEquals("7E8:7D.0.0", items.get(0).getPv().toString());
+		// common definitions and other ECUs are not affected
+		assertNull(ObdProt.dataItems.getPidItems(ObdProt.OBD_SVC_DATA, 0x7D));
+		assertNull(new EcuContext(0x7E9).getPidDataItems(ObdProt.OBD_SVC_DATA, 0x7D));
+
+		engine.updateDataItems(ObdProt.OBD_SVC_DATA, 0x7D, "417D12345678".toCharArray(), 4, 8);
+		assertEquals(0x12345678, ((Number) items.get(0).getPv().get(EcuDataPv.FID_VALUE)).intValue());
+	}
+}
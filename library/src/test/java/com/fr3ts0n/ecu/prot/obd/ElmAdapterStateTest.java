@@ -0,0 +1,57 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ElmAdapterStateTest
+{
+	@Test
+	void redundantCommands()
+	{
+		ElmAdapterState state = new ElmAdapterState();
+		// unknown settings are never redundant
+		assertFalse(state.isRedundant("ATH0"));
+		state.sent("ATH0");
+		state.sent("ATSP0");
+		state.sent("ATCRA7E8");
+		state.sent("ATST32");
+		assertTrue(state.isRedundant("ATH0"));
+		assertFalse(state.isRedundant("ATH1"));
+		assertTrue(state.isRedundant("ATSP0"));
+		assertFalse(state.isRedundant("ATSPA0"));
+		assertTrue(state.isRedundant("ATCRA7E8"));
+		assertFalse(state.isRedundant("ATCRA"));
+		assertTrue(state.isRedundant("ATST32"));
+		assertEquals("32", state.get(ElmProt.CMD.SETTIMEOUT));
+		// OBD requests and neutral commands don't change settings
+		assertFalse(state.isRedundant("0100"));
+		state.sent("0100");
+		state.sent("ATI");
+		state.sent("ATCRA");
+		assertEquals("", state.get(ElmProt.CMD.SETCANRXFLT));
+		assertEquals(4, state.getNumSaved());
+		assertEquals(5, state.getNumSent());
+	}
+
+	@Test
+	void invalidation()
+	{
+		ElmAdapterState state = new ElmAdapterState();
+		state.sent("ATH0");
+		state.sent("ATS0");
+		// rejected command
+		assertTrue(state.isRedundant("ATS0"));
+		state.rejected();
+		assertFalse(state.isRedundant("ATS0"));
+		assertTrue(state.isRedundant("ATH0"));
+		// reset and unknown commands
+		state.sent("ATWS");
+		assertFalse(state.isRedundant("ATH0"));
+		state.sent("ATH0");
+		state.sent("ATPP2CSV01");
+		assertFalse(state.isRedundant("ATH0"));
+	}
+}
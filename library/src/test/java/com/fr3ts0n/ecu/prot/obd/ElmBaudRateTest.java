@@ -0,0 +1,161 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ElmBaudRateTest
+{
+	static final int DEFAULT_RATE = 38400;
+
+	ElmEmulator emulator;
+	VirtualSerialLine[] line;
+	ElmBaudRate baudRate;
+
+	@BeforeEach
+	void setUp()
+	{
+		ElmEmulator.Config config = new ElmEmulator.Config();
+		config.latencyMin = 0;
+		config.latencyMax = 0;
+		emulator = new ElmEmulator(config);
+		// host end [0], adapter end [1]
+		line = VirtualSerialLine.createPair(DEFAULT_RATE);
+		emulator.startSession(line[1]);
+		baudRate = new ElmBaudRate();
+	}
+
+	@AfterEach
+	void tearDown()
+	{
+		line[0].close();
+		emulator.stop();
+	}
+
+	/**
+	 * send request on host end and read response up to the prompt
+	 * @return response w/o line endings and prompt, null on timeout
+	 */
+	String request(String cmd) throws IOException
+	{
+		line[0].write((cmd + "\r").getBytes());
+		return readResponse();
+	}
+
+	/**
+	 * read response up to the prompt
+	 * @return response w/o line endings and prompt, null on timeout
+	 */
+	String readResponse() throws IOException
+	{
+		StringBuilder rsp = new StringBuilder();
+		byte[] buffer = new byte[1];
+		while (line[0].read(buffer, 1000) > 0)
+		{
+			if (buffer[0] == '>')
+			{
+				return rsp.toString();
+			}
+			if (buffer[0] != '\r' && buffer[0] != '\n')
+			{
+				rsp.append((char) buffer[0]);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * adapter rate is derived from ELM clock, so it may differ slightly
+	 */
+	void assertAdapterRate(int expected)
+	{
+		assertEquals(expected, line[1].getBaudRate(), expected / 50);
+	}
+
+	@Test
+	void upgrade() throws IOException
+	{
+		assertEquals(500000, baudRate.upgrade(line[0], "adapter", 500000));
+		assertEquals(500000, line[0].getBaudRate());
+		assertAdapterRate(500000);
+		assertEquals(500000, baudRate.getStableRate("adapter"));
+		assertEquals("ATI" + ElmEmulator.ELM_ID, request("ATI"));
+		// full reset restores default baud rate
+		line[0].write("ATZ\r".getBytes());
+		line[0].setBaudRate(DEFAULT_RATE);
+		assertEquals("ATZ" + ElmEmulator.ELM_ID, readResponse());
+		assertEquals("ATI" + ElmEmulator.ELM_ID, request("ATI"));
+	}
+
+	@Test
+	void maxRateOfHost() throws IOException
+	{
+		assertEquals(115200, baudRate.upgrade(line[0], "adapter", 200000));
+		assertAdapterRate(115200);
+	}
+
+	@Test
+	void fallbackOnHandshakeFailure() throws IOException
+	{
+		// line does not transport rates above 115200
+		line[0].setMaxRate(115200);
+		assertEquals(115200, baudRate.upgrade(line[0], "adapter", 500000));
+		assertAdapterRate(115200);
+		assertEquals("ATI" + ElmEmulator.ELM_ID, request("ATI"));
+	}
+
+	@Test
+	void rollbackOnVerificationFailure() throws IOException
+	{
+		// handshake may pass, but verification fails from 250000 on
+		line[0].setUnreliableRate(250000);
+		assertEquals(115200, baudRate.upgrade(line[0], "adapter", 500000));
+		assertAdapterRate(115200);
+		assertEquals(115200, baudRate.getStableRate("adapter"));
+	}
+
+	@Test
+	void rememberedStableRate() throws IOException
+	{
+		baudRate.setStableRates("adapter=250000\nother=57600\n");
+		assertEquals(250000, baudRate.upgrade(line[0], "adapter", 500000));
+		assertAdapterRate(250000);
+		// host reconnects with default rate, adapter still runs upgraded
+		line[0].setBaudRate(DEFAULT_RATE);
+		assertEquals(250000, baudRate.upgrade(line[0], "adapter", 500000));
+		assertEquals("ATI" + ElmEmulator.ELM_ID, request("ATI"));
+	}
+
+	@Test
+	void unstableRememberedRate() throws IOException
+	{
+		baudRate.setStableRates("adapter=500000\n");
+		line[0].setMaxRate(250000);
+		assertEquals(250000, baudRate.upgrade(line[0], "adapter", 500000));
+		assertEquals(250000, baudRate.getStableRate("adapter"));
+	}
+
+	@Test
+	void adapterNotResponding() throws IOException
+	{
+		emulator.stop();
+		line[1].close();
+		VirtualSerialLine[] silent = VirtualSerialLine.createPair(DEFAULT_RATE);
+		assertEquals(DEFAULT_RATE, baudRate.upgrade(silent[0], "adapter", 500000));
+		assertEquals("", baudRate.getStableRates());
+	}
+
+	@Test
+	void stableRates()
+	{
+		baudRate.setStableRates("usb:0403:6001=115200\ninvalid\nbt=fast\n/dev/ttyS0=500000\n");
+		assertEquals(115200, baudRate.getStableRate("usb:0403:6001"));
+		assertEquals(500000, baudRate.getStableRate("/dev/ttyS0"));
+		assertEquals(0, baudRate.getStableRate("bt"));
+		assertEquals("/dev/ttyS0=500000\nusb:0403:6001=115200\n", baudRate.getStableRates());
+	}
+}
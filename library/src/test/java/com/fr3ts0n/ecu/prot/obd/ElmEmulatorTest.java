@@ -0,0 +1,169 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.prot.StreamHandler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ElmEmulatorTest
+{
+	ElmEmulator emulator;
+	Socket socket;
+
+	@BeforeEach
+	void setUp() throws IOException
+	{
+		ElmEmulator.Config config = new ElmEmulator.Config();
+		config.ecus.clear();
+		config.ecus.add(new ElmEmulator.Ecu(0x7E8).setPids(0x04, 0x0C).setDtcs("P0100"));
+		config.ecus.add(new ElmEmulator.Ecu(0x7E9).setPids(0x0D));
+		config.latencyMin = 0;
+		config.latencyMax = 0;
+		emulator = new ElmEmulator(config);
+		socket = new Socket("localhost", emulator.start(0));
+		socket.setSoTimeout(2000);
+		assertEquals("ATE0OK", request("ATE0"));
+		assertEquals("OK", request("ATS0"));
+	}
+
+	@AfterEach
+	void tearDown() throws IOException
+	{
+		socket.close();
+		emulator.stop();
+	}
+
+	/**
+	 * send request and read response up to the prompt
+	 * @return response w/o line endings and prompt
+	 */
+	String request(String cmd) throws IOException
+	{
+		OutputStream out = socket.getOutputStream();
+		out.write((cmd + "\r").getBytes());
+		out.flush();
+		InputStream in = socket.getInputStream();
+		StringBuilder rsp = new StringBuilder();
+		int chr;
+		while ((chr = in.read()) != '>')
+		{
+			if (chr != '\r' && chr != '\n')
+			{
+				rsp.append((char) chr);
+			}
+		}
+		return rsp.toString();
+	}
+
+	@Test
+	void ecuDetection() throws IOException
+	{
+		assertEquals("OK", request("ATH1"));
+		// PIDs 04,0C from 7E8, PID 0D from 7E9
+		assertEquals("SEARCHING...7E806410010100000" + "7E906410000080000", request("0100"));
+	}
+
+	@Test
+	void multiFrameResponse() throws IOException
+	{
+		// only ECU 7E8 responds
+		assertEquals("OK", request("ATCRA7E8"));
+		assertEquals("SEARCHING...410010100000", request("0100"));
+		// VIN response of 0x14 bytes
+		assertEquals("0140:4902015746301:58585847434458" + "2:31323334353637",
+		             request("0902"));
+		// multi PID request
+		assertEquals(12, request("01040C").length());
+		assertEquals("43010100", request("03"));
+		assertEquals(4, emulator.getNumRequests());
+	}
+
+	@Test
+	void baudRateChangeOnSocket() throws IOException
+	{
+		// baud rate is not adjustable on network connections
+		assertEquals("?", request("ATBRD08"));
+		assertEquals("OK", request("ATS0"));
+	}
+
+	@Test
+	void stnDialect() throws IOException
+	{
+		// plain ELM rejects STN commands
+		assertEquals("?", request("STI"));
+		assertEquals("?", request("STPX D:0100"));
+
+		ElmEmulator.Config config = new ElmEmulator.Config();
+		config.ecus.clear();
+		config.ecus.add(new ElmEmulator.Ecu(0x7E8).setPids(0x04, 0x0C));
+		config.ecus.add(new ElmEmulator.Ecu(0x7E9).setPids(0x0D));
+		config.latencyMin = 0;
+		config.latencyMax = 0;
+		config.stnId = "STN1110 v4.2.1";
+		ElmEmulator stn = new ElmEmulator(config);
+		socket.close();
+		socket = new Socket("localhost", stn.start(0));
+		socket.setSoTimeout(2000);
+		try
+		{
+			assertEquals("ATE0OK", request("ATE0"));
+			assertEquals("OK", request("ATS0"));
+			assertEquals("OK", request("ATH1"));
+			assertEquals("STN1110 v4.2.1", request("STI"));
+			assertEquals("OBDLink SX r4.2", request("STDI"));
+			// physical request w/o header switch
+			assertEquals("SEARCHING...7E906410000080000", request("STPX H:7E1, D:0100"));
+			// functional request, adapter stops after first response
+			assertEquals("7E806410010100000", request("STPX H:7DF, D:0100, R:1"));
+			assertEquals("?", request("STPX R:1"));
+		}
+		finally
+		{
+			stn.stop();
+		}
+	}
+
+	/**
+	 * ELM protocol detects the ECU of an emulator on the loopback address
+	 * (as used for demo mode)
+	 */
+	@Test
+	void elmProtSession() throws Exception
+	{
+		ElmEmulator local = new ElmEmulator(new ElmEmulator.Config());
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		Socket client = new Socket(loopback, local.start(loopback, 0));
+		StreamHandler ser = new StreamHandler(client.getInputStream(), client.getOutputStream());
+		ElmProt elm = new ElmProt();
+		ser.setMessageHandler(elm);
+		elm.addTelegramWriter(ser);
+		Thread rxThread = new Thread(ser);
+		rxThread.setDaemon(true);
+		rxThread.start();
+		try
+		{
+			elm.reset();
+			for (int i = 0; i < 500 && elm.getStatus() != ElmProt.STAT.ECU_DETECTED; i++)
+			{
+				Thread.sleep(10);
+			}
+			assertEquals(ElmProt.STAT.ECU_DETECTED, elm.getStatus());
+			assertTrue(local.getNumResponses() > 0);
+		}
+		finally
+		{
+			client.close();
+			local.stop();
+		}
+	}
+}
@@ -1,12 +1,20 @@
 package com.fr3ts0n.ecu.prot.obd;
 
 import com.fr3ts0n.ecu.EcuDataItem;
+import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.prot.TelegramWriter;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ElmProtTest
 	implements PvChangeListener
@@ -52,6 +60,36 @@ class ElmProtTest
 		// assertEquals(1, prot.getNextSupportedPid());
 	}
 
+	@Test
+	void handleTelegram_BufferSection()
+	{
+		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+		// PID message within a larger receive buffer
+		char[] rxBuffer = "4900F0000000\r4900A5000000\r>".toCharArray();
+		prot.handleTelegram(rxBuffer, 13, 12);
+
+		// A5000000 -> PID's 1,3,6,8 set
+		assertEquals(1, prot.getNextSupportedPid());
+		assertEquals(3, prot.getNextSupportedPid());
+		assertEquals(6, prot.getNextSupportedPid());
+		assertEquals(8, prot.getNextSupportedPid());
+	}
+
+	@Test
+	void handleTelegram_ReusedRxBuffer()
+	{
+		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+		// longer message leaves its data in receive buffer
+		prot.handleTelegram("490001F0000000".toCharArray());
+		prot.handleTelegram("4900A5000000".toCharArray());
+
+		// only data of current message is evaluated: A5000000 -> PID's 1,3,6,8 set
+		assertEquals(1, prot.getNextSupportedPid());
+		assertEquals(3, prot.getNextSupportedPid());
+		assertEquals(6, prot.getNextSupportedPid());
+		assertEquals(8, prot.getNextSupportedPid());
+	}
+
 	/**
 	 * PID message with trailing padding response bytes
 	 * - either from Adapter, or from vehicle OBD?
@@ -115,8 +153,8 @@ class ElmProtTest
 	@Test
 	void handleTelegram_Vin_ISO_Multiline()
 	{
-		EcuDataItem itm = prot.dataItems.getPidDataItems(0x09, 0x02).get(1);
-		itm.pv.addPvChangeListener(this);
+		EcuDataItem itm = prot.getPidDataItems(0x09, 0x02).get(1);
+		itm.getPv().addPvChangeListener(this);
 
 		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
 
@@ -131,7 +169,7 @@ class ElmProtTest
 		// VIN should match expected one ...
 		assertEquals("WAUZZZ8P46A005544", result[0].toString());
 
-		itm.pv.removePvChangeListener(this);
+		itm.getPv().removePvChangeListener(this);
 	}
 
 	/**
@@ -141,8 +179,8 @@ class ElmProtTest
 	@Test
 	void handleTelegram_Vin_Multiline()
 	{
-		EcuDataItem itm = prot.dataItems.getPidDataItems(0x09, 0x02).get(1);
-		itm.pv.addPvChangeListener(this);
+		EcuDataItem itm = prot.getPidDataItems(0x09, 0x02).get(1);
+		itm.getPv().addPvChangeListener(this);
 
 		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
 
@@ -156,7 +194,7 @@ class ElmProtTest
 		// VIN should match expected one ...
 		assertEquals("0123456789ABCDEFG", result[0].toString());
 
-		itm.pv.removePvChangeListener(this);
+		itm.getPv().removePvChangeListener(this);
 	}
 
 	/**
@@ -166,8 +204,8 @@ class ElmProtTest
 	@Test
 	void handleTelegram_CalId_Multiline()
 	{
-		EcuDataItem itm = prot.dataItems.getPidDataItems(0x09, 0x04).get(1);
-		itm.pv.addPvChangeListener(this);
+		EcuDataItem itm = prot.getPidDataItems(0x09, 0x04).get(1);
+		itm.getPv().addPvChangeListener(this);
 
 		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
 
@@ -181,7 +219,7 @@ class ElmProtTest
 		// VIN should match expected one ...
 		assertEquals("GSPA-12345678900", result[0].toString());
 
-		itm.pv.removePvChangeListener(this);
+		itm.getPv().removePvChangeListener(this);
 	}
 
 	/**
@@ -192,14 +230,14 @@ class ElmProtTest
 	void handleTelegram_ReadDfc_Empty()
 	{
 		prot.setService(ObdProt.OBD_SVC_READ_CODES);
-		ObdProt.tCodes.clear();
+		prot.tCodes.clear();
 
 		// PID message without optional message counter
 		// send CAL-IDs "GSPA..." without length id
 		prot.handleTelegram("430000000000".toCharArray());
 
-		assertEquals(1, ObdProt.tCodes.size());
-		assertEquals(true, ObdProt.tCodes.containsKey(0x0000));
+		assertEquals(1, prot.tCodes.size());
+		assertEquals(true, prot.tCodes.containsKey(0x0000));
 	}
 
 	/**
@@ -210,14 +248,14 @@ class ElmProtTest
 	void handleTelegram_ReadDfc_ShortEmpty()
 	{
 		prot.setService(ObdProt.OBD_SVC_READ_CODES);
-		ObdProt.tCodes.clear();
+		prot.tCodes.clear();
 
 		// PID message without optional message counter
 		// send CAL-IDs "GSPA..." without length id
 		prot.handleTelegram("43000000".toCharArray());
 
-		assertEquals(1, ObdProt.tCodes.size());
-		assertEquals(true, ObdProt.tCodes.containsKey(0x0000));
+		assertEquals(1, prot.tCodes.size());
+		assertEquals(true, prot.tCodes.containsKey(0x0000));
 	}
 
 	/**
@@ -228,14 +266,14 @@ class ElmProtTest
 	void handleTelegram_ReadDfc_ISO_Empty()
 	{
 		prot.setService(ObdProt.OBD_SVC_READ_CODES);
-		ObdProt.tCodes.clear();
+		prot.tCodes.clear();
 
 		// PID message without optional message counter
 		// send CAL-IDs "GSPA..." without length id
 		prot.handleTelegram("43000000000000".toCharArray());
 
-		assertEquals(1, ObdProt.tCodes.size());
-		assertEquals(true, ObdProt.tCodes.containsKey(0x0000));
+		assertEquals(1, prot.tCodes.size());
+		assertEquals(true, prot.tCodes.containsKey(0x0000));
 	}
 	/**
 	 * Read 3 DFCs with DFC count
@@ -245,15 +283,175 @@ class ElmProtTest
 	void handleTelegram_ReadDfc_ISO()
 	{
 		prot.setService(ObdProt.OBD_SVC_READ_CODES);
-		ObdProt.tCodes.clear();
+		prot.tCodes.clear();
 
 		// 3 DFCs with dfc count
 		prot.handleTelegram("430301230456".toCharArray());
 		prot.handleTelegram("4307890000".toCharArray());
 
-		assertEquals(3, ObdProt.tCodes.size());
-		assertEquals(true, ObdProt.tCodes.containsKey(0x0123));
-		assertEquals(true, ObdProt.tCodes.containsKey(0x0456));
-		assertEquals(true, ObdProt.tCodes.containsKey(0x0789));
+		assertEquals(3, prot.tCodes.size());
+		assertEquals(true, prot.tCodes.containsKey(0x0123));
+		assertEquals(true, prot.tCodes.containsKey(0x0456));
+		assertEquals(true, prot.tCodes.containsKey(0x0789));
+	}
+
+	/**
+	 * Multi PID request with combined response (CAN)
+	 */
+	@Test
+	void handleTelegram_MultiPid()
+	{
+		EcuDataPv rpm = prot.getPidDataItems(0x01, 0x0C).get(0).getPv();
+		EcuDataPv load = prot.getPidDataItems(0x01, 0x04).get(0).getPv();
+
+		prot.setService(ObdProt.OBD_SVC_DATA);
+
+		// complete response: RPM 0x1AF8 -> 1726/min, Load 0xFF -> 100%
+		prot.writeMultiPidTelegram(ObdProt.OBD_SVC_DATA, new int[]{0x0C, 0x04});
+		assertFalse(prot.isMultiPidResponseComplete());
+		prot.handleTelegram("410C1AF804FF".toCharArray());
+		assertTrue(prot.isMultiPidResponseComplete());
+		assertEquals(1726.0, ((Number) rpm.get(EcuDataPv.FID_VALUE)).doubleValue(), 0.1);
+		assertEquals(100.0, ((Number) load.get(EcuDataPv.FID_VALUE)).doubleValue(), 0.1);
+
+		// truncated response: load is missing
+		prot.writeMultiPidTelegram(ObdProt.OBD_SVC_DATA, new int[]{0x0C, 0x04});
+		prot.handleTelegram("410C1AFC".toCharArray());
+		assertFalse(prot.isMultiPidResponseComplete());
+		assertEquals(1727.0, ((Number) rpm.get(EcuDataPv.FID_VALUE)).doubleValue(), 0.1);
+
+		// single PID is requested as regular request
+		prot.writeMultiPidTelegram(ObdProt.OBD_SVC_DATA, new int[]{0x0C});
+		assertTrue(prot.isMultiPidResponseComplete());
+	}
+
+	/**
+	 * Several protocol instances don't share session data
+	 */
+	@Test
+	void independentSessions()
+	{
+		ElmProt car = new ElmProt();
+		ElmProt van = new ElmProt();
+		car.setService(ObdProt.OBD_SVC_DATA);
+		van.setService(ObdProt.OBD_SVC_DATA);
+		// PID 0D supported by car only
+		car.handleTelegram("410000080000".toCharArray());
+		assertEquals(0x0D, car.getNextSupportedPid());
+		assertEquals(0, van.getPidStatistics().size());
+		assertTrue(car.PidPvs.containsKey("0D.0.0"));
+		assertFalse(van.PidPvs.containsKey("0D.0.0"));
+
+		// vehicle speed 0x32 / 0x14 km/h
+		EcuDataItem.cnvSystem = EcuDataItem.SYSTEM_METRIC;
+		car.handleTelegram("410D32".toCharArray());
+		van.handleTelegram("410D14".toCharArray());
+		EcuDataPv carSpeed = car.getPidDataItems(0x01, 0x0D).get(0).getPv();
+		EcuDataPv vanSpeed = van.getPidDataItems(0x01, 0x0D).get(0).getPv();
+		assertEquals(50, ((Number) carSpeed.get(EcuDataPv.FID_VALUE)).intValue());
+		assertEquals(20, ((Number) vanSpeed.get(EcuDataPv.FID_VALUE)).intValue());
+
+		// adapter settings
+		car.disableCommands(Collections.singleton("ATCRA"));
+		assertFalse(car.isEnabled(ElmProt.CMD.SETCANRXFLT));
+		assertTrue(van.isEnabled(ElmProt.CMD.SETCANRXFLT));
+	}
+
+	/**
+	 * Unknown PIDs don't change the shared data item definitions
+	 */
+	@Test
+	void handleTelegram_UnknownPid()
+	{
+		ElmProt elm = new ElmProt();
+		elm.setService(ObdProt.OBD_SVC_DATA);
+		// PID 7D supported, but not defined
+		elm.handleTelegram("416000000008".toCharArray());
+		assertTrue(elm.PidPvs.containsKey("7D.0.0"));
+		assertEquals(null, ObdProt.dataItems.getPidItems(ObdProt.OBD_SVC_DATA, 0x7D));
+		assertFalse(new ElmProt().PidPvs.containsKey("7D.0.0"));
+	}
+
+	/**
+	 * adapter which records sent telegrams
+	 */
+	static class Recorder implements TelegramWriter
+	{
+		final List<String> sent = new ArrayList<>();
+
+		@Override
+		public int writeTelegram(char[] buffer)
+		{
+			sent.add(String.valueOf(buffer));
+			return buffer.length;
+		}
+
+		@Override
+		public int writeTelegram(char[] buffer, int type, Object id)
+		{
+			return writeTelegram(buffer);
+		}
+
+		String last()
+		{
+			return sent.isEmpty() ? "" : sent.get(sent.size() - 1);
+		}
+	}
+
+	/**
+	 * respond with prompts until specified telegram is sent
+	 */
+	static void promptUntil(ElmProt elm, Recorder adapter, String telegram)
+	{
+		for (int i = 0; i < 50 && !adapter.last().equals(telegram); i++)
+		{
+			elm.handleTelegram(">".toCharArray());
+		}
+		assertEquals(telegram, adapter.last(), adapter.sent.toString());
+	}
+
+	/**
+	 * Interleaved multi frame responses of several ECUs to functional requests
+	 * are received with headers and reassembled per response CAN ID
+	 */
+	@Test
+	void handleTelegram_InterleavedEcus()
+	{
+		ElmProt elm = new ElmProt();
+		Recorder adapter = new Recorder();
+		elm.addTelegramWriter(adapter);
+		// adapter identification starts initialisation
+		elm.handleTelegram("ELM327 v1.5".toCharArray());
+		// ECU detection with headers
+		promptUntil(elm, adapter, "0100");
+		elm.handleTelegram("7E8064100BE3EB811".toCharArray());
+		elm.handleTelegram("7E906410080000001".toCharArray());
+		for (int i = 0; i < 10 && elm.getStatus() != ElmProt.STAT.ECU_DETECTED; i++)
+		{
+			elm.handleTelegram(">".toCharArray());
+		}
+		assertEquals(ElmProt.STAT.ECU_DETECTED, elm.getStatus());
+
+		// vehicle info is requested with headers
+		elm.setService(ObdProt.OBD_SVC_VEH_INFO);
+		promptUntil(elm, adapter, "ATH1");
+		// VIN (ECU 0x7E8) and ECU name (ECU 0x7E9) interleaved
+		elm.handleTelegram("7E81014490201574630".toCharArray());
+		elm.handleTelegram("7E91017490A0145434D".toCharArray());
+		elm.handleTelegram("7E82158585847434458".toCharArray());
+		elm.handleTelegram("7E9212D456E67696E65".toCharArray());
+		elm.handleTelegram("7E922436F6E74726F6C".toCharArray());
+		elm.handleTelegram("7E82231323334353637".toCharArray());
+		elm.handleTelegram("7E923000000AAAAAAAA".toCharArray());
+		elm.handleTelegram(">".toCharArray());
+
+		EcuDataPv vin = elm.getPidDataItems(0x09, 0x02).get(1).getPv();
+		assertEquals("WF0XXXGCDX1234567", String.valueOf(vin.get(EcuDataPv.FID_VALUE)).trim());
+		EcuDataPv ecuName = elm.getPidDataItems(0x09, 0x0A).get(0).getPv();
+		assertEquals("ECM-EngineControl", String.valueOf(ecuName.get(EcuDataPv.FID_VALUE)).trim());
+
+		// headers are disabled for data service
+		elm.setService(ObdProt.OBD_SVC_DATA);
+		promptUntil(elm, adapter, "ATH0");
 	}
-}
\ No newline at end of file
+}
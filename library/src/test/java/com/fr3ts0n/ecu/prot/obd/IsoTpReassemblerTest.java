@@ -0,0 +1,90 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class IsoTpReassemblerTest
+{
+	static IsoTpReassembler.Result addLine(IsoTpReassembler isoTp, String line)
+	{
+		char[] buffer = line.toCharArray();
+		return isoTp.addIndexedLine(buffer, 0, buffer.length, line.indexOf(':'));
+	}
+
+	static IsoTpReassembler.Result addFrame(IsoTpReassembler isoTp, String frame)
+	{
+		char[] buffer = frame.toCharArray();
+		return isoTp.addFrame(buffer, 0, buffer.length);
+	}
+
+	static String payload(IsoTpReassembler isoTp)
+	{
+		return String.valueOf(isoTp.getPayload(), 0, isoTp.getLength());
+	}
+
+	@Test
+	void indexedLines()
+	{
+		IsoTpReassembler isoTp = new IsoTpReassembler(0x7E8);
+		isoTp.start(0x0A);
+		assertEquals(IsoTpReassembler.Result.PENDING, addLine(isoTp, "0:490201574630"));
+		assertEquals(IsoTpReassembler.Result.COMPLETE, addLine(isoTp, "1:58585847434400"));
+		assertEquals("49020157463058585847", payload(isoTp));
+		// complete payload is reported only once
+		assertFalse(isoTp.finish());
+
+		// gap in sequence
+		isoTp.start(0x14);
+		assertEquals(IsoTpReassembler.Result.PENDING, addLine(isoTp, "0:490201574630"));
+		assertEquals(IsoTpReassembler.Result.GAP, addLine(isoTp, "2:31323334353637"));
+		assertEquals(1, isoTp.getNumGaps());
+		assertEquals(1, isoTp.getNumComplete());
+	}
+
+	@Test
+	void unknownLength()
+	{
+		IsoTpReassembler isoTp = new IsoTpReassembler(0);
+		assertEquals(IsoTpReassembler.Result.PENDING, addLine(isoTp, "0:490401475350"));
+		assertEquals(IsoTpReassembler.Result.PENDING, addLine(isoTp, "1:412D3132333435"));
+		assertEquals(IsoTpReassembler.Result.IGNORED, addLine(isoTp, "X:00"));
+		assertEquals(true, isoTp.finish());
+		assertEquals("490401475350412D3132333435", payload(isoTp));
+		assertFalse(isoTp.finish());
+	}
+
+	@Test
+	void isoLines()
+	{
+		IsoTpReassembler isoTp = new IsoTpReassembler(0x10);
+		char[] line = "49020100000031".toCharArray();
+		assertEquals(IsoTpReassembler.Result.PENDING, isoTp.addIsoLine(line, 0, line.length));
+		line = "49020232333435".toCharArray();
+		assertEquals(IsoTpReassembler.Result.PENDING, isoTp.addIsoLine(line, 0, line.length));
+		line = "49020536373839".toCharArray();
+		assertEquals(IsoTpReassembler.Result.IGNORED, isoTp.addIsoLine(line, 0, line.length));
+		assertEquals(true, isoTp.finish());
+		assertEquals("4902010000003132333435", payload(isoTp));
+	}
+
+	@Test
+	void interleavedFrames()
+	{
+		IsoTpReassembler ecu1 = new IsoTpReassembler(0x7E8);
+		IsoTpReassembler ecu2 = new IsoTpReassembler(0x7E9);
+		assertEquals(IsoTpReassembler.Result.PENDING, addFrame(ecu1, "1014490201574630"));
+		assertEquals(IsoTpReassembler.Result.PENDING, addFrame(ecu2, "100B490A0145434D"));
+		assertEquals(IsoTpReassembler.Result.PENDING, addFrame(ecu1, "2158585847434458"));
+		assertEquals(IsoTpReassembler.Result.COMPLETE, addFrame(ecu2, "2100456E67696E65"));
+		assertEquals(IsoTpReassembler.Result.COMPLETE, addFrame(ecu1, "2231323334353637"));
+		assertEquals("4902015746305858584743445831323334353637", payload(ecu1));
+		assertEquals("490A0145434D00456E6769", payload(ecu2));
+		// single frame
+		assertEquals(IsoTpReassembler.Result.COMPLETE, addFrame(ecu1, "04410C1AF8AAAAAA"));
+		assertEquals("410C1AF8", payload(ecu1));
+		// consecutive frame without first frame
+		assertEquals(IsoTpReassembler.Result.GAP, addFrame(ecu2, "2300000000000000"));
+	}
+}
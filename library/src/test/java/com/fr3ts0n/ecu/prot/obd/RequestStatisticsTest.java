@@ -0,0 +1,51 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestStatisticsTest
+{
+	@Test
+	void bucketLimits()
+	{
+		// every value is within the limits of its bucket
+		for (long rtt = 0; rtt < 100000; rtt++)
+		{
+			int idx = RequestStatistics.bucketIndex(rtt);
+			assertTrue(rtt <= RequestStatistics.bucketLimit(idx));
+			assertTrue(idx == 0 || rtt > RequestStatistics.bucketLimit(idx - 1));
+		}
+	}
+
+	@Test
+	void requestCounters()
+	{
+		RequestStatistics stats = new RequestStatistics();
+		// multi PID request, answered
+		stats.requestSent(0x7E8, "010C0D".toCharArray(), 200);
+		stats.responseReceived();
+		// no response -> timeout on next request
+		stats.requestSent(0x7E8, "010C".toCharArray(), 200);
+		stats.requestSent(0x7E8, "010C".toCharArray(), 200);
+		stats.noDataReceived();
+		stats.requestSent(0x7E8, "03".toCharArray(), 200);
+		stats.nrcReceived();
+		// AT commands are ignored
+		stats.requestSent(0x7E8, "ATSH7E0".toCharArray(), 200);
+
+		RequestStatistics.Entry rpm = stats.get(0x7E8, 0x01, 0x0C);
+		assertEquals(3, rpm.getNumRequests());
+		assertEquals(1, rpm.getNumResponses());
+		assertEquals(1, rpm.getNumTimeouts());
+		assertEquals(1, rpm.getNumNoData());
+		assertEquals(200, rpm.getElmTimeout());
+		assertEquals(1, stats.get(0x7E8, 0x01, 0x0D).getNumResponses());
+		assertEquals(1, stats.get(0x7E8, 0x03, 0x00).getNumNrc());
+		assertNull(stats.get(0x7E9, 0x01, 0x0C));
+		assertEquals(3, stats.getEntries().size());
+		assertEquals(3, stats.getPvs().size());
+	}
+}
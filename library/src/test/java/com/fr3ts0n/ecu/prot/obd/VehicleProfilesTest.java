@@ -0,0 +1,78 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class VehicleProfilesTest
+{
+	private static VehicleProfile createProfile(String adapter, long lastUsed, Integer... ecus)
+	{
+		VehicleProfile profile = new VehicleProfile(adapter, 6, true, Arrays.asList(ecus));
+		profile.setLastUsed(lastUsed);
+		return profile;
+	}
+
+	@Test
+	void saveAndLoad()
+	{
+		VehicleProfiles profiles = new VehicleProfiles();
+		VehicleProfile profile = createProfile("ELM327 v1.5", 1000, 0x7E8, 0x7E9);
+		profile.addSupportedPids(0, ObdProt.OBD_SVC_DATA, 0x00, 0xBE3FA013L);
+		profile.addSupportedPids(0, ObdProt.OBD_SVC_DATA, 0x20, 0x80000001L);
+		profile.addSupportedPids(0x7E9, ObdProt.OBD_SVC_VEH_INFO, 0x00, 0x54000000L);
+		profile.setLearnedTimeouts("7E8.01.0D=20\n7E8.01.0C=24\n");
+		profiles.put(profile);
+
+		VehicleProfiles loaded = new VehicleProfiles();
+		loaded.load(profiles.toString());
+		assertEquals(1, loaded.size());
+		VehicleProfile result = loaded.get("ELM327 v1.5|7E8|7E9");
+		assertEquals(6, result.getProtocol());
+		assertEquals(1000, result.getLastUsed());
+		assertEquals(profile.getEcuAddresses(), result.getEcuAddresses());
+		assertArrayEquals(profile.getSupportedPids(0, ObdProt.OBD_SVC_DATA),
+		                  result.getSupportedPids(0, ObdProt.OBD_SVC_DATA));
+		assertEquals(0x54000000L, result.getSupportedPids(0x7E9, ObdProt.OBD_SVC_VEH_INFO)[0]);
+		assertNull(result.getSupportedPids(0x7E8, ObdProt.OBD_SVC_VEH_INFO));
+		assertEquals("7E8.01.0D=20\n7E8.01.0C=24", result.getLearnedTimeouts());
+	}
+
+	@Test
+	void invalidProfiles()
+	{
+		VehicleProfiles profiles = new VehicleProfiles();
+		profiles.load(null);
+		profiles.load("profile=ELM327\nprotocol=X\necus=7E8\n"
+		              + "profile=STN1110\nprotocol=6\ncan=true\necus=7E8\n");
+		assertEquals(1, profiles.size());
+		assertEquals(6, profiles.find("STN1110").getProtocol());
+	}
+
+	@Test
+	void mostRecentlyUsed()
+	{
+		VehicleProfiles profiles = new VehicleProfiles();
+		VehicleProfile car = createProfile("ELM327", 1000, 0x7E8);
+		VehicleProfile van = createProfile("ELM327", 2000, 0x7E8, 0x7EA);
+		profiles.put(car);
+		profiles.put(van);
+		profiles.put(createProfile("STN1110", 3000, 0x7E8));
+		assertSame(van, profiles.find("ELM327"));
+		assertNull(profiles.find("OBDLink"));
+
+		// least recently used profiles are dropped
+		for (int i = 0; i < VehicleProfiles.MAX_PROFILES; i++)
+		{
+			profiles.put(createProfile("ELM327", 1500 + i, 0x7E8 + i, 0x7E0));
+		}
+		assertEquals(VehicleProfiles.MAX_PROFILES, profiles.size());
+		assertNull(profiles.get(car.getKey()));
+		assertSame(van, profiles.get(van.getKey()));
+	}
+}
@@ -0,0 +1,154 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.prot.SerialLine;
+
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One end of a virtual serial line pair (like a pseudo terminal pair)
+ * <p>
+ * Each byte is sent with the baud rate of the sender and decoded with
+ * the baud rate of the receiver at the time of reading, so bytes sent
+ * or read with different rates are garbled as on a real line.
+ * Rates within the tolerance of a UART (2%) are compatible.
+ */
+class VirtualSerialLine implements SerialLine
+{
+	/** received garbled byte */
+	static final int GARBAGE = 0xFF;
+
+	/** received bytes (upper bits: sender's baud rate) */
+	private final LinkedBlockingDeque<Long> rxQueue = new LinkedBlockingDeque<Long>();
+	/** peer end of line */
+	private VirtualSerialLine peer;
+	private volatile int baudRate;
+	/** max. baud rate the line transports reliably */
+	private volatile int maxRate = Integer.MAX_VALUE;
+	/** baud rate from which on every 16th byte is garbled */
+	private volatile int unreliableRate = Integer.MAX_VALUE;
+	private int numRxBytes = 0;
+	private volatile boolean closed = false;
+
+	private VirtualSerialLine(int baudRate)
+	{
+		this.baudRate = baudRate;
+	}
+
+	/**
+	 * create connected pair of lines
+	 *
+	 * @param baudRate initial baud rate of both ends
+	 * @return both ends of the line
+	 */
+	static VirtualSerialLine[] createPair(int baudRate)
+	{
+		VirtualSerialLine[] result = { new VirtualSerialLine(baudRate), new VirtualSerialLine(baudRate) };
+		result[0].peer = result[1];
+		result[1].peer = result[0];
+		return result;
+	}
+
+	/** limit baud rate of both ends */
+	void setMaxRate(int maxRate)
+	{
+		this.maxRate = maxRate;
+		peer.maxRate = maxRate;
+	}
+
+	/** garble bytes received on both ends from this baud rate on */
+	void setUnreliableRate(int unreliableRate)
+	{
+		this.unreliableRate = unreliableRate;
+		peer.unreliableRate = unreliableRate;
+	}
+
+	/** close both ends, blocked reads fail */
+	void close()
+	{
+		closed = true;
+		peer.closed = true;
+		rxQueue.add(-1L);
+		peer.rxQueue.add(-1L);
+	}
+
+	@Override
+	public int getBaudRate()
+	{
+		return baudRate;
+	}
+
+	@Override
+	public void setBaudRate(int baudRate)
+	{
+		this.baudRate = baudRate;
+	}
+
+	@Override
+	public int read(byte[] buffer, int timeout) throws IOException
+	{
+		try
+		{
+			Long first = (timeout > 0)
+			             ? rxQueue.poll(timeout, TimeUnit.MILLISECONDS)
+			             : rxQueue.take();
+			if (first == null)
+			{
+				return 0;
+			}
+			rxQueue.addFirst(first);
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException(e);
+		}
+		// deliver bytes up to the next baud rate change only
+		int len = 0;
+		Long entry;
+		long rate = -2;
+		while (len < buffer.length && (entry = rxQueue.peek()) != null)
+		{
+			if (entry < 0 || closed)
+			{
+				throw new IOException("Line closed");
+			}
+			if (rate != -2 && (entry >> 8) != rate)
+			{
+				break;
+			}
+			rate = entry >> 8;
+			rxQueue.poll();
+			buffer[len++] = (byte) decode((int) rate, (int) (entry & 0xFF));
+		}
+		return len;
+	}
+
+	/**
+	 * decode received byte with receiver's baud rate
+	 */
+	private int decode(int senderRate, int data)
+	{
+		numRxBytes++;
+		if (Math.abs(senderRate - baudRate) > baudRate / 50
+		    || senderRate > maxRate
+		    || (senderRate >= unreliableRate && numRxBytes % 16 == 0))
+		{
+			return GARBAGE;
+		}
+		return data;
+	}
+
+	@Override
+	public void write(byte[] data) throws IOException
+	{
+		if (closed)
+		{
+			throw new IOException("Line closed");
+		}
+		for (byte b : data)
+		{
+			peer.rxQueue.add(((long) baudRate << 8) | (b & 0xFF));
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package com.fr3ts0n.prot;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamHandlerTest
+{
+	/**
+	 * input stream which delivers its data in blocks of given sizes
+	 */
+	static class BlockInputStream extends InputStream
+	{
+		final ByteArrayInputStream data;
+		final int[] blockSizes;
+		int block = 0;
+
+		BlockInputStream(String data, int... blockSizes)
+		{
+			this.data = new ByteArrayInputStream(data.getBytes());
+			this.blockSizes = blockSizes;
+		}
+
+		@Override
+		public int read()
+		{
+			return data.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len)
+		{
+			int size = block < blockSizes.length ? blockSizes[block++] : len;
+			return data.read(b, off, Math.min(size, len));
+		}
+	}
+
+	/**
+	 * listener which records the received buffer sections
+	 */
+	static class Recorder implements TelegramListener
+	{
+		final List<String> telegrams = new ArrayList<>();
+		final List<Integer> offsets = new ArrayList<>();
+
+		@Override
+		public int handleTelegram(char[] buffer)
+		{
+			return handleTelegram(buffer, 0, buffer.length);
+		}
+
+		@Override
+		public int handleTelegram(char[] buffer, int offset, int length)
+		{
+			telegrams.add(new String(buffer, offset, length));
+			offsets.add(offset);
+			return 1;
+		}
+	}
+
+	/**
+	 * lines are framed across block boundaries, NUL and spaces are skipped
+	 */
+	@Test
+	void rxFraming()
+	{
+		// CR LF, NUL and '>' split across read blocks
+		String data = "41 0C 1A F8\r\n41 0D 32\r\u0000\n>AT\u0000Z\r\nSEARCHING...\r\r>";
+		int[] blocks = {5, 7, 1, 9, 1, 1, 1, 3};
+		StreamHandler handler = new StreamHandler(new BlockInputStream(data, blocks),
+		                                          new ByteArrayOutputStream());
+		Recorder recorder = new Recorder();
+		handler.setMessageHandler(recorder);
+		// returns on end of stream
+		handler.run();
+
+		assertEquals(6, recorder.telegrams.size());
+		assertEquals("410C1AF8", recorder.telegrams.get(0));
+		assertEquals("410D32", recorder.telegrams.get(1));
+		assertEquals(">", recorder.telegrams.get(2));
+		assertEquals("ATZ", recorder.telegrams.get(3));
+		assertEquals("SEARCHING...", recorder.telegrams.get(4));
+		assertEquals(">", recorder.telegrams.get(5));
+		for (int offset : recorder.offsets)
+		{
+			assertEquals(0, offset);
+		}
+	}
+
+	/**
+	 * telegrams are written by TX thread with CR, in order of queueing
+	 */
+	@Test
+	void txThread() throws InterruptedException
+	{
+		final CountDownLatch written = new CountDownLatch(3);
+		ByteArrayOutputStream out = new ByteArrayOutputStream()
+		{
+			@Override
+			public void flush()
+			{
+				written.countDown();
+			}
+		};
+		StreamHandler handler = new StreamHandler(new ByteArrayInputStream(new byte[0]), out);
+		assertEquals(3, handler.writeTelegram("ATZ".toCharArray()));
+		handler.writeTelegram("0100".toCharArray());
+		handler.writeTelegram("010C0D".toCharArray(), 0, null);
+		assertTrue(written.await(5, TimeUnit.SECONDS));
+
+		assertEquals("ATZ\r0100\r010C0D\r", out.toString());
+		// statistics are updated after flush
+		for (int i = 0; i < 100 && handler.getTxCount() < 3; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(3, handler.getTxCount());
+		assertEquals(0, handler.getTxDropCount());
+		assertEquals(0, handler.getTxQueueDepth());
+		assertTrue(handler.getTxLatencyMax() >= handler.getTxLatencyAvg());
+		handler.resetTxStatistics();
+		assertEquals(0, handler.getTxCount());
+		assertEquals(0, handler.getTxLatencyMax());
+	}
+
+	/**
+	 * telegrams are dropped if TX queue is full
+	 */
+	@Test
+	void txQueueFull() throws InterruptedException
+	{
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		OutputStream out = new OutputStream()
+		{
+			@Override
+			public void write(int b)
+			{
+				data.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException
+			{
+				blocked.countDown();
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e)
+				{
+					throw new IOException(e);
+				}
+				data.write(b, off, len);
+			}
+		};
+		StreamHandler handler = new StreamHandler(new ByteArrayInputStream(new byte[0]), out);
+		// first telegram blocks TX thread
+		handler.writeTelegram("01".toCharArray());
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+		int sent = 0;
+		for (int i = 0; i < StreamHandler.TX_QUEUE_SIZE + 5; i++)
+		{
+			if (handler.writeTelegram("02".toCharArray()) > 0)
+			{
+				sent++;
+			}
+		}
+		assertEquals(StreamHandler.TX_QUEUE_SIZE, sent);
+		assertEquals(5, handler.getTxDropCount());
+		assertEquals(StreamHandler.TX_QUEUE_SIZE, handler.getTxQueueDepth());
+
+		release.countDown();
+		for (int i = 0; i < 500 && handler.getTxCount() < sent + 1; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(sent + 1, handler.getTxCount());
+		assertEquals(3 * (sent + 1), data.size());
+	}
+}